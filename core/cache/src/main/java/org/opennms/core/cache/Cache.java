@@ -84,6 +84,30 @@ public class Cache<K, V> {
         }
     }
 
+    /**
+     * Returns the value associated with the given key, without loading it.
+     *
+     * @return the cached value, or null if there is none or caching is disabled.
+     */
+    public V getIfPresent(K key) {
+        Objects.requireNonNull(key);
+        if (delegate != null) {
+            return delegate.getIfPresent(key);
+        }
+        return null;
+    }
+
+    /**
+     * Associates the given value with the given key, e.g. after loading several values at once.
+     * Does nothing if caching is disabled.
+     */
+    public void put(K key, V value) {
+        Objects.requireNonNull(key);
+        if (delegate != null) {
+            delegate.put(key, value);
+        }
+    }
+
     public void invalidateAll() {
         if (delegate != null) {
             delegate.invalidateAll();
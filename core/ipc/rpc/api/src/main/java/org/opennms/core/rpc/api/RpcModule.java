@@ -58,6 +58,16 @@ public interface RpcModule<S extends RpcRequest, T extends RpcResponse> extends
      */
     String marshalResponse(T response);
 
+    /**
+     * Marshals the response to the given request to a string.
+     *
+     * Modules can use the request to determine the format that is
+     * understood by the caller. Defaults to {@link #marshalResponse(RpcResponse)}.
+     */
+    default String marshalResponse(S request, T response) {
+        return marshalResponse(response);
+    }
+
     /**
      * Unmarshals the response from a string.
      */
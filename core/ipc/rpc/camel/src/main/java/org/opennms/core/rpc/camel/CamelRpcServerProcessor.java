@@ -78,7 +78,7 @@ public class CamelRpcServerProcessor implements AsyncProcessor {
                 }
 
                 try {
-                    exchange.getOut().setBody(module.marshalResponse(response), String.class);
+                    exchange.getOut().setBody(module.marshalResponse(request, response), String.class);
                     postProcess(exchange);
                 }  catch (Throwable t) {
                     LOG.error("Marshalling a response in RPC module {} failed.", module, t);
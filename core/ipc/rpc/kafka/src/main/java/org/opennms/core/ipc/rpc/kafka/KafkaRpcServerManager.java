@@ -216,7 +216,7 @@ public class KafkaRpcServerManager {
                                 }
                                 String responseAsString = null;
                                 try {
-                                    responseAsString = module.marshalResponse(response);
+                                    responseAsString = module.marshalResponse(request, response);
                                     final JmsQueueNameFactory topicNameFactory = new JmsQueueNameFactory(KafkaRpcConstants.RPC_RESPONSE_TOPIC_NAME,
                                             module.getId());
                                     RpcMessageProtos.RpcMessage rpcResponse = RpcMessageProtos.RpcMessage.newBuilder()
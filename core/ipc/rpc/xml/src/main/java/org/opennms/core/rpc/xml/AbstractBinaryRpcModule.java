@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.opennms.core.rpc.api.RpcResponse;
+
+/**
+ * {@link org.opennms.core.rpc.api.RpcModule} that can send its responses in a
+ * compact binary format instead of XML.
+ *
+ * Requests are always marshaled as XML, but advertise that the caller is able to read
+ * binary responses with the {@value #ACCEPT_ATTRIBUTE} attribute of their root element,
+ * which is read back as {@link BinaryRpcRequest#getAcceptedFormat()}. The attribute is
+ * added to the marshaled document, so the request itself is not modified.
+ * Systems that don't know about the binary format ignore the advertisement and
+ * reply with XML, so the format is negotiated for every request and mixed versions
+ * of OpenNMS and Minion can be used together.
+ *
+ * Binary responses are encoded with the {@link BinaryRpcCodec} of the module,
+ * or as UTF-8 encoded XML when the module has none. Payloads larger than the
+ * compression threshold are deflated. Since the transports exchange strings, the
+ * payload is Base64 encoded and prefixed with {@link #BINARY_PREFIX}.
+ *
+ * Binary responses are disabled by default and must be enabled by setting the
+ * {@value #FORMAT_SYS_PROP} system property to {@value #FORMAT_BINARY} on both
+ * OpenNMS and Minion.
+ *
+ * @param <S> the request type
+ * @param <T> the response type
+ */
+public abstract class AbstractBinaryRpcModule<S extends BinaryRpcRequest, T extends RpcResponse> extends AbstractXmlRpcModule<S, T> {
+
+    public static final String FORMAT_SYS_PROP = "org.opennms.core.ipc.rpc.format";
+
+    public static final String FORMAT_XML = "xml";
+
+    public static final String FORMAT_BINARY = "binary";
+
+    public static final String COMPRESSION_THRESHOLD_SYS_PROP = "org.opennms.core.ipc.rpc.compression.threshold";
+
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+    /**
+     * Value of {@link BinaryRpcRequest#getAcceptedFormat()} for callers which
+     * can read version 1 of the binary format.
+     */
+    public static final String ACCEPT_BINARY_V1 = "binary/1";
+
+    /**
+     * Name of the attribute the accepted format is marshaled to.
+     */
+    public static final String ACCEPT_ATTRIBUTE = "accept";
+
+    /**
+     * XML responses always start with '<', and '#' is not part of the Base64 alphabet.
+     */
+    public static final String BINARY_PREFIX = "#1:";
+
+    private static final int FLAG_CODEC = 0x01;
+    private static final int FLAG_DEFLATED = 0x02;
+
+    private final BinaryRpcCodec<T> responseCodec;
+
+    private boolean binaryEnabled = FORMAT_BINARY.equalsIgnoreCase(System.getProperty(FORMAT_SYS_PROP, FORMAT_XML));
+
+    private int compressionThreshold = Integer.getInteger(COMPRESSION_THRESHOLD_SYS_PROP, DEFAULT_COMPRESSION_THRESHOLD);
+
+    public AbstractBinaryRpcModule(Class<S> requestClazz, Class<T> responseClazz) {
+        this(requestClazz, responseClazz, null);
+    }
+
+    public AbstractBinaryRpcModule(Class<S> requestClazz, Class<T> responseClazz, BinaryRpcCodec<T> responseCodec) {
+        super(requestClazz, responseClazz);
+        this.responseCodec = responseCodec;
+    }
+
+    @Override
+    public String marshalRequest(S request) {
+        final String xml = super.marshalRequest(request);
+        if (binaryEnabled && request.getAcceptedFormat() == null) {
+            return addAcceptAttribute(xml, ACCEPT_BINARY_V1);
+        }
+        return xml;
+    }
+
+    @Override
+    public String marshalResponse(S request, T response) {
+        if (binaryEnabled && request != null && ACCEPT_BINARY_V1.equals(request.getAcceptedFormat())) {
+            return marshalBinaryResponse(response);
+        }
+        return marshalResponse(response);
+    }
+
+    @Override
+    public T unmarshalResponse(String response) {
+        if (response.startsWith(BINARY_PREFIX)) {
+            return unmarshalBinaryResponse(response);
+        }
+        return super.unmarshalResponse(response);
+    }
+
+    /**
+     * Adds the {@value #ACCEPT_ATTRIBUTE} attribute to the root element of the given document.
+     */
+    protected static String addAcceptAttribute(String xml, String acceptedFormat) {
+        // Skip the XML declaration, as well as any processing instructions and comments
+        int start = xml.indexOf('<');
+        while (start >= 0 && start + 1 < xml.length() && (xml.charAt(start + 1) == '?' || xml.charAt(start + 1) == '!')) {
+            start = xml.indexOf('<', start + 1);
+        }
+        if (start < 0) {
+            throw new IllegalArgumentException("Document has no root element.");
+        }
+
+        int end = start + 1;
+        while (end < xml.length() && !Character.isWhitespace(xml.charAt(end)) && xml.charAt(end) != '>' && xml.charAt(end) != '/') {
+            end++;
+        }
+        return xml.substring(0, end) + " " + ACCEPT_ATTRIBUTE + "=\"" + acceptedFormat + "\"" + xml.substring(end);
+    }
+
+    private String marshalBinaryResponse(T response) {
+        int flags = 0;
+        byte[] payload;
+        if (responseCodec != null) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                responseCodec.encode(response, out);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            payload = bytes.toByteArray();
+            flags |= FLAG_CODEC;
+        } else {
+            final String xml = marshalResponse(response);
+            if (xml.length() < compressionThreshold) {
+                // Wrapping small XML documents would only make them larger
+                return xml;
+            }
+            payload = xml.getBytes(StandardCharsets.UTF_8);
+        }
+
+        final ByteArrayOutputStream framed = new ByteArrayOutputStream(payload.length + 1);
+        if (payload.length >= compressionThreshold) {
+            flags |= FLAG_DEFLATED;
+            framed.write(flags);
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(framed, deflater)) {
+                out.write(payload);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                deflater.end();
+            }
+        } else {
+            framed.write(flags);
+            framed.write(payload, 0, payload.length);
+        }
+        return BINARY_PREFIX + Base64.getEncoder().encodeToString(framed.toByteArray());
+    }
+
+    private T unmarshalBinaryResponse(String response) {
+        final byte[] framed = Base64.getDecoder().decode(response.substring(BINARY_PREFIX.length()));
+        if (framed.length < 1) {
+            throw new IllegalArgumentException("Binary response is empty.");
+        }
+        final int flags = framed[0];
+        InputStream in = new ByteArrayInputStream(framed, 1, framed.length - 1);
+        if ((flags & FLAG_DEFLATED) != 0) {
+            in = new InflaterInputStream(in);
+        }
+
+        try (InputStream payload = in) {
+            if ((flags & FLAG_CODEC) != 0) {
+                if (responseCodec == null) {
+                    throw new IllegalStateException("Module " + getId() + " received a binary response, but has no codec.");
+                }
+                return responseCodec.decode(new DataInputStream(payload));
+            }
+            final ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = payload.read(buffer)) != -1) {
+                xml.write(buffer, 0, n);
+            }
+            return super.unmarshalResponse(new String(xml.toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean isBinaryEnabled() {
+        return binaryEnabled;
+    }
+
+    public void setBinaryEnabled(boolean binaryEnabled) {
+        this.binaryEnabled = binaryEnabled;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.xml;
+
+import org.opennms.core.rpc.api.RpcRequest;
+
+/**
+ * A request that advertises which response formats the caller is able to read.
+ *
+ * The value is marshaled as the optional
+ * {@value AbstractBinaryRpcModule#ACCEPT_ATTRIBUTE} attribute of the request's
+ * root element, which is ignored by systems that don't know about it. This allows new
+ * cores to talk to old Minions and vice versa.
+ *
+ * @see AbstractBinaryRpcModule
+ */
+public interface BinaryRpcRequest extends RpcRequest {
+
+    /**
+     * @return the response format accepted by the caller, or {@code null} if
+     * the caller only supports XML
+     */
+    String getAcceptedFormat();
+
+    void setAcceptedFormat(String acceptedFormat);
+
+}
@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.rpc.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.junit.Test;
+import org.opennms.core.rpc.api.RpcResponse;
+
+public class AbstractBinaryRpcModuleTest {
+
+    @Test
+    public void canNegotiateTheResponseFormat() {
+        final EchoModule module = new EchoModule(new EchoCodec());
+        module.setBinaryEnabled(true);
+        final EchoResponse response = createResponse(1);
+
+        // Requests from old systems don't advertise the binary format
+        assertTrue(module.marshalResponse(new EchoRequest(), response).startsWith("<"));
+
+        final EchoRequest request = module.unmarshalRequest(module.marshalRequest(new EchoRequest()));
+        assertEquals(AbstractBinaryRpcModule.ACCEPT_BINARY_V1, request.getAcceptedFormat());
+        final String marshaled = module.marshalResponse(request, response);
+        assertTrue(marshaled.startsWith(AbstractBinaryRpcModule.BINARY_PREFIX));
+        assertEquals(response, module.unmarshalResponse(marshaled));
+
+        // Responses without context are always XML
+        assertTrue(module.marshalResponse(response).startsWith("<"));
+    }
+
+    @Test
+    public void doesNotModifyTheMarshaledRequest() {
+        final EchoModule module = new EchoModule(new EchoCodec());
+        module.setBinaryEnabled(true);
+
+        final EchoRequest request = new EchoRequest();
+        request.setLocation("Default");
+        final EchoRequest unmarshaled = module.unmarshalRequest(module.marshalRequest(request));
+        assertNull(request.getAcceptedFormat());
+        assertEquals(AbstractBinaryRpcModule.ACCEPT_BINARY_V1, unmarshaled.getAcceptedFormat());
+        assertEquals("Default", unmarshaled.getLocation());
+    }
+
+    @Test
+    public void isDisabledByDefault() {
+        final EchoModule module = new EchoModule(new EchoCodec());
+        assertFalse(module.isBinaryEnabled());
+
+        final EchoRequest request = module.unmarshalRequest(module.marshalRequest(new EchoRequest()));
+        assertNull(request.getAcceptedFormat());
+        assertTrue(module.marshalResponse(request, createResponse(1)).startsWith("<"));
+
+        // Binary responses sent by others can still be read
+        request.setAcceptedFormat(AbstractBinaryRpcModule.ACCEPT_BINARY_V1);
+        module.setBinaryEnabled(true);
+        final String marshaled = module.marshalResponse(request, createResponse(1));
+        module.setBinaryEnabled(false);
+        assertEquals(createResponse(1), module.unmarshalResponse(marshaled));
+    }
+
+    @Test
+    public void canCompressLargeXmlResponses() {
+        final EchoModule module = new EchoModule(null);
+        module.setBinaryEnabled(true);
+        final EchoRequest request = new EchoRequest();
+        request.setAcceptedFormat(AbstractBinaryRpcModule.ACCEPT_BINARY_V1);
+
+        // Small XML responses are not wrapped
+        final EchoResponse small = createResponse(1);
+        assertEquals(module.marshalResponse(small), module.marshalResponse(request, small));
+
+        final EchoResponse large = createResponse(1000);
+        final String marshaled = module.marshalResponse(request, large);
+        assertTrue(marshaled.startsWith(AbstractBinaryRpcModule.BINARY_PREFIX));
+        assertTrue(marshaled.length() < module.marshalResponse(large).length() / 4);
+        assertEquals(large, module.unmarshalResponse(marshaled));
+    }
+
+    @Test
+    public void canUseTheCodecOfTheModule() {
+        final EchoModule module = new EchoModule(new EchoCodec());
+        module.setBinaryEnabled(true);
+        final EchoRequest request = new EchoRequest();
+        request.setAcceptedFormat(AbstractBinaryRpcModule.ACCEPT_BINARY_V1);
+
+        for (int size : new int[] {0, 1, 1000}) {
+            final EchoResponse response = createResponse(size);
+            final String marshaled = module.marshalResponse(request, response);
+            assertTrue(marshaled.startsWith(AbstractBinaryRpcModule.BINARY_PREFIX));
+            assertEquals(response, module.unmarshalResponse(marshaled));
+        }
+    }
+
+    private static EchoResponse createResponse(int size) {
+        final EchoResponse response = new EchoResponse();
+        for (int i = 0; i < size; i++) {
+            response.getValues().add("value-" + i);
+        }
+        return response;
+    }
+
+    private static class EchoModule extends AbstractBinaryRpcModule<EchoRequest, EchoResponse> {
+        public EchoModule(BinaryRpcCodec<EchoResponse> codec) {
+            super(EchoRequest.class, EchoResponse.class, codec);
+        }
+
+        @Override
+        public String getId() {
+            return "Echo";
+        }
+
+        @Override
+        public CompletableFuture<EchoResponse> execute(EchoRequest request) {
+            return CompletableFuture.completedFuture(new EchoResponse());
+        }
+
+        @Override
+        public EchoResponse createResponseWithException(Throwable ex) {
+            return new EchoResponse();
+        }
+    }
+
+    private static class EchoCodec implements BinaryRpcCodec<EchoResponse> {
+        @Override
+        public void encode(EchoResponse response, DataOutput out) throws IOException {
+            out.writeInt(response.getValues().size());
+            for (String value : response.getValues()) {
+                out.writeUTF(value);
+            }
+        }
+
+        @Override
+        public EchoResponse decode(DataInput in) throws IOException {
+            final EchoResponse response = new EchoResponse();
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                response.getValues().add(in.readUTF());
+            }
+            return response;
+        }
+    }
+
+    @XmlRootElement(name="echo-request")
+    @XmlAccessorType(XmlAccessType.NONE)
+    public static class EchoRequest implements BinaryRpcRequest {
+        @XmlAttribute(name="location")
+        private String location;
+
+        @XmlAttribute(name="accept")
+        private String acceptedFormat;
+
+        @Override
+        public String getLocation() {
+            return location;
+        }
+
+        public void setLocation(String location) {
+            this.location = location;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+
+        @Override
+        public Long getTimeToLiveMs() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedFormat() {
+            return acceptedFormat;
+        }
+
+        @Override
+        public void setAcceptedFormat(String acceptedFormat) {
+            this.acceptedFormat = acceptedFormat;
+        }
+    }
+
+    @XmlRootElement(name="echo-response")
+    @XmlAccessorType(XmlAccessType.NONE)
+    public static class EchoResponse implements RpcResponse {
+        @XmlElement(name="value")
+        private List<String> values = new ArrayList<>();
+
+        public List<String> getValues() {
+            return values;
+        }
+
+        @Override
+        public String getErrorMessage() {
+            return null;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(values);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            final EchoResponse other = (EchoResponse) obj;
+            return Objects.equals(this.values, other.values);
+        }
+    }
+}
@@ -52,6 +52,18 @@ public interface OffHeapQueue {
      */
     AbstractMap.SimpleImmutableEntry<String, byte[]> readNextMessage(String moduleName) throws InterruptedException;
 
+    /**
+     *
+     * Marks the message that was read with the given key as dispatched. Queues which survive
+     * a restart replay the messages which were read but not committed.
+     *
+     * @param moduleName Sink Module Name.
+     * @param key unique id of the sink message.
+     */
+    default void commitMessage(String moduleName, String key) {
+        // Messages are removed once they are read
+    }
+
     /**
      *
      * @return size of OffHeap in bytes.
@@ -136,6 +136,15 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                 new LogPreservingThreadFactory(SystemInfoUtils.DEFAULT_INSTANCE_ID + ".Sink.AsyncDispatcher." + state.getModule().getId(), Integer.MAX_VALUE),
                 rejectedExecutionHandler
             );
+
+        // Replay the messages that were left in the OffHeapQueue before a restart
+        if (useOffHeap && offHeapQueue.getNumOfMessages(sinkModule.getId()) > 0) {
+            this.offHeapAdapter = new OffHeapAdapter();
+            offHeapAdapter.startDraining();
+            offHeapAdapterExecutor.execute(offHeapAdapter);
+            LOG.info("started drain thread for {} to replay {} messages", sinkModule.getId(),
+                    offHeapQueue.getNumOfMessages(sinkModule.getId()));
+        }
     }
 
     /**
@@ -239,7 +248,7 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         }
 
         /** This is drain thread which polls data from OffHeapQueue, when data is available, it will push the data to the executor queue.
-         *  It also retrieves the future from the map and completes the future.**/
+         *  Once the message was dispatched, it is committed to the OffHeapQueue and the future from the map is completed.**/
         @Override
         public void run() {
             while (!closed.get()) {
@@ -254,9 +263,13 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
                         queue.put(() -> {
                             S message = sinkModule.unmarshalSingleMessage(keyValue.getValue());
                             syncDispatcher.send(message);
-                            CompletableFuture<S> future = offHeapFutureMap.get(keyValue.getKey());
-                            future.complete(message);
-                            offHeapFutureMap.remove(keyValue.getKey());
+                            // Only forget the message once it was dispatched, so it is replayed after a restart otherwise
+                            offHeapQueue.commitMessage(sinkModule.getId(), keyValue.getKey());
+                            // Messages replayed after a restart have no future
+                            CompletableFuture<S> future = offHeapFutureMap.remove(keyValue.getKey());
+                            if (future != null) {
+                                future.complete(message);
+                            }
                         });
 
                     }
@@ -279,7 +292,11 @@ public class AsyncDispatcherImpl<W, S extends Message, T extends Message> implem
         }
         
         public boolean isOffHeapEmpty() {
-            return offHeapFutureMap.isEmpty();
+            return offHeapFutureMap.isEmpty() && offHeapQueue.getNumOfMessages(sinkModule.getId()) == 0;
+        }
+
+        public void startDraining() {
+            firstWrite.countDown();
         }
         
         public void shutdown() {
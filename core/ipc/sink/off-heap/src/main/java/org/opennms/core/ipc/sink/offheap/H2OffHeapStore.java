@@ -152,7 +152,7 @@ public class H2OffHeapStore implements OffHeapQueue {
         reporter.stop();
     }
 
-    private long convertByteSizes(String size) {
+    static long convertByteSizes(String size) {
         String suffix = size.substring(size.length()-2, size.length());
         double value = 0;
         long bytes = 0;
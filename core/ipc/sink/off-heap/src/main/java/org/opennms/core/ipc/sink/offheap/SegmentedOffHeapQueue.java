@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.offheap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.Dictionary;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.journal.SegmentLog;
+import org.opennms.core.journal.SegmentQuota;
+import org.opennms.core.ipc.sink.api.OffHeapQueue;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+
+/**
+ * {@link OffHeapQueue} that stores the messages of every sink module in an append-only
+ * {@link SegmentLog} of memory-mapped segment files on disk.
+ *
+ * Every record holds the key of the message, prefixed by its length as a short, followed by
+ * the message itself.
+ *
+ * Unlike the {@link H2OffHeapStore}, queued messages survive a restart of the Minion and
+ * are replayed once it is running again. This includes the messages which were read but
+ * not committed, since they may not have been dispatched yet. The total size of the
+ * segment files is limited by the {@code offHeapSize} property.
+ */
+public class SegmentedOffHeapQueue implements OffHeapQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentedOffHeapQueue.class);
+    private static final String OFFHEAP_CONFIG = "org.opennms.core.ipc.sink.offheap";
+    private final static String OFFHEAP_SIZE = "offHeapSize";
+    private final static String OFFHEAP_DIR = "offHeapDir";
+    private final static String SEGMENT_SIZE = "offHeapSegmentSize";
+    private final static String DEFAULT_OFFHEAP_SIZE = "10MB";
+    private final static String DEFAULT_SEGMENT_SIZE = "1MB";
+    private final static int MIN_SEGMENT_SIZE = 64 * 1024;
+    // Default wait time for each poll is 1000msec.
+    private final static long DEFAULT_WAIT_FOR_POLL = 1000L;
+
+    private final ConfigurationAdmin configAdmin;
+    private final MetricRegistry offheapMetrics = new MetricRegistry();
+    private JmxReporter reporter = null;
+    private Meter messagesWritten;
+    private Meter bytesWritten;
+    private Meter messagesRead;
+    private Meter bytesRead;
+
+    private Path directory;
+    private long maxSizeInBytes;
+    private int segmentSize;
+    private SegmentQuota quota;
+    // Map of ModuleName and corresponding log.
+    private final Map<String, ModuleLog> logs = new ConcurrentHashMap<>();
+
+    public SegmentedOffHeapQueue(ConfigurationAdmin configAdmin) {
+        this.configAdmin = configAdmin;
+    }
+
+    public void init() throws IOException {
+        final Dictionary<String, Object> properties = configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties();
+        maxSizeInBytes = H2OffHeapStore.convertByteSizes(getProperty(properties, OFFHEAP_SIZE, DEFAULT_OFFHEAP_SIZE));
+        final long configuredSegmentSize = H2OffHeapStore.convertByteSizes(getProperty(properties, SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE));
+        // Use at least a few segments, so that the read ones can be recycled while writing
+        segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(configuredSegmentSize, Math.min(maxSizeInBytes / 4, Integer.MAX_VALUE)));
+        directory = Paths.get(getProperty(properties, OFFHEAP_DIR, getDefaultDirectory()));
+        Files.createDirectories(directory);
+        quota = new SegmentQuota(maxSizeInBytes);
+
+        // Replay the messages of the modules which were queued before the restart
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path moduleDirectory : stream) {
+                final String moduleName = URLDecoder.decode(moduleDirectory.getFileName().toString(), "UTF-8");
+                logs.put(moduleName, new ModuleLog(new SegmentLog(moduleDirectory, segmentSize, quota)));
+            }
+        }
+
+        messagesWritten = offheapMetrics.meter(MetricRegistry.name("messagesWritten"));
+        bytesWritten = offheapMetrics.meter(MetricRegistry.name("bytesWritten"));
+        messagesRead = offheapMetrics.meter(MetricRegistry.name("messagesRead"));
+        bytesRead = offheapMetrics.meter(MetricRegistry.name("bytesRead"));
+        offheapMetrics.register(MetricRegistry.name("offHeapSize"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return getSize();
+            }
+        });
+        reporter = JmxReporter.forRegistry(offheapMetrics).inDomain(this.getClass().getPackage().getName()).build();
+        reporter.start();
+        LOG.info("initializing segmented OffHeapQueue in {} with max size : {} and segment size : {}",
+                directory, maxSizeInBytes, segmentSize);
+    }
+
+    @Override
+    public boolean writeMessage(byte[] message, String moduleName, String key) throws WriteFailedException {
+        if (message == null || Strings.isNullOrEmpty(moduleName)) {
+            throw new WriteFailedException("Invalid message");
+        }
+        final SegmentLog log;
+        try {
+            log = logs.computeIfAbsent(moduleName, this::createLog).log;
+        } catch (UncheckedIOException e) {
+            throw new WriteFailedException("Failed to create the log for module " + moduleName + ": " + e.getMessage());
+        }
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int recordLength = 2 + keyBytes.length + message.length;
+        if (keyBytes.length > Short.MAX_VALUE || recordLength > log.getMaxRecordSize()) {
+            throw new WriteFailedException("Message of " + message.length + " bytes does not fit in a segment of " + segmentSize + " bytes");
+        }
+        final ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putShort((short) keyBytes.length);
+        record.put(keyBytes);
+        record.put(message);
+        try {
+            if (!log.append(record.array())) {
+                throw new WriteFailedException("Offheap storage exhausted, size = " + maxSizeInBytes);
+            }
+        } catch (IOException e) {
+            throw new WriteFailedException("Failed to write the message of module " + moduleName + ": " + e.getMessage());
+        }
+        messagesWritten.mark();
+        bytesWritten.mark(message.length);
+        return true;
+    }
+
+    @Override
+    public AbstractMap.SimpleImmutableEntry<String, byte[]> readNextMessage(String moduleName)
+            throws InterruptedException {
+        final ModuleLog moduleLog = logs.get(moduleName);
+        if (moduleLog == null) {
+            LOG.warn("No data was ever written for this module {}", moduleName);
+            return null;
+        }
+        // Poll for an item to be available, max wait is 1 second.
+        final SegmentLog.Record record = moduleLog.log.poll(DEFAULT_WAIT_FOR_POLL, TimeUnit.MILLISECONDS);
+        if (record == null) {
+            return null;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(record.getData());
+        final byte[] keyBytes = new byte[buffer.getShort()];
+        buffer.get(keyBytes);
+        final byte[] message = new byte[buffer.remaining()];
+        buffer.get(message);
+
+        final String key = new String(keyBytes, StandardCharsets.UTF_8);
+        moduleLog.uncommitted.put(key, record);
+        messagesRead.mark();
+        bytesRead.mark(message.length);
+        return new AbstractMap.SimpleImmutableEntry<>(key, message);
+    }
+
+    @Override
+    public void commitMessage(String moduleName, String key) {
+        final ModuleLog moduleLog = logs.get(moduleName);
+        if (moduleLog == null) {
+            return;
+        }
+        final SegmentLog.Record record = moduleLog.uncommitted.remove(key);
+        if (record != null) {
+            moduleLog.log.commit(record);
+        }
+    }
+
+    public void destroy() {
+        logs.forEach((module, moduleLog) -> moduleLog.log.close());
+        LOG.info("closing segmented OffHeapQueue, size = {} ", getSize());
+        logs.clear();
+        if (reporter != null) {
+            reporter.stop();
+        }
+    }
+
+    /**
+     * @return the size of the segment files in bytes.
+     */
+    @Override
+    public long getSize() {
+        return quota != null ? quota.getSize() : 0;
+    }
+
+    @Override
+    public int getNumOfMessages(String moduleName) {
+        final ModuleLog moduleLog = logs.get(moduleName);
+        if (moduleLog != null) {
+            return moduleLog.log.getNumRecords();
+        }
+        return 0;
+    }
+
+    public MetricRegistry getMetrics() {
+        return offheapMetrics;
+    }
+
+    private ModuleLog createLog(String moduleName) {
+        try {
+            final Path moduleDirectory = directory.resolve(URLEncoder.encode(moduleName, "UTF-8"));
+            LOG.info("initialized segment log for module : {} ", moduleName);
+            return new ModuleLog(new SegmentLog(moduleDirectory, segmentSize, quota));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String getProperty(Dictionary<String, Object> properties, String key, String defaultValue) {
+        if (properties != null && properties.get(key) instanceof String) {
+            return (String) properties.get(key);
+        }
+        return defaultValue;
+    }
+
+    private static String getDefaultDirectory() {
+        final String dataDirectory = System.getProperty("karaf.data", System.getProperty("java.io.tmpdir"));
+        return Paths.get(dataDirectory, "offheap").toString();
+    }
+
+    /**
+     * The log of a module and the records which were read, but not committed yet.
+     */
+    private static class ModuleLog {
+        private final SegmentLog log;
+        private final Map<String, SegmentLog.Record> uncommitted = new ConcurrentHashMap<>();
+
+        private ModuleLog(SegmentLog log) {
+            this.log = log;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.offheap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.ipc.sink.api.WriteFailedException;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+public class SegmentedOffHeapQueueTest {
+
+    private static final String OFFHEAP_CONFIG = "org.opennms.core.ipc.sink.offheap";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private SegmentedOffHeapQueue queue;
+
+    @After
+    public void destroy() {
+        if (queue != null) {
+            queue.destroy();
+        }
+    }
+
+    @Test
+    public void canWriteAndReadMessagesInOrder() throws Exception {
+        queue = createQueue("1MB");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (String module : new String[] {"traps-test", "syslog-test"}) {
+            executor.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    try {
+                        queue.writeMessage(("This is " + i + " " + module + " message").getBytes(), module, Integer.toString(i));
+                    } catch (WriteFailedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(1000, queue.getNumOfMessages("traps-test"));
+
+        for (String module : new String[] {"traps-test", "syslog-test"}) {
+            for (int i = 0; i < 1000; i++) {
+                final AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage(module);
+                assertEquals(Integer.toString(i), keyValue.getKey());
+                assertEquals("This is " + i + " " + module + " message", new String(keyValue.getValue()));
+            }
+            assertEquals(0, queue.getNumOfMessages(module));
+            assertNull(queue.readNextMessage(module));
+        }
+        assertEquals(2000, queue.getMetrics().meter("messagesWritten").getCount());
+        assertEquals(2000, queue.getMetrics().meter("messagesRead").getCount());
+    }
+
+    @Test
+    public void canReplayMessagesAfterRestart() throws Exception {
+        queue = createQueue("1MB");
+        for (int i = 0; i < 5000; i++) {
+            queue.writeMessage(("message " + i).getBytes(), "traps-test", Integer.toString(i));
+        }
+        for (int i = 0; i < 1500; i++) {
+            assertEquals(Integer.toString(i), queue.readNextMessage("traps-test").getKey());
+            queue.commitMessage("traps-test", Integer.toString(i));
+        }
+        final long size = queue.getSize();
+        queue.destroy();
+
+        queue = createQueue("1MB");
+        assertEquals(3500, queue.getNumOfMessages("traps-test"));
+        assertEquals(size, queue.getSize());
+        for (int i = 1500; i < 5000; i++) {
+            final AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("traps-test");
+            assertEquals(Integer.toString(i), keyValue.getKey());
+            assertEquals("message " + i, new String(keyValue.getValue()));
+        }
+
+        // Writes continue after the replayed messages
+        queue.writeMessage("after restart".getBytes(), "traps-test", "next");
+        assertEquals("next", queue.readNextMessage("traps-test").getKey());
+    }
+
+    @Test
+    public void canRecycleSegments() throws Exception {
+        queue = createQueue("512KB");
+        final byte[] message = new byte[1024];
+        long maxSize = 0;
+        for (int i = 0; i < 10000; i++) {
+            queue.writeMessage(message, "syslog-test", Integer.toString(i));
+            assertEquals(Integer.toString(i), queue.readNextMessage("syslog-test").getKey());
+            queue.commitMessage("syslog-test", Integer.toString(i));
+            maxSize = Math.max(maxSize, queue.getSize());
+        }
+        // Far less than the 10MB that were written
+        assertTrue(maxSize <= 512 * 1024);
+    }
+
+    @Test
+    public void canRejectWritesWhenFull() throws Exception {
+        queue = createQueue("256KB");
+        final byte[] message = new byte[1024];
+        int written = 0;
+        try {
+            for (; written < 1000; written++) {
+                queue.writeMessage(message, "events-test", Integer.toString(written));
+            }
+            fail("The queue should be full");
+        } catch (WriteFailedException e) {
+            // expected
+        }
+        assertTrue(written > 0);
+        assertEquals(written, queue.getNumOfMessages("events-test"));
+        assertTrue(queue.getSize() <= 256 * 1024);
+
+        // Space becomes available again once the messages were committed
+        for (int i = 0; i < written; i++) {
+            queue.readNextMessage("events-test");
+            queue.commitMessage("events-test", Integer.toString(i));
+        }
+        queue.writeMessage(message, "events-test", "next");
+    }
+
+    @Test
+    public void canReplayMessagesWhichWereNotCommitted() throws Exception {
+        queue = createQueue("1MB");
+        for (int i = 0; i < 10; i++) {
+            queue.writeMessage(("message " + i).getBytes(), "traps-test", Integer.toString(i));
+        }
+        // Messages which were read, but may not have been dispatched yet
+        for (int i = 0; i < 6; i++) {
+            queue.readNextMessage("traps-test");
+        }
+        // Commits may arrive out of order
+        queue.commitMessage("traps-test", "0");
+        queue.commitMessage("traps-test", "1");
+        queue.commitMessage("traps-test", "3");
+        assertEquals(4, queue.getNumOfMessages("traps-test"));
+        queue.destroy();
+
+        queue = createQueue("1MB");
+        assertEquals(8, queue.getNumOfMessages("traps-test"));
+        for (int i = 2; i < 10; i++) {
+            assertEquals(Integer.toString(i), queue.readNextMessage("traps-test").getKey());
+        }
+    }
+
+    @Test
+    public void canRecoverFromCorruptTail() throws Exception {
+        queue = createQueue("1MB");
+        for (int i = 0; i < 3; i++) {
+            queue.writeMessage(("message " + i).getBytes(), "traps-test", Integer.toString(i));
+        }
+        queue.destroy();
+
+        // Flip a byte in the body of the last record, as if the write was torn
+        final Path segment = tempFolder.getRoot().toPath().resolve("traps-test").resolve("segment-0.dat");
+        final int recordSize = 8 + 2 + 1 + "message 0".length();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            final long offset = 16 + 3 * recordSize - 1;
+            file.seek(offset);
+            final int value = file.read();
+            file.seek(offset);
+            file.write(~value);
+        }
+
+        queue = createQueue("1MB");
+        assertEquals(2, queue.getNumOfMessages("traps-test"));
+
+        // The corrupt record is overwritten by the next message
+        queue.writeMessage("message 3".getBytes(), "traps-test", "3");
+        for (String key : new String[] {"0", "1", "3"}) {
+            final AbstractMap.SimpleImmutableEntry<String, byte[]> keyValue = queue.readNextMessage("traps-test");
+            assertEquals(key, keyValue.getKey());
+            assertEquals("message " + key, new String(keyValue.getValue()));
+        }
+        assertNull(queue.readNextMessage("traps-test"));
+    }
+
+    private SegmentedOffHeapQueue createQueue(String size) throws IOException {
+        final Hashtable<String, Object> configProperties = new Hashtable<>();
+        configProperties.put("offHeapSize", size);
+        configProperties.put("offHeapSegmentSize", "64KB");
+        configProperties.put("offHeapDir", tempFolder.getRoot().getAbsolutePath());
+        final ConfigurationAdmin configAdmin = mock(ConfigurationAdmin.class, RETURNS_DEEP_STUBS);
+        when(configAdmin.getConfiguration(OFFHEAP_CONFIG).getProperties()).thenReturn(configProperties);
+        final SegmentedOffHeapQueue queue = new SegmentedOffHeapQueue(configAdmin);
+        queue.init();
+        return queue;
+    }
+}
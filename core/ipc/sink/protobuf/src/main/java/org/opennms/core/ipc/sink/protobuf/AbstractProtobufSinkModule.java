@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.protobuf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+import org.opennms.core.ipc.sink.api.Message;
+import org.opennms.core.ipc.sink.xml.AbstractXmlSinkModule;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * A sink module which marshals the aggregated messages using the protobuf wire
+ * format instead of XML.
+ *
+ * The binary payloads are prefixed with a marker that can never start an XML document,
+ * so both formats are always accepted when unmarshaling. This allows Minions and OpenNMS
+ * instances that use different formats to coexist during upgrades.
+ *
+ * Messages are marshaled to XML unless the {@value #FORMAT_SYS_PROP} system property
+ * is set to {@value #FORMAT_PROTOBUF}.
+ */
+public abstract class AbstractProtobufSinkModule<S extends Message, T extends Message> extends AbstractXmlSinkModule<S, T> {
+
+    public static final String FORMAT_SYS_PROP = "org.opennms.core.ipc.sink.format";
+
+    public static final String FORMAT_XML = "xml";
+
+    public static final String FORMAT_PROTOBUF = "protobuf";
+
+    /**
+     * The leading null byte is not valid in an XML document, the last byte is the version of the format.
+     */
+    private static final byte[] MAGIC = { 0x00, 'O', 'P', 0x01 };
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private final ProtobufCodec<T> codec;
+
+    private volatile boolean protobufEnabled;
+
+    public AbstractProtobufSinkModule(Class<T> messageClazz, ProtobufCodec<T> codec) {
+        super(messageClazz);
+        this.codec = Objects.requireNonNull(codec);
+        this.protobufEnabled = FORMAT_PROTOBUF.equalsIgnoreCase(System.getProperty(FORMAT_SYS_PROP, FORMAT_XML));
+    }
+
+    @Override
+    public byte[] marshal(T message) {
+        if (!protobufEnabled || !codec.canEncode(message)) {
+            return super.marshal(message);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        bytes.write(MAGIC, 0, MAGIC.length);
+        try {
+            final CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            codec.encode(message, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public T unmarshal(byte[] bytes) {
+        if (!isProtobuf(bytes)) {
+            return super.unmarshal(bytes);
+        }
+        final CodedInputStream in = CodedInputStream.newInstance(bytes, MAGIC.length, bytes.length - MAGIC.length);
+        // The default limit of 64MB is meant to protect against untrusted input
+        in.setSizeLimit(Integer.MAX_VALUE);
+        try {
+            return codec.decode(in);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public boolean isProtobufEnabled() {
+        return protobufEnabled;
+    }
+
+    public void setProtobufEnabled(boolean protobufEnabled) {
+        this.protobufEnabled = protobufEnabled;
+    }
+
+    public static boolean isProtobuf(byte[] bytes) {
+        if (bytes.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
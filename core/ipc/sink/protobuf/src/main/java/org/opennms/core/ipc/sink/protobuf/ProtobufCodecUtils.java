@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.core.ipc.sink.protobuf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Date;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Helpers used to write the {@link ProtobufCodec}s by hand, without the need
+ * for generated message classes.
+ */
+public abstract class ProtobufCodecUtils {
+
+    private static final int NESTED_BUFFER_SIZE = 256;
+
+    public interface MessageWriter<V> {
+        void write(V value, CodedOutputStream out) throws IOException;
+    }
+
+    public interface MessageReader<V> {
+        V read(CodedInputStream in) throws IOException;
+    }
+
+    /**
+     * Writes an embedded message. The message is buffered, since its length must precede it.
+     */
+    public static <V> void writeMessage(CodedOutputStream out, int fieldNumber, V value, MessageWriter<V> writer) throws IOException {
+        if (value == null) {
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(NESTED_BUFFER_SIZE);
+        final CodedOutputStream nested = CodedOutputStream.newInstance(bytes, NESTED_BUFFER_SIZE);
+        writer.write(value, nested);
+        nested.flush();
+        out.writeByteArray(fieldNumber, bytes.toByteArray());
+    }
+
+    /**
+     * Reads an embedded message, the reader must consume fields until {@link CodedInputStream#readTag()} returns 0.
+     */
+    public static <V> V readMessage(CodedInputStream in, MessageReader<V> reader) throws IOException {
+        final int length = in.readRawVarint32();
+        final int oldLimit = in.pushLimit(length);
+        final V value = reader.read(in);
+        in.checkLastTagWas(0);
+        in.popLimit(oldLimit);
+        return value;
+    }
+
+    public static void writeString(CodedOutputStream out, int fieldNumber, String value) throws IOException {
+        if (value != null) {
+            out.writeString(fieldNumber, value);
+        }
+    }
+
+    public static void writeInetAddress(CodedOutputStream out, int fieldNumber, InetAddress value) throws IOException {
+        if (value != null) {
+            out.writeByteArray(fieldNumber, value.getAddress());
+        }
+    }
+
+    public static InetAddress readInetAddress(CodedInputStream in) throws IOException {
+        return InetAddress.getByAddress(in.readByteArray());
+    }
+
+    public static void writeDate(CodedOutputStream out, int fieldNumber, Date value) throws IOException {
+        if (value != null) {
+            out.writeInt64(fieldNumber, value.getTime());
+        }
+    }
+
+    public static Date readDate(CodedInputStream in) throws IOException {
+        return new Date(in.readInt64());
+    }
+
+    /**
+     * Writes the values as a packed repeated uint32 field.
+     */
+    public static void writePackedUInt32(CodedOutputStream out, int fieldNumber, int[] values) throws IOException {
+        if (values == null) {
+            return;
+        }
+        int size = 0;
+        for (int value : values) {
+            size += CodedOutputStream.computeUInt32SizeNoTag(value);
+        }
+        out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeRawVarint32(size);
+        for (int value : values) {
+            out.writeUInt32NoTag(value);
+        }
+    }
+
+    public static int[] readPackedUInt32(CodedInputStream in) throws IOException {
+        final int length = in.readRawVarint32();
+        final int oldLimit = in.pushLimit(length);
+        // Every value takes at least one byte
+        int[] values = new int[length];
+        int count = 0;
+        while (in.getBytesUntilLimit() > 0) {
+            values[count++] = in.readUInt32();
+        }
+        in.popLimit(oldLimit);
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed size, memory-mapped file of a {@link SegmentLog}.
+ *
+ * The file starts with a header that holds the sequence number of the segment,
+ * followed by the records. Segments are recycled by resetting the header, so
+ * the file name does not say anything about the order of the segments.
+ */
+class Segment {
+
+    static final int MAGIC = 0x4f4e4d53;
+
+    /**
+     * Magic (int), reserved (int) and sequence number (long).
+     */
+    static final int HEADER_SIZE = 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static Segment create(Path file, int size) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing segment. The size of the file is kept, even if the configured
+     * segment size has changed since it was created.
+     */
+    static Segment open(Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid segment size " + size + " of " + file);
+            }
+            return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Prepares the segment for being written to again, with the given sequence number.
+     */
+    void reset(long sequence) {
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.putLong(8, sequence);
+        buffer.putInt(4, 0);
+        buffer.putInt(0, MAGIC);
+    }
+
+    boolean isValid() {
+        return buffer.getInt(0) == MAGIC;
+    }
+
+    long getSequence() {
+        return buffer.getLong(8);
+    }
+
+    MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int getSize() {
+        return buffer.capacity();
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    void close(boolean force) throws IOException {
+        if (force) {
+            buffer.force();
+        }
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,503 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of records, stored in a directory of fixed size, memory-mapped {@link Segment}s.
+ *
+ * Every record is laid out as:
+ * <pre>
+ *   int    length of the data
+ *   int    CRC32 of the data
+ *   byte[] data
+ * </pre>
+ * and is followed by a zero length, which marks the end of the log. When a record
+ * doesn't fit in the current segment, the remainder of the segment is skipped using
+ * {@link #END_OF_SEGMENT} and the log continues in the next segment.
+ *
+ * Records are read using {@link #poll(long, TimeUnit)} and stay in the log until they are
+ * {@link #commit(Record) committed}, which may happen in any order. The position of the oldest
+ * record that was not committed is stored in a small memory-mapped checkpoint file, so records
+ * which were read but not committed are read again after a restart. Segments which have been
+ * committed completely are kept for reuse, instead of creating new files.
+ *
+ * The total size of the segment files is limited by a {@link SegmentQuota}, which can be shared
+ * by multiple logs.
+ */
+public class SegmentLog implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentLog.class);
+
+    static final int END_OF_SEGMENT = -1;
+
+    static final int RECORD_HEADER_SIZE = 8;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".dat";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    /**
+     * Number of committed segments that are kept for reuse.
+     */
+    private static final int MAX_FREE_SEGMENTS = 2;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final SegmentQuota quota;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    /** Segments from the one that is read on */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    /** Segments that were read completely, but contain records which were not committed */
+    private final Deque<Segment> readSegments = new ArrayDeque<>();
+    private final Deque<Segment> freeSegments = new ArrayDeque<>();
+    /** Records that were read, in the order they were read */
+    private final Deque<Record> uncommitted = new ArrayDeque<>();
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpoint;
+    private final CRC32 crc = new CRC32();
+
+    private Segment writeSegment;
+    private int writePosition;
+    private Segment readSegment;
+    private int readPosition;
+    private long nextSequence;
+    private int nextFileIndex;
+    private int numRecords;
+    private boolean closed;
+
+    /**
+     * @param directory where the segments are stored
+     * @param segmentSize size of new segments in bytes
+     * @param quota limits the size of the segments
+     */
+    public SegmentLog(Path directory, int segmentSize, SegmentQuota quota) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 1024 bytes");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.quota = quota;
+        Files.createDirectories(directory);
+
+        final Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        final boolean hasCheckpoint = Files.exists(checkpointFile);
+        checkpointChannel = FileChannel.open(checkpointFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, 12);
+        recover(hasCheckpoint ? checkpoint.getLong(0) : Long.MIN_VALUE, checkpoint.getInt(8));
+    }
+
+    /**
+     * @return the size of the largest record that fits in a segment
+     */
+    public int getMaxRecordSize() {
+        return segmentSize - Segment.HEADER_SIZE - RECORD_HEADER_SIZE - 4;
+    }
+
+    /**
+     * Appends the record to the log.
+     *
+     * @return false if a new segment is needed and the quota has been reached
+     * @throws IllegalArgumentException if the record is empty or larger than {@link #getMaxRecordSize()}
+     * @throws IOException if the log is closed or a new segment could not be created
+     */
+    public boolean append(byte[] data) throws IOException {
+        if (data.length == 0 || data.length > getMaxRecordSize()) {
+            throw new IllegalArgumentException("Record of " + data.length + " bytes does not fit in a segment of " + segmentSize + " bytes");
+        }
+        final int recordLength = RECORD_HEADER_SIZE + data.length;
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("The log in " + directory + " is closed");
+            }
+            if (writeSegment == null || writePosition + recordLength + 4 > writeSegment.getSize()) {
+                if (!roll()) {
+                    return false;
+                }
+            }
+            final ByteBuffer buffer = writeSegment.getBuffer();
+            final ByteBuffer body = buffer.duplicate();
+            body.position(writePosition + RECORD_HEADER_SIZE);
+            body.put(data);
+            body.putInt(0);
+
+            crc.reset();
+            crc.update(data, 0, data.length);
+            buffer.putInt(writePosition + 4, (int) crc.getValue());
+            // Publish the record by writing its length last
+            buffer.putInt(writePosition, data.length);
+
+            writePosition += recordLength;
+            numRecords++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the oldest record that was not read yet, waiting up to the given time for one to
+     * become available. The record is kept in the log until it is committed.
+     *
+     * @return the record, or {@code null} if none became available
+     */
+    public Record poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (numRecords == 0 || closed) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+
+            ByteBuffer buffer = readSegment.getBuffer();
+            int length = buffer.getInt(readPosition);
+            while (length == END_OF_SEGMENT) {
+                // Recycled once all of its records are committed
+                readSegments.addLast(segments.pollFirst());
+                readSegment = segments.peekFirst();
+                readPosition = Segment.HEADER_SIZE;
+                buffer = readSegment.getBuffer();
+                length = buffer.getInt(readPosition);
+            }
+
+            final byte[] data = new byte[length];
+            final ByteBuffer body = buffer.duplicate();
+            body.position(readPosition + RECORD_HEADER_SIZE);
+            body.get(data);
+
+            final Record record = new Record(readSegment.getSequence(), readPosition, data);
+            uncommitted.addLast(record);
+            readPosition += RECORD_HEADER_SIZE + length;
+            numRecords--;
+            return record;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the record from the log, once it was handled.
+     *
+     * The checkpoint only moves past records which were committed, so records that were read
+     * afterwards are read again after a restart until the older ones are committed as well.
+     */
+    public void commit(Record record) {
+        lock.lock();
+        try {
+            if (closed || record.committed) {
+                return;
+            }
+            record.committed = true;
+            while (!uncommitted.isEmpty() && uncommitted.peekFirst().committed) {
+                uncommitted.pollFirst();
+            }
+            updateCheckpoint();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of records which were not read yet
+     */
+    public int getNumRecords() {
+        lock.lock();
+        try {
+            return numRecords;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the segments. Records which were not committed are read again once the log is opened again.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signalAll();
+            for (Segment segment : readSegments) {
+                closeQuietly(segment, true);
+            }
+            for (Segment segment : segments) {
+                closeQuietly(segment, true);
+            }
+            for (Segment segment : freeSegments) {
+                closeQuietly(segment, false);
+            }
+            readSegments.clear();
+            segments.clear();
+            freeSegments.clear();
+            checkpoint.force();
+            checkpointChannel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the checkpoint of {}.", directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Continues the log in a new segment, reusing a free segment if there is one.
+     *
+     * @return false if the quota has been reached
+     */
+    private boolean roll() throws IOException {
+        Segment segment = freeSegments.pollFirst();
+        while (segment != null && segment.getSize() < segmentSize) {
+            // The segment size was increased since the segment was created
+            delete(segment);
+            segment = freeSegments.pollFirst();
+        }
+        if (segment == null) {
+            if (!quota.reserve(segmentSize)) {
+                return false;
+            }
+            final Path file = directory.resolve(SEGMENT_PREFIX + nextFileIndex++ + SEGMENT_SUFFIX);
+            try {
+                segment = Segment.create(file, segmentSize);
+            } catch (IOException e) {
+                quota.release(segmentSize);
+                throw e;
+            }
+        }
+        segment.reset(nextSequence++);
+
+        if (writeSegment != null) {
+            // Seal the current segment, there is always room for the marker
+            writeSegment.getBuffer().putInt(writePosition, END_OF_SEGMENT);
+        }
+        segments.addLast(segment);
+        writeSegment = segment;
+        writePosition = Segment.HEADER_SIZE;
+        if (readSegment == null) {
+            readSegment = segment;
+            readPosition = Segment.HEADER_SIZE;
+            updateCheckpoint();
+        }
+        return true;
+    }
+
+    private void recycle(Segment segment) {
+        if (freeSegments.size() < MAX_FREE_SEGMENTS) {
+            freeSegments.addLast(segment);
+        } else {
+            delete(segment);
+        }
+    }
+
+    private void delete(Segment segment) {
+        try {
+            segment.delete();
+        } catch (IOException e) {
+            LOG.warn("Failed to delete segment {}.", segment.getFile(), e);
+        }
+        quota.release(segment.getSize());
+    }
+
+    /**
+     * Moves the checkpoint to the oldest record which was not committed, or to the reader
+     * if all records were committed, and recycles the segments before it.
+     */
+    private void updateCheckpoint() {
+        final Record oldest = uncommitted.peekFirst();
+        final long sequence = oldest != null ? oldest.sequence : readSegment.getSequence();
+        final int position = oldest != null ? oldest.position : readPosition;
+        checkpoint.putInt(8, position);
+        checkpoint.putLong(0, sequence);
+
+        while (!readSegments.isEmpty() && readSegments.peekFirst().getSequence() < sequence) {
+            recycle(readSegments.pollFirst());
+        }
+    }
+
+    /**
+     * Restores the state of the log from the segments on disk.
+     *
+     * Records are scanned from the checkpoint on, and the log ends at the first record
+     * which is incomplete or doesn't match its checksum.
+     */
+    private void recover(long checkpointSequence, int checkpointPosition) throws IOException {
+        final List<Segment> existing = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                final String name = file.getFileName().toString();
+                try {
+                    final int index = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    nextFileIndex = Math.max(nextFileIndex, index + 1);
+                    existing.add(Segment.open(file));
+                } catch (NumberFormatException | IOException e) {
+                    LOG.warn("Ignoring invalid segment {}.", file, e);
+                }
+            }
+        }
+        existing.sort(Comparator.comparingLong(Segment::getSequence));
+        // Never reuse sequence numbers which are older than the checkpoint
+        nextSequence = Math.max(0, checkpointSequence + 1);
+
+        final List<Segment> unused = new ArrayList<>();
+        for (Segment segment : existing) {
+            quota.reserveRecovered(segment.getSize());
+            if (!segment.isValid() || segment.getSequence() < checkpointSequence) {
+                unused.add(segment);
+            } else {
+                segments.addLast(segment);
+            }
+            if (segment.isValid()) {
+                nextSequence = Math.max(nextSequence, segment.getSequence() + 1);
+            }
+        }
+
+        final Iterator<Segment> it = segments.iterator();
+        boolean endOfLog = false;
+        while (it.hasNext()) {
+            final Segment segment = it.next();
+            if (endOfLog) {
+                // Segments after a torn write can't be trusted
+                it.remove();
+                unused.add(segment);
+                continue;
+            }
+            int position = Segment.HEADER_SIZE;
+            if (segment.getSequence() == checkpointSequence) {
+                if (checkpointPosition >= Segment.HEADER_SIZE && checkpointPosition <= segment.getSize() - 4) {
+                    position = checkpointPosition;
+                } else {
+                    LOG.warn("Invalid checkpoint position {} in segment {}, reading from the start.", checkpointPosition, segment.getFile());
+                }
+            }
+            if (readSegment == null) {
+                readSegment = segment;
+                readPosition = position;
+            }
+            while (true) {
+                final int length = position < segment.getSize() - 4 ? segment.getBuffer().getInt(position) : 0;
+                if (length == END_OF_SEGMENT) {
+                    writeSegment = null;
+                    break;
+                }
+                if (!isValidRecord(segment, position, length)) {
+                    segment.getBuffer().putInt(position, 0);
+                    writeSegment = segment;
+                    writePosition = position;
+                    endOfLog = true;
+                    break;
+                }
+                position += RECORD_HEADER_SIZE + length;
+                numRecords++;
+            }
+        }
+
+        for (Segment segment : unused) {
+            recycle(segment);
+        }
+        if (readSegment != null) {
+            updateCheckpoint();
+        }
+        if (numRecords > 0) {
+            LOG.info("Recovered {} records in {} segments from {}.", numRecords, segments.size(), directory);
+        }
+    }
+
+    private boolean isValidRecord(Segment segment, int position, int length) {
+        if (length <= 0 || position + RECORD_HEADER_SIZE + length + 4 > segment.getSize()) {
+            return false;
+        }
+        final ByteBuffer body = segment.getBuffer().duplicate();
+        body.position(position + RECORD_HEADER_SIZE).limit(position + RECORD_HEADER_SIZE + length);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue() == segment.getBuffer().getInt(position + 4);
+    }
+
+    private static void closeQuietly(Segment segment, boolean force) {
+        try {
+            segment.close(force);
+        } catch (IOException e) {
+            LOG.warn("Failed to close segment {}.", segment.getFile(), e);
+        }
+    }
+
+    /**
+     * A record that was read from the log.
+     */
+    public static final class Record {
+        private final long sequence;
+        private final int position;
+        private final byte[] data;
+        private boolean committed;
+
+        private Record(long sequence, int position, byte[] data) {
+            this.sequence = sequence;
+            this.position = position;
+            this.data = data;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.journal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the total size of the segment files of one or more {@link SegmentLog}s.
+ */
+public final class SegmentQuota {
+
+    private final long maxSize;
+
+    private final AtomicLong size = new AtomicLong(0);
+
+    /**
+     * @param maxSize maximum size of all segments in bytes
+     */
+    public SegmentQuota(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the size of the segment files in bytes
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Reserves space for a new segment.
+     *
+     * @return false if the segment would exceed the maximum size
+     */
+    boolean reserve(int bytes) {
+        while (true) {
+            final long current = size.get();
+            if (current + bytes > maxSize) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Accounts for a segment that was found on disk, regardless of the maximum size.
+     */
+    void reserveRecovered(int bytes) {
+        size.addAndGet(bytes);
+    }
+
+    void release(int bytes) {
+        size.addAndGet(-bytes);
+    }
+}
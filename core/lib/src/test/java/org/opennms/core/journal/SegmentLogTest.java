@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.core.journal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentLogTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void canAppendAndReadRecordsInOrder() throws Exception {
+        final SegmentQuota quota = new SegmentQuota(8 * SEGMENT_SIZE);
+        final SegmentLog log = new SegmentLog(tempFolder.getRoot().toPath(), SEGMENT_SIZE, quota);
+        assertNull(log.poll(0, TimeUnit.MILLISECONDS));
+
+        // Enough records to span multiple segments
+        for (int i = 0; i < 100; i++) {
+            assertTrue(log.append(record(i)));
+        }
+        assertEquals(100, log.getNumRecords());
+
+        for (int i = 0; i < 100; i++) {
+            final SegmentLog.Record record = log.poll(0, TimeUnit.MILLISECONDS);
+            assertArrayEquals(record(i), record.getData());
+            log.commit(record);
+        }
+        assertEquals(0, log.getNumRecords());
+        assertNull(log.poll(0, TimeUnit.MILLISECONDS));
+
+        // The committed segments are recycled, besides the one being written to
+        assertTrue(quota.getSize() <= 3 * SEGMENT_SIZE);
+        log.close();
+    }
+
+    @Test
+    public void appendFailsWhenQuotaIsReached() throws Exception {
+        final SegmentQuota quota = new SegmentQuota(2 * SEGMENT_SIZE);
+        final SegmentLog log = new SegmentLog(tempFolder.getRoot().toPath(), SEGMENT_SIZE, quota);
+        int numRecords = 0;
+        while (log.append(record(numRecords))) {
+            numRecords++;
+        }
+        assertTrue(numRecords > 0);
+        assertEquals(2 * SEGMENT_SIZE, quota.getSize());
+
+        // Reading the records does not make room until they are committed
+        final List<SegmentLog.Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            records.add(log.poll(0, TimeUnit.MILLISECONDS));
+        }
+        assertFalse(log.append(record(numRecords)));
+        records.forEach(log::commit);
+        assertTrue(log.append(record(numRecords)));
+        log.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRecordsLargerThanSegment() throws Exception {
+        final SegmentLog log = new SegmentLog(tempFolder.getRoot().toPath(), SEGMENT_SIZE, new SegmentQuota(8 * SEGMENT_SIZE));
+        try {
+            log.append(new byte[log.getMaxRecordSize() + 1]);
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void canRecoverRecordsAfterRestart() throws Exception {
+        final Path directory = tempFolder.getRoot().toPath();
+        SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, new SegmentQuota(8 * SEGMENT_SIZE));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(log.append(record(i)));
+        }
+        for (int i = 0; i < 40; i++) {
+            log.commit(log.poll(0, TimeUnit.MILLISECONDS));
+        }
+        log.close();
+
+        // Only the records that were not committed are replayed
+        log = new SegmentLog(directory, SEGMENT_SIZE, new SegmentQuota(8 * SEGMENT_SIZE));
+        assertEquals(60, log.getNumRecords());
+
+        // New records are appended after the recovered ones
+        assertTrue(log.append(record(100)));
+        for (int i = 40; i <= 100; i++) {
+            final SegmentLog.Record record = log.poll(0, TimeUnit.MILLISECONDS);
+            assertArrayEquals(record(i), record.getData());
+            log.commit(record);
+        }
+        assertEquals(0, log.getNumRecords());
+        log.close();
+    }
+
+    @Test
+    public void canRecoverRecordsWhichWereNotCommitted() throws Exception {
+        final Path directory = tempFolder.getRoot().toPath();
+        SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, new SegmentQuota(8 * SEGMENT_SIZE));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(log.append(record(i)));
+        }
+        final List<SegmentLog.Record> records = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            records.add(log.poll(0, TimeUnit.MILLISECONDS));
+        }
+        // Commit all records read but the 30th, in reverse order
+        for (int i = 59; i >= 0; i--) {
+            if (i != 30) {
+                log.commit(records.get(i));
+            }
+        }
+        assertEquals(40, log.getNumRecords());
+        log.close();
+
+        // The checkpoint did not move past the record which was not committed
+        log = new SegmentLog(directory, SEGMENT_SIZE, new SegmentQuota(8 * SEGMENT_SIZE));
+        assertEquals(70, log.getNumRecords());
+        for (int i = 30; i < 100; i++) {
+            assertArrayEquals(record(i), log.poll(0, TimeUnit.MILLISECONDS).getData());
+        }
+        log.close();
+    }
+
+    @Test
+    public void recoveryStopsAtCorruptedRecord() throws Exception {
+        final Path directory = tempFolder.getRoot().toPath();
+        SegmentLog log = new SegmentLog(directory, SEGMENT_SIZE, new SegmentQuota(8 * SEGMENT_SIZE));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(log.append(record(i)));
+        }
+        log.close();
+
+        // Flip a byte in the body of the last record
+        final Path segment = directory.resolve(SegmentLog.SEGMENT_PREFIX + 0 + SegmentLog.SEGMENT_SUFFIX);
+        int offset = Segment.HEADER_SIZE;
+        for (int i = 0; i < 2; i++) {
+            offset += SegmentLog.RECORD_HEADER_SIZE + record(i).length;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(offset + SegmentLog.RECORD_HEADER_SIZE);
+            final int value = file.read();
+            file.seek(offset + SegmentLog.RECORD_HEADER_SIZE);
+            file.write(~value);
+        }
+
+        log = new SegmentLog(directory, SEGMENT_SIZE, new SegmentQuota(8 * SEGMENT_SIZE));
+        assertEquals(2, log.getNumRecords());
+
+        // The corrupted record is overwritten by new records
+        assertTrue(log.append(record(3)));
+        log.close();
+        log = new SegmentLog(directory, SEGMENT_SIZE, new SegmentQuota(8 * SEGMENT_SIZE));
+        assertEquals(3, log.getNumRecords());
+        for (int i : new int[] {0, 1, 3}) {
+            assertArrayEquals(record(i), log.poll(0, TimeUnit.MILLISECONDS).getData());
+        }
+        log.close();
+    }
+
+    @Test
+    public void pollWaitsForRecords() throws Exception {
+        final SegmentLog log = new SegmentLog(tempFolder.getRoot().toPath(), SEGMENT_SIZE, new SegmentQuota(4 * SEGMENT_SIZE));
+        final Thread appender = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                log.append(record(1));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        appender.start();
+        assertArrayEquals(record(1), log.poll(10, TimeUnit.SECONDS).getData());
+        appender.join();
+        log.close();
+    }
+
+    private static byte[] record(int i) {
+        return ("record-" + i + "-with-some-padding-to-fill-the-segments").getBytes(StandardCharsets.UTF_8);
+    }
+}
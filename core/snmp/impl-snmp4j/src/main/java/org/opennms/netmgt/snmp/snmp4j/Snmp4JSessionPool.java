@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.Snmp;
+import org.snmp4j.security.USM;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * A pool of long-lived SNMP sessions which are shared by all of the requests,
+ * instead of creating a session, and therefore a socket and a listener thread,
+ * for every request.
+ *
+ * Each {@link Snmp} session multiplexes the requests that are in flight by request-id.
+ * The SNMPv1 and SNMPv2c agents share a fixed number of sessions. The SNMPv3 agents
+ * share a fixed number of sessions per set of credentials, which use a common USM
+ * holding the user. A given agent is always sent to the same session, so that its
+ * engine ID and engine time are only discovered once and then kept by the session.
+ *
+ * The total number of sessions is capped. When the sessions for a new set of
+ * credentials would exceed the cap, the sessions of the credentials which were
+ * not used for the longest time are closed, provided they were idle for at least
+ * the idle timeout. If there are none, no session is returned, and the caller
+ * uses a session of its own for the request.
+ *
+ * The sessions returned by the pool must not be closed by the callers, and the
+ * requests sent with a {@link org.snmp4j.event.ResponseListener} must be canceled
+ * once the response was received.
+ */
+public class Snmp4JSessionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Snmp4JSessionPool.class);
+
+    private static final Object V1_V2C = "v1/v2c";
+
+    /**
+     * Number of sets of sessions, including the one of the SNMPv1 and SNMPv2c agents, kept by default.
+     */
+    public static final int DEFAULT_MAX_KEYS = 16;
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final int m_sessionsPerKey;
+
+    private final int m_maxSessions;
+
+    private final long m_idleTimeoutMs;
+
+    private final Map<Object, Sessions> m_sessions = new ConcurrentHashMap<>();
+
+    private volatile boolean m_closed = false;
+
+    /**
+     * @param sessionsPerKey number of sessions, i.e. UDP sockets, shared by the SNMPv1
+     * and SNMPv2c agents, and by the SNMPv3 agents with the same credentials.
+     */
+    public Snmp4JSessionPool(int sessionsPerKey) {
+        this(sessionsPerKey, sessionsPerKey * DEFAULT_MAX_KEYS, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param sessionsPerKey number of sessions, i.e. UDP sockets, shared by the SNMPv1
+     * and SNMPv2c agents, and by the SNMPv3 agents with the same credentials.
+     * @param maxSessions maximum number of sessions in the pool
+     * @param idleTimeoutMs time after which the unused sessions of a set of SNMPv3
+     * credentials may be closed to make room for others
+     */
+    public Snmp4JSessionPool(int sessionsPerKey, int maxSessions, long idleTimeoutMs) {
+        if (sessionsPerKey < 1) {
+            throw new IllegalArgumentException("sessionsPerKey must be positive");
+        }
+        if (maxSessions < sessionsPerKey) {
+            throw new IllegalArgumentException("maxSessions must be at least sessionsPerKey");
+        }
+        m_sessionsPerKey = sessionsPerKey;
+        m_maxSessions = maxSessions;
+        m_idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Returns a session which is listening for responses and which can be used to
+     * send requests to the given agent, or null if the pool is full.
+     */
+    public Snmp getSession(Snmp4JAgentConfig agentConfig) throws IOException {
+        if (m_closed) {
+            throw new IOException("The SNMP session pool is closed");
+        }
+        final Object key = getKey(agentConfig);
+        Sessions sessions = m_sessions.get(key);
+        if (sessions == null) {
+            synchronized (this) {
+                if (m_closed) {
+                    throw new IOException("The SNMP session pool is closed");
+                }
+                sessions = m_sessions.get(key);
+                if (sessions == null) {
+                    if (!makeRoom()) {
+                        LOG.debug("The SNMP session pool is full, not sharing sessions for {}", agentConfig.getSecurityName());
+                        return null;
+                    }
+                    sessions = new Sessions(agentConfig.getSecurityName(), createSessions(agentConfig));
+                    m_sessions.put(key, sessions);
+                }
+            }
+        }
+        sessions.lastUsed = System.currentTimeMillis();
+        final int hash = Objects.hash(agentConfig.getInetAddress(), agentConfig.getPort());
+        return sessions.sessions[(hash & Integer.MAX_VALUE) % sessions.sessions.length];
+    }
+
+    /**
+     * Returns the number of sessions in the pool.
+     */
+    public int size() {
+        return m_sessions.values().stream().mapToInt(sessions -> sessions.sessions.length).sum();
+    }
+
+    public synchronized void close() {
+        m_closed = true;
+        for (Sessions sessions : m_sessions.values()) {
+            closeQuietly(Arrays.asList(sessions.sessions));
+        }
+        m_sessions.clear();
+    }
+
+    /**
+     * Closes the sessions of the SNMPv3 credentials that were idle for the longest time,
+     * until there is room for the sessions of another key.
+     *
+     * @return false if there are not enough idle sessions
+     */
+    private boolean makeRoom() {
+        final long idleSince = System.currentTimeMillis() - m_idleTimeoutMs;
+        final List<Map.Entry<Object, Sessions>> idle = new ArrayList<>();
+        for (Map.Entry<Object, Sessions> entry : m_sessions.entrySet()) {
+            if (entry.getKey() != V1_V2C && entry.getValue().lastUsed <= idleSince) {
+                idle.add(entry);
+            }
+        }
+        idle.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+
+        int size = size();
+        for (Map.Entry<Object, Sessions> entry : idle) {
+            if (size + m_sessionsPerKey <= m_maxSessions) {
+                break;
+            }
+            LOG.debug("Closing the idle SNMP sessions for {}", entry.getValue().securityName);
+            m_sessions.remove(entry.getKey());
+            closeQuietly(Arrays.asList(entry.getValue().sessions));
+            size -= entry.getValue().sessions.length;
+        }
+        return size + m_sessionsPerKey <= m_maxSessions;
+    }
+
+    private Snmp[] createSessions(Snmp4JAgentConfig agentConfig) throws IOException {
+        LOG.debug("Creating {} shared SNMP sessions for {}", m_sessionsPerKey, agentConfig.isSnmpV3() ? agentConfig.getSecurityName() : V1_V2C);
+        final USM usm = agentConfig.isSnmpV3() ? agentConfig.createUsm() : null;
+        final List<Snmp> sessions = new ArrayList<>(m_sessionsPerKey);
+        try {
+            for (int i = 0; i < m_sessionsPerKey; i++) {
+                final Snmp session = agentConfig.createSnmpSession(new DefaultUdpTransportMapping(), usm);
+                sessions.add(session);
+                Snmp4JStrategy.trackSession(session);
+                session.listen();
+            }
+        } catch (final IOException e) {
+            closeQuietly(sessions);
+            throw e;
+        }
+        return sessions.toArray(new Snmp[sessions.size()]);
+    }
+
+    private static Object getKey(Snmp4JAgentConfig agentConfig) {
+        if (!agentConfig.isSnmpV3()) {
+            return V1_V2C;
+        }
+        return Arrays.asList(agentConfig.getSecurityName(),
+                agentConfig.getAuthProtocol(),
+                agentConfig.getAuthPassPhrase(),
+                agentConfig.getPrivProtocol(),
+                agentConfig.getPrivPassPhrase());
+    }
+
+    private static final class Sessions {
+        private final OctetString securityName;
+
+        private final Snmp[] sessions;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Sessions(OctetString securityName, Snmp[] sessions) {
+            this.securityName = securityName;
+            this.sessions = sessions;
+        }
+    }
+
+    private static void closeQuietly(List<Snmp> sessions) {
+        for (Snmp session : sessions) {
+            try {
+                session.close();
+            } catch (IOException e) {
+                LOG.error("error closing SNMP connection", e);
+            } finally {
+                Snmp4JStrategy.reapSession(session);
+            }
+        }
+    }
+}
@@ -116,6 +116,12 @@ public class Snmp4JStrategy implements SnmpStrategy {
     private static long s_trackSummaryDelay = Long.getLong("org.opennms.core.snmp.trackSummaryDelay", 60);
     private static long s_trackSummaryLimit = Long.getLong("org.opennms.core.snmp.trackSummaryLimit", 10);
 
+    /**
+     * Sessions shared by the requests and the walkers, or null if every request uses its own session.
+     */
+    private static volatile Snmp4JSessionPool s_sessionPool = createSessionPool(Integer.getInteger("org.opennms.snmp.snmp4j.sharedSessions", 0),
+            Integer.getInteger("org.opennms.snmp.snmp4j.maxSharedSessions", 0));
+
     /**
      * Initialize for v3 communications
      */
@@ -303,11 +309,20 @@ public class Snmp4JStrategy implements SnmpStrategy {
     }
 
     private void send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse, CompletableFuture<SnmpValue[]> future) {
-        Snmp session;
+        final Snmp4JSessionPool sessionPool = s_sessionPool;
+        final boolean shared;
+        Snmp session = null;
 
         try {
-            session = agentConfig.createSnmpSession();
-            Snmp4JStrategy.trackSession(session);
+            if (sessionPool != null) {
+                // The request uses its own session if the pool is full
+                session = sessionPool.getSession(agentConfig);
+            }
+            shared = session != null;
+            if (!shared) {
+                session = agentConfig.createSnmpSession();
+                Snmp4JStrategy.trackSession(session);
+            }
         } catch (final Exception e) {
             LOG.error("send: Could not create SNMP session for agent {}", agentConfig, e);
             future.completeExceptionally(new SnmpException("Could not create SNMP session for agent", e));
@@ -316,7 +331,9 @@ public class Snmp4JStrategy implements SnmpStrategy {
 
         if (expectResponse) {
             try {
-                session.listen();
+                if (!shared) {
+                    session.listen();
+                }
             } catch (final Exception e) {
                 closeQuietly(session);
                 LOG.error("send: error setting up listener for SNMP responses", e);
@@ -329,27 +346,35 @@ public class Snmp4JStrategy implements SnmpStrategy {
                 mySession.send(pdu, agentConfig.getTarget(), null, new ResponseListener() {
                     @Override
                     public void onResponse(final ResponseEvent responseEvent) {
+                        if (shared) {
+                            // The shared session keeps the request around until it is canceled
+                            mySession.cancel(responseEvent.getRequest(), this);
+                        }
                         try {
                             future.complete(processResponse(agentConfig, responseEvent));
                         } catch (final Exception e) {
                             future.completeExceptionally(new SnmpException(e));
                         } finally {
-                            // Close the tracker using a separate thread
-                            // This allows the SnmpWalker to clean up properly instead
-                            // of interrupting execution as it's executing the callback
-                            REAPER_EXECUTOR.submit(new Runnable() {
-                                @Override
-                                public void run() {
-                                    closeQuietly(mySession);
-                                }
-                            });
+                            if (!shared) {
+                                // Close the tracker using a separate thread
+                                // This allows the SnmpWalker to clean up properly instead
+                                // of interrupting execution as it's executing the callback
+                                REAPER_EXECUTOR.submit(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        closeQuietly(mySession);
+                                    }
+                                });
+                            }
                         }
                     }
                 });
             } catch (final Exception e) {
                 // The ResponseListener will not be called since an exception occurred in the send,
                 // so we make sure to close the session here
-                closeQuietly(session);
+                if (!shared) {
+                    closeQuietly(session);
+                }
                 LOG.error("send: error during SNMP operation", e);
                 future.completeExceptionally(e);
             }
@@ -361,12 +386,50 @@ public class Snmp4JStrategy implements SnmpStrategy {
                 LOG.error("send: error during SNMP operation", e);
                 future.completeExceptionally(new SnmpException(e));
             } finally {
-                closeQuietly(session);
-                Snmp4JStrategy.reapSession(session);
+                if (!shared) {
+                    closeQuietly(session);
+                    Snmp4JStrategy.reapSession(session);
+                }
             }
         }
     }
 
+    private static Snmp4JSessionPool createSessionPool(int sessions, int maxSessions) {
+        if (sessions <= 0) {
+            return null;
+        }
+        if (maxSessions <= 0) {
+            maxSessions = sessions * Snmp4JSessionPool.DEFAULT_MAX_KEYS;
+        }
+        LOG.info("Sharing {} SNMP sessions between the requests, and up to {} SNMP sessions in total", sessions, maxSessions);
+        return new Snmp4JSessionPool(sessions, Math.max(sessions, maxSessions), Snmp4JSessionPool.DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * Returns the sessions shared by the requests, or null if every request uses its own session.
+     *
+     * The pool is enabled by setting org.opennms.snmp.snmp4j.sharedSessions to the number of
+     * sessions, i.e. UDP sockets, which are shared by the agents. The total number of sessions,
+     * including the ones of every set of SNMPv3 credentials, is limited by
+     * org.opennms.snmp.snmp4j.maxSharedSessions.
+     */
+    public static Snmp4JSessionPool getSessionPool() {
+        return s_sessionPool;
+    }
+
+    /**
+     * Replaces the sessions shared by the requests, closing the previous ones.
+     *
+     * @param sessionPool the new sessions, or null to use a new session for every request
+     */
+    public static void setSessionPool(Snmp4JSessionPool sessionPool) {
+        final Snmp4JSessionPool previous = s_sessionPool;
+        s_sessionPool = sessionPool;
+        if (previous != null && previous != sessionPool) {
+            previous.close();
+        }
+    }
+
     protected PDU buildPdu(Snmp4JAgentConfig agentConfig, int pduType, SnmpObjId[] oids, SnmpValue[] values) {
         PDU pdu = agentConfig.createPdu(pduType);
         
@@ -163,7 +163,10 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
         public void onResponse(ResponseEvent responseEvent) {
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            final Snmp session = m_session;
+            if (session != null) {
+                session.cancel(responseEvent.getRequest(), this);
+            }
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
@@ -189,6 +192,11 @@ public class Snmp4JWalker extends SnmpWalker {
     }
     
     private Snmp m_session;
+    /**
+     * True if the session is shared with other walkers, and must not be closed.
+     */
+    private boolean m_sharedSession = false;
+    private PDU m_request;
     private final Target m_tgt;
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
@@ -222,9 +230,17 @@ public class Snmp4JWalker extends SnmpWalker {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
         try {
             if (m_session == null) {
-                m_session = m_agentConfig.createSnmpSession();
-                Snmp4JStrategy.trackSession(m_session);
-                m_session.listen();
+                final Snmp4JSessionPool sessionPool = Snmp4JStrategy.getSessionPool();
+                if (sessionPool != null) {
+                    // The walker uses its own session if the pool is full
+                    m_session = sessionPool.getSession(m_agentConfig);
+                    m_sharedSession = m_session != null;
+                }
+                if (m_session == null) {
+                    m_session = m_agentConfig.createSnmpSession();
+                    Snmp4JStrategy.trackSession(m_session);
+                    m_session.listen();
+                }
             }
         } catch (final IOException e) {
             close();
@@ -233,7 +249,8 @@ public class Snmp4JWalker extends SnmpWalker {
 
         LOG.debug("Sending tracker pdu of size {}", snmp4JPduBuilder.getPdu().size());
         try {
-            m_session.send(snmp4JPduBuilder.getPdu(), m_tgt, null, m_listener);
+            m_request = snmp4JPduBuilder.getPdu();
+            m_session.send(m_request, m_tgt, null, m_listener);
         } catch (final IOException e) {
             LOG.debug("Failed to send pdu of size {}", snmp4JPduBuilder.getPdu().size(), e);
             close();
@@ -247,7 +264,13 @@ public class Snmp4JWalker extends SnmpWalker {
 
     @Override
     public void close() {
-        if (m_session != null) {
+        if (m_session != null && m_sharedSession) {
+            // Only stop waiting for the outstanding response, the session is used by others
+            if (m_request != null) {
+                m_session.cancel(m_request, m_listener);
+            }
+            m_session = null;
+        } else if (m_session != null) {
             try {
                 m_session.close();
             } catch (IOException e) {
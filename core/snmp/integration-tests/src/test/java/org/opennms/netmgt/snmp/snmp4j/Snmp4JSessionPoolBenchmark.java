@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.mock.snmp.MockSnmpAgent;
+import org.opennms.netmgt.snmp.ColumnTracker;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpWalker;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Compares gets and walks against the {@link MockSnmpAgent} using a new session
+ * for every request with using shared sessions.
+ *
+ * This is not run as part of the build, use {@link #main(String[])} to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Threads(8)
+@Fork(1)
+public class Snmp4JSessionPoolBenchmark {
+
+    /**
+     * Number of shared sessions, 0 to use a new session for every request.
+     */
+    @Param({"0", "4"})
+    public int sharedSessions;
+
+    private MockSnmpAgent m_agent;
+
+    private final Snmp4JStrategy m_strategy = new Snmp4JStrategy();
+
+    private SnmpAgentConfig m_agentConfig;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        m_agent = MockSnmpAgent.createAgentAndRun(new ClassPathResource("loadSnmpDataTest.properties").getURL(),
+                InetAddressUtils.ONE_TWENTY_SEVEN.getHostAddress() + "/0");
+        m_agentConfig = new SnmpAgentConfig(m_agent.getInetAddress());
+        m_agentConfig.setPort(m_agent.getPort());
+        m_agentConfig.setVersion(SnmpAgentConfig.VERSION2C);
+        Snmp4JStrategy.setSessionPool(sharedSessions > 0 ? new Snmp4JSessionPool(sharedSessions) : null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        Snmp4JStrategy.setSessionPool(null);
+        m_agent.shutDownAndWait();
+    }
+
+    @Benchmark
+    public SnmpValue get() {
+        return m_strategy.get(m_agentConfig, SnmpObjId.get(".1.3.5.1.1.3.0"));
+    }
+
+    @Benchmark
+    public boolean walk() throws InterruptedException {
+        try (final SnmpWalker walker = m_strategy.createWalker(m_agentConfig, "benchmark", new ColumnTracker(SnmpObjId.get(".1.3.5.1.1")))) {
+            walker.start();
+            walker.waitFor();
+            return walker.failed();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(Snmp4JSessionPoolBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
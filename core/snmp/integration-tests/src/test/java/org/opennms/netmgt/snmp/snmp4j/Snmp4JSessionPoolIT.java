@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.snmp.ColumnTracker;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpWalker;
+import org.snmp4j.Snmp;
+
+/**
+ * Tests the SNMP4J strategy with sessions that are shared between the requests.
+ */
+public class Snmp4JSessionPoolIT extends MockSnmpAgentITCase {
+
+    private final Snmp4JStrategy m_strategy = new Snmp4JStrategy();
+
+    private Snmp4JSessionPool m_sessionPool;
+
+    @Override
+    protected boolean usingMockStrategy() {
+        return false;
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        m_sessionPool = new Snmp4JSessionPool(2);
+        Snmp4JStrategy.setSessionPool(m_sessionPool);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        Snmp4JStrategy.setSessionPool(null);
+        super.tearDown();
+    }
+
+    @Test
+    public void testGetWithSharedSessions() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            final SnmpValue value = m_strategy.get(getAgentConfig(), SnmpObjId.get(".1.3.5.1.1.3.0"));
+            assertNotNull("value should not be null", value);
+            assertEquals(42, value.toInt());
+        }
+
+        // The sessions are created once, and an agent always uses the same one
+        assertEquals(2, m_sessionPool.size());
+        final Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(getAgentConfig());
+        assertSame(m_sessionPool.getSession(agentConfig), m_sessionPool.getSession(agentConfig));
+    }
+
+    @Test
+    public void testConcurrentWalksWithSharedSessions() throws Exception {
+        final List<SnmpWalker> walkers = new ArrayList<>();
+        final List<AtomicInteger> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final AtomicInteger count = new AtomicInteger();
+            final ColumnTracker tracker = new ColumnTracker(SnmpObjId.get(".1.3.5.1.1")) {
+                @Override
+                protected void storeResult(SnmpResult res) {
+                    count.incrementAndGet();
+                }
+            };
+            final SnmpAgentConfig config = getAgentConfig();
+            config.setVersion(SnmpAgentConfig.VERSION2C);
+            final SnmpWalker walker = m_strategy.createWalker(config, "test" + i, tracker);
+            walker.start();
+            walkers.add(walker);
+            results.add(count);
+        }
+
+        for (int i = 0; i < walkers.size(); i++) {
+            try (final SnmpWalker walker = walkers.get(i)) {
+                walker.waitFor();
+                assertFalse(walker.failed());
+                assertEquals(9, results.get(i).get());
+            }
+        }
+        assertEquals(2, m_sessionPool.size());
+    }
+
+    @Test
+    public void testV3WithSharedSessions() throws Exception {
+        final SnmpAgentConfig md5 = getMd5AgentConfig();
+        final SnmpAgentConfig sha = getShaAgentConfig();
+
+        for (int i = 0; i < 5; i++) {
+            for (SnmpAgentConfig config : new SnmpAgentConfig[] { md5, sha }) {
+                final SnmpValue value = m_strategy.get(config, SnmpObjId.get(".1.3.5.1.1.3.0"));
+                assertNotNull("value should not be null for " + config.getSecurityName(), value);
+                assertEquals(42, value.toInt());
+            }
+        }
+
+        // Each set of credentials uses its own sessions
+        assertEquals(4, m_sessionPool.size());
+    }
+
+    @Test
+    public void testV3SessionsAreCapped() throws Exception {
+        m_sessionPool = new Snmp4JSessionPool(1, 2, Long.MAX_VALUE);
+        Snmp4JStrategy.setSessionPool(m_sessionPool);
+
+        final SnmpAgentConfig md5 = getMd5AgentConfig();
+        final SnmpAgentConfig sha = getShaAgentConfig();
+        for (SnmpAgentConfig config : new SnmpAgentConfig[] { getAgentConfig(), md5, sha }) {
+            final SnmpValue value = m_strategy.get(config, SnmpObjId.get(".1.3.5.1.1.3.0"));
+            assertNotNull("value should not be null for " + config.getSecurityName(), value);
+            assertEquals(42, value.toInt());
+        }
+
+        // The requests for the last set of credentials used their own session
+        assertEquals(2, m_sessionPool.size());
+        assertNull(m_sessionPool.getSession(new Snmp4JAgentConfig(sha)));
+    }
+
+    @Test
+    public void testIdleV3SessionsAreEvicted() throws Exception {
+        m_sessionPool = new Snmp4JSessionPool(1, 2, 0);
+        Snmp4JStrategy.setSessionPool(m_sessionPool);
+
+        final Snmp4JAgentConfig v2c = new Snmp4JAgentConfig(getAgentConfig());
+        final Snmp4JAgentConfig md5 = new Snmp4JAgentConfig(getMd5AgentConfig());
+        final Snmp4JAgentConfig sha = new Snmp4JAgentConfig(getShaAgentConfig());
+        final Snmp v2cSession = m_sessionPool.getSession(v2c);
+        final Snmp md5Session = m_sessionPool.getSession(md5);
+        assertNotNull(md5Session);
+
+        // The sessions of the SNMPv1 and SNMPv2c agents are kept, the ones of the other credentials are replaced
+        final Snmp shaSession = m_sessionPool.getSession(sha);
+        assertNotNull(shaSession);
+        assertEquals(2, m_sessionPool.size());
+        assertSame(v2cSession, m_sessionPool.getSession(v2c));
+        assertSame(shaSession, m_sessionPool.getSession(sha));
+
+        final SnmpValue value = m_strategy.get(getShaAgentConfig(), SnmpObjId.get(".1.3.5.1.1.3.0"));
+        assertNotNull("value should not be null", value);
+        assertEquals(42, value.toInt());
+    }
+
+    private SnmpAgentConfig getMd5AgentConfig() throws Exception {
+        final SnmpAgentConfig md5 = getAgentConfig();
+        md5.setVersion(SnmpAgentConfig.VERSION3);
+        md5.setSecurityLevel(SnmpAgentConfig.AUTH_PRIV);
+        md5.setSecurityName("opennmsUser");
+        md5.setAuthProtocol("MD5");
+        md5.setAuthPassPhrase("0p3nNMSv3");
+        md5.setPrivProtocol("DES");
+        md5.setPrivPassPhrase("0p3nNMSv3");
+        return md5;
+    }
+
+    private SnmpAgentConfig getShaAgentConfig() throws Exception {
+        final SnmpAgentConfig sha = getAgentConfig();
+        sha.setVersion(SnmpAgentConfig.VERSION3);
+        sha.setSecurityLevel(SnmpAgentConfig.AUTH_NOPRIV);
+        sha.setSecurityName("SHA");
+        sha.setAuthProtocol("SHA");
+        sha.setAuthPassPhrase("SHAAuthPassword");
+        return sha;
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.snmp.proxy.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.core.rpc.xml.BinaryRpcCodec;
+import org.opennms.netmgt.snmp.SnmpInstId;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValue;
+import org.opennms.netmgt.snmp.SnmpValueFactory;
+
+/**
+ * Binary encoding of the {@link SnmpMultiResponseDTO}.
+ *
+ * OIDs are written as variable length integers, so that walks of large
+ * tables only need a few bytes for every result. Values are written using
+ * their type and raw bytes, like in the {@link org.opennms.netmgt.snmp.SnmpValueXmlAdapter}.
+ */
+public class SnmpMultiResponseBinaryCodec implements BinaryRpcCodec<SnmpMultiResponseDTO> {
+
+    @Override
+    public void encode(SnmpMultiResponseDTO response, DataOutput out) throws IOException {
+        writeString(out, response.getErrorMessage());
+        writeVarInt(out, response.getResponses().size());
+        for (SnmpResponseDTO snmpResponse : response.getResponses()) {
+            writeString(out, snmpResponse.getCorrelationId());
+            writeVarInt(out, snmpResponse.getResults().size());
+            for (SnmpResult result : snmpResponse.getResults()) {
+                writeIds(out, result.getBase() != null ? result.getBase().getIds() : null);
+                writeIds(out, result.getInstance() != null ? result.getInstance().getIds() : null);
+                writeValue(out, result.getValue());
+            }
+        }
+    }
+
+    @Override
+    public SnmpMultiResponseDTO decode(DataInput in) throws IOException {
+        final SnmpMultiResponseDTO response = new SnmpMultiResponseDTO();
+        response.setErrorMessage(readString(in));
+        final SnmpValueFactory valueFactory = SnmpUtils.getValueFactory();
+        final int numResponses = readVarInt(in);
+        final List<SnmpResponseDTO> responses = new ArrayList<>(numResponses);
+        for (int i = 0; i < numResponses; i++) {
+            final SnmpResponseDTO snmpResponse = new SnmpResponseDTO();
+            snmpResponse.setCorrelationId(readString(in));
+            final int numResults = readVarInt(in);
+            final List<SnmpResult> results = new ArrayList<>(numResults);
+            for (int j = 0; j < numResults; j++) {
+                final int[] base = readIds(in);
+                final int[] instance = readIds(in);
+                results.add(new SnmpResult(base != null ? SnmpObjId.get(base) : null,
+                        instance != null ? new SnmpInstId(instance) : null,
+                        readValue(in, valueFactory)));
+            }
+            snmpResponse.setResults(results);
+            responses.add(snmpResponse);
+        }
+        response.setResponses(responses);
+        return response;
+    }
+
+    private static void writeValue(DataOutput out, SnmpValue value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        writeVarInt(out, value.getType());
+        final byte[] bytes = value.getBytes();
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static SnmpValue readValue(DataInput in, SnmpValueFactory valueFactory) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        final int type = readVarInt(in);
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return valueFactory.getValue(type, bytes);
+    }
+
+    private static void writeIds(DataOutput out, int[] ids) throws IOException {
+        if (ids == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        writeVarInt(out, ids.length);
+        for (int id : ids) {
+            writeVarInt(out, id);
+        }
+    }
+
+    private static int[] readIds(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        final int[] ids = new int[readVarInt(in)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = readVarInt(in);
+        }
+        return ids;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sub-identifiers are unsigned 32-bit values, so they are written as unsigned varints.
+     */
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+}
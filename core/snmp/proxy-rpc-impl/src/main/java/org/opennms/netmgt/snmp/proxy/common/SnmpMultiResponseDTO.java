@@ -87,4 +87,8 @@ public class SnmpMultiResponseDTO implements RpcResponse {
     public String getErrorMessage() {
         return error;
     }
+
+    public void setErrorMessage(String error) {
+        this.error = error;
+    }
 }
@@ -39,7 +39,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 
-import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.opennms.core.rpc.xml.AbstractBinaryRpcModule;
 import org.opennms.netmgt.snmp.AggregateTracker;
 import org.opennms.netmgt.snmp.Collectable;
 import org.opennms.netmgt.snmp.CollectionTracker;
@@ -58,7 +58,7 @@ import org.opennms.netmgt.snmp.SnmpWalker;
  *
  * @author jwhite
  */
-public class SnmpProxyRpcModule extends AbstractXmlRpcModule<SnmpRequestDTO, SnmpMultiResponseDTO> {
+public class SnmpProxyRpcModule extends AbstractBinaryRpcModule<SnmpRequestDTO, SnmpMultiResponseDTO> {
 
     public static final SnmpProxyRpcModule INSTANCE = new SnmpProxyRpcModule();
 
@@ -72,7 +72,7 @@ public class SnmpProxyRpcModule extends AbstractXmlRpcModule<SnmpRequestDTO, Snm
     });
 
     public SnmpProxyRpcModule() {
-        super(SnmpRequestDTO.class, SnmpMultiResponseDTO.class);
+        super(SnmpRequestDTO.class, SnmpMultiResponseDTO.class, new SnmpMultiResponseBinaryCodec());
     }
 
     @Override
@@ -39,12 +39,12 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 
-import org.opennms.core.rpc.api.RpcRequest;
+import org.opennms.core.rpc.xml.BinaryRpcRequest;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
 
 @XmlRootElement(name="snmp-request")
 @XmlAccessorType(XmlAccessType.NONE)
-public class SnmpRequestDTO implements RpcRequest {
+public class SnmpRequestDTO implements BinaryRpcRequest {
 
     @XmlAttribute(name="location")
     private String location;
@@ -52,6 +52,9 @@ public class SnmpRequestDTO implements RpcRequest {
     @XmlAttribute(name="system-id")
     private String systemId;
 
+    @XmlAttribute(name="accept")
+    private String acceptedFormat;
+
     @XmlElement(name="agent")
     private SnmpAgentConfig agent;
 
@@ -85,6 +88,16 @@ public class SnmpRequestDTO implements RpcRequest {
         return systemId;
     }
 
+    @Override
+    public String getAcceptedFormat() {
+        return acceptedFormat;
+    }
+
+    @Override
+    public void setAcceptedFormat(String acceptedFormat) {
+        this.acceptedFormat = acceptedFormat;
+    }
+
     public SnmpAgentConfig getAgent() {
         return agent;
     }
@@ -34,7 +34,7 @@ import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import org.opennms.core.logging.Logging;
-import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.opennms.core.rpc.xml.AbstractBinaryRpcModule;
 import org.opennms.netmgt.collection.api.CollectionAgent;
 import org.opennms.netmgt.collection.api.ServiceCollector;
 import org.opennms.netmgt.collection.api.ServiceCollectorRegistry;
@@ -46,7 +46,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
  *
  * @author jwhite
  */
-public class CollectorClientRpcModule extends AbstractXmlRpcModule<CollectorRequestDTO, CollectorResponseDTO>{
+public class CollectorClientRpcModule extends AbstractBinaryRpcModule<CollectorRequestDTO, CollectorResponseDTO>{
 
     public static final String RPC_MODULE_ID = "Collect";
 
@@ -40,7 +40,7 @@ import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
-import org.opennms.core.rpc.api.RpcRequest;
+import org.opennms.core.rpc.xml.BinaryRpcRequest;
 import org.opennms.netmgt.collection.api.CollectionAgent;
 import org.opennms.netmgt.collection.api.ServiceCollector;
 import org.opennms.netmgt.collection.dto.CollectionAgentDTO;
@@ -48,7 +48,7 @@ import org.opennms.netmgt.collection.dto.CollectionAttributeDTO;
 
 @XmlRootElement(name = "collector-request")
 @XmlAccessorType(XmlAccessType.NONE)
-public class CollectorRequestDTO implements RpcRequest {
+public class CollectorRequestDTO implements BinaryRpcRequest {
 
     @XmlElement(name = "agent", type=CollectionAgentDTO.class)
     private CollectionAgent agent;
@@ -59,6 +59,9 @@ public class CollectorRequestDTO implements RpcRequest {
     @XmlAttribute(name="system-id")
     private String systemId;
 
+    @XmlAttribute(name = "accept")
+    private String acceptedFormat;
+
     @XmlAttribute(name = "class-name")
     private String className;
 
@@ -96,6 +99,16 @@ public class CollectorRequestDTO implements RpcRequest {
         return systemId;
     }
 
+    @Override
+    public String getAcceptedFormat() {
+        return acceptedFormat;
+    }
+
+    @Override
+    public void setAcceptedFormat(String acceptedFormat) {
+        this.acceptedFormat = acceptedFormat;
+    }
+
     public void setClassName(String className) {
         this.className = className;
     }
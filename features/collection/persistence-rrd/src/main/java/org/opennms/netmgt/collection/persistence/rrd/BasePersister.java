@@ -79,6 +79,7 @@ public class BasePersister extends AbstractPersister {
      */
     protected RrdPersistOperationBuilder createBuilder(CollectionResource resource, String name, Set<CollectionAttributeType> attributeTypes) {
         RrdPersistOperationBuilder builder  = new RrdPersistOperationBuilder(getRrdStrategy(), getRepository(), resource, name, m_dontReorderAttributes);
+        builder.setResourceStorageDao(m_resourceStorageDao);
         if (resource.getTimeKeeper() != null) {
             builder.setTimeKeeper(resource.getTimeKeeper());
         }
@@ -50,8 +50,10 @@ import org.opennms.netmgt.collection.api.PersistOperationBuilder;
 import org.opennms.netmgt.collection.api.ResourceIdentifier;
 import org.opennms.netmgt.collection.api.TimeKeeper;
 import org.opennms.netmgt.collection.support.DefaultTimeKeeper;
+import org.opennms.netmgt.dao.api.ResourceStorageDao;
 import org.opennms.netmgt.rrd.RrdAttributeType;
 import org.opennms.netmgt.model.ResourcePath;
+import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
 import org.opennms.netmgt.rrd.RrdMetaDataUtils;
@@ -77,6 +79,7 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
     private final Map<CollectionAttributeType, Number> m_declarations;
     private final Map<String, String> m_metaData = new LinkedHashMap<String, String>();
     private TimeKeeper m_timeKeeper = new DefaultTimeKeeper();
+    private ResourceStorageDao m_resourceStorageDao;
 
     /** Constant <code>MAX_DS_NAME_LENGTH=19</code> */
     public static final int MAX_DS_NAME_LENGTH = 19;
@@ -101,6 +104,15 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
         return m_rrdStrategy;
     }
 
+    /**
+     * Sets the {@link ResourceStorageDao} which is notified when the RRD file is created.
+     *
+     * @param resourceStorageDao a {@link org.opennms.netmgt.dao.api.ResourceStorageDao} object.
+     */
+    public void setResourceStorageDao(ResourceStorageDao resourceStorageDao) {
+        m_resourceStorageDao = resourceStorageDao;
+    }
+
     /**
      * <p>getRepository</p>
      *
@@ -203,7 +215,11 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
 
             List<RrdDataSource> dataSources = getDataSources();
             if (dataSources != null && dataSources.size() > 0) {
-                createRRD(m_rrdStrategy, ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList());
+                if (createRRD(m_rrdStrategy, ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList())
+                        && m_resourceStorageDao != null) {
+                    // Let the storage know about the file right away, the strategy may create it asynchronously
+                    m_resourceStorageDao.resourceCreated(ResourceTypeUtils.getResourcePathWithRepository(m_repository, m_resource.getPath()), m_rrdName);
+                }
                 updateRRD(m_rrdStrategy, ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
             }
         } catch (FileNotFoundException e) {
@@ -262,7 +278,7 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
      * @param step a int.
      * @param dataSources a {@link java.util.List} object.
      * @param rraList a {@link java.util.List} object.
-     * @return a boolean.
+     * @return true if the file did not exist and was created.
      * @throws org.opennms.netmgt.rrd.RrdException if any.
      */
     private static boolean createRRD(RrdStrategy<?, ?> rrdStrategy, String creator, String directory, String rrdName, int step, List<RrdDataSource> dataSources, List<String> rraList) throws RrdException {
@@ -275,7 +291,7 @@ public class RrdPersistOperationBuilder implements PersistOperationBuilder {
             // def can be null if the rrd-db exists already, but doesn't have to be (see MultiOutput/QueuingRrdStrategy
             strategy.createFile(def);
 
-            return true;
+            return def != null;
         } catch (Throwable e) {
             String path = directory + File.separator + rrdName + rrdStrategy.getDefaultFileExtension();
             LOG.error("createRRD: An error occurred creating rrdfile {}", path, e);
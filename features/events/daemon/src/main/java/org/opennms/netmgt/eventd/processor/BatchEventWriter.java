@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.api.SessionFactoryWrapper;
+import org.opennms.netmgt.events.api.EventProcessorException;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsEventParameter;
+import org.opennms.netmgt.model.OnmsServiceType;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
+/**
+ * An {@link EventWriter} that groups the events of concurrently processed logs
+ * into batches which are written using multi-row JDBC inserts.
+ *
+ * The event handler threads enqueue their logs and block until these have been
+ * written, so that the database IDs are assigned before the events are broadcast.
+ * Whichever thread holds the write lock drains the queue and writes everything
+ * which has accumulated in a single transaction. While a batch is being written,
+ * the logs of the other threads pile up and form the next batch.
+ *
+ * The IDs are taken from the same identifier generator Hibernate uses for
+ * {@link OnmsEvent}, which allocates ranges of the <code>eventsNxtId</code> sequence,
+ * so events written by either writer never collide.
+ *
+ * If a batch fails, its logs are retried individually so that a single invalid
+ * event only fails the log it belongs to.
+ */
+public class BatchEventWriter extends HibernateEventWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchEventWriter.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Number of rows per INSERT statement, keeping well below
+     * the limit of bind parameters in a single statement.
+     */
+    public static final int ROWS_PER_STATEMENT = 100;
+
+    private static final String[] EVENT_COLUMNS = {
+            "eventId", "eventUei", "nodeId", "eventTime", "eventHost", "eventSource", "ipAddr", "ifIndex",
+            "systemId", "eventSnmpHost", "serviceId", "eventSnmp", "eventCreateTime", "eventDescr",
+            "eventLogGroup", "eventLogMsg", "eventSeverity", "eventPathOutage", "eventCorrelation",
+            "eventSuppressedCount", "eventOperInstruct", "eventAutoAction", "eventOperAction",
+            "eventOperActionMenuText", "eventNotification", "eventTTicket", "eventTTicketState",
+            "eventForward", "eventMouseOverText", "eventLog", "eventDisplay", "eventAckUser", "eventAckTime"
+    };
+
+    private static final int[] EVENT_COLUMN_TYPES = {
+            Types.INTEGER, Types.VARCHAR, Types.INTEGER, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER,
+            Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR,
+            Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.VARCHAR,
+            Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+            Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER,
+            Types.VARCHAR, Types.VARCHAR, Types.CHAR, Types.CHAR, Types.VARCHAR, Types.TIMESTAMP
+    };
+
+    private static final String[] PARAMETER_COLUMNS = { "eventID", "name", "value", "type" };
+
+    private static final int[] PARAMETER_COLUMN_TYPES = { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR };
+
+    @Autowired
+    private JdbcTemplate m_jdbcTemplate;
+
+    @Autowired
+    private SessionFactoryWrapper m_sessionFactoryWrapper;
+
+    private int m_maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private final Queue<PendingLog> m_pending = new ConcurrentLinkedQueue<>();
+
+    private final Lock m_writeLock = new ReentrantLock();
+
+    /**
+     * Service types resolved while writing the current batch, only accessed while holding the write lock.
+     */
+    private final Map<String, OnmsServiceType> m_serviceTypes = new HashMap<>();
+
+    private final Timer m_writeTimer;
+    private final Timer m_batchTimer;
+    private final Histogram m_batchSizes;
+    private final Meter m_eventsWritten;
+
+    public BatchEventWriter(MetricRegistry registry) {
+        super(registry);
+        m_writeTimer = registry.timer("eventlogs.process.write");
+        m_batchTimer = registry.timer("eventlogs.process.write.batch");
+        m_batchSizes = registry.histogram("eventlogs.process.write.batch.sizes");
+        m_eventsWritten = registry.meter("eventlogs.process.write.events");
+    }
+
+    @Override
+    public void process(Log eventLog) throws EventProcessorException {
+        final List<Event> eventsToPersist = getEventsToPersist(eventLog);
+        if (eventsToPersist.size() < 1) {
+            return;
+        }
+
+        // Time the complete write including the time spent waiting for other batches
+        try (Context context = m_writeTimer.time()) {
+            final PendingLog pending = new PendingLog(eventLog.getHeader(), eventsToPersist);
+            m_pending.add(pending);
+
+            m_writeLock.lock();
+            try {
+                // Our log may already have been written by the previous holder of the lock
+                while (!pending.isDone()) {
+                    writeBatch();
+                }
+            } finally {
+                m_writeLock.unlock();
+            }
+
+            if (pending.getException() != null) {
+                throw pending.getException();
+            }
+        }
+    }
+
+    private void writeBatch() {
+        final List<PendingLog> batch = new ArrayList<>();
+        int size = 0;
+        PendingLog pending;
+        while (size < m_maxBatchSize && (pending = m_pending.poll()) != null) {
+            batch.add(pending);
+            size += pending.getEvents().size();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        m_batchSizes.update(size);
+
+        try (Context context = m_batchTimer.time()) {
+            write(batch);
+            m_eventsWritten.mark(size);
+            return;
+        } catch (Throwable t) {
+            LOG.warn("Failed to write batch of {} events. Writing the {} event logs individually.", size, batch.size(), t);
+        }
+
+        for (PendingLog eachLog : batch) {
+            try {
+                write(Collections.singletonList(eachLog));
+                m_eventsWritten.mark(eachLog.getEvents().size());
+            } catch (DeadlockLoserDataAccessException e) {
+                eachLog.fail(new EventProcessorException("Encountered deadlock when inserting events: " + eachLog.getEvents(), e));
+            } catch (Throwable e) {
+                eachLog.fail(new EventProcessorException("Unexpected exception while storing events: " + eachLog.getEvents(), e));
+            }
+        }
+    }
+
+    /**
+     * Writes the given logs in a single transaction and assigns the database IDs
+     * to their events once the transaction has been committed.
+     */
+    private void write(final List<PendingLog> logs) {
+        final List<OnmsEvent> ovents = getTransactionManager().execute(status -> {
+            m_serviceTypes.clear();
+            final SessionFactory sessionFactory = m_sessionFactoryWrapper.getSessionFactory();
+            final IdentifierGenerator idGenerator = ((SessionFactoryImplementor)sessionFactory).getIdentifierGenerator(OnmsEvent.class.getName());
+            final SessionImplementor session = (SessionImplementor)sessionFactory.getCurrentSession();
+
+            final List<OnmsEvent> created = new ArrayList<>();
+            for (PendingLog eachLog : logs) {
+                for (Event eachEvent : eachLog.getEvents()) {
+                    LOG.debug("BatchEventWriter: processing {}, nodeid: {}, ipaddr: {}, serviceid: {}, time: {}", eachEvent.getUei(), eachEvent.getNodeid(), eachEvent.getInterface(), eachEvent.getService(), eachEvent.getTime());
+                    final OnmsEvent ovent = createOnmsEvent(eachLog.getHeader(), eachEvent);
+                    ovent.setId((Integer)idGenerator.generate(session, ovent));
+                    created.add(ovent);
+                }
+            }
+
+            insertEvents(created);
+            insertParameters(created);
+            return created;
+        });
+
+        // Update the events with the database IDs of the events stored in the database
+        int k = 0;
+        for (PendingLog eachLog : logs) {
+            for (Event eachEvent : eachLog.getEvents()) {
+                eachEvent.setDbid(ovents.get(k++).getId());
+            }
+            eachLog.complete();
+        }
+    }
+
+    private void insertEvents(final List<OnmsEvent> ovents) {
+        final List<Object[]> rows = new ArrayList<>(ovents.size());
+        for (OnmsEvent ovent : ovents) {
+            rows.add(new Object[] {
+                    ovent.getId(),
+                    ovent.getEventUei(),
+                    ovent.getNode() != null ? ovent.getNode().getId() : null,
+                    toTimestamp(ovent.getEventTime()),
+                    ovent.getEventHost(),
+                    ovent.getEventSource(),
+                    ovent.getIpAddr() != null ? InetAddressUtils.str(ovent.getIpAddr()) : null,
+                    ovent.getIfIndex(),
+                    ovent.getDistPoller().getId(),
+                    ovent.getEventSnmpHost(),
+                    ovent.getServiceType() != null ? ovent.getServiceType().getId() : null,
+                    ovent.getEventSnmp(),
+                    toTimestamp(ovent.getEventCreateTime()),
+                    ovent.getEventDescr(),
+                    ovent.getEventLogGroup(),
+                    ovent.getEventLogMsg(),
+                    ovent.getEventSeverity(),
+                    ovent.getEventPathOutage(),
+                    ovent.getEventCorrelation(),
+                    ovent.getEventSuppressedCount(),
+                    ovent.getEventOperInstruct(),
+                    ovent.getEventAutoAction(),
+                    ovent.getEventOperAction(),
+                    ovent.getEventOperActionMenuText(),
+                    ovent.getEventNotification(),
+                    ovent.getEventTTicket(),
+                    ovent.getEventTTicketState(),
+                    ovent.getEventForward(),
+                    ovent.getEventMouseOverText(),
+                    ovent.getEventLog(),
+                    ovent.getEventDisplay(),
+                    ovent.getEventAckUser(),
+                    toTimestamp(ovent.getEventAckTime())
+            });
+        }
+        insert("events", EVENT_COLUMNS, EVENT_COLUMN_TYPES, rows);
+    }
+
+    private void insertParameters(final List<OnmsEvent> ovents) {
+        final List<Object[]> rows = new ArrayList<>();
+        for (OnmsEvent ovent : ovents) {
+            if (ovent.getEventParameters() == null) {
+                continue;
+            }
+            for (OnmsEventParameter parameter : ovent.getEventParameters()) {
+                rows.add(new Object[] {
+                        ovent.getId(),
+                        parameter.getName(),
+                        parameter.getValue(),
+                        parameter.getType()
+                });
+            }
+        }
+        insert("event_parameters", PARAMETER_COLUMNS, PARAMETER_COLUMN_TYPES, rows);
+    }
+
+    /**
+     * Inserts the rows using multi-row INSERT statements of up to {@link #ROWS_PER_STATEMENT} rows each.
+     */
+    private void insert(final String table, final String[] columns, final int[] columnTypes, final List<Object[]> rows) {
+        for (int offset = 0; offset < rows.size(); offset += ROWS_PER_STATEMENT) {
+            final List<Object[]> chunk = rows.subList(offset, Math.min(offset + ROWS_PER_STATEMENT, rows.size()));
+
+            final Object[] args = new Object[chunk.size() * columns.length];
+            final int[] argTypes = new int[args.length];
+            for (int i = 0; i < chunk.size(); i++) {
+                System.arraycopy(chunk.get(i), 0, args, i * columns.length, columns.length);
+                System.arraycopy(columnTypes, 0, argTypes, i * columns.length, columns.length);
+            }
+
+            m_jdbcTemplate.update(getInsertStatement(table, columns, chunk.size()), args, argTypes);
+        }
+    }
+
+    static String getInsertStatement(final String table, final String[] columns, final int rows) {
+        final StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append(" (")
+                .append(String.join(", ", columns))
+                .append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('(');
+            for (int j = 0; j < columns.length; j++) {
+                sb.append(j > 0 ? ", ?" : "?");
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    private static Timestamp toTimestamp(final java.util.Date date) {
+        return date != null ? new Timestamp(date.getTime()) : null;
+    }
+
+    /**
+     * Service types are resolved once per batch instead of once per event.
+     */
+    @Override
+    OnmsServiceType getServiceType(final String name) {
+        // Events without a service are common, so remember unresolved names as well
+        if (!m_serviceTypes.containsKey(name)) {
+            m_serviceTypes.put(name, super.getServiceType(name));
+        }
+        return m_serviceTypes.get(name);
+    }
+
+    public int getMaxBatchSize() {
+        return m_maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        m_maxBatchSize = maxBatchSize;
+    }
+
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        m_jdbcTemplate = Objects.requireNonNull(jdbcTemplate);
+    }
+
+    public void setSessionFactoryWrapper(SessionFactoryWrapper sessionFactoryWrapper) {
+        m_sessionFactoryWrapper = Objects.requireNonNull(sessionFactoryWrapper);
+    }
+
+    private static class PendingLog {
+        private final Header m_header;
+        private final List<Event> m_events;
+        private volatile boolean m_done = false;
+        private volatile EventProcessorException m_exception;
+
+        private PendingLog(final Header header, final List<Event> events) {
+            m_header = header;
+            m_events = events;
+        }
+
+        public Header getHeader() {
+            return m_header;
+        }
+
+        public List<Event> getEvents() {
+            return m_events;
+        }
+
+        public boolean isDone() {
+            return m_done;
+        }
+
+        public EventProcessorException getException() {
+            return m_exception;
+        }
+
+        public void complete() {
+            m_done = true;
+        }
+
+        public void fail(final EventProcessorException exception) {
+            m_exception = exception;
+            m_done = true;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Defines the <code>eventWriter</code> used by eventd, which is the {@link HibernateEventWriter}
+ * unless the {@link BatchEventWriter} is enabled by setting {@link #ENABLE_BATCH_WRITER}.
+ */
+@Configuration
+public class EventWriterContext {
+
+    public static final String ENABLE_BATCH_WRITER = "org.opennms.eventd.batchWriter";
+
+    public static final String MAX_BATCH_SIZE = "org.opennms.eventd.batchWriter.maxBatchSize";
+
+    @Autowired
+    @Qualifier("eventdMetricRegistry")
+    private MetricRegistry eventdMetricRegistry;
+
+    @Bean(name="eventWriter")
+    @Conditional(HibernateEventWriterCondition.class)
+    public EventWriter hibernateEventWriter() {
+        return new HibernateEventWriter(eventdMetricRegistry);
+    }
+
+    @Bean(name="eventWriter")
+    @Conditional(BatchEventWriterCondition.class)
+    public EventWriter batchEventWriter() {
+        final BatchEventWriter eventWriter = new BatchEventWriter(eventdMetricRegistry);
+        eventWriter.setMaxBatchSize(Integer.getInteger(MAX_BATCH_SIZE, BatchEventWriter.DEFAULT_MAX_BATCH_SIZE));
+        return eventWriter;
+    }
+
+    static class BatchEventWriterCondition implements Condition {
+        @Override
+        public boolean matches(final ConditionContext context, final AnnotatedTypeMetadata metadata) {
+            return Boolean.getBoolean(ENABLE_BATCH_WRITER);
+        }
+    }
+
+    static class HibernateEventWriterCondition implements Condition {
+        @Override
+        public boolean matches(final ConditionContext context, final AnnotatedTypeMetadata metadata) {
+            return !Boolean.getBoolean(ENABLE_BATCH_WRITER);
+        }
+    }
+}
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.eventd.processor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
@@ -49,6 +50,7 @@ import org.opennms.netmgt.eventd.EventUtil;
 import org.opennms.netmgt.events.api.EventDatabaseConstants;
 import org.opennms.netmgt.events.api.EventProcessorException;
 import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.model.OnmsServiceType;
 import org.opennms.netmgt.model.OnmsSeverity;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Header;
@@ -162,48 +164,54 @@ public class HibernateEventWriter implements EventWriter {
 
     @Override
     public void process(Log eventLog) throws EventProcessorException {
-        if (eventLog != null && eventLog.getEvents() != null) {
-            final List<Event> eventsInLog = eventLog.getEvents().getEventCollection();
-            // This shouldn't happen, but just to be safe...
-            if (eventsInLog == null) {
-                return;
-            }
-
-            // Find the events in the log that need to be persisted
-            final List<Event> eventsToPersist = eventsInLog.stream()
-                .filter(e -> checkEventSanityAndDoWeProcess(e, "HibernateEventWriter"))
-                .collect(Collectors.toList());
+        final List<Event> eventsToPersist = getEventsToPersist(eventLog);
 
-            // If there are no events to persist, avoid creating a database transaction
-            if (eventsToPersist.size() < 1) {
-                return;
-            }
+        // If there are no events to persist, avoid creating a database transaction
+        if (eventsToPersist.size() < 1) {
+            return;
+        }
 
-            // Time the transaction and insertions
-            try (Context context = writeTimer.time()) {
-                final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
-
-                m_transactionManager.execute(new TransactionCallbackWithoutResult() {
-                    @Override
-                    protected void doInTransactionWithoutResult(TransactionStatus status) {
-                        for (Event eachEvent : eventsToPersist) {
-                            try {
-                                process(eventLog.getHeader(), eachEvent);
-                            } catch (EventProcessorException e) {
-                                exception.set(e);
-                                return;
-                            }
+        // Time the transaction and insertions
+        try (Context context = writeTimer.time()) {
+            final AtomicReference<EventProcessorException> exception = new AtomicReference<>();
+
+            m_transactionManager.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    for (Event eachEvent : eventsToPersist) {
+                        try {
+                            process(eventLog.getHeader(), eachEvent);
+                        } catch (EventProcessorException e) {
+                            exception.set(e);
+                            return;
                         }
                     }
-                });
-
-                if (exception.get() != null) {
-                    throw exception.get();
                 }
+            });
+
+            if (exception.get() != null) {
+                throw exception.get();
             }
         }
     }
 
+    /**
+     * Finds the events in the log that need to be persisted.
+     */
+    static List<Event> getEventsToPersist(final Log eventLog) {
+        if (eventLog == null || eventLog.getEvents() == null) {
+            return Collections.emptyList();
+        }
+        final List<Event> eventsInLog = eventLog.getEvents().getEventCollection();
+        // This shouldn't happen, but just to be safe...
+        if (eventsInLog == null) {
+            return Collections.emptyList();
+        }
+        return eventsInLog.stream()
+            .filter(e -> checkEventSanityAndDoWeProcess(e, "HibernateEventWriter"))
+            .collect(Collectors.toList());
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -232,7 +240,7 @@ public class HibernateEventWriter implements EventWriter {
      *                Thrown if a required resource cannot be found in the
      *                properties file.
      */
-    private OnmsEvent createOnmsEvent(final Header eventHeader, final Event event) {
+    OnmsEvent createOnmsEvent(final Header eventHeader, final Event event) {
 
         OnmsEvent ovent = new OnmsEvent();
 
@@ -287,7 +295,7 @@ public class HibernateEventWriter implements EventWriter {
         ovent.setEventSnmpHost(EventDatabaseConstants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
         // service
-        ovent.setServiceType(serviceTypeDao.findByName(event.getService()));
+        ovent.setServiceType(getServiceType(event.getService()));
 
         // eventSnmp
         ovent.setEventSnmp(event.getSnmp() == null ? null : SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
@@ -402,7 +410,18 @@ public class HibernateEventWriter implements EventWriter {
         return ovent;
     }
 
+    /**
+     * Looks up the service type of an event by its name.
+     */
+    OnmsServiceType getServiceType(final String name) {
+        return serviceTypeDao.findByName(name);
+    }
+
     public void setTransactionManager(TransactionOperations transactionManager) {
         m_transactionManager = transactionManager;
     }
+
+    TransactionOperations getTransactionManager() {
+        return m_transactionManager;
+    }
 }
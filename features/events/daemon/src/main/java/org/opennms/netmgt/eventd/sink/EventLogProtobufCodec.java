@@ -0,0 +1,360 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.sink;
+
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.readDate;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.readInetAddress;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.readMessage;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeDate;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeInetAddress;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeMessage;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeString;
+
+import java.io.IOException;
+
+import org.opennms.core.ipc.sink.protobuf.ProtobufCodec;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+import org.opennms.netmgt.xml.event.Logmsg;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+import org.opennms.netmgt.xml.event.Value;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Maps the {@link Log} to the protocol buffers wire format. The messages are written
+ * and read directly, without generated classes, using the following schema:
+ * <pre>
+ * message Log {
+ *     optional Header header = 1;
+ *     repeated Event events = 2;
+ * }
+ *
+ * message Header {
+ *     optional string ver = 1;
+ *     optional string dp_name = 2;
+ *     optional string created = 3;
+ *     optional string mstation = 4;
+ * }
+ *
+ * message Event {
+ *     optional string uuid = 1;
+ *     optional int32 dbid = 2;
+ *     optional string dist_poller = 3;
+ *     optional int64 creation_time = 4;
+ *     optional string master_station = 5;
+ *     optional string uei = 6;
+ *     optional string source = 7;
+ *     optional int64 nodeid = 8;
+ *     optional int64 time = 9;
+ *     optional string host = 10;
+ *     optional bytes interface = 11;
+ *     optional string snmphost = 12;
+ *     optional string service = 13;
+ *     optional Snmp snmp = 14;
+ *     repeated Parm parms = 15;
+ *     optional string descr = 16;
+ *     optional Logmsg logmsg = 17;
+ *     optional string severity = 18;
+ *     optional string pathoutage = 19;
+ *     optional string operinstruct = 20;
+ *     repeated string loggroups = 21;
+ *     optional int32 if_index = 22;
+ *     optional string if_alias = 23;
+ *     optional string mouseovertext = 24;
+ * }
+ *
+ * message Snmp {
+ *     optional string id = 1;
+ *     optional string idtext = 2;
+ *     optional string version = 3;
+ *     optional int32 specific = 4;
+ *     optional int32 generic = 5;
+ *     optional string community = 6;
+ *     optional int64 time_stamp = 7;
+ * }
+ *
+ * // The value of the parameter is flattened into the message
+ * message Parm {
+ *     optional string name = 1;
+ *     optional string content = 2;
+ *     optional string type = 3;
+ *     optional string encoding = 4;
+ *     optional bool expand = 5;
+ * }
+ *
+ * message Logmsg {
+ *     optional string content = 1;
+ *     optional string dest = 2;
+ *     optional bool notify = 3;
+ * }
+ * </pre>
+ *
+ * Only the fields that are set on events sent by Minions are mapped. Logs that contain
+ * events with any of the other fields (i.e. alarm data or automatic actions) can not be
+ * encoded, and are marshaled to XML instead.
+ */
+public class EventLogProtobufCodec implements ProtobufCodec<Log> {
+
+    @Override
+    public boolean canEncode(Log log) {
+        if (log.getEvents() == null) {
+            return true;
+        }
+        for (Event event : log.getEvents().getEventCollection()) {
+            if (event.getMask() != null
+                    || event.getCorrelation() != null
+                    || event.getAutoacknowledge() != null
+                    || event.getTticket() != null
+                    || event.getAlarmData() != null
+                    || event.getAutoactionCount() > 0
+                    || event.getOperactionCount() > 0
+                    || event.getForwardCount() > 0
+                    || event.getScriptCount() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void encode(Log log, CodedOutputStream out) throws IOException {
+        writeMessage(out, 1, log.getHeader(), EventLogProtobufCodec::encodeHeader);
+        if (log.getEvents() != null) {
+            for (Event event : log.getEvents().getEventCollection()) {
+                writeMessage(out, 2, event, EventLogProtobufCodec::encodeEvent);
+            }
+        }
+    }
+
+    @Override
+    public Log decode(CodedInputStream in) throws IOException {
+        final Log log = new Log();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: log.setHeader(readMessage(in, EventLogProtobufCodec::decodeHeader)); break;
+                case 2: log.addEvent(readMessage(in, EventLogProtobufCodec::decodeEvent)); break;
+                default: in.skipField(tag);
+            }
+        }
+        return log;
+    }
+
+    private static void encodeHeader(Header header, CodedOutputStream out) throws IOException {
+        writeString(out, 1, header.getVer());
+        writeString(out, 2, header.getDpName());
+        writeString(out, 3, header.getCreated());
+        writeString(out, 4, header.getMstation());
+    }
+
+    private static Header decodeHeader(CodedInputStream in) throws IOException {
+        final Header header = new Header();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: header.setVer(in.readString()); break;
+                case 2: header.setDpName(in.readString()); break;
+                case 3: header.setCreated(in.readString()); break;
+                case 4: header.setMstation(in.readString()); break;
+                default: in.skipField(tag);
+            }
+        }
+        return header;
+    }
+
+    private static void encodeEvent(Event event, CodedOutputStream out) throws IOException {
+        writeString(out, 1, event.getUuid());
+        if (event.getDbid() != null) {
+            out.writeInt32(2, event.getDbid());
+        }
+        writeString(out, 3, event.getDistPoller());
+        writeDate(out, 4, event.getCreationTime());
+        writeString(out, 5, event.getMasterStation());
+        writeString(out, 6, event.getUei());
+        writeString(out, 7, event.getSource());
+        if (event.getNodeid() != null) {
+            out.writeInt64(8, event.getNodeid());
+        }
+        writeDate(out, 9, event.getTime());
+        writeString(out, 10, event.getHost());
+        writeInetAddress(out, 11, event.getInterfaceAddress());
+        writeString(out, 12, event.getSnmphost());
+        writeString(out, 13, event.getService());
+        writeMessage(out, 14, event.getSnmp(), EventLogProtobufCodec::encodeSnmp);
+        for (Parm parm : event.getParmCollection()) {
+            writeMessage(out, 15, parm, EventLogProtobufCodec::encodeParm);
+        }
+        writeString(out, 16, event.getDescr());
+        writeMessage(out, 17, event.getLogmsg(), EventLogProtobufCodec::encodeLogmsg);
+        writeString(out, 18, event.getSeverity());
+        writeString(out, 19, event.getPathoutage());
+        writeString(out, 20, event.getOperinstruct());
+        for (String loggroup : event.getLoggroupCollection()) {
+            writeString(out, 21, loggroup);
+        }
+        if (event.getIfIndex() != null) {
+            out.writeInt32(22, event.getIfIndex());
+        }
+        writeString(out, 23, event.getIfAlias());
+        writeString(out, 24, event.getMouseovertext());
+    }
+
+    private static Event decodeEvent(CodedInputStream in) throws IOException {
+        final Event event = new Event();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: event.setUuid(in.readString()); break;
+                case 2: event.setDbid(in.readInt32()); break;
+                case 3: event.setDistPoller(in.readString()); break;
+                case 4: event.setCreationTime(readDate(in)); break;
+                case 5: event.setMasterStation(in.readString()); break;
+                case 6: event.setUei(in.readString()); break;
+                case 7: event.setSource(in.readString()); break;
+                case 8: event.setNodeid(in.readInt64()); break;
+                case 9: event.setTime(readDate(in)); break;
+                case 10: event.setHost(in.readString()); break;
+                case 11: event.setInterfaceAddress(readInetAddress(in)); break;
+                case 12: event.setSnmphost(in.readString()); break;
+                case 13: event.setService(in.readString()); break;
+                case 14: event.setSnmp(readMessage(in, EventLogProtobufCodec::decodeSnmp)); break;
+                case 15: event.addParm(readMessage(in, EventLogProtobufCodec::decodeParm)); break;
+                case 16: event.setDescr(in.readString()); break;
+                case 17: event.setLogmsg(readMessage(in, EventLogProtobufCodec::decodeLogmsg)); break;
+                case 18: event.setSeverity(in.readString()); break;
+                case 19: event.setPathoutage(in.readString()); break;
+                case 20: event.setOperinstruct(in.readString()); break;
+                case 21: event.addLoggroup(in.readString()); break;
+                case 22: event.setIfIndex(in.readInt32()); break;
+                case 23: event.setIfAlias(in.readString()); break;
+                case 24: event.setMouseovertext(in.readString()); break;
+                default: in.skipField(tag);
+            }
+        }
+        return event;
+    }
+
+    private static void encodeSnmp(Snmp snmp, CodedOutputStream out) throws IOException {
+        writeString(out, 1, snmp.getId());
+        writeString(out, 2, snmp.getIdtext());
+        writeString(out, 3, snmp.getVersion());
+        if (snmp.getSpecific() != null) {
+            out.writeInt32(4, snmp.getSpecific());
+        }
+        if (snmp.getGeneric() != null) {
+            out.writeInt32(5, snmp.getGeneric());
+        }
+        writeString(out, 6, snmp.getCommunity());
+        if (snmp.getTimeStamp() != null) {
+            out.writeInt64(7, snmp.getTimeStamp());
+        }
+    }
+
+    private static Snmp decodeSnmp(CodedInputStream in) throws IOException {
+        final Snmp snmp = new Snmp();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: snmp.setId(in.readString()); break;
+                case 2: snmp.setIdtext(in.readString()); break;
+                case 3: snmp.setVersion(in.readString()); break;
+                case 4: snmp.setSpecific(in.readInt32()); break;
+                case 5: snmp.setGeneric(in.readInt32()); break;
+                case 6: snmp.setCommunity(in.readString()); break;
+                case 7: snmp.setTimeStamp(in.readInt64()); break;
+                default: in.skipField(tag);
+            }
+        }
+        return snmp;
+    }
+
+    private static void encodeParm(Parm parm, CodedOutputStream out) throws IOException {
+        writeString(out, 1, parm.getParmName());
+        final Value value = parm.getValue();
+        if (value != null) {
+            writeString(out, 2, value.getContent());
+            writeString(out, 3, value.getType());
+            writeString(out, 4, value.getEncoding());
+            if (value.isExpand() != null) {
+                out.writeBool(5, value.isExpand());
+            }
+        }
+    }
+
+    private static Parm decodeParm(CodedInputStream in) throws IOException {
+        final Parm parm = new Parm();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: parm.setParmName(in.readString()); break;
+                case 2: getOrCreateValue(parm).setContent(in.readString()); break;
+                case 3: getOrCreateValue(parm).setType(in.readString()); break;
+                case 4: getOrCreateValue(parm).setEncoding(in.readString()); break;
+                case 5: getOrCreateValue(parm).setExpand(in.readBool()); break;
+                default: in.skipField(tag);
+            }
+        }
+        return parm;
+    }
+
+    private static Value getOrCreateValue(Parm parm) {
+        if (parm.getValue() == null) {
+            parm.setValue(new Value());
+        }
+        return parm.getValue();
+    }
+
+    private static void encodeLogmsg(Logmsg logmsg, CodedOutputStream out) throws IOException {
+        writeString(out, 1, logmsg.getContent());
+        writeString(out, 2, logmsg.getDest());
+        if (logmsg.getNotify() != null) {
+            out.writeBool(3, logmsg.getNotify());
+        }
+    }
+
+    private static Logmsg decodeLogmsg(CodedInputStream in) throws IOException {
+        final Logmsg logmsg = new Logmsg();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: logmsg.setContent(in.readString()); break;
+                case 2: logmsg.setDest(in.readString()); break;
+                case 3: logmsg.setNotify(in.readBool()); break;
+                default: in.skipField(tag);
+            }
+        }
+        return logmsg;
+    }
+}
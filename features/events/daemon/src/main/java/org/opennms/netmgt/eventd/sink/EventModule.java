@@ -35,7 +35,7 @@ import java.util.Objects;
 
 import org.opennms.core.ipc.sink.api.AggregationPolicy;
 import org.opennms.core.ipc.sink.api.AsyncPolicy;
-import org.opennms.core.ipc.sink.xml.AbstractXmlSinkModule;
+import org.opennms.core.ipc.sink.protobuf.AbstractProtobufSinkModule;
 import org.opennms.netmgt.config.api.EventdConfig;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Log;
@@ -43,14 +43,14 @@ import org.opennms.netmgt.xml.event.Log;
 /**
  * @author Malatesh Sudarshan
  */
-public class EventModule extends AbstractXmlSinkModule<Event, Log> {
+public class EventModule extends AbstractProtobufSinkModule<Event, Log> {
 
     public static final String MODULE_ID = "Events";
 
     private final EventdConfig m_config;
 
     public EventModule(EventdConfig config) {
-        super(Log.class);
+        super(Log.class, new EventLogProtobufCodec());
         this.m_config = config;
     }
 
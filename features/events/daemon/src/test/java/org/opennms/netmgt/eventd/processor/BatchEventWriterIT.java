@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Verifies that the {@link BatchEventWriter} persists events like the
+ * {@link HibernateEventWriter} does, also when writing concurrently.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-commonConfigs.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath*:/META-INF/opennms/component-service.xml",
+        "classpath:/META-INF/opennms/applicationContext-daemon.xml",
+        "classpath:/META-INF/opennms/mockEventIpcManager.xml",
+        "classpath:/META-INF/opennms/applicationContext-eventDaemon.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase(reuseDatabase=false)
+public class BatchEventWriterIT {
+
+    @Autowired
+    private ApplicationContext m_context;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MetricRegistry m_registry;
+
+    private BatchEventWriter m_eventWriter;
+
+    @Before
+    public void setUp() {
+        m_registry = new MetricRegistry();
+        m_eventWriter = new BatchEventWriter(m_registry);
+        m_context.getAutowireCapableBeanFactory().autowireBean(m_eventWriter);
+    }
+
+    @Test
+    public void testWriteEventWithParameters() throws Exception {
+        final EventBuilder builder = new EventBuilder("testUei", "testSource");
+        builder.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+        builder.setDescription("abc\u0000def");
+        builder.addParam("param1", "value1");
+        builder.addParam("param2", 1337);
+        builder.addParam("param2", 42); // Test for duplicated values - last should win
+
+        final Event event = builder.getEvent();
+        assertEquals(new Integer(0), event.getDbid());
+        m_eventWriter.process(builder.getLog());
+        assertTrue(event.getDbid() > 0);
+
+        final List<Map<String, Object>> parameters = jdbcTemplate.queryForList("SELECT name, value, type FROM event_parameters WHERE eventID = " + event.getDbid() + " ORDER BY name");
+        assertEquals(2, parameters.size());
+
+        assertEquals("param1", parameters.get(0).get("name"));
+        assertEquals("value1", parameters.get(0).get("value"));
+        assertEquals("string", parameters.get(0).get("type"));
+
+        assertEquals("param2", parameters.get(1).get("name"));
+        assertEquals("42", parameters.get(1).get("value"));
+        assertEquals("string", parameters.get(1).get("type"));
+
+        final Map<String, Object> row = jdbcTemplate.queryForMap("SELECT eventUei, eventSource, eventDescr, eventLog, eventDisplay, systemId, nodeId FROM events WHERE eventId = " + event.getDbid());
+        assertEquals("testUei", row.get("eventUei"));
+        assertEquals("testSource", row.get("eventSource"));
+        assertEquals("abc%0def", row.get("eventDescr"));
+        assertEquals("Y", row.get("eventLog"));
+        assertEquals("Y", row.get("eventDisplay"));
+        assertEquals(DistPollerDao.DEFAULT_DIST_POLLER_ID, row.get("systemId"));
+        assertNull(row.get("nodeId"));
+    }
+
+    @Test
+    public void testSendEventWithService() throws Exception {
+        int serviceId = 1;
+        String serviceName = "some bogus service";
+
+        jdbcTemplate.update("insert into service (serviceId, serviceName) values (?, ?)", new Object[] { serviceId, serviceName });
+
+        final Log log = new Log();
+        for (int i = 0; i < 3; i++) {
+            final EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "someSource");
+            bldr.setLogMessage(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+            bldr.setService(serviceName);
+            log.addEvent(bldr.getEvent());
+        }
+        m_eventWriter.process(log);
+
+        assertEquals("event count", new Integer(3), jdbcTemplate.queryForObject("select count(*) from events", Integer.class));
+        assertEquals("event service ID", new Integer(3), jdbcTemplate.queryForObject("select count(*) from events where serviceID = ?", new Object[] { serviceId }, Integer.class));
+    }
+
+    @Test
+    public void testWriteEventsConcurrently() throws Exception {
+        final int threads = 8;
+        final int logsPerThread = 50;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<List<Event>>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                final List<Event> events = new ArrayList<>();
+                for (int j = 0; j < logsPerThread; j++) {
+                    final EventBuilder bldr = new EventBuilder("uei.opennms.org/foo", "someSource");
+                    bldr.setLogDest(HibernateEventWriter.LOG_MSG_DEST_LOG_AND_DISPLAY);
+                    bldr.addParam("index", j);
+                    m_eventWriter.process(bldr.getLog());
+                    events.add(bldr.getEvent());
+                }
+                return events;
+            }));
+        }
+
+        // Every event was assigned its own database ID before process() returned
+        final Set<Integer> dbids = new HashSet<>();
+        for (Future<List<Event>> future : futures) {
+            for (Event event : future.get()) {
+                assertTrue(event.getDbid() > 0);
+                dbids.add(event.getDbid());
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(threads * logsPerThread, dbids.size());
+        assertEquals(new Integer(threads * logsPerThread), jdbcTemplate.queryForObject("select count(*) from events", Integer.class));
+        assertEquals(new Integer(threads * logsPerThread), jdbcTemplate.queryForObject("select count(*) from event_parameters", Integer.class));
+
+        assertEquals(threads * logsPerThread, m_registry.meter("eventlogs.process.write.events").getCount());
+        assertTrue(m_registry.histogram("eventlogs.process.write.batch.sizes").getCount() <= threads * logsPerThread);
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.eventd.sink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.opennms.core.ipc.sink.protobuf.AbstractProtobufSinkModule;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.config.api.EventdConfig;
+import org.opennms.netmgt.events.api.EventConstants;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.opennms.netmgt.xml.event.Log;
+
+public class EventModuleTest {
+
+    private EventModule m_xmlModule;
+
+    private EventModule m_protobufModule;
+
+    @Before
+    public void setUp() {
+        m_xmlModule = new EventModule(Mockito.mock(EventdConfig.class));
+        m_protobufModule = new EventModule(Mockito.mock(EventdConfig.class));
+        m_protobufModule.setProtobufEnabled(true);
+    }
+
+    @Test
+    public void canMarshalAndUnmarshalWithProtobuf() {
+        final Log log = createLog();
+
+        final byte[] bytes = m_protobufModule.marshal(log);
+        assertTrue(AbstractProtobufSinkModule.isProtobuf(bytes));
+        assertEquals(JaxbUtils.marshal(log), JaxbUtils.marshal(m_protobufModule.unmarshal(bytes)));
+    }
+
+    @Test
+    public void canUnmarshalBothFormats() {
+        final Log log = createLog();
+
+        final byte[] xml = m_xmlModule.marshal(log);
+        assertFalse(AbstractProtobufSinkModule.isProtobuf(xml));
+        assertEquals(JaxbUtils.marshal(log), JaxbUtils.marshal(m_protobufModule.unmarshal(xml)));
+        assertEquals(JaxbUtils.marshal(log), JaxbUtils.marshal(m_xmlModule.unmarshal(m_protobufModule.marshal(log))));
+    }
+
+    @Test
+    public void usesXmlForEventsWithUnmappedFields() {
+        final Log log = createLog();
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setReductionKey("%uei%:%nodeid%");
+        alarmData.setAlarmType(1);
+        log.getEvents().getEvent(0).setAlarmData(alarmData);
+
+        final byte[] bytes = m_protobufModule.marshal(log);
+        assertFalse(AbstractProtobufSinkModule.isProtobuf(bytes));
+        assertEquals(JaxbUtils.marshal(log), JaxbUtils.marshal(m_protobufModule.unmarshal(bytes)));
+    }
+
+    private static Log createLog() {
+        final Event event = new EventBuilder(EventConstants.NODE_LOST_SERVICE_EVENT_UEI, "poller", new Date(1525212855123L))
+                .setUuid("e2c4d5a0-4d3b-4c2f-9d1e-7f3a2b1c0d9e")
+                .setDistPoller("00000000-0000-0000-0000-000000000000")
+                .setNodeid(1)
+                .setInterface(InetAddressUtils.ONE_TWENTY_SEVEN)
+                .setService("ICMP")
+                .setIfIndex(3)
+                .setSeverity("Minor")
+                .setDescription("The ICMP service is down")
+                .setLogMessage("ICMP outage identified on interface 127.0.0.1")
+                .setCommunity("public")
+                .setGeneric(6)
+                .setSpecific(1)
+                .addParam("eventReason", "Ping timed out")
+                .addParam("ifAlias", "uplink", "string", "text")
+                .getEvent();
+        event.addLoggroup("outages");
+
+        final Header header = new Header();
+        header.setDpName("Minion");
+        final Log log = new Log();
+        log.setHeader(header);
+        log.addEvent(event);
+        return log;
+    }
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds which of a fixed set of literals occur in a text, with a single pass over the text.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+final class AhoCorasick {
+
+    private static final int ROOT = 0;
+
+    /** Sorted transition characters of every state. */
+    private final char[][] keys;
+    /** Target states, in the order of {@link #keys}. */
+    private final int[][] targets;
+    private final int[] failure;
+    /** Literals that end in every state, including the ones reached via failure links. */
+    private final int[][] outputs;
+    private final int numLiterals;
+
+    private AhoCorasick(char[][] keys, int[][] targets, int[] failure, int[][] outputs, int numLiterals) {
+        this.keys = keys;
+        this.targets = targets;
+        this.failure = failure;
+        this.outputs = outputs;
+        this.numLiterals = numLiterals;
+    }
+
+    static AhoCorasick build(List<String> literals) {
+        final List<Map<Character, Integer>> transitions = new ArrayList<>();
+        final List<List<Integer>> outputs = new ArrayList<>();
+        transitions.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+
+        for (int i = 0; i < literals.size(); i++) {
+            int state = ROOT;
+            for (char c : literals.get(i).toCharArray()) {
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.get(state).add(i);
+        }
+
+        final int numStates = transitions.size();
+        final char[][] keys = new char[numStates][];
+        final int[][] targets = new int[numStates][];
+        for (int state = 0; state < numStates; state++) {
+            final Map<Character, Integer> stateTransitions = transitions.get(state);
+            keys[state] = new char[stateTransitions.size()];
+            targets[state] = new int[stateTransitions.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> transition : stateTransitions.entrySet()) {
+                keys[state][k] = transition.getKey();
+                targets[state][k] = transition.getValue();
+                k++;
+            }
+        }
+
+        // Compute the failure links breadth-first, so that the links of shorter prefixes are known
+        final int[] failure = new int[numStates];
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (int target : targets[ROOT]) {
+            failure[target] = ROOT;
+            queue.add(target);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            for (int k = 0; k < keys[state].length; k++) {
+                final char c = keys[state][k];
+                final int target = targets[state][k];
+                int fallback = failure[state];
+                while (fallback != ROOT && next(keys, targets, fallback, c) < 0) {
+                    fallback = failure[fallback];
+                }
+                final int fallbackTarget = next(keys, targets, fallback, c);
+                failure[target] = fallbackTarget >= 0 && fallbackTarget != target ? fallbackTarget : ROOT;
+                outputs.get(target).addAll(outputs.get(failure[target]));
+                queue.add(target);
+            }
+        }
+
+        final int[][] outputArray = new int[numStates][];
+        for (int state = 0; state < numStates; state++) {
+            outputArray[state] = outputs.get(state).stream().mapToInt(Integer::intValue).distinct().toArray();
+        }
+        return new AhoCorasick(keys, targets, failure, outputArray, literals.size());
+    }
+
+    /**
+     * @return a flag for every literal, which is set if the literal occurs in the text
+     */
+    boolean[] find(CharSequence text) {
+        final boolean[] found = new boolean[numLiterals];
+        if (numLiterals == 0) {
+            return found;
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            int next;
+            while ((next = next(keys, targets, state, c)) < 0 && state != ROOT) {
+                state = failure[state];
+            }
+            state = next < 0 ? ROOT : next;
+            for (int literal : outputs[state]) {
+                found[literal] = true;
+            }
+        }
+        return found;
+    }
+
+    private static int next(char[][] keys, int[][] targets, int state, char c) {
+        final int k = Arrays.binarySearch(keys[state], c);
+        return k < 0 ? -1 : targets[state][k];
+    }
+}
@@ -28,7 +28,6 @@
 
 package org.opennms.netmgt.syslogd;
 
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,7 +36,6 @@ import java.util.EmptyStackException;
 import java.util.List;
 import java.util.Objects;
 import java.util.Stack;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -85,48 +83,71 @@ public class ParserStageSequenceBuilder {
 
 	/**
 	 * The state of an individual {@link ParserStage} operation.
+	 * 
+	 * The accumulated characters are always the characters that were read from the
+	 * start of the stage on, so they are not copied but kept as a range of the buffer
+	 * that is only decoded when the value is requested.
 	 */
 	private static class ParserStageState {
 		public final ByteBuffer buffer;
 
-		private StringBuilder accumulatedValue = null;
-		private AtomicInteger accumulatedSize = null;
+		private final int accumulatedStart;
+		private int accumulatedSize = 0;
 
 		// Only used by MatchMonth
 		public RadixTreeNode<CharacterWithValue> currentNode = null; 
 
 		public ParserStageState(ByteBuffer input) {
 			buffer = input;
+			accumulatedStart = input.position();
 		}
 
 		public void accumulate(char c) {
-			accessAccumulatedValue().append(c);
-			accessAccumulatedSize().incrementAndGet();
+			accumulatedSize++;
 		}
 
 		public int getAccumulatedSize() {
-			return accessAccumulatedSize().get();
+			return accumulatedSize;
 		}
 
-		private final StringBuilder accessAccumulatedValue() {
-			if (accumulatedValue == null) {
-				accumulatedValue = new StringBuilder();
+		/**
+		 * Decodes the accumulated characters the same way they were read from the buffer.
+		 */
+		private String getAccumulatedValue() {
+			if (accumulatedSize == 0) {
+				return null;
+			}
+			final char[] chars = new char[accumulatedSize];
+			for (int i = 0; i < accumulatedSize; i++) {
+				chars[i] = (char)buffer.get(accumulatedStart + i);
 			}
-			return accumulatedValue;
+			return new String(chars);
 		}
 
-		private final AtomicInteger accessAccumulatedSize() {
-			if (accumulatedSize == null) {
-				accumulatedSize = new AtomicInteger();
+		/**
+		 * @return the accumulated characters as an integer or -1 if they are not
+		 * only digits or could overflow
+		 */
+		private int getAccumulatedDigits() {
+			if (accumulatedSize == 0 || accumulatedSize > 9) {
+				return -1;
 			}
-			return accumulatedSize;
+			int value = 0;
+			for (int i = 0; i < accumulatedSize; i++) {
+				final char c = (char)buffer.get(accumulatedStart + i);
+				if (c < '0' || c > '9') {
+					return -1;
+				}
+				value = value * 10 + (c - '0');
+			}
+			return value;
 		}
 
 		@Override
 		public String toString() {
 			return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
-				.append("accumulatedValue", accumulatedValue == null ? "null" : accumulatedValue.toString())
-				.append("accumulatedSize", accumulatedSize == null ? 0 : accumulatedSize.get())
+				.append("accumulatedValue", accumulatedSize == 0 ? "null" : getAccumulatedValue())
+				.append("accumulatedSize", accumulatedSize)
 				.toString();
 		}
 	}
@@ -331,34 +352,32 @@ public class ParserStageSequenceBuilder {
 			if (incomingState == null) {
 				return null;
 			} else {
-				LOG.trace("Starting stage: " + this);
+				LOG.trace("Starting stage: {}", this);
 			}
 
-			ParserState state = incomingState.clone();
-
 			// Create a new state for the current ParserStage.
-			// Use ByteBuffer.duplicate() to create a buffer with marks
-			// and positions that only this stage will use.
-//			ParserStageState stageState = new ParserStageState(state.getBuffer().duplicate()); 
-			ParserStageState stageState = new ParserStageState(state.getBuffer()); 
+			// ParserState.getBuffer() creates a buffer with marks
+			// and positions that only this stage will use. The message
+			// is only copied once the stage emits a value into it.
+			ParserStageState stageState = new ParserStageState(incomingState.getBuffer()); 
 
 			while(true) {
 				stageState.buffer.mark();
 
-				char c;
-				try {
-					c = (char)stageState.buffer.get();
-				} catch (BufferUnderflowException e) {
+				// Check for the end of the buffer instead of relying on
+				// the BufferUnderflowException that is expensive to create
+				if (!stageState.buffer.hasRemaining()) {
 					if (m_terminal) {
+						ParserState state = new ParserState(stageState.buffer, incomingState.message, incomingState.ownsMessage());
 						if (m_resultConsumer != null) {
-							m_resultConsumer.accept(state, getValue(stageState));
+							state = accept(incomingState, stageState);
 						}
 
 //						// Reset any local state if necessary
 //						reset(stageState);
 
 						LOG.trace("End of buffer with terminal match");
-						return new ParserState(stageState.buffer, state.message);
+						return state;
 					} else if (m_optional) {
 //						// TODO: Should we reset the buffer here? It probably
 //						// doesn't matter since we're at the end of the buffer.
@@ -368,21 +387,23 @@ public class ParserStageSequenceBuilder {
 //						reset(stageState);
 
 						LOG.trace("End of buffer with optional match");
-						return new ParserState(stageState.buffer, state.message);
+						return new ParserState(stageState.buffer, incomingState.message, incomingState.ownsMessage());
 					} else {
 						// Reached end of buffer, match failed
-						LOG.trace("Parse failed due to buffer underflow: " + this);
+						LOG.trace("Parse failed due to buffer underflow: {}", this);
 						return null;
 					}
 				}
 
+				final char c = (char)stageState.buffer.get();
 				switch (acceptChar(stageState, c)) {
 					case CONTINUE:
 						continue;
-					case COMPLETE_AFTER_CONSUMING:
+					case COMPLETE_AFTER_CONSUMING: {
+						ParserState state = new ParserState(stageState.buffer, incomingState.message, incomingState.ownsMessage());
 						if (m_resultConsumer != null) {
 							try {
-								m_resultConsumer.accept(state, getValue(stageState));
+								state = accept(incomingState, stageState);
 							} catch (Exception e) {
 								// Conversion to value failed
 								LOG.trace("Parse failed on result consumer: {}", stageState, e);
@@ -393,11 +414,13 @@ public class ParserStageSequenceBuilder {
 //						// Reset any local state if necessary
 //						reset(stageState);
 
-						return new ParserState(stageState.buffer, state.message);
-					case COMPLETE_WITHOUT_CONSUMING:
+						return state;
+					}
+					case COMPLETE_WITHOUT_CONSUMING: {
+						ParserState state = new ParserState(stageState.buffer, incomingState.message, incomingState.ownsMessage());
 						if (m_resultConsumer != null) {
 							try {
-								m_resultConsumer.accept(state, getValue(stageState));
+								state = accept(incomingState, stageState);
 							} catch (Exception e) {
 								// Conversion to value failed
 								LOG.trace("Parse failed on result consumer: {}", stageState, e);
@@ -411,7 +434,8 @@ public class ParserStageSequenceBuilder {
 						// Move the mark back before the current character
 						stageState.buffer.reset();
 
-						return new ParserState(stageState.buffer, state.message);
+						return state;
+					}
 					case CANCEL:
 						if (m_optional) {
 							stageState.buffer.reset();
@@ -419,7 +443,7 @@ public class ParserStageSequenceBuilder {
 							// Reset any local state if necessary
 							reset(stageState);
 
-							return new ParserState(stageState.buffer, state.message);
+							return new ParserState(stageState.buffer, incomingState.message, incomingState.ownsMessage());
 						} else {
 							// Match failed
 							LOG.trace("Parse failed: {}", this);
@@ -429,6 +453,18 @@ public class ParserStageSequenceBuilder {
 			}
 		}
 
+		/**
+		 * Passes the value of the stage to the consumer. If the message may be
+		 * shared with other branches of the parse, the consumer gets a copy.
+		 */
+		private ParserState accept(ParserState incomingState, ParserStageState stageState) {
+			final R value = getValue(stageState);
+			final SyslogMessage message = incomingState.ownsMessage() ? incomingState.message : incomingState.message.clone();
+			final ParserState state = new ParserState(stageState.buffer, message, true);
+			m_resultConsumer.accept(state, value);
+			return state;
+		}
+
 		public void reset(ParserStageState state) {
 			// Do nothing by default
 		}
@@ -442,12 +478,11 @@ public class ParserStageSequenceBuilder {
 		}
 
 		protected static String getAccumulatedValue(ParserStageState state) {
-			final StringBuilder accumulatedValue = state.accumulatedValue;
-			if (accumulatedValue == null) {
-				return null;
-			} else {
-				return accumulatedValue.toString();
-			}
+			return state.getAccumulatedValue();
+		}
+
+		protected static int getAccumulatedDigits(ParserStageState state) {
+			return state.getAccumulatedDigits();
 		}
 
 		protected R getValue(ParserStageState state) {
@@ -912,6 +947,11 @@ public class ParserStageSequenceBuilder {
 
 		@Override
 		public Integer getValue(ParserStageState state) {
+			final int digits = getAccumulatedDigits(state);
+			if (digits >= 0) {
+				return digits;
+			}
+
 			// Trim the leading zeros from this value
 			String value = getAccumulatedValue(state);
 			boolean trimmed = false;
@@ -961,6 +1001,10 @@ public class ParserStageSequenceBuilder {
 
 		@Override
 		public Integer getValue(ParserStageState state) {
+			final int digits = getAccumulatedDigits(state);
+			if (digits >= 0) {
+				return digits;
+			}
 			return trimAndConvert(getAccumulatedValue(state));
 		}
 
@@ -48,13 +48,36 @@ public class ParserState implements Cloneable {
 	// TODO: Replace with a strategy
 	public final SyslogMessage message;
 
+	/**
+	 * True if no other state refers to the message, so that it can
+	 * be modified without making a copy first.
+	 */
+	private final boolean ownsMessage;
+
 	public ParserState(ByteBuffer input) {
 		this(input, new SyslogMessage());
 	}
 
 	public ParserState(ByteBuffer input, SyslogMessage message) {
+		this(input, message, false);
+	}
+
+	ParserState(ByteBuffer input, SyslogMessage message, boolean ownsMessage) {
 		this.buffer = input;
 		this.message = message;
+		this.ownsMessage = ownsMessage;
+	}
+
+	boolean ownsMessage() {
+		return ownsMessage;
+	}
+
+	/**
+	 * @return a state with the same buffer and message that can be handed to
+	 * several parser stages, each of which will copy the message before modifying it
+	 */
+	ParserState share() {
+		return ownsMessage ? new ParserState(buffer, message, false) : this;
 	}
 
 	public ByteBuffer getBuffer() {
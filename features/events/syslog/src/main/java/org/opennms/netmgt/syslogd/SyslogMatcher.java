@@ -0,0 +1,521 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link UeiMatch} and {@link HideMatch} entries of the Syslogd configuration,
+ * compiled for matching many messages.
+ *
+ * All patterns are compiled once. In addition, a literal that must be contained
+ * in every matching message is extracted from each expression, and all of these
+ * literals are searched for with a single {@link AhoCorasick} pass over the message.
+ * Only the entries whose literal was found are evaluated, in the order of the
+ * configuration, so the first matching entry is the same as when evaluating all of them.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public class SyslogMatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogMatcher.class);
+
+    /**
+     * Literals shorter than this would make nearly every message a candidate.
+     */
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    private static final int NO_LITERAL = -1;
+
+    private static volatile SyslogMatcher s_lastCompiled;
+
+    private final List<UeiMatch> m_ueiSource;
+    private final int m_ueiSourceSize;
+    private final List<HideMatch> m_hideSource;
+    private final int m_hideSourceSize;
+
+    private final CompiledUeiMatch[] m_ueiMatches;
+    private final AhoCorasick m_ueiFilter;
+    private final CompiledHideMatch[] m_hideMatches;
+    private final AhoCorasick m_hideFilter;
+
+    private SyslogMatcher(List<UeiMatch> ueiMatches, List<HideMatch> hideMatches) {
+        m_ueiSource = ueiMatches;
+        m_ueiSourceSize = ueiMatches == null ? 0 : ueiMatches.size();
+        m_hideSource = hideMatches;
+        m_hideSourceSize = hideMatches == null ? 0 : hideMatches.size();
+
+        final Map<String, Integer> ueiLiterals = new LinkedHashMap<>();
+        final List<CompiledUeiMatch> compiledUeiMatches = new ArrayList<>();
+        for (UeiMatch uei : ueiMatches == null ? Collections.<UeiMatch>emptyList() : ueiMatches) {
+            compiledUeiMatches.add(new CompiledUeiMatch(uei, ueiLiterals));
+        }
+        m_ueiMatches = compiledUeiMatches.toArray(new CompiledUeiMatch[0]);
+        m_ueiFilter = AhoCorasick.build(new ArrayList<>(ueiLiterals.keySet()));
+
+        final Map<String, Integer> hideLiterals = new LinkedHashMap<>();
+        final List<CompiledHideMatch> compiledHideMatches = new ArrayList<>();
+        for (HideMatch hide : hideMatches == null ? Collections.<HideMatch>emptyList() : hideMatches) {
+            compiledHideMatches.add(new CompiledHideMatch(hide, hideLiterals));
+        }
+        m_hideMatches = compiledHideMatches.toArray(new CompiledHideMatch[0]);
+        m_hideFilter = AhoCorasick.build(new ArrayList<>(hideLiterals.keySet()));
+
+        LOG.debug("Compiled {} UEI matches with {} literals and {} hide matches with {} literals.",
+                m_ueiMatches.length, ueiLiterals.size(), m_hideMatches.length, hideLiterals.size());
+    }
+
+    public static SyslogMatcher compile(SyslogdConfig config) {
+        return new SyslogMatcher(config.getUeiList(), config.getHideMessages());
+    }
+
+    /**
+     * Returns the matcher for the given configuration, reusing the most recently
+     * compiled one if the configuration has not been changed since.
+     */
+    public static SyslogMatcher forConfig(SyslogdConfig config) {
+        SyslogMatcher matcher = s_lastCompiled;
+        if (matcher == null || !matcher.isCompiledFrom(config)) {
+            matcher = compile(config);
+            s_lastCompiled = matcher;
+        }
+        return matcher;
+    }
+
+    /**
+     * @return true if the matches of the configuration are the ones this matcher was compiled from
+     */
+    public boolean isCompiledFrom(SyslogdConfig config) {
+        final List<UeiMatch> ueiMatches = config.getUeiList();
+        final List<HideMatch> hideMatches = config.getHideMessages();
+        // Included files are added to the lists, so their size is compared as well
+        return ueiMatches == m_ueiSource && (ueiMatches == null ? 0 : ueiMatches.size()) == m_ueiSourceSize
+                && hideMatches == m_hideSource && (hideMatches == null ? 0 : hideMatches.size()) == m_hideSourceSize;
+    }
+
+    /**
+     * Finds the first {@link UeiMatch} that matches the message.
+     *
+     * @return the match, or null if no entry matches
+     */
+    public UeiMatchResult findUeiMatch(SyslogMessage message, String facilityTxt, String priorityTxt) {
+        if (m_ueiMatches.length == 0) {
+            return null;
+        }
+        final String text = message.getMessage();
+        final boolean[] found = m_ueiFilter.find(text);
+        String hostAddress = null;
+        for (CompiledUeiMatch uei : m_ueiMatches) {
+            if (uei.literal != NO_LITERAL && !found[uei.literal]) {
+                continue;
+            }
+            if (!containsIgnoreCase(uei.source.getFacilities(), facilityTxt)
+                    || !containsIgnoreCase(uei.source.getSeverities(), priorityTxt)
+                    || !matchFind(uei.processPattern, message.getProcessName())
+                    || !matchFind(uei.hostnamePattern, message.getHostName())) {
+                continue;
+            }
+            if (uei.hostaddrPattern != null) {
+                if (hostAddress == null) {
+                    hostAddress = str(message.getHostAddress());
+                }
+                if (!matchFind(uei.hostaddrPattern, hostAddress)) {
+                    continue;
+                }
+            }
+
+            if (uei.substring) {
+                if (text.contains(uei.source.getMatch().getExpression())) {
+                    return new UeiMatchResult(uei.source, null);
+                }
+            } else if (uei.pattern != null) {
+                final Matcher matcher = uei.pattern.matcher(text);
+                if (matcher.find()) {
+                    return new UeiMatchResult(uei.source, matcher);
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean hasHideMatches() {
+        return m_hideMatches.length > 0;
+    }
+
+    /**
+     * @return true if any {@link HideMatch} matches the full text of the message
+     */
+    public boolean matchesHide(String fullText) {
+        final boolean[] found = m_hideFilter.find(fullText);
+        for (CompiledHideMatch hide : m_hideMatches) {
+            if (hide.literal != NO_LITERAL && !found[hide.literal]) {
+                continue;
+            }
+            if (hide.substring) {
+                if (fullText.contains(hide.source.getMatch().getExpression())) {
+                    return true;
+                }
+            } else if (hide.pattern != null && hide.pattern.matcher(fullText).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The {@link UeiMatch} that matched a message, and the regex {@link Matcher} if it is a regex match.
+     */
+    public static class UeiMatchResult {
+        private final UeiMatch m_ueiMatch;
+        private final Matcher m_matcher;
+
+        private UeiMatchResult(UeiMatch ueiMatch, Matcher matcher) {
+            m_ueiMatch = ueiMatch;
+            m_matcher = matcher;
+        }
+
+        public UeiMatch getUeiMatch() {
+            return m_ueiMatch;
+        }
+
+        public Matcher getMatcher() {
+            return m_matcher;
+        }
+    }
+
+    private static class CompiledUeiMatch {
+        private final UeiMatch source;
+        private final boolean substring;
+        private final Pattern pattern;
+        private final Pattern processPattern;
+        private final Pattern hostnamePattern;
+        private final Pattern hostaddrPattern;
+        private final int literal;
+
+        private CompiledUeiMatch(UeiMatch source, Map<String, Integer> literals) {
+            this.source = source;
+            final String type = source.getMatch().getType();
+            final String expression = source.getMatch().getExpression();
+            substring = type.equals("substr");
+            if (substring) {
+                pattern = null;
+                literal = addLiteral(literals, expression);
+            } else if (type.startsWith("regex")) {
+                pattern = compilePattern(expression, "uei-match");
+                literal = pattern != null ? addLiteral(literals, extractLiteral(expression)) : NO_LITERAL;
+            } else {
+                pattern = null;
+                literal = NO_LITERAL;
+            }
+            processPattern = source.getProcessMatch().map(m -> compileOptionalPattern(m.getExpression(), "process-match")).orElse(null);
+            hostnamePattern = source.getHostnameMatch().map(m -> compileOptionalPattern(m.getExpression(), "hostname-match")).orElse(null);
+            hostaddrPattern = source.getHostaddrMatch().map(m -> compileOptionalPattern(m.getExpression(), "hostaddr-match")).orElse(null);
+        }
+    }
+
+    private static class CompiledHideMatch {
+        private final HideMatch source;
+        private final boolean substring;
+        private final Pattern pattern;
+        private final int literal;
+
+        private CompiledHideMatch(HideMatch source, Map<String, Integer> literals) {
+            this.source = source;
+            final String type = source.getMatch().getType();
+            final String expression = source.getMatch().getExpression();
+            substring = type.equals("substr");
+            if (substring) {
+                pattern = null;
+                literal = addLiteral(literals, expression);
+            } else if (type.equals("regex")) {
+                pattern = compilePattern(expression, "hide-match");
+                literal = pattern != null ? addLiteral(literals, extractLiteral(expression)) : NO_LITERAL;
+            } else {
+                pattern = null;
+                literal = NO_LITERAL;
+            }
+        }
+    }
+
+    /**
+     * An optional match whose pattern fails to compile never matches.
+     */
+    private static final Pattern NEVER_MATCHES = Pattern.compile("(?!)");
+
+    private static Pattern compileOptionalPattern(String expression, String context) {
+        final Pattern pattern = compilePattern(expression, context);
+        return pattern != null ? pattern : NEVER_MATCHES;
+    }
+
+    private static Pattern compilePattern(String expression, String context) {
+        try {
+            return Pattern.compile(expression, Pattern.MULTILINE);
+        } catch (final PatternSyntaxException e) {
+            LOG.warn("Failed to compile {} regex pattern '{}'", context, expression, e);
+            return null;
+        }
+    }
+
+    private static int addLiteral(Map<String, Integer> literals, String literal) {
+        if (literal == null || literal.length() < MIN_LITERAL_LENGTH) {
+            return NO_LITERAL;
+        }
+        return literals.computeIfAbsent(literal, l -> literals.size());
+    }
+
+    private static boolean matchFind(Pattern pattern, String input) {
+        if (pattern == null) {
+            return true;
+        }
+        return input != null && pattern.matcher(input).find();
+    }
+
+    private static boolean containsIgnoreCase(List<String> collection, String match) {
+        if (collection.size() == 0) return true;
+        for (String string : collection) {
+            if (string.equalsIgnoreCase(match)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Extracts the longest literal that is part of every match of the expression.
+     *
+     * This only looks at the top level of the expression and is deliberately conservative:
+     * groups, character classes, escapes other than simple ones and quantified characters
+     * end a literal, and expressions with alternations, embedded flags or quoting have no literal.
+     *
+     * @return the literal, or null if none could be found
+     */
+    static String extractLiteral(String expression) {
+        if (expression.contains("(?") || expression.contains("\\Q")) {
+            // Embedded flags could make the match case-insensitive
+            return null;
+        }
+        String longest = null;
+        final StringBuilder current = new StringBuilder();
+        final int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            final char c = expression.charAt(i);
+            switch (c) {
+                case '|':
+                    return null;
+                case '(': {
+                    final int end = skipGroup(expression, i);
+                    if (end < 0) {
+                        return null;
+                    }
+                    longest = longer(longest, current);
+                    i = end;
+                    continue;
+                }
+                case '[': {
+                    final int end = skipCharacterClass(expression, i);
+                    if (end < 0) {
+                        return null;
+                    }
+                    longest = longer(longest, current);
+                    i = end;
+                    continue;
+                }
+                case ')':
+                    return null;
+                case '.':
+                case '^':
+                case '$':
+                    longest = longer(longest, current);
+                    i++;
+                    continue;
+                case '?':
+                case '*':
+                case '+':
+                case '{': {
+                    // Quantifier of something that is not part of the current literal, or a modifier of a quantifier
+                    longest = longer(longest, current);
+                    i = c == '{' ? skipPast(expression, i, '}') : i + 1;
+                    if (i < 0) {
+                        return null;
+                    }
+                    continue;
+                }
+                case '\\': {
+                    if (i + 1 >= length) {
+                        return null;
+                    }
+                    final char escaped = expression.charAt(i + 1);
+                    final int literalChar = unescape(escaped);
+                    if (literalChar < 0) {
+                        if ("dDsSwWbBAGZzRhHvV".indexOf(escaped) < 0) {
+                            // Escapes with arguments or back references
+                            return null;
+                        }
+                        longest = longer(longest, current);
+                        i += 2;
+                        continue;
+                    }
+                    i = appendLiteral(expression, i + 2, (char) literalChar, current);
+                    if (i < 0) {
+                        longest = longer(longest, current);
+                        i = -i;
+                    }
+                    continue;
+                }
+                default:
+                    i = appendLiteral(expression, i + 1, c, current);
+                    if (i < 0) {
+                        longest = longer(longest, current);
+                        i = -i;
+                    }
+            }
+        }
+        longest = longer(longest, current);
+        return longest;
+    }
+
+    /**
+     * Appends the character, taking a quantifier that follows it into account.
+     *
+     * @return the index to continue at, negative if the literal ended
+     */
+    private static int appendLiteral(String expression, int next, char c, StringBuilder current) {
+        if (next < expression.length()) {
+            final char quantifier = expression.charAt(next);
+            if (quantifier == '?' || quantifier == '*' || quantifier == '{') {
+                // The character is optional, or its count is not known
+                return -next;
+            } else if (quantifier == '+') {
+                current.append(c);
+                return -next;
+            }
+        }
+        current.append(c);
+        return next;
+    }
+
+    private static String longer(String longest, StringBuilder current) {
+        final String candidate = current.toString();
+        current.setLength(0);
+        if (longest == null || candidate.length() > longest.length()) {
+            return candidate;
+        }
+        return longest;
+    }
+
+    private static int unescape(char escaped) {
+        if (!Character.isLetterOrDigit(escaped)) {
+            return escaped;
+        }
+        switch (escaped) {
+            case 't': return '\t';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 'f': return '\f';
+            case 'a': return '\u0007';
+            case 'e': return '\u001B';
+            default: return -1;
+        }
+    }
+
+    /**
+     * @return the index after the group that starts at the given index, or -1 if it is not closed
+     */
+    private static int skipGroup(String expression, int start) {
+        int depth = 0;
+        for (int i = start; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipCharacterClass(expression, i);
+                if (i < 0) {
+                    return -1;
+                }
+                i--;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index after the character class that starts at the given index, or -1 if it is not closed
+     */
+    private static int skipCharacterClass(String expression, int start) {
+        int depth = 0;
+        for (int i = start; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+                // A closing bracket right after the opening one is part of the class
+                if (i + 1 < expression.length() && expression.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < expression.length() && expression.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int skipPast(String expression, int start, char end) {
+        final int index = expression.indexOf(end, start);
+        return index < 0 ? -1 : index + 1;
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.readInetAddress;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.readMessage;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeInetAddress;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeMessage;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.opennms.core.ipc.sink.protobuf.ProtobufCodec;
+import org.opennms.netmgt.syslogd.api.SyslogMessageDTO;
+import org.opennms.netmgt.syslogd.api.SyslogMessageLogDTO;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Maps the {@link SyslogMessageLogDTO} to the protocol buffers wire format. The messages are written
+ * and read directly, without generated classes, using the following schema:
+ * <pre>
+ * message SyslogMessageLog {
+ *     optional bytes source_address = 1;
+ *     optional int32 source_port = 2;
+ *     optional string system_id = 3;
+ *     optional string location = 4;
+ *     repeated SyslogMessage messages = 5;
+ * }
+ *
+ * message SyslogMessage {
+ *     optional int64 timestamp = 1;
+ *     optional bytes bytes = 2;
+ * }
+ * </pre>
+ */
+public class SyslogMessageLogProtobufCodec implements ProtobufCodec<SyslogMessageLogDTO> {
+
+    @Override
+    public void encode(SyslogMessageLogDTO log, CodedOutputStream out) throws IOException {
+        writeInetAddress(out, 1, log.getSourceAddress());
+        out.writeInt32(2, log.getSourcePort());
+        writeString(out, 3, log.getSystemId());
+        writeString(out, 4, log.getLocation());
+        for (SyslogMessageDTO message : log.getMessages()) {
+            writeMessage(out, 5, message, SyslogMessageLogProtobufCodec::encodeMessage);
+        }
+    }
+
+    @Override
+    public SyslogMessageLogDTO decode(CodedInputStream in) throws IOException {
+        final SyslogMessageLogDTO log = new SyslogMessageLogDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: log.setSourceAddress(readInetAddress(in)); break;
+                case 2: log.setSourcePort(in.readInt32()); break;
+                case 3: log.setSystemId(in.readString()); break;
+                case 4: log.setLocation(in.readString()); break;
+                case 5: log.getMessages().add(readMessage(in, SyslogMessageLogProtobufCodec::decodeMessage)); break;
+                default: in.skipField(tag);
+            }
+        }
+        return log;
+    }
+
+    private static void encodeMessage(SyslogMessageDTO message, CodedOutputStream out) throws IOException {
+        if (message.getTimestamp() != null) {
+            out.writeInt64(1, message.getTimestamp().getTime());
+        }
+        final ByteBuffer bytes = message.getBytes();
+        if (bytes != null) {
+            // Same as the ByteBufferXmlAdapter, the position of the buffer is ignored since
+            // some receivers hand over buffers which have not been flipped after being filled
+            if (bytes.hasArray()) {
+                out.writeByteArray(2, bytes.array());
+            } else {
+                final ByteBuffer duplicate = bytes.duplicate();
+                duplicate.rewind();
+                final byte[] copy = new byte[duplicate.remaining()];
+                duplicate.get(copy);
+                out.writeByteArray(2, copy);
+            }
+        }
+    }
+
+    private static SyslogMessageDTO decodeMessage(CodedInputStream in) throws IOException {
+        final SyslogMessageDTO message = new SyslogMessageDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: message.setTimestamp(new Date(in.readInt64())); break;
+                case 2: message.setBytes(ByteBuffer.wrap(in.readByteArray())); break;
+                default: in.skipField(tag);
+            }
+        }
+        return message;
+    }
+}
@@ -71,12 +71,20 @@ public class SyslogParser {
         }
     );
 
+    private static final LoadingCache<Class<? extends SyslogParser>,Constructor<? extends SyslogParser>> PARSER_CONSTRUCTORS = CacheBuilder.newBuilder().build(
+        new CacheLoader<Class<? extends SyslogParser>,Constructor<? extends SyslogParser>>() {
+            public Constructor<? extends SyslogParser> load(Class<? extends SyslogParser> parserClass) throws NoSuchMethodException {
+                return parserClass.getConstructor(SyslogdConfig.class, ByteBuffer.class);
+            }
+        }
+    );
+
     public static SyslogParser getParserInstance(SyslogdConfig config, ByteBuffer text) throws MessageDiscardedException {
         Class<? extends SyslogParser> parserClass = PARSER_CLASSES.getUnchecked(config.getParser());
 
         final SyslogParser retval;
         try {
-            Constructor<? extends SyslogParser> m = parserClass.getConstructor(SyslogdConfig.class, ByteBuffer.class);
+            Constructor<? extends SyslogParser> m = PARSER_CONSTRUCTORS.getUnchecked(parserClass);
             retval = (SyslogParser)m.newInstance(config, text);
         } catch (final Exception ex) {
             LOG.debug("Unable to get parser for class '{}'", parserClass.getName(), ex);
@@ -75,6 +75,7 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
     private EventForwarder eventForwarder;
 
     private final String localAddr;
+    private volatile SyslogMatcher syslogMatcher;
     private final Timer consumerTimer;
     private final Timer toEventTimer;
     private final Timer broadcastTimer;
@@ -112,6 +113,7 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
         final Log elog = new Log();
         final Events events = new Events();
         elog.setEvents(events);
+        final SyslogMatcher matcher = getSyslogMatcher();
         for (SyslogMessageDTO message : messageLog.getMessages()) {
             try {
                 LOG.debug("Converting syslog message into event.");
@@ -122,7 +124,8 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
                         messageLog.getSourcePort(),
                         message.getBytes(),
                         message.getTimestamp(),
-                        syslogdConfig
+                        syslogdConfig,
+                        matcher
                     );
                 events.addEvent(re.getEvent());
             } catch (final MessageDiscardedException e) {
@@ -134,6 +137,18 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
         return elog;
     }
 
+    /**
+     * The matcher is shared by all threads and only compiled again when the configuration was changed.
+     */
+    private SyslogMatcher getSyslogMatcher() {
+        SyslogMatcher matcher = syslogMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(syslogdConfig)) {
+            matcher = SyslogMatcher.compile(syslogdConfig);
+            syslogMatcher = matcher;
+        }
+        return matcher;
+    }
+
     private void broadcast(Log eventLog)  {
         if (LOG.isTraceEnabled())  {
             for (Event event : eventLog.getEvents().getEventCollection()) {
@@ -197,6 +212,7 @@ public class SyslogSinkConsumer implements MessageConsumer<SyslogConnection, Sys
 
     public void setSyslogdConfig(SyslogdConfig syslogdConfig) {
         this.syslogdConfig = syslogdConfig;
+        this.syslogMatcher = null;
     }
 
     public void setDistPollerDao(DistPollerDao distPollerDao) {
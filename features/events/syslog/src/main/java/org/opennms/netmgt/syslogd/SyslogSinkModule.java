@@ -33,14 +33,14 @@ import java.util.Objects;
 
 import org.opennms.core.ipc.sink.api.AggregationPolicy;
 import org.opennms.core.ipc.sink.api.AsyncPolicy;
-import org.opennms.core.ipc.sink.xml.AbstractXmlSinkModule;
+import org.opennms.core.ipc.sink.protobuf.AbstractProtobufSinkModule;
 import org.opennms.netmgt.config.SyslogdConfig;
 import org.opennms.netmgt.dao.api.DistPollerDao;
 import org.opennms.netmgt.syslogd.api.SyslogConnection;
 import org.opennms.netmgt.syslogd.api.SyslogMessageDTO;
 import org.opennms.netmgt.syslogd.api.SyslogMessageLogDTO;
 
-public class SyslogSinkModule extends AbstractXmlSinkModule<SyslogConnection, SyslogMessageLogDTO> {
+public class SyslogSinkModule extends AbstractProtobufSinkModule<SyslogConnection, SyslogMessageLogDTO> {
 
     public static final String MODULE_ID = "Syslog";
 
@@ -48,7 +48,7 @@ public class SyslogSinkModule extends AbstractXmlSinkModule<SyslogConnection, Sy
     private final DistPollerDao distPollerDao;
 
     public SyslogSinkModule(SyslogdConfig config, DistPollerDao distPollerDao) {
-        super(SyslogMessageLogDTO.class);
+        super(SyslogMessageLogDTO.class, new SyslogMessageLogProtobufCodec());
         this.config = Objects.requireNonNull(config);
         this.distPollerDao = Objects.requireNonNull(distPollerDao);
     }
@@ -396,6 +396,37 @@ public class BufferParserTest {
 		assertNull("No pattern should match", root.join());
 	}
 
+	/**
+	 * Values emitted by a branch that fails later on must not be part of the
+	 * message that is returned by another branch.
+	 */
+	@Test
+	public void testFailedBranchDoesNotModifyMessage() {
+		RadixTreeParser treeParser = new RadixTreeParser();
+		treeParser.teach(new ParserStageSequenceBuilder()
+			.intUntilWhitespace((s,v) -> s.message.setProcessId(String.valueOf(v)))
+			.whitespace()
+			.character('X')
+			.getStages().toArray(new ParserStage[0]));
+		treeParser.teach(new ParserStageSequenceBuilder()
+			.stringUntilWhitespace((s,v) -> s.message.setHostName(v))
+			.whitespace()
+			.terminal().string((s,v) -> s.message.setMessage(v))
+			.getStages().toArray(new ParserStage[0]));
+		treeParser.performEdgeCompression();
+
+		SyslogMessage message = treeParser.parse(ByteBuffer.wrap("00123 hello".getBytes())).join();
+		assertNotNull(message);
+		assertNull(message.getProcessId());
+		assertEquals("00123", message.getHostName());
+		assertEquals("hello", message.getMessage());
+
+		message = treeParser.parse(ByteBuffer.wrap("00123 X".getBytes())).join();
+		assertNotNull(message);
+		assertEquals("123", message.getProcessId());
+		assertNull(message.getHostName());
+	}
+
 	@Test
 	public void testGrokRadixTree() {
 		RadixTreeParser radixParser = new RadixTreeParser();
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.ProcessMatch;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+
+public class SyslogMatcherTest {
+
+    @Test
+    public void canExtractLiterals() {
+        assertEquals("foo", SyslogMatcher.extractLiteral("foo"));
+        assertEquals("load test ", SyslogMatcher.extractLiteral("^.*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+))"));
+        assertEquals(" session opened ", SyslogMatcher.extractLiteral("^\\d+ session opened [a-z]+$"));
+        assertEquals("link down", SyslogMatcher.extractLiteral("link\\s*(up)?\\s+link down"));
+        assertEquals("a.b", SyslogMatcher.extractLiteral("a\\.b.c"));
+        // Optional characters are not part of the literal
+        assertEquals("colo", SyslogMatcher.extractLiteral("colou?r"));
+        assertEquals("abc", SyslogMatcher.extractLiteral("abc+d"));
+        assertEquals("xy", SyslogMatcher.extractLiteral("xyz{2}"));
+
+        // Alternations, embedded flags, quoting and back references are not supported
+        assertNull(SyslogMatcher.extractLiteral("foo|bar"));
+        assertNull(SyslogMatcher.extractLiteral("(?i)foo"));
+        assertNull(SyslogMatcher.extractLiteral("\\Qfoo\\E"));
+        assertNull(SyslogMatcher.extractLiteral("(foo) \\1"));
+        assertNull(SyslogMatcher.extractLiteral("\\p{Alpha}foo"));
+    }
+
+    @Test
+    public void extractedLiteralsAreContainedInMatches() {
+        final List<String> expressions = Arrays.asList("colou?r", "abc+d", "xyz{2}", "^.*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+))",
+                "a\\.b.c", "[]x]yz", "foo[^]]bar");
+        final List<String> inputs = Arrays.asList("color", "colour", "abcccd", "xyzz", "load test 1 on tty1", "a.bxc", "]yz", "foo-bar");
+        for (String expression : expressions) {
+            final String literal = SyslogMatcher.extractLiteral(expression);
+            for (String input : inputs) {
+                if (Pattern.compile(expression).matcher(input).find()) {
+                    assertTrue(expression + " matches " + input, literal == null || input.contains(literal));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsFirstMatchInOrder() {
+        final UeiMatch ueiSubstr = ueiMatch("substr", "session", "uei.opennms.org/test/substr");
+        final UeiMatch ueiNoLiteral = ueiMatch("regex", "^\\d+$", "uei.opennms.org/test/digits");
+        final UeiMatch ueiRegex = ueiMatch("regex", "session (\\w+) for user", "uei.opennms.org/test/regex");
+        final UeiMatch ueiProcess = ueiMatch("regex", "for user (\\w+)", "uei.opennms.org/test/process");
+        ueiProcess.setProcessMatch(processMatch("^sshd$"));
+
+        final SyslogMatcher matcher = SyslogMatcher.compile(config(
+                Arrays.asList(ueiProcess, ueiNoLiteral, ueiRegex, ueiSubstr), new ArrayList<>()));
+
+        SyslogMatcher.UeiMatchResult result = matcher.findUeiMatch(message("su", "session opened for user root"), "user", "Info");
+        assertNotNull(result);
+        assertSame(ueiRegex, result.getUeiMatch());
+        assertEquals("opened", result.getMatcher().group(1));
+
+        result = matcher.findUeiMatch(message("sshd", "session opened for user root"), "user", "Info");
+        assertSame(ueiProcess, result.getUeiMatch());
+        assertEquals("root", result.getMatcher().group(1));
+
+        result = matcher.findUeiMatch(message("su", "12345"), "user", "Info");
+        assertSame(ueiNoLiteral, result.getUeiMatch());
+
+        result = matcher.findUeiMatch(message("su", "session closed"), "user", "Info");
+        assertSame(ueiSubstr, result.getUeiMatch());
+        assertNull(result.getMatcher());
+
+        assertNull(matcher.findUeiMatch(message("su", "something else"), "user", "Info"));
+    }
+
+    @Test
+    public void invalidPatternsNeverMatch() {
+        final UeiMatch invalid = ueiMatch("regex", "session (", "uei.opennms.org/test/invalid");
+        final UeiMatch invalidProcess = ueiMatch("substr", "session", "uei.opennms.org/test/invalidProcess");
+        invalidProcess.setProcessMatch(processMatch("[sshd"));
+        final UeiMatch valid = ueiMatch("substr", "session", "uei.opennms.org/test/valid");
+
+        final SyslogMatcher matcher = SyslogMatcher.compile(config(
+                Arrays.asList(invalid, invalidProcess, valid), new ArrayList<>()));
+
+        assertSame(valid, matcher.findUeiMatch(message("sshd", "session ("), "user", "Info").getUeiMatch());
+    }
+
+    @Test
+    public void canMatchHideMatches() {
+        final SyslogMatcher matcher = SyslogMatcher.compile(config(new ArrayList<>(),
+                Arrays.asList(hideMatch("substr", "secret"), hideMatch("regex", "[Pp]assword: \\S+"))));
+
+        assertTrue(matcher.hasHideMatches());
+        assertTrue(matcher.matchesHide("the secret is out"));
+        assertTrue(matcher.matchesHide("Password: foo"));
+        assertFalse(matcher.matchesHide("password:"));
+        assertFalse(matcher.matchesHide("nothing to hide"));
+    }
+
+    @Test
+    public void isCompiledFromTheSameMatches() {
+        final List<UeiMatch> ueiMatches = new ArrayList<>();
+        ueiMatches.add(ueiMatch("substr", "foo", "uei.opennms.org/test/foo"));
+        final SyslogdConfig config = config(ueiMatches, new ArrayList<>());
+
+        final SyslogMatcher matcher = SyslogMatcher.compile(config);
+        assertTrue(matcher.isCompiledFrom(config));
+
+        // Included files are added to the existing list
+        ueiMatches.add(ueiMatch("substr", "bar", "uei.opennms.org/test/bar"));
+        assertFalse(matcher.isCompiledFrom(config));
+        assertTrue(SyslogMatcher.compile(config).isCompiledFrom(config));
+
+        // Reloading replaces the list
+        assertFalse(matcher.isCompiledFrom(config(new ArrayList<>(ueiMatches), config.getHideMessages())));
+    }
+
+    private static UeiMatch ueiMatch(String type, String expression, String uei) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        match.setDefaultParameterMapping(true);
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setMatch(match);
+        ueiMatch.setUei(uei);
+        return ueiMatch;
+    }
+
+    private static HideMatch hideMatch(String type, String expression) {
+        final Match match = new Match();
+        match.setType(type);
+        match.setExpression(expression);
+        final HideMatch hideMatch = new HideMatch();
+        hideMatch.setMatch(match);
+        return hideMatch;
+    }
+
+    private static ProcessMatch processMatch(String expression) {
+        final ProcessMatch processMatch = new ProcessMatch();
+        processMatch.setExpression(expression);
+        return processMatch;
+    }
+
+    private static SyslogMessage message(String processName, String text) {
+        final SyslogMessage message = new SyslogMessage();
+        message.setFacility(SyslogFacility.USER);
+        message.setSeverity(SyslogSeverity.INFORMATIONAL);
+        message.setHostName("localhost");
+        message.setProcessName(processName);
+        message.setMessage(text);
+        return message;
+    }
+
+    private static SyslogdConfig config(List<UeiMatch> ueiMatches, List<HideMatch> hideMatches) {
+        final SyslogdConfig config = mock(SyslogdConfig.class);
+        when(config.getUeiList()).thenReturn(ueiMatches);
+        when(config.getHideMessages()).thenReturn(hideMatches);
+        return config;
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.dao.api.MonitoringLocationDao;
+
+/**
+ * Measures the number of syslog messages that can be parsed, and converted
+ * to events, per second on a single thread.
+ *
+ * This is not run as part of the build, use {@link #main(String[])} to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SyslogParserBenchmark {
+
+    private static final String[] MESSAGES = new String[] {
+        "<34>Oct 11 22:14:15 mymachine su: 'su root' failed for lonvick on /dev/pts/8",
+        "<13>Mar 14 17:10:25 petrus sudo[12345]: cyrille : user NOT in sudoers ; TTY=pts/2 ; PWD=/home/cyrille ; USER=root",
+        "<189>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 - An application event log entry...",
+        "<165>1 2003-10-11T22:14:15.003000Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\"] BOMAn application event log entry...",
+        "<31>main: 2010-08-19 localhost foo10000: load test 10000 on tty1",
+        "<11>Jul 19 15:55:21 otrs-test OTRS-CGI-76[14364]: [Error][Kernel::System::ImportExport::ObjectBackend::CI2CILink::ImportDataSave][Line:468]: CILink: Could not create link between CIs!",
+    };
+
+    private final SyslogConfigBean m_config = new SyslogConfigBean();
+
+    private ByteBuffer[] m_buffers;
+
+    @Setup
+    public void setUp() {
+        m_config.setParser(RadixTreeSyslogParser.class.getName());
+        m_config.setDiscardUei("DISCARD-MATCHING-MESSAGES");
+
+        m_buffers = new ByteBuffer[MESSAGES.length];
+        for (int i = 0; i < MESSAGES.length; i++) {
+            m_buffers[i] = ByteBuffer.wrap(MESSAGES[i].getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(6)
+    public void parse(Blackhole blackhole) throws Exception {
+        for (ByteBuffer buffer : m_buffers) {
+            blackhole.consume(SyslogParser.getParserInstance(m_config, buffer).parse());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(6)
+    public void convertToEvent(Blackhole blackhole) throws Exception {
+        final InetAddress address = InetAddressUtils.ONE_TWENTY_SEVEN;
+        final Date now = new Date();
+        for (ByteBuffer buffer : m_buffers) {
+            blackhole.consume(new ConvertToEvent(
+                    DistPollerDao.DEFAULT_DIST_POLLER_ID,
+                    MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID,
+                    address,
+                    514,
+                    buffer,
+                    now,
+                    m_config
+                ).getEvent());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(SyslogParserBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.opennms.core.ipc.sink.protobuf.AbstractProtobufSinkModule;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.SyslogdConfig;
+import org.opennms.netmgt.dao.api.DistPollerDao;
+import org.opennms.netmgt.syslogd.api.SyslogMessageDTO;
+import org.opennms.netmgt.syslogd.api.SyslogMessageLogDTO;
+
+public class SyslogSinkModuleTest {
+
+    private SyslogSinkModule m_xmlModule;
+
+    private SyslogSinkModule m_protobufModule;
+
+    @Before
+    public void setUp() {
+        m_xmlModule = new SyslogSinkModule(Mockito.mock(SyslogdConfig.class), Mockito.mock(DistPollerDao.class));
+        m_protobufModule = new SyslogSinkModule(Mockito.mock(SyslogdConfig.class), Mockito.mock(DistPollerDao.class));
+        m_protobufModule.setProtobufEnabled(true);
+    }
+
+    @Test
+    public void canMarshalAndUnmarshalWithProtobuf() {
+        final SyslogMessageLogDTO messageLog = createMessageLog();
+
+        final byte[] bytes = m_protobufModule.marshal(messageLog);
+        assertTrue(AbstractProtobufSinkModule.isProtobuf(bytes));
+        assertEquals(messageLog, m_protobufModule.unmarshal(bytes));
+    }
+
+    @Test
+    public void canMarshalDirectAndFilledBuffers() {
+        final SyslogMessageLogDTO messageLog = createMessageLog();
+        final byte[] message = "<34>1 2018-05-01T22:14:15.003Z mymachine.example.com su - ID47 - 'su root' failed".getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(message.length);
+        direct.put(message).flip();
+        messageLog.getMessages().add(new SyslogMessageDTO(direct));
+        // The camel receiver does not flip the buffers after filling them
+        final ByteBuffer filled = ByteBuffer.allocate(message.length);
+        filled.put(message);
+        messageLog.getMessages().add(new SyslogMessageDTO(filled));
+
+        final SyslogMessageLogDTO unmarshaled = m_protobufModule.unmarshal(m_protobufModule.marshal(messageLog));
+        assertEquals(3, unmarshaled.getMessages().size());
+        assertEquals(ByteBuffer.wrap(message), unmarshaled.getMessages().get(1).getBytes());
+        assertEquals(ByteBuffer.wrap(message), unmarshaled.getMessages().get(2).getBytes());
+        // The buffers must not have been consumed
+        assertEquals(message.length, direct.remaining());
+    }
+
+    @Test
+    public void canUnmarshalBothFormats() {
+        final SyslogMessageLogDTO messageLog = createMessageLog();
+        // The XML format does not retain milliseconds
+        messageLog.getMessages().get(0).setTimestamp(new Date(1525212855000L));
+
+        final byte[] xml = m_xmlModule.marshal(messageLog);
+        assertFalse(AbstractProtobufSinkModule.isProtobuf(xml));
+        assertEquals(messageLog, m_protobufModule.unmarshal(xml));
+        assertEquals(messageLog, m_xmlModule.unmarshal(m_protobufModule.marshal(messageLog)));
+    }
+
+    private static SyslogMessageLogDTO createMessageLog() {
+        final SyslogMessageLogDTO messageLog = new SyslogMessageLogDTO("Default", "00000000-0000-0000-0000-000000000000",
+                new InetSocketAddress(InetAddressUtils.ONE_TWENTY_SEVEN, 1514));
+        final SyslogMessageDTO message = new SyslogMessageDTO(ByteBuffer.wrap(
+                "<31>main: 2010-08-19 localhost foo23: load test 23 on tty1".getBytes(StandardCharsets.US_ASCII)));
+        message.setTimestamp(new Date(1525212855123L));
+        messageLog.getMessages().add(message);
+        return messageLog;
+    }
+}
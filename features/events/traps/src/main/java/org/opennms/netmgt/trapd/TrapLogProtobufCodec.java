@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.trapd;
+
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.readInetAddress;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.readMessage;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.readPackedUInt32;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeInetAddress;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeMessage;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writePackedUInt32;
+import static org.opennms.core.ipc.sink.protobuf.ProtobufCodecUtils.writeString;
+
+import java.io.IOException;
+
+import org.opennms.core.ipc.sink.protobuf.ProtobufCodec;
+import org.opennms.netmgt.snmp.SnmpInstId;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValue;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Maps the {@link TrapLogDTO} to the protocol buffers wire format. The messages are written
+ * and read directly, without generated classes, using the following schema:
+ * <pre>
+ * message TrapLog {
+ *     optional string system_id = 1;
+ *     optional string location = 2;
+ *     optional bytes trap_address = 3;
+ *     repeated Trap messages = 4;
+ * }
+ *
+ * message Trap {
+ *     optional bytes agent_address = 1;
+ *     optional string community = 2;
+ *     optional string version = 3;
+ *     optional int64 timestamp = 4;
+ *     optional int32 pdu_length = 5;
+ *     optional int64 creation_time = 6;
+ *     optional bytes raw_message = 7;
+ *     optional TrapIdentity trap_identity = 8;
+ *     repeated SnmpResult results = 9;
+ * }
+ *
+ * message TrapIdentity {
+ *     optional int32 generic = 1;
+ *     optional int32 specific = 2;
+ *     optional string enterprise_id = 3;
+ * }
+ *
+ * message SnmpResult {
+ *     repeated uint32 base = 1 [packed=true];
+ *     repeated uint32 instance = 2 [packed=true];
+ *     optional int32 value_type = 3;
+ *     optional bytes value = 4;
+ * }
+ * </pre>
+ */
+public class TrapLogProtobufCodec implements ProtobufCodec<TrapLogDTO> {
+
+    @Override
+    public void encode(TrapLogDTO log, CodedOutputStream out) throws IOException {
+        writeString(out, 1, log.getSystemId());
+        writeString(out, 2, log.getLocation());
+        writeInetAddress(out, 3, log.getTrapAddress());
+        for (TrapDTO trap : log.getMessages()) {
+            writeMessage(out, 4, trap, TrapLogProtobufCodec::encodeTrap);
+        }
+    }
+
+    @Override
+    public TrapLogDTO decode(CodedInputStream in) throws IOException {
+        final TrapLogDTO log = new TrapLogDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: log.setSystemId(in.readString()); break;
+                case 2: log.setLocation(in.readString()); break;
+                case 3: log.setTrapAddress(readInetAddress(in)); break;
+                case 4: log.addMessage(readMessage(in, TrapLogProtobufCodec::decodeTrap)); break;
+                default: in.skipField(tag);
+            }
+        }
+        return log;
+    }
+
+    private static void encodeTrap(TrapDTO trap, CodedOutputStream out) throws IOException {
+        writeInetAddress(out, 1, trap.getAgentAddress());
+        writeString(out, 2, trap.getCommunity());
+        writeString(out, 3, trap.getVersion());
+        out.writeInt64(4, trap.getTimestamp());
+        out.writeInt32(5, trap.getPduLength());
+        out.writeInt64(6, trap.getCreationTime());
+        if (trap.getRawMessage() != null) {
+            out.writeByteArray(7, trap.getRawMessage());
+        }
+        writeMessage(out, 8, trap.getTrapIdentity(), TrapLogProtobufCodec::encodeTrapIdentity);
+        for (SnmpResult result : trap.getResults()) {
+            writeMessage(out, 9, result, TrapLogProtobufCodec::encodeResult);
+        }
+    }
+
+    private static TrapDTO decodeTrap(CodedInputStream in) throws IOException {
+        final TrapDTO trap = new TrapDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: trap.setAgentAddress(readInetAddress(in)); break;
+                case 2: trap.setCommunity(in.readString()); break;
+                case 3: trap.setVersion(in.readString()); break;
+                case 4: trap.setTimestamp(in.readInt64()); break;
+                case 5: trap.setPduLength(in.readInt32()); break;
+                case 6: trap.setCreationTime(in.readInt64()); break;
+                case 7: trap.setRawMessage(in.readByteArray()); break;
+                case 8: trap.setTrapIdentity(readMessage(in, TrapLogProtobufCodec::decodeTrapIdentity)); break;
+                case 9: trap.getResults().add(readMessage(in, TrapLogProtobufCodec::decodeResult)); break;
+                default: in.skipField(tag);
+            }
+        }
+        return trap;
+    }
+
+    private static void encodeTrapIdentity(TrapIdentityDTO identity, CodedOutputStream out) throws IOException {
+        out.writeInt32(1, identity.getGeneric());
+        out.writeInt32(2, identity.getSpecific());
+        writeString(out, 3, identity.getEnterpriseId());
+    }
+
+    private static TrapIdentityDTO decodeTrapIdentity(CodedInputStream in) throws IOException {
+        final TrapIdentityDTO identity = new TrapIdentityDTO();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: identity.setGeneric(in.readInt32()); break;
+                case 2: identity.setSpecific(in.readInt32()); break;
+                case 3: identity.setEnterpriseId(in.readString()); break;
+                default: in.skipField(tag);
+            }
+        }
+        return identity;
+    }
+
+    /**
+     * The object identifiers are written as packed sub-identifiers, which is far more compact than their string form.
+     */
+    private static void encodeResult(SnmpResult result, CodedOutputStream out) throws IOException {
+        writePackedUInt32(out, 1, result.getBase() != null ? result.getBase().getIds() : null);
+        writePackedUInt32(out, 2, result.getInstance() != null ? result.getInstance().getIds() : null);
+        final SnmpValue value = result.getValue();
+        if (value != null) {
+            out.writeInt32(3, value.getType());
+            out.writeByteArray(4, value.getBytes());
+        }
+    }
+
+    private static SnmpResult decodeResult(CodedInputStream in) throws IOException {
+        SnmpObjId base = null;
+        SnmpInstId instance = null;
+        int type = 0;
+        byte[] bytes = null;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1: base = SnmpObjId.get(readPackedUInt32(in)); break;
+                case 2: instance = new SnmpInstId(readPackedUInt32(in)); break;
+                case 3: type = in.readInt32(); break;
+                case 4: bytes = in.readByteArray(); break;
+                default: in.skipField(tag);
+            }
+        }
+        final SnmpValue value = bytes != null ? SnmpUtils.getValueFactory().getValue(type, bytes) : null;
+        return new SnmpResult(base, instance, value);
+    }
+}
@@ -33,7 +33,7 @@ import java.util.Objects;
 
 import org.opennms.core.ipc.sink.api.AggregationPolicy;
 import org.opennms.core.ipc.sink.api.AsyncPolicy;
-import org.opennms.core.ipc.sink.xml.AbstractXmlSinkModule;
+import org.opennms.core.ipc.sink.protobuf.AbstractProtobufSinkModule;
 import org.opennms.netmgt.config.TrapdConfig;
 import org.opennms.netmgt.model.OnmsDistPoller;
 import org.opennms.netmgt.snmp.TrapInformation;
@@ -44,7 +44,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snmp4j.PDU;
 
-public class TrapSinkModule extends AbstractXmlSinkModule<TrapInformationWrapper, TrapLogDTO> {
+public class TrapSinkModule extends AbstractProtobufSinkModule<TrapInformationWrapper, TrapLogDTO> {
 
     private static final Logger LOG = LoggerFactory.getLogger(TrapSinkModule.class);
 
@@ -53,7 +53,7 @@ public class TrapSinkModule extends AbstractXmlSinkModule<TrapInformationWrapper
     private OnmsDistPoller distPoller;
 
     public TrapSinkModule(TrapdConfig trapdConfig, OnmsDistPoller distPoller) {
-        super(TrapLogDTO.class);
+        super(TrapLogDTO.class, new TrapLogProtobufCodec());
         this.config = Objects.requireNonNull(trapdConfig);
         this.distPoller = Objects.requireNonNull(distPoller);
     }
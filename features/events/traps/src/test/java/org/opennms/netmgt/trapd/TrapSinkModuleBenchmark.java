@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.trapd;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the XML and protobuf formats of the {@link TrapSinkModule} with batches of
+ * traps, each of which has the varbinds of a linkDown trap and some additional ones.
+ *
+ * This is not run as part of the build, use {@link #main(String[])} to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TrapSinkModuleBenchmark {
+
+    @Param({"xml", "protobuf"})
+    public String format;
+
+    /**
+     * The number of traps per message, the default batch size is 1000.
+     */
+    @Param({"1", "1000"})
+    public int traps;
+
+    @Param({"7", "30"})
+    public int varbinds;
+
+    private TrapSinkModule m_module;
+
+    private TrapLogDTO m_trapLog;
+
+    private byte[] m_bytes;
+
+    @Setup
+    public void setUp() {
+        m_module = new TrapSinkModule(new TrapdConfigBean(), Mockito.mock(OnmsDistPoller.class));
+        m_module.setProtobufEnabled("protobuf".equals(format));
+
+        final TrapDTO trap = TrapSinkModuleTest.createTrapLog().getMessages().get(0);
+        for (int i = trap.getResults().size(); i < varbinds; i++) {
+            trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.4.1.9.9.41.1.2.3.1." + i), null,
+                    SnmpUtils.getValueFactory().getOctetString(("%LINK-3-UPDOWN: Interface GigabitEthernet0/" + i + ", changed state to down").getBytes())));
+        }
+        trap.setPduLength(trap.getResults().size());
+
+        m_trapLog = new TrapLogDTO("00000000-0000-0000-0000-000000000000", "Default", InetAddressUtils.ONE_TWENTY_SEVEN);
+        for (int i = 0; i < traps; i++) {
+            m_trapLog.addMessage(trap);
+        }
+        m_bytes = m_module.marshal(m_trapLog);
+    }
+
+    @Benchmark
+    public byte[] marshal() {
+        return m_module.marshal(m_trapLog);
+    }
+
+    @Benchmark
+    public TrapLogDTO unmarshal() {
+        return m_module.unmarshal(m_bytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(TrapSinkModuleBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -28,13 +28,22 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.math.BigInteger;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.opennms.core.ipc.sink.api.Message;
 import org.opennms.core.ipc.sink.api.SinkModule;
+import org.opennms.core.ipc.sink.protobuf.AbstractProtobufSinkModule;
+import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.config.TrapdConfig;
 import org.opennms.netmgt.model.OnmsDistPoller;
+import org.opennms.netmgt.snmp.SnmpInstId;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpValueFactory;
 
 public class TrapSinkModuleTest {
 
@@ -57,4 +66,58 @@ public class TrapSinkModuleTest {
         Assert.assertNotEquals(module, mockModule);
         Assert.assertNotEquals(module.hashCode(), mockModule.hashCode());
     }
+
+    @Test
+    public void canMarshalAndUnmarshalWithProtobuf() {
+        final TrapSinkModule module = new TrapSinkModule(new TrapdConfigBean(), Mockito.mock(OnmsDistPoller.class));
+        module.setProtobufEnabled(true);
+
+        final TrapLogDTO trapLog = createTrapLog();
+        trapLog.getMessages().get(0).getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.2"),
+                new SnmpInstId(3), SnmpUtils.getValueFactory().getOctetString("eth0".getBytes())));
+
+        final byte[] bytes = module.marshal(trapLog);
+        Assert.assertTrue(AbstractProtobufSinkModule.isProtobuf(bytes));
+        Assert.assertEquals(trapLog, module.unmarshal(bytes));
+    }
+
+    @Test
+    public void canUnmarshalBothFormats() {
+        final TrapSinkModule xmlModule = new TrapSinkModule(new TrapdConfigBean(), Mockito.mock(OnmsDistPoller.class));
+        final TrapSinkModule protobufModule = new TrapSinkModule(new TrapdConfigBean(), Mockito.mock(OnmsDistPoller.class));
+        protobufModule.setProtobufEnabled(true);
+
+        final TrapLogDTO trapLog = createTrapLog();
+        final byte[] xml = xmlModule.marshal(trapLog);
+        Assert.assertFalse(AbstractProtobufSinkModule.isProtobuf(xml));
+        Assert.assertEquals(trapLog, protobufModule.unmarshal(xml));
+        Assert.assertEquals(trapLog, xmlModule.unmarshal(protobufModule.marshal(trapLog)));
+    }
+
+    static TrapLogDTO createTrapLog() {
+        final SnmpValueFactory valueFactory = SnmpUtils.getValueFactory();
+        final TrapDTO trap = new TrapDTO();
+        trap.setAgentAddress(InetAddressUtils.ONE_TWENTY_SEVEN);
+        trap.setCommunity("public");
+        trap.setVersion("v2");
+        trap.setTimestamp(5000);
+        trap.setCreationTime(1525190400000L);
+        final TrapIdentityDTO trapIdentity = new TrapIdentityDTO();
+        trapIdentity.setEnterpriseId(".1.3.6.1.6.3.1.1.5");
+        trapIdentity.setGeneric(6);
+        trapIdentity.setSpecific(3);
+        trap.setTrapIdentity(trapIdentity);
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.1.3.0"), null, valueFactory.getTimeTicks(5000)));
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.6.3.1.1.4.1.0"), null, valueFactory.getObjectId(SnmpObjId.get(".1.3.6.1.6.3.1.1.5.3"))));
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.1.3"), null, valueFactory.getInt32(3)));
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.2.2.1.7.3"), null, valueFactory.getInt32(2)));
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.31.1.1.1.18.3"), null, valueFactory.getOctetString("uplink to core".getBytes())));
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.2.1.31.1.1.1.6.3"), null, valueFactory.getCounter64(BigInteger.valueOf(Long.MAX_VALUE))));
+        trap.getResults().add(new SnmpResult(SnmpObjId.get(".1.3.6.1.6.3.18.1.3.0"), null, valueFactory.getIpAddress(InetAddressUtils.ONE_TWENTY_SEVEN)));
+        trap.setPduLength(trap.getResults().size());
+
+        final TrapLogDTO trapLog = new TrapLogDTO("00000000-0000-0000-0000-000000000000", "Default", InetAddressUtils.ONE_TWENTY_SEVEN);
+        trapLog.addMessage(trap);
+        return trapLog;
+    }
 }
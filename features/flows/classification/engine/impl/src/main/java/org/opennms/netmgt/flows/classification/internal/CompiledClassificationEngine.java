@@ -0,0 +1,600 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.opennms.core.utils.IPLike;
+import org.opennms.netmgt.flows.classification.ClassificationEngine;
+import org.opennms.netmgt.flows.classification.ClassificationRequest;
+import org.opennms.netmgt.flows.classification.ClassificationRuleProvider;
+import org.opennms.netmgt.flows.classification.FilterService;
+import org.opennms.netmgt.flows.classification.internal.value.PortValue;
+import org.opennms.netmgt.flows.classification.internal.value.StringValue;
+import org.opennms.netmgt.flows.classification.persistence.api.DefaultRuleDefinition;
+import org.opennms.netmgt.flows.classification.persistence.api.Protocol;
+import org.opennms.netmgt.flows.classification.persistence.api.Protocols;
+import org.opennms.netmgt.flows.classification.persistence.api.Rule;
+
+/**
+ * {@link ClassificationEngine} which compiles the rule set into flat, immutable lookup tables.
+ *
+ * The results are identical to the ones of the {@link DefaultClassificationEngine}, including the order in which
+ * rules are evaluated, but instead of materializing (and merging and re-sorting) a list of classifiers per request,
+ * the rules bound to the src and dst port are merged on the fly from pre-sorted index arrays.
+ * Protocols are compiled to bit sets, src port definitions to sorted port arrays and IPv4 IPLIKE address
+ * expressions to per-octet bit masks, so the engine itself does not allocate while classifying.
+ *
+ * Reloading builds a new table which is swapped in atomically, so classification never observes a partially
+ * loaded rule set.
+ */
+public class CompiledClassificationEngine implements ClassificationEngine {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final ClassificationRuleProvider ruleProvider;
+    private final FilterService filterService;
+
+    private volatile CompiledRules compiledRules = new CompiledRules();
+
+    public CompiledClassificationEngine(ClassificationRuleProvider ruleProvider, FilterService filterService) {
+        this(ruleProvider, filterService, true);
+    }
+
+    public CompiledClassificationEngine(ClassificationRuleProvider ruleProvider, FilterService filterService, boolean initialize) {
+        this.ruleProvider = Objects.requireNonNull(ruleProvider);
+        this.filterService = Objects.requireNonNull(filterService);
+        if (initialize) {
+            this.reload();
+        }
+    }
+
+    @Override
+    public void reload() {
+        compiledRules = new CompiledRules(ruleProvider.getRules());
+    }
+
+    @Override
+    public String classify(ClassificationRequest classificationRequest) {
+        return compiledRules.classify(classificationRequest, filterService);
+    }
+
+    private enum PortBinding {
+        // Neither src nor dst port is defined, the rule applies to all ports
+        ANY,
+        // Only the src port is defined, the rule is bound to each of its src ports
+        SRC,
+        // Only the dst port is defined, the rule is bound to each of its dst ports
+        DST,
+        // Src and dst port are defined, the rule is bound to each of its dst ports and verifies the src port
+        BOTH
+    }
+
+    private static class CompiledRules {
+        // Per rule tables, indexed by the position of the rule in the list provided by the rule provider
+        private final String[] names;
+        private final PortBinding[] bindings;
+        private final int[][] srcPorts;
+        private final BitSet[] protocols;
+        private final AddressMatcher[] srcAddresses;
+        private final AddressMatcher[] dstAddresses;
+        private final String[] exporterFilters;
+
+        // Dense ranks of the rules, the lower the rank, the higher the priority.
+        // The ordering a port is evaluated in uses the priority of the rule itself,
+        // merging src and dst port uses the priority of the rule as it is bound to the port,
+        // which does not include the dst port for rules defining both ports
+        private final int[] rank;
+        private final int[] boundRank;
+        private final int[] boundGroupRank;
+
+        // Rules which are not bound to any port
+        private final int[] anyPortRules;
+
+        // (port) -> rules bound to that port, sorted by rank and bound rank respectively
+        private final int[][] portRules;
+        private final int[][] portRulesByBoundRank;
+
+        // (port) -> id of the effective rule list of that port. Two ports share the same id,
+        // if and only if the lists of classifiers the default engine builds for them are equal
+        private final int[] portListIds;
+
+        private CompiledRules() {
+            this(new ArrayList<>());
+        }
+
+        private CompiledRules(List<Rule> rules) {
+            final int ruleCount = rules.size();
+            names = new String[ruleCount];
+            bindings = new PortBinding[ruleCount];
+            srcPorts = new int[ruleCount][];
+            protocols = new BitSet[ruleCount];
+            srcAddresses = new AddressMatcher[ruleCount];
+            dstAddresses = new AddressMatcher[ruleCount];
+            exporterFilters = new String[ruleCount];
+            rank = new int[ruleCount];
+            boundRank = new int[ruleCount];
+            boundGroupRank = new int[ruleCount];
+
+            final int[] groupPriorities = new int[ruleCount];
+            final int[] priorities = new int[ruleCount];
+            final int[] boundPriorities = new int[ruleCount];
+            final int[][] boundPorts = new int[ruleCount][];
+            final int[] derivedIds = new int[ruleCount];
+            final int[] templateIds = new int[ruleCount];
+            final Map<DefaultRuleDefinition, Integer> templates = new HashMap<>();
+            final Map<List<Object>, Integer> derivedDefinitions = new HashMap<>();
+
+            for (int i = 0; i < ruleCount; i++) {
+                final Rule rule = rules.get(i);
+                names[i] = rule.getName();
+                groupPriorities[i] = rule.getGroupPriority();
+                priorities[i] = rule.calculatePriority();
+
+                if (rule.hasSrcPortDefinition() && rule.hasDstPortDefinition()) {
+                    bindings[i] = PortBinding.BOTH;
+                    boundPorts[i] = toSortedArray(new PortValue(rule.getDstPort()).getPorts());
+                    srcPorts[i] = toSortedArray(new PortValue(rule.getSrcPort()).getPorts());
+                } else if (rule.hasSrcPortDefinition()) {
+                    bindings[i] = PortBinding.SRC;
+                    boundPorts[i] = toSortedArray(new PortValue(rule.getSrcPort()).getPorts());
+                } else if (rule.hasDstPortDefinition()) {
+                    bindings[i] = PortBinding.DST;
+                    boundPorts[i] = toSortedArray(new PortValue(rule.getDstPort()).getPorts());
+                } else {
+                    bindings[i] = PortBinding.ANY;
+                    boundPorts[i] = EMPTY;
+                }
+
+                // The definition of the rule as it is bound to a port, once without any port information,
+                // to identify equal definitions, and once as the default engine sees it, to calculate the priority
+                templateIds[i] = templates.computeIfAbsent(boundDefinition(rule, null, null), key -> templates.size());
+                if (bindings[i] == PortBinding.BOTH) {
+                    derivedIds[i] = derivedId(derivedDefinitions, templateIds[i], rule.getSrcPort(), null);
+                } else if (bindings[i] == PortBinding.ANY) {
+                    derivedIds[i] = derivedId(derivedDefinitions, templateIds[i], null, null);
+                }
+                boundPriorities[i] = boundDefinition(rule,
+                        bindings[i] == PortBinding.DST ? null : rule.getSrcPort(),
+                        bindings[i] == PortBinding.DST ? rule.getDstPort() : null).calculatePriority();
+
+                if (rule.hasProtocolDefinition()) {
+                    final BitSet protocolSet = new BitSet();
+                    for (StringValue eachProtocol : new StringValue(rule.getProtocol()).splitBy(",")) {
+                        final Protocol protocol = Protocols.getProtocol(eachProtocol.getValue());
+                        if (protocol != null) {
+                            protocolSet.set(protocol.getDecimal());
+                        }
+                    }
+                    protocols[i] = protocolSet;
+                }
+                if (rule.hasSrcAddressDefinition()) {
+                    srcAddresses[i] = new AddressMatcher(rule.getSrcAddress());
+                }
+                if (rule.hasDstAddressDefinition()) {
+                    dstAddresses[i] = new AddressMatcher(rule.getDstAddress());
+                }
+                if (rule.hasExportFilterDefinition()) {
+                    exporterFilters[i] = rule.getExporterFilter();
+                }
+            }
+
+            // Order the rules the same way the RulePriorityComparator does, keeping the provided order for equal
+            // priorities, once by their own priority and once by the priority they have when bound to a port
+            final Integer[] byPriority = indices(ruleCount);
+            final Comparator<Integer> priorityComparator = Comparator
+                    .<Integer>comparingInt(i -> -groupPriorities[i])
+                    .thenComparingInt(i -> -priorities[i]);
+            Arrays.sort(byPriority, priorityComparator);
+            assignRanks(byPriority, priorityComparator, rank);
+
+            final Integer[] byBoundPriority = indices(ruleCount);
+            final Comparator<Integer> boundPriorityComparator = Comparator
+                    .<Integer>comparingInt(i -> -groupPriorities[i])
+                    .thenComparingInt(i -> -boundPriorities[i]);
+            Arrays.sort(byBoundPriority, boundPriorityComparator.thenComparing(priorityComparator));
+            assignRanks(byBoundPriority, boundPriorityComparator.thenComparing(priorityComparator), boundRank);
+            assignRanks(byBoundPriority, boundPriorityComparator, boundGroupRank);
+
+            // Rules without a port definition are kept once instead of being added to every port
+            anyPortRules = Arrays.stream(byPriority)
+                    .filter(i -> bindings[i] == PortBinding.ANY)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+
+            // Populate (port) -> rules. Iterating the rules in order ensures each port is sorted as well
+            final Map<IntArray, int[]> arrays = new HashMap<>();
+            portRules = bindRules(byPriority, boundPorts, arrays);
+            portRulesByBoundRank = bindRules(byBoundPriority, boundPorts, arrays);
+
+            // Identify the ports which share the same effective rule list. As rules without a port definition
+            // are shared by all ports, it is sufficient to compare the port bound rules as well as
+            // the position they are sorted to in relation to the rules without a port definition
+            final int[] anyPortRanks = Arrays.stream(anyPortRules).map(i -> rank[i]).toArray();
+            final Map<IntArray, Integer> portLists = new HashMap<>();
+            portListIds = new int[Rule.MAX_PORT_VALUE];
+            for (int port = Rule.MIN_PORT_VALUE; port < Rule.MAX_PORT_VALUE; port++) {
+                final int[] rulesOfPort = portRules[port];
+                final int[] signature = new int[rulesOfPort.length * 2];
+                for (int i = 0; i < rulesOfPort.length; i++) {
+                    final int ruleIndex = rulesOfPort[i];
+                    switch (bindings[ruleIndex]) {
+                        case SRC:
+                            signature[2 * i] = derivedId(derivedDefinitions, templateIds[ruleIndex], Integer.toString(port), null);
+                            break;
+                        case DST:
+                            signature[2 * i] = derivedId(derivedDefinitions, templateIds[ruleIndex], null, Integer.toString(port));
+                            break;
+                        default:
+                            signature[2 * i] = derivedIds[ruleIndex];
+                    }
+                    signature[2 * i + 1] = countLessThan(anyPortRanks, rank[ruleIndex]);
+                }
+                portListIds[port] = portLists.computeIfAbsent(new IntArray(signature), key -> portLists.size());
+            }
+        }
+
+        private String classify(ClassificationRequest request, FilterService filterService) {
+            final int srcPort = request.getSrcPort();
+            final int dstPort = request.getDstPort();
+
+            // Same decision as the default engine when picking the classifiers for src and dst port
+            if (anyPortRules.length == 0 && portRules[srcPort].length == 0) {
+                return classify(request, filterService, dstPort);
+            }
+            if (anyPortRules.length == 0 && portRules[dstPort].length == 0) {
+                return classify(request, filterService, srcPort);
+            }
+            if (portListIds[srcPort] == portListIds[dstPort]) {
+                return classify(request, filterService, dstPort);
+            }
+            return classify(request, filterService, srcPort, dstPort);
+        }
+
+        // Evaluates the rules of a single port
+        private String classify(ClassificationRequest request, FilterService filterService, int port) {
+            final int[] rulesOfPort = portRules[port];
+            final long srcAddress = AddressMatcher.parseIpv4(request.getSrcAddress());
+            final long dstAddress = AddressMatcher.parseIpv4(request.getDstAddress());
+            int i = 0;
+            int j = 0;
+            while (i < rulesOfPort.length || j < anyPortRules.length) {
+                final int ruleIndex;
+                if (j == anyPortRules.length || i < rulesOfPort.length && rank[rulesOfPort[i]] <= rank[anyPortRules[j]]) {
+                    ruleIndex = rulesOfPort[i++];
+                } else {
+                    ruleIndex = anyPortRules[j++];
+                }
+                if (matches(ruleIndex, port, request, srcAddress, dstAddress, filterService)) {
+                    return names[ruleIndex];
+                }
+            }
+            return null;
+        }
+
+        // Evaluates the rules of the src port merged with the ones of the dst port
+        private String classify(ClassificationRequest request, FilterService filterService, int srcPort, int dstPort) {
+            final int[] srcPortRules = portRulesByBoundRank[srcPort];
+            final int[] dstPortRules = portRulesByBoundRank[dstPort];
+            final long srcAddress = AddressMatcher.parseIpv4(request.getSrcAddress());
+            final long dstAddress = AddressMatcher.parseIpv4(request.getDstAddress());
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < srcPortRules.length || j < anyPortRules.length || k < dstPortRules.length) {
+                // The next candidate of the src port, including the rules without any port definition
+                final boolean srcPortRule = j == anyPortRules.length || i < srcPortRules.length && boundRank[srcPortRules[i]] <= boundRank[anyPortRules[j]];
+                final int srcCandidate = srcPortRule
+                        ? (i < srcPortRules.length ? srcPortRules[i] : -1)
+                        : anyPortRules[j];
+
+                // Src port rules win over dst port rules with the same priority
+                final int ruleIndex;
+                final int port;
+                if (srcCandidate != -1 && (k == dstPortRules.length || boundGroupRank[srcCandidate] <= boundGroupRank[dstPortRules[k]])) {
+                    if (srcPortRule) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                    ruleIndex = srcCandidate;
+                    port = srcPort;
+                } else {
+                    ruleIndex = dstPortRules[k++];
+                    port = dstPort;
+                }
+                if (matches(ruleIndex, port, request, srcAddress, dstAddress, filterService)) {
+                    return names[ruleIndex];
+                }
+            }
+            return null;
+        }
+
+        private boolean matches(int ruleIndex, int port, ClassificationRequest request, long srcAddress, long dstAddress, FilterService filterService) {
+            switch (bindings[ruleIndex]) {
+                case SRC:
+                    if (request.getSrcPort() != port) {
+                        return false;
+                    }
+                    break;
+                case DST:
+                    if (request.getDstPort() != port) {
+                        return false;
+                    }
+                    break;
+                case BOTH:
+                    if (Arrays.binarySearch(srcPorts[ruleIndex], request.getSrcPort()) < 0) {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (protocols[ruleIndex] != null) {
+                final int protocol = request.getProtocol().getDecimal();
+                if (protocol < 0 || !protocols[ruleIndex].get(protocol)) {
+                    return false;
+                }
+            }
+            if (srcAddresses[ruleIndex] != null && !srcAddresses[ruleIndex].matches(request.getSrcAddress(), srcAddress)) {
+                return false;
+            }
+            if (dstAddresses[ruleIndex] != null && !dstAddresses[ruleIndex].matches(request.getDstAddress(), dstAddress)) {
+                return false;
+            }
+            if (exporterFilters[ruleIndex] != null && !filterService.matches(request.getExporterAddress(), exporterFilters[ruleIndex])) {
+                return false;
+            }
+            return true;
+        }
+
+        private static int[][] bindRules(Integer[] orderedRules, int[][] boundPorts, Map<IntArray, int[]> arrays) {
+            final int[] counts = new int[Rule.MAX_PORT_VALUE];
+            for (int[] ports : boundPorts) {
+                for (int port : ports) {
+                    counts[port]++;
+                }
+            }
+            final int[][] rulesByPort = new int[Rule.MAX_PORT_VALUE][];
+            for (int port = Rule.MIN_PORT_VALUE; port < Rule.MAX_PORT_VALUE; port++) {
+                rulesByPort[port] = counts[port] == 0 ? EMPTY : new int[counts[port]];
+                counts[port] = 0;
+            }
+            for (int ruleIndex : orderedRules) {
+                for (int port : boundPorts[ruleIndex]) {
+                    rulesByPort[port][counts[port]++] = ruleIndex;
+                }
+            }
+            // Many ports share the same rules, only keep one instance of each
+            for (int port = Rule.MIN_PORT_VALUE; port < Rule.MAX_PORT_VALUE; port++) {
+                rulesByPort[port] = arrays.computeIfAbsent(new IntArray(rulesByPort[port]), key -> key.values);
+            }
+            return rulesByPort;
+        }
+
+        private static DefaultRuleDefinition boundDefinition(Rule rule, String srcPort, String dstPort) {
+            final DefaultRuleDefinition definition = new DefaultRuleDefinition();
+            definition.setName(rule.getName());
+            definition.setProtocol(rule.getProtocol());
+            definition.setSrcAddress(rule.getSrcAddress());
+            definition.setDstAddress(rule.getDstAddress());
+            definition.setExporterFilter(rule.getExporterFilter());
+            definition.setGroupPriority(rule.getGroupPriority());
+            definition.setSrcPort(srcPort);
+            definition.setDstPort(dstPort);
+            return definition;
+        }
+
+        private static int derivedId(Map<List<Object>, Integer> derivedDefinitions, int templateId, String srcPort, String dstPort) {
+            return derivedDefinitions.computeIfAbsent(Arrays.asList(templateId, srcPort, dstPort), key -> derivedDefinitions.size());
+        }
+
+        private static Integer[] indices(int count) {
+            final Integer[] indices = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                indices[i] = i;
+            }
+            return indices;
+        }
+
+        private static void assignRanks(Integer[] sortedRules, Comparator<Integer> comparator, int[] ranks) {
+            int currentRank = 0;
+            for (int i = 0; i < sortedRules.length; i++) {
+                if (i > 0 && comparator.compare(sortedRules[i - 1], sortedRules[i]) != 0) {
+                    currentRank++;
+                }
+                ranks[sortedRules[i]] = currentRank;
+            }
+        }
+
+        private static int countLessThan(int[] sortedValues, int value) {
+            int low = 0;
+            int high = sortedValues.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (sortedValues[mid] < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static int[] toSortedArray(Set<Integer> values) {
+            final int[] array = values.stream().mapToInt(Integer::intValue).toArray();
+            Arrays.sort(array);
+            return array;
+        }
+    }
+
+    /**
+     * Matches an address the same way the {@link org.opennms.netmgt.flows.classification.internal.matcher.IpMatcher} does.
+     * IPLIKE expressions for IPv4 are compiled to a bit mask per octet. All other expressions, as well as addresses
+     * which are not plain dotted quads, are handed to {@link IPLike}, so malformed input behaves exactly as before.
+     */
+    private static class AddressMatcher {
+        private static final long NOT_IPV4 = -1;
+
+        private final String value;
+        private final boolean wildcard;
+        private final boolean iplike;
+        // 4 octets times 256 bits, or null if the expression is not compiled
+        private final long[] octetMasks;
+
+        private AddressMatcher(String value) {
+            final StringValue stringValue = new StringValue(value);
+            this.value = value;
+            this.wildcard = stringValue.isWildcard();
+            this.iplike = stringValue.hasWildcard();
+            this.octetMasks = iplike ? compileIpv4(value) : null;
+        }
+
+        private boolean matches(String address, long ipv4Address) {
+            if (wildcard) {
+                return true;
+            }
+            if (!iplike) {
+                return value.equals(address);
+            }
+            if (octetMasks != null) {
+                if (ipv4Address != NOT_IPV4) {
+                    for (int octet = 0; octet < 4; octet++) {
+                        final int octetValue = (int) (ipv4Address >>> (24 - 8 * octet)) & 0xFF;
+                        if ((octetMasks[octet * 4 + (octetValue >>> 6)] & (1L << octetValue)) == 0) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                // An IPv6 address never matches an IPv4 expression
+                if (address != null && address.indexOf(':') != -1) {
+                    return false;
+                }
+            }
+            return IPLike.matches(address, value);
+        }
+
+        // Parses plain dotted quads without allocating, everything else is left to IPLike
+        private static long parseIpv4(String address) {
+            if (address == null) {
+                return NOT_IPV4;
+            }
+            long result = 0;
+            int octets = 0;
+            int octetValue = -1;
+            for (int i = 0; i < address.length(); i++) {
+                final char c = address.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    octetValue = (octetValue == -1 ? 0 : octetValue * 10) + (c - '0');
+                    if (octetValue > 255) {
+                        return NOT_IPV4;
+                    }
+                } else if (c == '.' && octetValue != -1 && octets < 3) {
+                    result = (result << 8) | octetValue;
+                    octets++;
+                    octetValue = -1;
+                } else {
+                    return NOT_IPV4;
+                }
+            }
+            if (octets != 3 || octetValue == -1) {
+                return NOT_IPV4;
+            }
+            return (result << 8) | octetValue;
+        }
+
+        private static long[] compileIpv4(String expression) {
+            if (expression.indexOf(':') != -1 || expression.indexOf('.') == -1) {
+                return null;
+            }
+            final String[] fields = expression.split("\\.", 0);
+            if (fields.length != 4) {
+                return null;
+            }
+            final long[] masks = new long[16];
+            try {
+                for (int octet = 0; octet < 4; octet++) {
+                    for (String element : fields[octet].split(",", 0)) {
+                        final long start;
+                        final long end;
+                        final int dashCount = IPLike.countChar('-', element);
+                        if ("*".equals(element)) {
+                            start = 0;
+                            end = 255;
+                        } else if (dashCount == 0) {
+                            start = end = Long.parseLong(element, 10);
+                        } else if (dashCount > 1) {
+                            continue;
+                        } else {
+                            final String[] range = element.split("-");
+                            start = Long.parseLong(range[0]);
+                            end = Long.parseLong(range[1]);
+                        }
+                        for (long value = Math.max(start, 0); value <= Math.min(end, 255); value++) {
+                            masks[octet * 4 + (int) (value >>> 6)] |= 1L << value;
+                        }
+                    }
+                }
+            } catch (RuntimeException ex) {
+                // Let IPLike decide how to handle the malformed expression
+                return null;
+            }
+            return masks;
+        }
+    }
+
+    private static class IntArray {
+        private final int[] values;
+
+        private IntArray(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Arrays.equals(values, ((IntArray) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.netmgt.flows.classification.ClassificationEngine;
+import org.opennms.netmgt.flows.classification.ClassificationRequest;
+import org.opennms.netmgt.flows.classification.ClassificationRequestBuilder;
+import org.opennms.netmgt.flows.classification.FilterService;
+import org.opennms.netmgt.flows.classification.persistence.api.GroupBuilder;
+import org.opennms.netmgt.flows.classification.persistence.api.Protocol;
+import org.opennms.netmgt.flows.classification.persistence.api.ProtocolType;
+import org.opennms.netmgt.flows.classification.persistence.api.Rule;
+import org.opennms.netmgt.flows.classification.persistence.api.RuleBuilder;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Compares the classification engines against a generated rule set.
+ *
+ * This is not run as part of the build, use {@link #main(String[])} to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassificationEngineBenchmark {
+
+    private static final String[] SRC_ADDRESSES = {null, null, null, null, "10.0.0.1", "10.0.*.*", "192.168.1-10.*"};
+    private static final String[] DST_ADDRESSES = {null, null, null, "10.1.0.5", "10.1.*.1-100", "172.16.*.*"};
+    private static final String[] PROTOCOLS = {null, "tcp", "udp", "tcp,udp"};
+    private static final Protocol[] REQUEST_PROTOCOLS = {ProtocolType.TCP, ProtocolType.UDP};
+
+    @Param({"100", "2000"})
+    public int ruleCount;
+
+    private ClassificationEngine defaultEngine;
+    private ClassificationEngine timingEngine;
+    private ClassificationEngine compiledEngine;
+    private ClassificationRequest[] requests;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(1337);
+        final List<Rule> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            final RuleBuilder builder = new RuleBuilder()
+                    .withName("rule" + i)
+                    .withSrcAddress(SRC_ADDRESSES[random.nextInt(SRC_ADDRESSES.length)])
+                    .withDstAddress(DST_ADDRESSES[random.nextInt(DST_ADDRESSES.length)])
+                    .withProtocol(PROTOCOLS[random.nextInt(PROTOCOLS.length)])
+                    .withGroup(new GroupBuilder().withName("group").withPriority(random.nextInt(2)).build());
+            final int port = random.nextInt(10000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    builder.withDstPort(port);
+                    break;
+                case 1:
+                    builder.withSrcPort(port);
+                    break;
+                case 2:
+                    builder.withDstPort(port + "-" + (port + random.nextInt(20) + 1));
+                    break;
+                default:
+                    builder.withSrcPort(random.nextInt(65536)).withDstPort(port);
+            }
+            rules.add(builder.build());
+        }
+        defaultEngine = new DefaultClassificationEngine(() -> rules, FilterService.NOOP);
+        timingEngine = new TimingClassificationEngine(new MetricRegistry(), new DefaultClassificationEngine(() -> rules, FilterService.NOOP));
+        compiledEngine = new CompiledClassificationEngine(() -> rules, FilterService.NOOP);
+
+        requests = new ClassificationRequest[4096];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new ClassificationRequestBuilder()
+                    .withLocation("Default")
+                    .withSrcAddress((random.nextBoolean() ? "10.0." : "192.168.") + random.nextInt(256) + "." + random.nextInt(256))
+                    .withSrcPort(random.nextInt(65536))
+                    .withDstAddress((random.nextBoolean() ? "10.1." : "172.16.") + random.nextInt(256) + "." + random.nextInt(256))
+                    .withDstPort(random.nextInt(10000))
+                    .withProtocol(REQUEST_PROTOCOLS[random.nextInt(REQUEST_PROTOCOLS.length)])
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public String defaultEngine() {
+        return defaultEngine.classify(nextRequest());
+    }
+
+    @Benchmark
+    public String timingEngine() {
+        return timingEngine.classify(nextRequest());
+    }
+
+    @Benchmark
+    public String compiledEngine() {
+        return compiledEngine.classify(nextRequest());
+    }
+
+    private ClassificationRequest nextRequest() {
+        index = (index + 1) & (requests.length - 1);
+        return requests[index];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ClassificationEngineBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
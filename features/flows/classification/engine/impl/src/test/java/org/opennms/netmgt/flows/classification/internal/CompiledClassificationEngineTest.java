@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.classification.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.opennms.netmgt.flows.classification.ClassificationEngine;
+import org.opennms.netmgt.flows.classification.ClassificationRequest;
+import org.opennms.netmgt.flows.classification.ClassificationRequestBuilder;
+import org.opennms.netmgt.flows.classification.FilterService;
+import org.opennms.netmgt.flows.classification.exception.InvalidFilterException;
+import org.opennms.netmgt.flows.classification.persistence.api.GroupBuilder;
+import org.opennms.netmgt.flows.classification.persistence.api.Protocol;
+import org.opennms.netmgt.flows.classification.persistence.api.ProtocolType;
+import org.opennms.netmgt.flows.classification.persistence.api.Rule;
+import org.opennms.netmgt.flows.classification.persistence.api.RuleBuilder;
+
+import com.google.common.collect.Lists;
+
+public class CompiledClassificationEngineTest {
+
+    // Matches exporters by the last digit of their address, e.g. the filter "1" matches "10.0.0.1"
+    private static final FilterService FILTER_SERVICE = new FilterService() {
+        @Override
+        public void validate(String filterExpression) throws InvalidFilterException {
+
+        }
+
+        @Override
+        public boolean matches(String address, String filterExpression) {
+            return address != null && address.endsWith(filterExpression);
+        }
+    };
+
+    private static final String[] PORTS = {null, null, null, "20", "21", "22", "23", "20,22", "21-24", "22-30,40"};
+    private static final String[] ADDRESS_EXPRESSIONS = {null, null, null, "*", "10.0.0.1", "10.0.0.*", "10.0.1-2.*", "10.0.*.1,3", "192.168.*.*", "2001:db8:0:0:0:0:0:1"};
+    private static final String[] PROTOCOLS = {null, null, "tcp", "udp", "tcp,udp"};
+    private static final String[] EXPORTER_FILTERS = {null, null, null, "1", "2"};
+    private static final String[] ADDRESSES = {"10.0.0.1", "10.0.0.3", "10.0.1.1", "10.0.2.3", "010.0.0.1", "192.168.0.1", "2001:db8:0:0:0:0:0:1"};
+    private static final Protocol[] REQUEST_PROTOCOLS = {ProtocolType.TCP, ProtocolType.UDP, ProtocolType.ICMP};
+
+    @Test
+    public void verifyRuleEngineBasic() {
+        final ClassificationEngine engine = new CompiledClassificationEngine(() ->
+            Lists.newArrayList(
+                    new RuleBuilder().withName("rule1").withSrcPort(80).build(),
+                    new RuleBuilder().withName("rule2").withDstPort(443).build(),
+                    new RuleBuilder().withName("rule3").withSrcPort(8888).withDstPort(9999).build(),
+                    new RuleBuilder().withName("rule4").withSrcPort(8888).withDstPort(80).build(),
+                    new RuleBuilder().withName("rule5").build()
+            ), FilterService.NOOP);
+
+        assertEquals("rule2", engine.classify(new ClassificationRequestBuilder().withSrcPort(9999).withDstPort(443).build()));
+        assertEquals("rule3", engine.classify(new ClassificationRequestBuilder().withSrcPort(8888).withDstPort(9999).build()));
+        assertEquals("rule4", engine.classify(new ClassificationRequestBuilder().withSrcPort(8888).withDstPort(80).build()));
+    }
+
+    @Test
+    public void verifyRuleEngineWithAddresses() {
+        final ClassificationEngine engine = new CompiledClassificationEngine(() -> Lists.newArrayList(
+                new Rule("SSH", "22"),
+                new Rule("HTTP", "80"),
+                new Rule("HTTP_CUSTOM", "192.168.0.1", "80"),
+                new Rule("DUMMY", "192.168.1.*", "8000-9000,80,8080"),
+                new Rule("RANGE-TEST", "7000-8000")
+            ), FilterService.NOOP
+        );
+
+        assertEquals("SSH",         engine.classify(new ClassificationRequest("Default", 0, null,  22, "127.0.0.1", ProtocolType.TCP)));
+        assertEquals("HTTP_CUSTOM", engine.classify(new ClassificationRequest("Default", 0, null, 80, "192.168.0.1", ProtocolType.TCP)));
+        assertEquals("HTTP",        engine.classify(new ClassificationRequest("Default", 0, null, 80, "192.168.0.2", ProtocolType.TCP)));
+        assertEquals(null,          engine.classify(new ClassificationRequest("Default", 0, null, 5000, "localhost", ProtocolType.UDP)));
+        IntStream.range(0, 256).forEach(i -> assertEquals("DUMMY", engine.classify(new ClassificationRequest("Default", 0, null, 8080, "192.168.1." + i, ProtocolType.TCP))));
+        IntStream.range(7000, 8000).forEach(i -> assertEquals("RANGE-TEST", engine.classify(new ClassificationRequest("Default", 0, null,  i, "192.168.0.2", ProtocolType.TCP))));
+        assertEquals(null,          engine.classify(new ClassificationRequest("Default", 0, null, 8000, "192.168.0.2", ProtocolType.TCP)));
+    }
+
+    @Test
+    public void verifyReload() {
+        final List<Rule> rules = new ArrayList<>();
+        final ClassificationEngine engine = new CompiledClassificationEngine(() -> rules, FilterService.NOOP);
+        final ClassificationRequest request = new ClassificationRequest("Default", 0, null, 80, "127.0.0.1", ProtocolType.TCP);
+        assertEquals(null, engine.classify(request));
+
+        rules.add(new Rule("HTTP", "80"));
+        assertEquals(null, engine.classify(request));
+        engine.reload();
+        assertEquals("HTTP", engine.classify(request));
+    }
+
+    @Test
+    public void verifyResultsAreIdenticalToDefaultEngine() {
+        final Random random = new Random(42);
+        for (int run = 0; run < 25; run++) {
+            final List<Rule> rules = new ArrayList<>();
+            final int ruleCount = random.nextInt(40) + 1;
+            for (int i = 0; i < ruleCount; i++) {
+                rules.add(new RuleBuilder()
+                        .withName("rule" + i)
+                        .withSrcPort(pick(random, PORTS))
+                        .withDstPort(pick(random, PORTS))
+                        .withSrcAddress(pick(random, ADDRESS_EXPRESSIONS))
+                        .withDstAddress(pick(random, ADDRESS_EXPRESSIONS))
+                        .withProtocol(pick(random, PROTOCOLS))
+                        .withExporterFilter(pick(random, EXPORTER_FILTERS))
+                        .withGroup(new GroupBuilder().withName("group" + i % 3).withPriority(random.nextInt(3)).build())
+                        .build());
+            }
+            final ClassificationEngine defaultEngine = new DefaultClassificationEngine(() -> rules, FILTER_SERVICE);
+            final ClassificationEngine compiledEngine = new CompiledClassificationEngine(() -> rules, FILTER_SERVICE);
+
+            for (int i = 0; i < 4000; i++) {
+                final ClassificationRequest request = new ClassificationRequestBuilder()
+                        .withLocation("Default")
+                        .withSrcPort(18 + random.nextInt(14))
+                        .withDstPort(18 + random.nextInt(14))
+                        .withSrcAddress(pick(random, ADDRESSES))
+                        .withDstAddress(pick(random, ADDRESSES))
+                        .withExporterAddress(pick(random, ADDRESSES))
+                        .withProtocol(pick(random, REQUEST_PROTOCOLS))
+                        .build();
+                final String message = String.format("%s:%d -> %s:%d (%s, exporter %s) with rules %s",
+                        request.getSrcAddress(), request.getSrcPort(), request.getDstAddress(), request.getDstPort(),
+                        request.getProtocol().getKeyword(), request.getExporterAddress(), rules);
+                assertEquals(message, defaultEngine.classify(request), compiledEngine.classify(request));
+            }
+        }
+    }
+
+    private static <T> T pick(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.elastic;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps (location, IP address) pairs to values, keeping the keys in primitive arrays.
+ *
+ * The location is replaced by an index into the table of known locations and the
+ * address is stored as its raw bytes in two longs, so keys are compared numerically
+ * instead of by their string representation. Values must not be null and entries
+ * can not be removed.
+ *
+ * This class is not thread-safe.
+ */
+final class AddressMap<V> {
+
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    private final Map<String, Integer> locationIndexes = new HashMap<>();
+
+    private long[] high;
+    private long[] low;
+    /** Location index shifted by one, with the lowest bit set for IPv6 addresses. Zero marks an empty slot. */
+    private int[] locations;
+    private Object[] values;
+
+    private int size;
+
+    AddressMap(final int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD_FACTOR)) - 1) << 1);
+    }
+
+    /**
+     * Returns the value of the given key, or null if the key is unknown.
+     */
+    @SuppressWarnings("unchecked")
+    V get(final String location, final InetAddress address) {
+        final Integer locationIndex = locationIndexes.get(location);
+        if (locationIndex == null) {
+            return null;
+        }
+        final byte[] bytes = address.getAddress();
+        return (V) values[find(loc(locationIndex, bytes), bytes)];
+    }
+
+    /**
+     * Sets the value of the given key.
+     */
+    void put(final String location, final InetAddress address, final V value) {
+        Integer locationIndex = locationIndexes.get(location);
+        if (locationIndex == null) {
+            locationIndex = locationIndexes.size();
+            locationIndexes.put(location, locationIndex);
+        }
+
+        final byte[] bytes = address.getAddress();
+        final int loc = loc(locationIndex, bytes);
+        final int slot = find(loc, bytes);
+        final boolean added = locations[slot] == 0;
+        if (added) {
+            high[slot] = high(bytes);
+            low[slot] = low(bytes);
+            locations[slot] = loc;
+        }
+        values[slot] = value;
+
+        if (added && ++size > locations.length * MAX_LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot holding the given key, or the empty slot where it would be inserted.
+     */
+    private int find(final int loc, final byte[] bytes) {
+        final long high = high(bytes);
+        final long low = low(bytes);
+        final int mask = locations.length - 1;
+        int slot = hash(high, low, loc) & mask;
+        while (locations[slot] != 0 && (locations[slot] != loc || this.low[slot] != low || this.high[slot] != high)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        final long[] high = this.high;
+        final long[] low = this.low;
+        final int[] locations = this.locations;
+        final Object[] values = this.values;
+
+        allocate(locations.length << 1);
+
+        final int mask = this.locations.length - 1;
+        for (int i = 0; i < locations.length; i++) {
+            if (locations[i] == 0) {
+                continue;
+            }
+            int slot = hash(high[i], low[i], locations[i]) & mask;
+            while (this.locations[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.high[slot] = high[i];
+            this.low[slot] = low[i];
+            this.locations[slot] = locations[i];
+            this.values[slot] = values[i];
+        }
+    }
+
+    private void allocate(final int capacity) {
+        high = new long[capacity];
+        low = new long[capacity];
+        locations = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    private static long high(final byte[] bytes) {
+        return bytes.length > 8 ? toLong(bytes, 0, 8) : 0L;
+    }
+
+    private static long low(final byte[] bytes) {
+        return bytes.length > 8 ? toLong(bytes, 8, 16) : toLong(bytes, 0, bytes.length);
+    }
+
+    private static long toLong(final byte[] bytes, final int from, final int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int loc(final int locationIndex, final byte[] bytes) {
+        return ((locationIndex + 1) << 1) | (bytes.length > 4 ? 1 : 0);
+    }
+
+    private static int hash(final long high, final long low, final int loc) {
+        // Finalizer of MurmurHash3, so sequential addresses are spread over the table
+        long h = high * 31 + low;
+        h = h * 31 + loc;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -29,7 +29,11 @@
 package org.opennms.netmgt.flows.elastic;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
@@ -38,6 +42,9 @@ import java.util.stream.Collectors;
 import org.opennms.core.cache.Cache;
 import org.opennms.core.cache.CacheBuilder;
 import org.opennms.core.cache.CacheConfig;
+import org.opennms.core.criteria.Criteria;
+import org.opennms.core.criteria.CriteriaBuilder;
+import org.opennms.core.criteria.Fetch.FetchType;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 import org.opennms.netmgt.dao.api.NodeDao;
@@ -71,6 +78,8 @@ public class DocumentEnricher {
 
     private final Timer nodeLoadTimer;
 
+    private boolean batchEnrichment;
+
     public DocumentEnricher(MetricRegistry metricRegistry, NodeDao nodeDao, InterfaceToNodeCache interfaceToNodeCache,
                             TransactionOperations transactionOperations, ClassificationEngine classificationEngine,
                             CacheConfig cacheConfig) {
@@ -90,18 +99,32 @@ public class DocumentEnricher {
         this.nodeLoadTimer = metricRegistry.timer("nodeLoadTime");
     }
 
+    /**
+     * Enables batch enrichment. Instead of resolving the nodes of each document individually,
+     * the nodes of all distinct addresses in a batch are resolved at once, using at most one
+     * database query per batch for all addresses which are not cached yet.
+     */
+    public void setBatchEnrichment(boolean batchEnrichment) {
+        this.batchEnrichment = batchEnrichment;
+    }
+
+    public boolean isBatchEnrichment() {
+        return batchEnrichment;
+    }
+
     public void enrich(final List<FlowDocument> documents, final FlowSource source) {
         if (documents.isEmpty()) {
             LOG.info("Nothing to enrich.");
             return;
         }
 
+        if (batchEnrichment) {
+            enrichBatch(documents, source);
+            return;
+        }
+
         transactionOperations.execute(callback -> {
             documents.forEach(document -> {
-                // Metadata from message
-                document.setHost(source.getSourceAddress());
-                document.setLocation(source.getLocation());
-
                 // Node data
                 getNodeInfoFromCache(source.getLocation(), source.getSourceAddress()).ifPresent(document::setNodeExporter);
                 if (document.getDstAddr() != null) {
@@ -111,37 +134,145 @@ public class DocumentEnricher {
                     getNodeInfoFromCache(source.getLocation(), document.getSrcAddr()).ifPresent(document::setNodeSrc);
                 }
 
-                // Locality
-                if (document.getSrcAddr() != null) {
-                    document.setSrcLocality(isPrivateAddress(document.getSrcAddr()) ? Locality.PRIVATE : Locality.PUBLIC);
-                }
-                if (document.getDstAddr() != null) {
-                    document.setDstLocality(isPrivateAddress(document.getDstAddr()) ? Locality.PRIVATE : Locality.PUBLIC);
-                }
+                enrichDocument(document, source);
+            });
+            return null;
+        });
+    }
 
-                if (Locality.PUBLIC.equals(document.getDstLocality()) || Locality.PUBLIC.equals(document.getSrcLocality())) {
-                    document.setFlowLocality(Locality.PUBLIC);
-                } else if (Locality.PRIVATE.equals(document.getDstLocality()) || Locality.PRIVATE.equals(document.getSrcLocality())) {
-                    document.setFlowLocality(Locality.PRIVATE);
+    private void enrichBatch(final List<FlowDocument> documents, final FlowSource source) {
+        // The addresses are parsed once per document and reused for the lookups and the locality
+        final String location = source.getLocation();
+        final InetAddress exporterAddress = InetAddressUtils.addr(source.getSourceAddress());
+        final InetAddress[] srcAddresses = new InetAddress[documents.size()];
+        final InetAddress[] dstAddresses = new InetAddress[documents.size()];
+
+        final AddressMap<Optional<NodeDocument>> nodesByAddress = new AddressMap<>(documents.size());
+        final Map<Integer, List<String>> missingNodes = new HashMap<>();
+        resolveFromCache(location, source.getSourceAddress(), exporterAddress, nodesByAddress, missingNodes);
+        for (int i = 0; i < documents.size(); i++) {
+            final FlowDocument document = documents.get(i);
+            if (document.getDstAddr() != null) {
+                dstAddresses[i] = InetAddressUtils.addr(document.getDstAddr());
+                resolveFromCache(location, document.getDstAddr(), dstAddresses[i], nodesByAddress, missingNodes);
+            }
+            if (document.getSrcAddr() != null) {
+                srcAddresses[i] = InetAddressUtils.addr(document.getSrcAddr());
+                resolveFromCache(location, document.getSrcAddr(), srcAddresses[i], nodesByAddress, missingNodes);
+            }
+        }
+
+        // Load all nodes which are not cached yet at once
+        if (!missingNodes.isEmpty()) {
+            final Map<Integer, NodeDocument> loadedNodes = loadNodeInfos(missingNodes.keySet());
+            for (Map.Entry<Integer, List<String>> entry : missingNodes.entrySet()) {
+                final NodeDocument nodeInfo = loadedNodes.get(entry.getKey());
+                for (String ipAddress : entry.getValue()) {
+                    if (nodeInfo == null) {
+                        LOG.warn("Node with id: {} at location: {} with IP address: {} is in the interface to node cache, but wasn't found in the database.",
+                                entry.getKey(), location, ipAddress);
+                    }
+                    final Optional<NodeDocument> node = Optional.ofNullable(nodeInfo);
+                    nodesByAddress.put(location, InetAddressUtils.addr(ipAddress), node);
+                    nodeInfoCache.put(new NodeInfoKey(location, ipAddress), node);
                 }
+            }
+        }
 
-                // Conversation tagging
-                document.setConvoKey(ConversationKeyUtils.getConvoKeyAsJsonString(document));
+        final Optional<NodeDocument> exporterNode = nodesByAddress.get(location, exporterAddress);
+        for (int i = 0; i < documents.size(); i++) {
+            final FlowDocument document = documents.get(i);
+            exporterNode.ifPresent(document::setNodeExporter);
+            if (dstAddresses[i] != null) {
+                nodesByAddress.get(location, dstAddresses[i]).ifPresent(document::setNodeDst);
+            }
+            if (srcAddresses[i] != null) {
+                nodesByAddress.get(location, srcAddresses[i]).ifPresent(document::setNodeSrc);
+            }
 
-                final ClassificationRequest classificationRequest = createClassificationRequest(document);
+            enrichDocument(document, source, srcAddresses[i], dstAddresses[i]);
+        }
+    }
 
-                // Check whether classification is possible
-                if (classificationRequest.isClassifiable()) {
-                    // Apply Application mapping
-                    document.setApplication(classificationEngine.classify(classificationRequest));
+    // Resolves the node of the given address from the cache, or remembers its node id to be loaded
+    private void resolveFromCache(String location, String ipAddress, InetAddress inetAddress,
+                                  AddressMap<Optional<NodeDocument>> nodesByAddress, Map<Integer, List<String>> missingNodes) {
+        if (nodesByAddress.get(location, inetAddress) != null) {
+            return;
+        }
+        final NodeInfoKey key = new NodeInfoKey(location, ipAddress);
+        final Optional<NodeDocument> cachedNode = nodeInfoCache.getIfPresent(key);
+        if (cachedNode != null) {
+            nodesByAddress.put(location, inetAddress, cachedNode);
+            return;
+        }
+        final Optional<Integer> nodeId = interfaceToNodeCache.getFirstNodeId(location, inetAddress);
+        if (nodeId.isPresent()) {
+            // Mark the address as being resolved, the node is filled in once loaded
+            nodesByAddress.put(location, inetAddress, Optional.empty());
+            missingNodes.computeIfAbsent(nodeId.get(), id -> new ArrayList<>()).add(ipAddress);
+        } else {
+            nodesByAddress.put(location, inetAddress, Optional.empty());
+            nodeInfoCache.put(key, Optional.empty());
+        }
+    }
+
+    private Map<Integer, NodeDocument> loadNodeInfos(Collection<Integer> nodeIds) {
+        final Criteria criteria = new CriteriaBuilder(OnmsNode.class)
+                .in("id", nodeIds)
+                .fetch("categories", FetchType.EAGER)
+                .distinct()
+                .toCriteria();
+        return transactionOperations.execute(callback -> {
+            try (Timer.Context ctx = nodeLoadTimer.time()) {
+                final Map<Integer, NodeDocument> nodeInfos = new HashMap<>(nodeIds.size());
+                for (OnmsNode onmsNode : nodeDao.findMatching(criteria)) {
+                    nodeInfos.put(onmsNode.getId(), toNodeDocument(onmsNode.getId(), onmsNode));
                 }
-            });
-            return null;
+                return nodeInfos;
+            }
         });
     }
 
-    private static boolean isPrivateAddress(String ipAddress) {
-        final InetAddress inetAddress = InetAddressUtils.addr(ipAddress);
+    // Applies all data which is not related to nodes
+    private void enrichDocument(FlowDocument document, FlowSource source) {
+        enrichDocument(document, source,
+                document.getSrcAddr() != null ? InetAddressUtils.addr(document.getSrcAddr()) : null,
+                document.getDstAddr() != null ? InetAddressUtils.addr(document.getDstAddr()) : null);
+    }
+
+    private void enrichDocument(FlowDocument document, FlowSource source, InetAddress srcAddress, InetAddress dstAddress) {
+        // Metadata from message
+        document.setHost(source.getSourceAddress());
+        document.setLocation(source.getLocation());
+
+        // Locality
+        if (srcAddress != null) {
+            document.setSrcLocality(isPrivateAddress(srcAddress) ? Locality.PRIVATE : Locality.PUBLIC);
+        }
+        if (dstAddress != null) {
+            document.setDstLocality(isPrivateAddress(dstAddress) ? Locality.PRIVATE : Locality.PUBLIC);
+        }
+
+        if (Locality.PUBLIC.equals(document.getDstLocality()) || Locality.PUBLIC.equals(document.getSrcLocality())) {
+            document.setFlowLocality(Locality.PUBLIC);
+        } else if (Locality.PRIVATE.equals(document.getDstLocality()) || Locality.PRIVATE.equals(document.getSrcLocality())) {
+            document.setFlowLocality(Locality.PRIVATE);
+        }
+
+        // Conversation tagging
+        document.setConvoKey(ConversationKeyUtils.getConvoKeyAsJsonString(document));
+
+        final ClassificationRequest classificationRequest = createClassificationRequest(document);
+
+        // Check whether classification is possible
+        if (classificationRequest.isClassifiable()) {
+            // Apply Application mapping
+            document.setApplication(classificationEngine.classify(classificationRequest));
+        }
+    }
+
+    private static boolean isPrivateAddress(InetAddress inetAddress) {
         return inetAddress.isLoopbackAddress() || inetAddress.isLinkLocalAddress() || inetAddress.isSiteLocalAddress();
     }
 
@@ -165,13 +296,7 @@ public class DocumentEnricher {
             try (Timer.Context ctx = nodeLoadTimer.time()) {
                 final OnmsNode onmsNode = nodeDao.get(nodeId.get());
                 if (onmsNode != null) {
-                    final NodeDocument nodeInfo = new NodeDocument();
-                    nodeInfo.setForeignSource(onmsNode.getForeignSource());
-                    nodeInfo.setForeignId(onmsNode.getForeignId());
-                    nodeInfo.setNodeId(nodeId.get());
-                    nodeInfo.setCategories(onmsNode.getCategories().stream().map(OnmsCategory::getName).collect(Collectors.toList()));
-
-                    return Optional.of(nodeInfo);
+                    return Optional.of(toNodeDocument(nodeId.get(), onmsNode));
                 } else {
                     LOG.warn("Node with id: {} at location: {} with IP address: {} is in the interface to node cache, but wasn't found in the database.");
                 }
@@ -180,6 +305,15 @@ public class DocumentEnricher {
         return Optional.empty();
     }
 
+    private static NodeDocument toNodeDocument(Integer nodeId, OnmsNode onmsNode) {
+        final NodeDocument nodeInfo = new NodeDocument();
+        nodeInfo.setForeignSource(onmsNode.getForeignSource());
+        nodeInfo.setForeignId(onmsNode.getForeignId());
+        nodeInfo.setNodeId(nodeId);
+        nodeInfo.setCategories(onmsNode.getCategories().stream().map(OnmsCategory::getName).collect(Collectors.toList()));
+        return nodeInfo;
+    }
+
     // Key class, which is used to cache NodeDocument objects
     private static class NodeInfoKey {
 
@@ -156,6 +156,8 @@ public class ElasticFlowRepository implements FlowRepository {
      */
     private final ConcurrentMap<Integer, Set<Integer>> markerCache = Maps.newConcurrentMap();
 
+    private FlowDocumentBulkWriter bulkWriter;
+
     public ElasticFlowRepository(MetricRegistry metricRegistry, JestClient jestClient, IndexStrategy indexStrategy,
                                  DocumentEnricher documentEnricher, ClassificationEngine classificationEngine,
                                  TransactionOperations transactionOperations, NodeDao nodeDao, SnmpInterfaceDao snmpInterfaceDao,
@@ -189,14 +191,22 @@ public class ElasticFlowRepository implements FlowRepository {
         });
     }
 
+    /**
+     * Sets the writer used to persist the flow documents asynchronously.
+     * If no writer is set, the documents are persisted synchronously by the calling thread.
+     */
+    public void setBulkWriter(FlowDocumentBulkWriter bulkWriter) {
+        this.bulkWriter = bulkWriter;
+    }
+
     @Override
     public void persist(final Collection<Flow> flows, final FlowSource source) throws FlowException {
         LOG.debug("Converting {} flows from {} to flow documents.", flows.size(), source);
-        final List<FlowDocument> documents;
+        final List<FlowDocument> documents = new ArrayList<>(flows.size());
         try (final Timer.Context ctx = logConversionTimer.time()) {
-            documents = flows.stream()
-                    .map(FlowDocument::from)
-                    .collect(Collectors.toList());
+            for (final Flow flow : flows) {
+                documents.add(FlowDocument.from(flow));
+            }
         }
         enrichAndPersistFlows(documents, source);
     }
@@ -217,27 +227,28 @@ public class ElasticFlowRepository implements FlowRepository {
 
         LOG.debug("Persisting {} flow documents.", flowDocuments.size());
         try (final Timer.Context ctx = logPersistingTimer.time()) {
-            final BulkRequest<FlowDocument> bulkRequest = new BulkRequest<>(client, flowDocuments, (documents) -> {
-                final Bulk.Builder bulkBuilder = new Bulk.Builder();
-                for (FlowDocument flowDocument : documents) {
-                   final String index = indexStrategy.getIndex(TYPE, Instant.ofEpochMilli(flowDocument.getTimestamp()));
-                   final Index.Builder indexBuilder = new Index.Builder(flowDocument)
-                        .index(index)
-                        .type(TYPE);
-                    bulkBuilder.addAction(indexBuilder.build());
+            if (bulkWriter != null) {
+                // Hand the documents off to the writer, which blocks if too many bulks are in flight
+                try {
+                    bulkWriter.write(flowDocuments);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new FlowException("Interrupted while waiting for bulks to complete.", ex);
+                }
+            } else {
+                final BulkRequest<FlowDocument> bulkRequest = new BulkRequest<>(client, flowDocuments,
+                        (documents) -> createBulk(indexStrategy, documents), bulkRetryCount);
+                try {
+                    // the bulk request considers retries
+                    bulkRequest.execute();
+                } catch (BulkException ex) {
+                    throw new PersistenceException(ex.getMessage(), ex.getBulkResult().getFailedDocuments());
+                } catch (IOException ex) {
+                    LOG.error("An error occurred while executing the given request: {}", ex.getMessage(), ex);
+                    throw new FlowException(ex.getMessage(), ex);
                 }
-                return new BulkWrapper(bulkBuilder);
-            }, bulkRetryCount);
-            try {
-                // the bulk request considers retries
-                bulkRequest.execute();
-            } catch (BulkException ex) {
-                throw new PersistenceException(ex.getMessage(), ex.getBulkResult().getFailedDocuments());
-            } catch (IOException ex) {
-                LOG.error("An error occurred while executing the given request: {}", ex.getMessage(), ex);
-                throw new FlowException(ex.getMessage(), ex);
+                flowsPersistedMeter.mark(flowDocuments.size());
             }
-            flowsPersistedMeter.mark(flowDocuments.size());
         }
 
         // Mark nodes and interfaces as having associated flows
@@ -584,6 +595,18 @@ public class ElasticFlowRepository implements FlowRepository {
         return executeAsync(builder.build());
     }
 
+    static BulkWrapper createBulk(IndexStrategy indexStrategy, List<FlowDocument> documents) {
+        final Bulk.Builder bulkBuilder = new Bulk.Builder();
+        for (FlowDocument flowDocument : documents) {
+            final String index = indexStrategy.getIndex(TYPE, Instant.ofEpochMilli(flowDocument.getTimestamp()));
+            final Index.Builder indexBuilder = new Index.Builder(flowDocument)
+                    .index(index)
+                    .type(TYPE);
+            bulkBuilder.addAction(indexBuilder.build());
+        }
+        return new BulkWrapper(bulkBuilder);
+    }
+
     private <T extends JestResult> CompletableFuture<T> executeAsync(Action<T> action) {
         final CompletableFuture<T> future = new CompletableFuture<>();
         client.executeAsync(action, new JestResultHandler<T>() {
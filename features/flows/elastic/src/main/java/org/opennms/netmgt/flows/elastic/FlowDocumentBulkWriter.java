@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.elastic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.plugins.elasticsearch.rest.bulk.BulkRequest;
+import org.opennms.plugins.elasticsearch.rest.bulk.BulkWrapper;
+import org.opennms.plugins.elasticsearch.rest.bulk.DefaultBulkResult;
+import org.opennms.plugins.elasticsearch.rest.index.IndexStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.BulkResult;
+
+/**
+ * Writes flow documents to Elasticsearch using asynchronous bulk requests.
+ *
+ * Documents from many calls are merged into bulks of {@code bulkSize} documents.
+ * Documents which did not fill up a bulk are sent at the latest after {@code bulkFlushMs}.
+ * At most {@code maxBulksInFlight} bulks are executed at any time. If this limit is reached,
+ * {@link #write(List)} blocks until a bulk completes, which pushes back on the caller.
+ *
+ * Failed bulks are retried the same way a {@link BulkRequest} does, but without blocking the caller.
+ * Documents which can not be persisted after {@code bulkRetryCount} attempts are logged and dropped.
+ */
+public class FlowDocumentBulkWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlowDocumentBulkWriter.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final JestClient client;
+
+    private final IndexStrategy indexStrategy;
+
+    private final int bulkSize;
+
+    private final long bulkFlushMs;
+
+    private final int maxBulksInFlight;
+
+    private final int bulkRetryCount;
+
+    private final Semaphore bulksInFlight;
+
+    private final ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> flushFuture;
+
+    private final Object lock = new Object();
+
+    private List<FlowDocument> pendingDocuments;
+
+    /**
+     * Flows/second throughput
+     */
+    private final Meter flowsPersistedMeter;
+
+    /**
+     * Flows/second which could not be persisted
+     */
+    private final Meter flowsFailedMeter;
+
+    /**
+     * Time taken to persist a bulk, including retries
+     */
+    private final Timer bulkLatencyTimer;
+
+    /**
+     * Time callers are blocked, waiting for a bulk to complete
+     */
+    private final Timer bulkBackPressureTimer;
+
+    /**
+     * Number of flows in a bulk
+     */
+    private final Histogram flowsPerBulk;
+
+    public FlowDocumentBulkWriter(MetricRegistry metricRegistry, JestClient jestClient, IndexStrategy indexStrategy,
+                                  int bulkSize, long bulkFlushMs, int maxBulksInFlight, int bulkRetryCount) {
+        if (bulkSize < 1) {
+            throw new IllegalArgumentException("bulkSize must be > 0");
+        }
+        if (bulkFlushMs < 1) {
+            throw new IllegalArgumentException("bulkFlushMs must be > 0");
+        }
+        if (maxBulksInFlight < 1) {
+            throw new IllegalArgumentException("maxBulksInFlight must be > 0");
+        }
+        this.client = Objects.requireNonNull(jestClient);
+        this.indexStrategy = Objects.requireNonNull(indexStrategy);
+        this.bulkSize = bulkSize;
+        this.bulkFlushMs = bulkFlushMs;
+        this.maxBulksInFlight = maxBulksInFlight;
+        this.bulkRetryCount = bulkRetryCount;
+        this.bulksInFlight = new Semaphore(maxBulksInFlight);
+        this.pendingDocuments = new ArrayList<>(bulkSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("flow-bulk-writer-%d")
+                .setDaemon(true)
+                .build());
+
+        flowsPersistedMeter = metricRegistry.meter("flowsPersisted");
+        flowsFailedMeter = metricRegistry.meter("flowsFailed");
+        bulkLatencyTimer = metricRegistry.timer("bulkLatency");
+        bulkBackPressureTimer = metricRegistry.timer("bulkBackPressure");
+        flowsPerBulk = metricRegistry.histogram("flowsPerBulk");
+        metricRegistry.register("bulkQueueDepth", (Gauge<Integer>) this::getPendingDocumentCount);
+        metricRegistry.register("bulksInFlight", (Gauge<Integer>) () -> maxBulksInFlight - bulksInFlight.availablePermits());
+    }
+
+    public void start() {
+        flushFuture = scheduler.scheduleWithFixedDelay(this::flushIfPossible, bulkFlushMs, bulkFlushMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+        }
+        try {
+            // Hand off whatever is left and wait for the bulks to complete
+            submit(takePendingDocuments());
+            if (!bulksInFlight.tryAcquire(maxBulksInFlight, SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Bulks are still in flight after {} ms. Flows may be lost.", SHUTDOWN_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while waiting for bulks to complete. Flows may be lost.");
+            Thread.currentThread().interrupt();
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Queues the given documents to be persisted.
+     *
+     * Blocks if the bulks completed by the given documents can not be executed,
+     * because the maximum number of bulks in flight is reached.
+     *
+     * @param documents the documents to persist. The list is not retained.
+     * @throws InterruptedException if interrupted while waiting for a bulk to complete.
+     */
+    public void write(List<FlowDocument> documents) throws InterruptedException {
+        List<List<FlowDocument>> bulks = Collections.emptyList();
+        synchronized (lock) {
+            for (FlowDocument document : documents) {
+                pendingDocuments.add(document);
+                if (pendingDocuments.size() >= bulkSize) {
+                    if (bulks.isEmpty()) {
+                        bulks = new ArrayList<>();
+                    }
+                    bulks.add(pendingDocuments);
+                    pendingDocuments = new ArrayList<>(bulkSize);
+                }
+            }
+        }
+        for (int i = 0; i < bulks.size(); i++) {
+            try {
+                submit(bulks.get(i));
+            } catch (InterruptedException e) {
+                for (int j = i; j < bulks.size(); j++) {
+                    flowsFailedMeter.mark(bulks.get(j).size());
+                }
+                throw e;
+            }
+        }
+    }
+
+    public int getPendingDocumentCount() {
+        synchronized (lock) {
+            return pendingDocuments.size();
+        }
+    }
+
+    private List<FlowDocument> takePendingDocuments() {
+        synchronized (lock) {
+            final List<FlowDocument> documents = pendingDocuments;
+            pendingDocuments = new ArrayList<>(bulkSize);
+            return documents;
+        }
+    }
+
+    // Runs on the scheduler and must not block it, as retries are executed by the scheduler as well
+    private void flushIfPossible() {
+        if (getPendingDocumentCount() == 0 || !bulksInFlight.tryAcquire()) {
+            return;
+        }
+        final List<FlowDocument> documents = takePendingDocuments();
+        if (documents.isEmpty()) {
+            bulksInFlight.release();
+            return;
+        }
+        execute(documents);
+    }
+
+    private void submit(List<FlowDocument> documents) throws InterruptedException {
+        if (documents.isEmpty()) {
+            return;
+        }
+        if (!bulksInFlight.tryAcquire()) {
+            try (final Timer.Context ctx = bulkBackPressureTimer.time()) {
+                bulksInFlight.acquire();
+            }
+        }
+        execute(documents);
+    }
+
+    // The caller must hold a permit, which is released once the bulk completed or ultimately failed
+    private void execute(List<FlowDocument> documents) {
+        flowsPerBulk.update(documents.size());
+        execute(documents, 0, bulkLatencyTimer.time());
+    }
+
+    private void execute(List<FlowDocument> documents, int attempt, Timer.Context latencyContext) {
+        final BulkWrapper bulk = ElasticFlowRepository.createBulk(indexStrategy, documents);
+        try {
+            client.executeAsync(bulk, new JestResultHandler<BulkResult>() {
+                @Override
+                public void completed(BulkResult result) {
+                    if (result.isSucceeded()) {
+                        completeBulk(documents.size(), latencyContext);
+                        return;
+                    }
+                    // Only retry the failed documents if some succeeded
+                    final List<FlowDocument> failedDocuments = new DefaultBulkResult<>(result, documents).getFailedDocuments();
+                    if (!failedDocuments.isEmpty() && failedDocuments.size() != documents.size()) {
+                        flowsPersistedMeter.mark(documents.size() - failedDocuments.size());
+                        retry(failedDocuments, attempt, latencyContext, result.getErrorMessage());
+                    } else {
+                        retry(documents, attempt, latencyContext, result.getErrorMessage());
+                    }
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    retry(documents, attempt, latencyContext, ex.getMessage());
+                }
+            });
+        } catch (RuntimeException ex) {
+            retry(documents, attempt, latencyContext, ex.getMessage());
+        }
+    }
+
+    private void retry(List<FlowDocument> documents, int attempt, Timer.Context latencyContext, String errorMessage) {
+        if (attempt < bulkRetryCount - 1 && !scheduler.isShutdown()) {
+            final long sleepTime = BulkRequest.getSleepTime(attempt + 1);
+            LOG.info("An error occurred while executing the bulk request: {}. Retrying in {} ms.", errorMessage, sleepTime);
+            scheduler.schedule(() -> execute(documents, attempt + 1, latencyContext), sleepTime, TimeUnit.MILLISECONDS);
+        } else {
+            LOG.error("Persisting {} flow documents failed after {} attempts: {}", documents.size(), attempt + 1, errorMessage);
+            flowsFailedMeter.mark(documents.size());
+            latencyContext.stop();
+            bulksInFlight.release();
+        }
+    }
+
+    private void completeBulk(int documentCount, Timer.Context latencyContext) {
+        flowsPersistedMeter.mark(documentCount);
+        latencyContext.stop();
+        bulksInFlight.release();
+    }
+}
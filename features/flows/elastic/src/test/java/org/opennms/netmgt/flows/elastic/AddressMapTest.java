@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.elastic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+
+public class AddressMapTest {
+
+    @Test
+    public void canMapAddressesPerLocation() {
+        final AddressMap<String> map = new AddressMap<>(1);
+        map.put("Default", InetAddressUtils.addr("10.0.0.1"), "a");
+        map.put("Minion", InetAddressUtils.addr("10.0.0.1"), "b");
+        map.put("Default", InetAddressUtils.addr("::a00:1"), "c");
+        map.put("Default", InetAddressUtils.addr("fe80::1"), "d");
+
+        assertEquals("a", map.get("Default", InetAddressUtils.addr("10.0.0.1")));
+        assertEquals("b", map.get("Minion", InetAddressUtils.addr("10.0.0.1")));
+        assertEquals("c", map.get("Default", InetAddressUtils.addr("::a00:1")));
+        assertEquals("d", map.get("Default", InetAddressUtils.addr("fe80:0:0:0:0:0:0:1")));
+        assertNull(map.get("Default", InetAddressUtils.addr("10.0.0.2")));
+        assertNull(map.get("Unknown", InetAddressUtils.addr("10.0.0.1")));
+
+        map.put("Default", InetAddressUtils.addr("10.0.0.1"), "e");
+        assertEquals("e", map.get("Default", InetAddressUtils.addr("10.0.0.1")));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void canGrow() {
+        final AddressMap<Integer> map = new AddressMap<>(1);
+        for (int i = 0; i < 10000; i++) {
+            map.put("Default", InetAddressUtils.getInetAddress(new byte[]{10, 0, (byte) (i >> 8), (byte) i}), i);
+        }
+        assertEquals(10000, map.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(Integer.valueOf(i), map.get("Default", InetAddressUtils.getInetAddress(new byte[]{10, 0, (byte) (i >> 8), (byte) i})));
+        }
+    }
+}
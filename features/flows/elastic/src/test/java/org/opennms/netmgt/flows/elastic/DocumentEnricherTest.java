@@ -30,13 +30,18 @@ package org.opennms.netmgt.flows.elastic;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.opennms.core.criteria.Criteria;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.InterfaceToNodeCache;
 import org.opennms.netmgt.dao.api.NodeDao;
@@ -49,13 +54,14 @@ import com.google.common.collect.Lists;
 public class DocumentEnricherTest {
 
     private DocumentEnricher enricher;
+    private NodeDao nodeDao;
     private AtomicInteger nodeDaoGetCounter;
 
     @Before
     public void setUp() {
         final MockDocumentEnricherFactory factory = new MockDocumentEnricherFactory();
         enricher = factory.getEnricher();
-        final NodeDao nodeDao = factory.getNodeDao();
+        nodeDao = factory.getNodeDao();
         final InterfaceToNodeCache interfaceToNodeCache = factory.getInterfaceToNodeCache();
         nodeDaoGetCounter = factory.getNodeDaoGetCounter();
 
@@ -79,6 +85,36 @@ public class DocumentEnricherTest {
         assertEquals(6, nodeDaoGetCounter.get());
     }
 
+    @Test
+    public void verifyBatchEnrichment() {
+        enricher.setBatchEnrichment(true);
+        nodeDaoGetCounter.set(0);
+
+        final List<FlowDocument> documents = Lists.newArrayList();
+        documents.add(createFlowDocument("10.0.0.1", "10.0.0.2"));
+        documents.add(createFlowDocument("10.0.0.1", "10.0.0.3"));
+        documents.add(createFlowDocument("10.0.0.4", "10.0.0.3"));
+        enricher.enrich(documents, new FlowSource("Default", "127.0.0.1"));
+
+        // All nodes are loaded with a single query
+        assertEquals(0, nodeDaoGetCounter.get());
+        verify(nodeDao, times(1)).findMatching(any(Criteria.class));
+
+        assertNull(documents.get(0).getNodeExporter());
+        assertEquals(Integer.valueOf(1), documents.get(0).getNodeSrc().getNodeId());
+        assertEquals(Integer.valueOf(2), documents.get(0).getNodeDst().getNodeId());
+        assertEquals(Integer.valueOf(1), documents.get(1).getNodeSrc().getNodeId());
+        assertEquals(Integer.valueOf(3), documents.get(1).getNodeDst().getNodeId());
+        assertNull(documents.get(2).getNodeSrc());
+        assertEquals(Integer.valueOf(3), documents.get(2).getNodeDst().getNodeId());
+        assertEquals("my-requisition", documents.get(2).getNodeDst().getForeignSource());
+        assertEquals("http", documents.get(2).getApplication());
+
+        // Nodes are cached now, so no further query is required
+        enricher.enrich(Lists.newArrayList(createFlowDocument("10.0.0.2", "10.0.0.4")), new FlowSource("Default", "127.0.0.1"));
+        verify(nodeDao, times(1)).findMatching(any(Criteria.class));
+    }
+
     private static FlowDocument createFlowDocument(String sourceIp, String destIp) {
         final FlowDocument document = new FlowDocument();
         document.setSrcAddr(sourceIp);
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.flows.elastic;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.plugins.elasticsearch.rest.bulk.BulkWrapper;
+import org.opennms.plugins.elasticsearch.rest.index.IndexStrategy;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.BulkResult;
+
+public class FlowDocumentBulkWriterTest {
+
+    private final List<BulkWrapper> bulks = new CopyOnWriteArrayList<>();
+    private final List<JestResultHandler<BulkResult>> handlers = new CopyOnWriteArrayList<>();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private JestClient client;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        client = mock(JestClient.class);
+        doAnswer(invocation -> {
+            bulks.add((BulkWrapper) invocation.getArguments()[0]);
+            handlers.add((JestResultHandler<BulkResult>) invocation.getArguments()[1]);
+            return null;
+        }).when(client).executeAsync(any(Action.class), any(JestResultHandler.class));
+    }
+
+    @Test
+    public void verifyDocumentsAreMergedIntoBulks() throws Exception {
+        final FlowDocumentBulkWriter writer = new FlowDocumentBulkWriter(metricRegistry, client, IndexStrategy.MONTHLY, 10, TimeUnit.HOURS.toMillis(1), 2, 1);
+        writer.start();
+
+        writer.write(documents(4));
+        writer.write(documents(4));
+        assertEquals(0, bulks.size());
+        assertEquals(8, writer.getPendingDocumentCount());
+
+        writer.write(documents(4));
+        assertEquals(1, bulks.size());
+        assertEquals(10, bulks.get(0).size());
+        assertEquals(2, writer.getPendingDocumentCount());
+        handlers.get(0).completed(succeeded());
+
+        // Stopping sends the remaining documents
+        final CompletableFuture<Void> stopped = CompletableFuture.runAsync(writer::stop);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> handlers.size() == 2);
+        assertEquals(2, bulks.get(1).size());
+        handlers.get(1).completed(succeeded());
+        stopped.get(5, TimeUnit.SECONDS);
+
+        assertEquals(12, metricRegistry.meter("flowsPersisted").getCount());
+        assertEquals(2, metricRegistry.histogram("flowsPerBulk").getCount());
+    }
+
+    @Test
+    public void verifyPendingDocumentsAreFlushedAfterTimeout() throws Exception {
+        final FlowDocumentBulkWriter writer = new FlowDocumentBulkWriter(metricRegistry, client, IndexStrategy.MONTHLY, 1000, 100, 2, 1);
+        writer.start();
+
+        writer.write(documents(3));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> bulks.size() == 1);
+        assertEquals(3, bulks.get(0).size());
+        assertEquals(0, writer.getPendingDocumentCount());
+        handlers.get(0).completed(succeeded());
+        writer.stop();
+    }
+
+    @Test
+    public void verifyWriteBlocksWhenMaxBulksInFlightIsReached() throws Exception {
+        final FlowDocumentBulkWriter writer = new FlowDocumentBulkWriter(metricRegistry, client, IndexStrategy.MONTHLY, 5, TimeUnit.HOURS.toMillis(1), 1, 1);
+        writer.start();
+
+        writer.write(documents(5));
+        assertEquals(1, bulks.size());
+
+        // The second bulk can only be sent, once the first one completed
+        final CompletableFuture<Void> blockedWrite = CompletableFuture.runAsync(() -> {
+            try {
+                writer.write(documents(5));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(250);
+        assertFalse(blockedWrite.isDone());
+        assertEquals(1, bulks.size());
+        assertEquals(1, metricRegistry.getGauges().get("bulksInFlight").getValue());
+
+        handlers.get(0).completed(succeeded());
+        blockedWrite.get(5, TimeUnit.SECONDS);
+        assertEquals(2, bulks.size());
+        handlers.get(1).completed(succeeded());
+        writer.stop();
+
+        assertEquals(10, metricRegistry.meter("flowsPersisted").getCount());
+        assertEquals(1, metricRegistry.timer("bulkBackPressure").getCount());
+    }
+
+    @Test
+    public void verifyFailedBulksAreRetried() throws Exception {
+        final FlowDocumentBulkWriter writer = new FlowDocumentBulkWriter(metricRegistry, client, IndexStrategy.MONTHLY, 5, TimeUnit.HOURS.toMillis(1), 1, 2);
+        writer.start();
+
+        writer.write(documents(5));
+        handlers.get(0).failed(new IOException("Connection refused"));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> handlers.size() == 2);
+        assertEquals(5, bulks.get(1).size());
+        handlers.get(1).failed(new IOException("Connection refused"));
+
+        // No retries left, the documents are dropped
+        await().atMost(5, TimeUnit.SECONDS).until(() -> metricRegistry.meter("flowsFailed").getCount() == 5);
+        assertEquals(0, metricRegistry.meter("flowsPersisted").getCount());
+        assertEquals(0, metricRegistry.getGauges().get("bulksInFlight").getValue());
+        writer.stop();
+    }
+
+    private static BulkResult succeeded() {
+        final BulkResult result = mock(BulkResult.class);
+        when(result.isSucceeded()).thenReturn(true);
+        return result;
+    }
+
+    private static List<FlowDocument> documents(int count) {
+        final List<FlowDocument> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final FlowDocument document = new FlowDocument();
+            document.setTimestamp(System.currentTimeMillis());
+            documents.add(document);
+        }
+        return documents;
+    }
+}
@@ -0,0 +1,1144 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.apache.commons.jexl2.JexlContext;
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.utils.Utils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Compiles the expressions of a query into operations on whole columns.
+ *
+ * The supported subset of JEXL consists of number and string literals, variables,
+ * the arithmetic, comparison and logical operators, the ternary operator and the functions of the
+ * <code>math</code>, <code>strictmath</code> and <code>fn</code> namespaces.
+ * Everything else raises an {@link UnsupportedExpressionException}.
+ *
+ * The results are identical to the ones of the {@link JEXLExpressionEngine}. Since the JEXL arithmetic
+ * depends on the runtime types of the operands, the compiler tracks the types each value may have
+ * and rejects expressions for which they would make a difference. Sub-expressions which only
+ * consist of constants are evaluated by JEXL itself.
+ *
+ * @see CompiledExpressionEngine
+ */
+final class ExpressionCompiler {
+
+    /**
+     * Raised for expressions which can not be compiled.
+     */
+    static class UnsupportedExpressionException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedExpressionException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The compiled expressions of a query.
+     */
+    static final class Program {
+        private final List<String> m_labels;
+        private final List<Boolean> m_transient;
+        private final List<NumericNode> m_nodes;
+        private final int m_numRows;
+
+        private Program(final List<String> labels, final List<Boolean> isTransient, final List<NumericNode> nodes, final int numRows) {
+            m_labels = labels;
+            m_transient = isTransient;
+            m_nodes = nodes;
+            m_numRows = numRows;
+        }
+
+        /**
+         * Evaluates the expressions one after the other and stores the values of the
+         * non-transient ones in the given columns.
+         */
+        void apply(final Map<String, double[]> columns) {
+            final Frame frame = new Frame(m_numRows, m_nodes.size());
+            for (int i = 0; i < m_nodes.size(); i++) {
+                frame.expressions[i] = m_nodes.get(i).eval(frame);
+            }
+            for (int i = 0; i < m_nodes.size(); i++) {
+                if (!m_transient.get(i)) {
+                    columns.put(m_labels.get(i), frame.expressions[i]);
+                }
+            }
+        }
+    }
+
+    /*
+     * The classes a numeric value may have. The JEXL arithmetic uses floating point operations if
+     * any operand is a floating point number and integer operations otherwise.
+     */
+    private static final int DOUBLE = 1;
+    private static final int FLOAT = 2;
+    private static final int INTEGER = 4;
+    private static final int FLOATING = DOUBLE | FLOAT;
+
+    /**
+     * Values which are added to the context of every row by the {@link JEXLExpressionEngine}.
+     */
+    private static final Set<String> ROW_VARIABLES = ImmutableSet.of("timestamp", "__i");
+
+    private static final Set<String> RESERVED_WORDS = ImmutableSet.of(
+            "or", "and", "eq", "ne", "lt", "gt", "le", "ge", "div", "mod", "not",
+            "null", "true", "false", "new", "var", "empty", "size", "function", "return",
+            "if", "else", "for", "foreach", "while", "in");
+
+    private static final Map<String, DoubleUnaryOperator> MATH_UNARY = ImmutableMap.<String, DoubleUnaryOperator>builder()
+            .put("abs", Math::abs).put("acos", Math::acos).put("asin", Math::asin).put("atan", Math::atan)
+            .put("cbrt", Math::cbrt).put("ceil", Math::ceil).put("cos", Math::cos).put("cosh", Math::cosh)
+            .put("exp", Math::exp).put("expm1", Math::expm1).put("floor", Math::floor).put("log", Math::log)
+            .put("log10", Math::log10).put("log1p", Math::log1p).put("rint", Math::rint).put("signum", Math::signum)
+            .put("sin", Math::sin).put("sinh", Math::sinh).put("sqrt", Math::sqrt).put("tan", Math::tan)
+            .put("tanh", Math::tanh).put("toDegrees", Math::toDegrees).put("toRadians", Math::toRadians)
+            .build();
+
+    private static final Map<String, DoubleBinaryOperator> MATH_BINARY = ImmutableMap.<String, DoubleBinaryOperator>builder()
+            .put("atan2", Math::atan2).put("hypot", Math::hypot).put("max", Math::max).put("min", Math::min)
+            .put("pow", Math::pow).put("IEEEremainder", Math::IEEEremainder)
+            .build();
+
+    private static final Map<String, DoubleUnaryOperator> STRICTMATH_UNARY = ImmutableMap.<String, DoubleUnaryOperator>builder()
+            .put("abs", StrictMath::abs).put("acos", StrictMath::acos).put("asin", StrictMath::asin).put("atan", StrictMath::atan)
+            .put("cbrt", StrictMath::cbrt).put("ceil", StrictMath::ceil).put("cos", StrictMath::cos).put("cosh", StrictMath::cosh)
+            .put("exp", StrictMath::exp).put("expm1", StrictMath::expm1).put("floor", StrictMath::floor).put("log", StrictMath::log)
+            .put("log10", StrictMath::log10).put("log1p", StrictMath::log1p).put("rint", StrictMath::rint).put("signum", StrictMath::signum)
+            .put("sin", StrictMath::sin).put("sinh", StrictMath::sinh).put("sqrt", StrictMath::sqrt).put("tan", StrictMath::tan)
+            .put("tanh", StrictMath::tanh).put("toDegrees", StrictMath::toDegrees).put("toRadians", StrictMath::toRadians)
+            .build();
+
+    private static final Map<String, DoubleBinaryOperator> STRICTMATH_BINARY = ImmutableMap.<String, DoubleBinaryOperator>builder()
+            .put("atan2", StrictMath::atan2).put("hypot", StrictMath::hypot).put("max", StrictMath::max).put("min", StrictMath::min)
+            .put("pow", StrictMath::pow).put("IEEEremainder", StrictMath::IEEEremainder)
+            .build();
+
+    private static final int MAX_CACHED_LITERALS = 1024;
+
+    private final JexlEngine m_jexl;
+    private final Map<String, Object> m_literals;
+    private final Map<String, Object> m_constants;
+    private final JexlContext m_constantsContext;
+    private final Map<String, double[]> m_columns;
+    private final int m_numRows;
+
+    /** Labels of the expressions, which are compiled already, mapped to their index */
+    private final Map<String, Integer> m_compiled = new HashMap<>();
+    /** Labels of all expressions */
+    private final Set<String> m_labels = new HashSet<>();
+
+    private String m_source;
+    private int m_pos;
+
+    /**
+     * @param jexl the engine used to evaluate constant sub-expressions
+     * @param literals a cache for the values of literals, shared between queries
+     * @param constants the values of the JEXL context, which are the same for all rows
+     * @param columns the columns fetched for the query
+     * @param numRows the number of rows
+     */
+    ExpressionCompiler(final JexlEngine jexl, final Map<String, Object> literals, final Map<String, Object> constants,
+                       final Map<String, double[]> columns, final int numRows) {
+        m_jexl = jexl;
+        m_literals = literals;
+        m_constants = constants;
+        m_constantsContext = new MapContext(constants);
+        m_columns = columns;
+        m_numRows = numRows;
+    }
+
+    Program compile(final List<Expression> expressions) throws UnsupportedExpressionException {
+        final List<String> labels = new ArrayList<>(expressions.size());
+        final List<Boolean> isTransient = new ArrayList<>(expressions.size());
+        for (final Expression expression : expressions) {
+            if (!m_labels.add(expression.getLabel())) {
+                // The values of expressions with the same label are interleaved row by row
+                throw new UnsupportedExpressionException("Duplicate label " + expression.getLabel());
+            }
+        }
+
+        final List<NumericNode> nodes = new ArrayList<>(expressions.size());
+        for (final Expression expression : expressions) {
+            m_source = expression.getExpression();
+            m_pos = 0;
+            if (m_source == null) {
+                throw new UnsupportedExpressionException("Missing expression");
+            }
+
+            final Node node = ternary();
+            skipWhitespace();
+            if (m_pos != m_source.length()) {
+                throw unsupported();
+            }
+
+            nodes.add(result(node));
+            labels.add(expression.getLabel());
+            isTransient.add(expression.getTransient());
+            m_compiled.put(expression.getLabel(), nodes.size() - 1);
+        }
+        return new Program(labels, isTransient, nodes, m_numRows);
+    }
+
+    /**
+     * Converts the value of the expression like {@link Utils#toDouble(Object)}, which is applied to every value.
+     */
+    private NumericNode result(final Node node) throws UnsupportedExpressionException {
+        if (node instanceof Constant) {
+            final Object value = ((Constant) node).value;
+            final double converted;
+            try {
+                converted = Utils.toDouble(value);
+            } catch (RuntimeException e) {
+                throw new UnsupportedExpressionException("Result can not be converted: " + value);
+            }
+            return new Fill(converted, DOUBLE);
+        } else if (node instanceof NumericNode) {
+            // Floats are stored by their decimal representation, which is what the conversion returns as well
+            return (NumericNode) node;
+        }
+        throw new UnsupportedExpressionException("Result is not a number");
+    }
+
+    /*
+     * The grammar is the one of JEXL, restricted to the supported subset and ordered by precedence.
+     */
+
+    private Node ternary() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        final Node condition = or();
+        if (!peek("?")) {
+            return condition;
+        }
+        m_pos++;
+        if (peek(":")) {
+            // The elvis operator
+            throw unsupported();
+        }
+        final Node then = ternary();
+        expect(":");
+        final Node otherwise = ternary();
+
+        if (condition instanceof Constant) {
+            if (then instanceof Constant && otherwise instanceof Constant) {
+                return fold(start);
+            }
+        }
+        final NumericNode thenNumeric = numeric(then);
+        final NumericNode otherwiseNumeric = numeric(otherwise);
+        return new Ternary(bool(condition), thenNumeric, otherwiseNumeric);
+    }
+
+    private Node or() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        Node left = and();
+        while (consume("||")) {
+            final Node right = and();
+            left = left instanceof Constant && right instanceof Constant ? fold(start)
+                    : new Logical(false, bool(left), bool(right));
+        }
+        return left;
+    }
+
+    private Node and() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        Node left = equality();
+        while (consume("&&")) {
+            final Node right = equality();
+            left = left instanceof Constant && right instanceof Constant ? fold(start)
+                    : new Logical(true, bool(left), bool(right));
+        }
+        return left;
+    }
+
+    private Node equality() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        Node left = relational();
+        while (true) {
+            final boolean equals;
+            if (consume("==")) {
+                equals = true;
+            } else if (consume("!=")) {
+                equals = false;
+            } else {
+                return left;
+            }
+            final Node right = relational();
+            if (left instanceof Constant && right instanceof Constant) {
+                left = fold(start);
+                continue;
+            }
+            final NumericNode l = numeric(left);
+            final NumericNode r = numeric(right);
+            // Numbers of the same class are compared by equals(), others by their primitive value
+            final boolean sameClass = (l.classes & r.classes & FLOATING) != 0;
+            final boolean otherClass = !(l.classes == r.classes && Integer.bitCount(l.classes) == 1 && (l.classes & FLOATING) != 0);
+            if (sameClass && otherClass) {
+                throw new UnsupportedExpressionException("Ambiguous comparison in: " + m_source);
+            }
+            left = new Comparison(sameClass ? (equals ? Comparison.EQ_BITS : Comparison.NE_BITS) : (equals ? Comparison.EQ : Comparison.NE), l, r);
+        }
+    }
+
+    private Node relational() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        Node left = additive();
+        while (true) {
+            final int op;
+            if (consume("<=")) {
+                op = Comparison.LE;
+            } else if (consume(">=")) {
+                op = Comparison.GE;
+            } else if (consume("<")) {
+                op = Comparison.LT;
+            } else if (consume(">")) {
+                op = Comparison.GT;
+            } else {
+                return left;
+            }
+            final Node right = additive();
+            left = left instanceof Constant && right instanceof Constant ? fold(start)
+                    : new Comparison(op, numeric(left), numeric(right));
+        }
+    }
+
+    private Node additive() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        Node left = multiplicative();
+        while (true) {
+            final int op;
+            if (consume("+")) {
+                op = Arithmetic.ADD;
+            } else if (consume("-")) {
+                op = Arithmetic.SUBTRACT;
+            } else {
+                return left;
+            }
+            left = arithmetic(start, op, left, multiplicative());
+        }
+    }
+
+    private Node multiplicative() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        Node left = unary();
+        while (true) {
+            final int op;
+            if (consume("*")) {
+                op = Arithmetic.MULTIPLY;
+            } else if (consume("/")) {
+                op = Arithmetic.DIVIDE;
+            } else if (consume("%")) {
+                op = Arithmetic.MODULO;
+            } else {
+                return left;
+            }
+            left = arithmetic(start, op, left, unary());
+        }
+    }
+
+    private Node arithmetic(final int start, final int op, final Node left, final Node right) throws UnsupportedExpressionException {
+        if (left instanceof Constant && right instanceof Constant) {
+            return fold(start);
+        }
+        final NumericNode l = numeric(left);
+        final NumericNode r = numeric(right);
+
+        // Operations on two integers are integer operations, and only the floating point ones are vectorized
+        final boolean someFloating = (l.classes & FLOATING) != 0 || (r.classes & FLOATING) != 0;
+        final boolean someInteger = (l.classes & INTEGER) != 0 && (r.classes & INTEGER) != 0;
+        if (someInteger && (op == Arithmetic.DIVIDE || op == Arithmetic.MODULO)) {
+            throw new UnsupportedExpressionException("Integer division in: " + m_source);
+        }
+        // Additions, subtractions and multiplications of integers yield the same values as the floating point ones
+        return new Arithmetic(op, l, r, (someFloating ? DOUBLE : 0) | (someInteger ? INTEGER : 0));
+    }
+
+    private Node unary() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        if (consume("-")) {
+            final Node operand = unary();
+            if (operand instanceof Constant) {
+                return fold(start);
+            }
+            final NumericNode numeric = numeric(operand);
+            if (numeric.classes != INTEGER && (numeric.classes & INTEGER) != 0) {
+                // The negated integer zero is not the negated floating point zero
+                throw new UnsupportedExpressionException("Ambiguous negation in: " + m_source);
+            }
+            return new Negation(numeric);
+        } else if (peek("!") && !peek("!=")) {
+            m_pos++;
+            final Node operand = unary();
+            if (operand instanceof Constant) {
+                return fold(start);
+            }
+            return new Not(bool(operand));
+        }
+        return primary();
+    }
+
+    private Node primary() throws UnsupportedExpressionException {
+        final int start = skipWhitespace();
+        if (m_pos >= m_source.length()) {
+            throw unsupported();
+        }
+
+        final char c = m_source.charAt(m_pos);
+        if (c == '(') {
+            m_pos++;
+            final Node node = ternary();
+            expect(")");
+            return node;
+        } else if (isDigit(c)) {
+            return number(start);
+        } else if (c == '"' || c == '\'') {
+            return string(start, c);
+        } else if (isIdentifierStart(c)) {
+            final String name = identifier();
+            final int afterName = m_pos;
+            if (consume(":")) {
+                skipWhitespace();
+                if (m_pos < m_source.length() && isIdentifierStart(m_source.charAt(m_pos))) {
+                    final String function = identifier();
+                    if (consume("(")) {
+                        return function(start, name, function);
+                    }
+                }
+                // Not a function call, but the colon of a ternary operator
+                m_pos = afterName;
+            }
+            return variable(name);
+        }
+        throw unsupported();
+    }
+
+    private Node number(final int start) throws UnsupportedExpressionException {
+        m_pos = skipDigits(m_pos);
+        if (m_pos + 1 < m_source.length() && m_source.charAt(m_pos) == '.' && isDigit(m_source.charAt(m_pos + 1))) {
+            m_pos = skipDigits(m_pos + 1);
+        }
+        if (m_pos < m_source.length()) {
+            final char next = m_source.charAt(m_pos);
+            if (Character.isLetterOrDigit(next) || next == '.' || next == '_' || next == '$') {
+                // Suffixes, exponents and other number formats are left to JEXL
+                throw unsupported();
+            }
+        }
+
+        final String literal = m_source.substring(start, m_pos);
+        if (literal.length() < 10 && (literal.length() == 1 || literal.charAt(0) != '0') && literal.indexOf('.') < 0) {
+            return new Constant(Integer.valueOf(literal));
+        }
+
+        // Literals like 0.1 are floats and 010 is octal
+        Object value = m_literals.get(literal);
+        if (value == null) {
+            value = ((Constant) fold(start)).value;
+            if (m_literals.size() < MAX_CACHED_LITERALS) {
+                m_literals.put(literal, value);
+            }
+        }
+        return new Constant(value);
+    }
+
+    private Node string(final int start, final char quote) throws UnsupportedExpressionException {
+        final int end = m_source.indexOf(quote, start + 1);
+        if (end < 0) {
+            throw unsupported();
+        }
+        final String value = m_source.substring(start + 1, end);
+        if (value.indexOf('\\') >= 0) {
+            throw unsupported();
+        }
+        m_pos = end + 1;
+        return new Constant(value);
+    }
+
+    private int skipDigits(int pos) {
+        while (pos < m_source.length() && isDigit(m_source.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private String identifier() {
+        final int start = m_pos;
+        while (m_pos < m_source.length() && isIdentifierPart(m_source.charAt(m_pos))) {
+            m_pos++;
+        }
+        return m_source.substring(start, m_pos);
+    }
+
+    /**
+     * Resolves the variable in the same order as the values are put into the JEXL context.
+     */
+    private Node variable(final String name) throws UnsupportedExpressionException {
+        if (RESERVED_WORDS.contains(name)) {
+            throw unsupported();
+        }
+        skipWhitespace();
+        if (peek(".") || peek("[") || peek("(")) {
+            // Properties, ant-ish variables, arrays and methods
+            throw unsupported();
+        }
+
+        final double[] column = m_columns.get(name);
+        if (column != null) {
+            return new Column(column);
+        }
+        if (ROW_VARIABLES.contains(name) || name.startsWith("__") && m_columns.containsKey(name.substring(2))) {
+            throw new UnsupportedExpressionException("Row variable " + name);
+        }
+        final Integer index = m_compiled.get(name);
+        if (index != null) {
+            return new Reference(index);
+        }
+        if (m_labels.contains(name)) {
+            // References to the expression itself or to later ones return the values of the previous row
+            throw new UnsupportedExpressionException("Forward reference to " + name);
+        }
+        final Object value = m_constants.get(name);
+        if (value == null) {
+            throw new UnsupportedExpressionException("Unknown variable " + name);
+        }
+        return new Constant(value);
+    }
+
+    private Node function(final int start, final String namespace, final String name) throws UnsupportedExpressionException {
+        final List<Node> args = new ArrayList<>();
+        if (!consume(")")) {
+            do {
+                args.add(ternary());
+            } while (consume(","));
+            expect(")");
+        }
+
+        switch (namespace) {
+            case "math":
+                return mathFunction(start, MATH_UNARY, MATH_BINARY, name, args);
+            case "strictmath":
+                return mathFunction(start, STRICTMATH_UNARY, STRICTMATH_BINARY, name, args);
+            case "fn":
+                return sampleFunction(name, args);
+            default:
+                throw unsupported();
+        }
+    }
+
+    private Node mathFunction(final int start, final Map<String, DoubleUnaryOperator> unary, final Map<String, DoubleBinaryOperator> binary,
+                              final String name, final List<Node> args) throws UnsupportedExpressionException {
+        if (args.stream().allMatch(arg -> arg instanceof Constant)) {
+            return fold(start);
+        }
+
+        // Only double arguments ensure the double variant of the method is used
+        final List<NumericNode> numerics = new ArrayList<>(args.size());
+        for (final Node arg : args) {
+            if (arg instanceof Constant) {
+                final Object value = ((Constant) arg).value;
+                if (!isSupportedNumber(value)) {
+                    throw unsupported();
+                }
+                // Method arguments are widened instead of being converted by the JEXL arithmetic
+                numerics.add(new Fill(((Number) value).doubleValue(), DOUBLE));
+            } else if (arg instanceof NumericNode && ((NumericNode) arg).classes == DOUBLE) {
+                numerics.add((NumericNode) arg);
+            } else {
+                throw new UnsupportedExpressionException("Unsupported argument of " + name + " in: " + m_source);
+            }
+        }
+
+        if (args.size() == 1 && unary.containsKey(name)) {
+            return new UnaryFunction(unary.get(name), numerics.get(0));
+        } else if (args.size() == 2 && binary.containsKey(name)) {
+            return new BinaryFunction(binary.get(name), numerics.get(0), numerics.get(1));
+        }
+        throw new UnsupportedExpressionException("Unsupported function " + name);
+    }
+
+    /**
+     * Compiles the functions of {@link SampleArrayFunctions}.
+     */
+    private Node sampleFunction(final String name, final List<Node> args) throws UnsupportedExpressionException {
+        final int expectedArgs = "arrayStart".equals(name) ? 3 : 2;
+        if (args.size() != expectedArgs || !args.stream().allMatch(arg -> arg instanceof Constant)) {
+            throw unsupported();
+        }
+        final Object sampleName = ((Constant) args.get(0)).value;
+        final Object n = ((Constant) args.get(1)).value;
+        if (!(sampleName instanceof String) || !m_columns.containsKey(sampleName) || !(n instanceof Integer)) {
+            throw new UnsupportedExpressionException("Unsupported arguments of " + name + " in: " + m_source);
+        }
+        final double[] sample = m_columns.get(sampleName);
+
+        switch (name) {
+            case "arrayNaN":
+                return new PriorSample(sample, (Integer) n, Double.NaN, false);
+            case "arrayZero":
+                return new PriorSample(sample, (Integer) n, 0d, false);
+            case "arrayFirst":
+                return new PriorSample(sample, (Integer) n, Double.NaN, true);
+            case "arrayStart":
+                final Object substitute = ((Constant) args.get(2)).value;
+                if (!isSupportedNumber(substitute)) {
+                    throw unsupported();
+                }
+                return new PriorSample(sample, (Integer) n, ((Number) substitute).doubleValue(), false);
+            default:
+                throw new UnsupportedExpressionException("Unsupported function " + name);
+        }
+    }
+
+    /**
+     * Evaluates the sub-expression from the given position to the current one with JEXL.
+     */
+    private Constant fold(final int start) throws UnsupportedExpressionException {
+        final String text = m_source.substring(start, m_pos);
+        final Object value;
+        try {
+            value = m_jexl.createExpression(text).evaluate(m_constantsContext);
+        } catch (RuntimeException e) {
+            throw new UnsupportedExpressionException("Failed to evaluate " + text + ": " + e.getMessage());
+        }
+        if (value == null) {
+            throw new UnsupportedExpressionException("Failed to evaluate " + text);
+        }
+        return new Constant(value);
+    }
+
+    private NumericNode numeric(final Node node) throws UnsupportedExpressionException {
+        if (node instanceof NumericNode) {
+            return (NumericNode) node;
+        } else if (node instanceof Constant) {
+            final Object value = ((Constant) node).value;
+            if (isSupportedNumber(value)) {
+                return new Fill(toDouble((Number) value), classOf((Number) value));
+            }
+        }
+        throw new UnsupportedExpressionException("Expected a number in: " + m_source);
+    }
+
+    private BooleanNode bool(final Node node) throws UnsupportedExpressionException {
+        if (node instanceof BooleanNode) {
+            return (BooleanNode) node;
+        } else if (node instanceof Constant && ((Constant) node).value instanceof Boolean) {
+            final boolean[] values = new boolean[m_numRows];
+            Arrays.fill(values, (Boolean) ((Constant) node).value);
+            return new BooleanNode() {
+                @Override
+                boolean[] eval(final Frame frame) {
+                    return values;
+                }
+            };
+        }
+        throw new UnsupportedExpressionException("Expected a boolean in: " + m_source);
+    }
+
+    private static boolean isSupportedNumber(final Object value) {
+        return value instanceof Double || value instanceof Float || value instanceof Integer
+                || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    private static int classOf(final Number value) {
+        if (value instanceof Double) {
+            return DOUBLE;
+        } else if (value instanceof Float) {
+            return FLOAT;
+        }
+        return INTEGER;
+    }
+
+    /**
+     * Converts the number like the JEXL arithmetic, which uses the decimal representation of floats.
+     */
+    private static double toDouble(final Number value) {
+        if (value instanceof Double) {
+            return value.doubleValue();
+        }
+        return Double.parseDouble(String.valueOf(value));
+    }
+
+    private int skipWhitespace() {
+        while (m_pos < m_source.length() && Character.isWhitespace(m_source.charAt(m_pos))) {
+            m_pos++;
+        }
+        return m_pos;
+    }
+
+    private boolean peek(final String token) {
+        skipWhitespace();
+        return m_source.startsWith(token, m_pos);
+    }
+
+    private boolean consume(final String token) {
+        if (peek(token)) {
+            m_pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final String token) throws UnsupportedExpressionException {
+        if (!consume(token)) {
+            throw unsupported();
+        }
+    }
+
+    private UnsupportedExpressionException unsupported() {
+        return new UnsupportedExpressionException("Unsupported syntax at position " + m_pos + " of: " + m_source);
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(final char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(final char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private static final class Frame {
+        private final int numRows;
+        private final double[][] expressions;
+
+        private Frame(final int numRows, final int numExpressions) {
+            this.numRows = numRows;
+            this.expressions = new double[numExpressions][];
+        }
+    }
+
+    private interface Node {
+    }
+
+    /**
+     * A value which is the same for all rows.
+     */
+    private static final class Constant implements Node {
+        private final Object value;
+
+        private Constant(final Object value) {
+            this.value = value;
+        }
+    }
+
+    private static abstract class NumericNode implements Node {
+        /** The classes the values may have in JEXL */
+        private final int classes;
+
+        private NumericNode(final int classes) {
+            this.classes = classes;
+        }
+
+        /**
+         * Returns the values of all rows. The returned array must not be modified.
+         */
+        abstract double[] eval(Frame frame);
+    }
+
+    private static abstract class BooleanNode implements Node {
+        /**
+         * Returns the values of all rows. The returned array must not be modified.
+         */
+        abstract boolean[] eval(Frame frame);
+    }
+
+    private static final class Fill extends NumericNode {
+        private final double value;
+        private double[] values;
+
+        private Fill(final double value, final int classes) {
+            super(classes);
+            this.value = value;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            if (values == null) {
+                values = new double[frame.numRows];
+                Arrays.fill(values, value);
+            }
+            return values;
+        }
+    }
+
+    private static final class Column extends NumericNode {
+        private final double[] values;
+
+        private Column(final double[] values) {
+            super(DOUBLE);
+            this.values = values;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            return values;
+        }
+    }
+
+    /**
+     * The values of a previous expression, which are stored as doubles.
+     */
+    private static final class Reference extends NumericNode {
+        private final int index;
+
+        private Reference(final int index) {
+            super(DOUBLE);
+            this.index = index;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            return frame.expressions[index];
+        }
+    }
+
+    private static final class Arithmetic extends NumericNode {
+        private static final int ADD = 0;
+        private static final int SUBTRACT = 1;
+        private static final int MULTIPLY = 2;
+        private static final int DIVIDE = 3;
+        private static final int MODULO = 4;
+
+        private final int op;
+        private final NumericNode left;
+        private final NumericNode right;
+
+        private Arithmetic(final int op, final NumericNode left, final NumericNode right, final int classes) {
+            super(classes);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            final double[] l = left.eval(frame);
+            final double[] r = right.eval(frame);
+            final double[] out = new double[frame.numRows];
+            switch (op) {
+                case ADD:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = l[i] + r[i];
+                    }
+                    break;
+                case SUBTRACT:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = l[i] - r[i];
+                    }
+                    break;
+                case MULTIPLY:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = l[i] * r[i];
+                    }
+                    break;
+                case DIVIDE:
+                    // The lenient JEXL arithmetic returns zero on division by zero
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = r[i] == 0d ? 0d : l[i] / r[i];
+                    }
+                    break;
+                case MODULO:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = r[i] == 0d ? 0d : l[i] % r[i];
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + op);
+            }
+            return out;
+        }
+    }
+
+    private static final class Negation extends NumericNode {
+        private final NumericNode operand;
+
+        private Negation(final NumericNode operand) {
+            super(operand.classes);
+            this.operand = operand;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            final double[] values = operand.eval(frame);
+            final double[] out = new double[frame.numRows];
+            if (operand.classes == INTEGER) {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = 0d - values[i];
+                }
+            } else {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = -values[i];
+                }
+            }
+            return out;
+        }
+    }
+
+    private static final class Comparison extends BooleanNode {
+        private static final int EQ = 0;
+        private static final int NE = 1;
+        private static final int EQ_BITS = 2;
+        private static final int NE_BITS = 3;
+        private static final int LT = 4;
+        private static final int LE = 5;
+        private static final int GT = 6;
+        private static final int GE = 7;
+
+        private final int op;
+        private final NumericNode left;
+        private final NumericNode right;
+
+        private Comparison(final int op, final NumericNode left, final NumericNode right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean[] eval(final Frame frame) {
+            final double[] l = left.eval(frame);
+            final double[] r = right.eval(frame);
+            final boolean[] out = new boolean[frame.numRows];
+            switch (op) {
+                case EQ:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = l[i] == r[i];
+                    }
+                    break;
+                case NE:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = l[i] != r[i];
+                    }
+                    break;
+                case EQ_BITS:
+                    // Like Double.equals(), which considers NaN to be equal to itself
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = Double.doubleToLongBits(l[i]) == Double.doubleToLongBits(r[i]);
+                    }
+                    break;
+                case NE_BITS:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = Double.doubleToLongBits(l[i]) != Double.doubleToLongBits(r[i]);
+                    }
+                    break;
+                case LT:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = l[i] < r[i];
+                    }
+                    break;
+                case LE:
+                    // JEXL considers NaN to be equal to everything when comparing
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = !(l[i] > r[i]);
+                    }
+                    break;
+                case GT:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = l[i] > r[i];
+                    }
+                    break;
+                case GE:
+                    for (int i = 0; i < out.length; i++) {
+                        out[i] = !(l[i] < r[i]);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + op);
+            }
+            return out;
+        }
+    }
+
+    private static final class Logical extends BooleanNode {
+        private final boolean and;
+        private final BooleanNode left;
+        private final BooleanNode right;
+
+        private Logical(final boolean and, final BooleanNode left, final BooleanNode right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean[] eval(final Frame frame) {
+            final boolean[] l = left.eval(frame);
+            final boolean[] r = right.eval(frame);
+            final boolean[] out = new boolean[frame.numRows];
+            if (and) {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = l[i] && r[i];
+                }
+            } else {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = l[i] || r[i];
+                }
+            }
+            return out;
+        }
+    }
+
+    private static final class Not extends BooleanNode {
+        private final BooleanNode operand;
+
+        private Not(final BooleanNode operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean[] eval(final Frame frame) {
+            final boolean[] values = operand.eval(frame);
+            final boolean[] out = new boolean[frame.numRows];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = !values[i];
+            }
+            return out;
+        }
+    }
+
+    private static final class Ternary extends NumericNode {
+        private final BooleanNode condition;
+        private final NumericNode then;
+        private final NumericNode otherwise;
+
+        private Ternary(final BooleanNode condition, final NumericNode then, final NumericNode otherwise) {
+            super(then.classes | otherwise.classes);
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            final boolean[] c = condition.eval(frame);
+            final double[] t = then.eval(frame);
+            final double[] o = otherwise.eval(frame);
+            final double[] out = new double[frame.numRows];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = c[i] ? t[i] : o[i];
+            }
+            return out;
+        }
+    }
+
+    private static final class UnaryFunction extends NumericNode {
+        private final DoubleUnaryOperator function;
+        private final NumericNode operand;
+
+        private UnaryFunction(final DoubleUnaryOperator function, final NumericNode operand) {
+            super(DOUBLE);
+            this.function = function;
+            this.operand = operand;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            final double[] values = operand.eval(frame);
+            final double[] out = new double[frame.numRows];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = function.applyAsDouble(values[i]);
+            }
+            return out;
+        }
+    }
+
+    private static final class BinaryFunction extends NumericNode {
+        private final DoubleBinaryOperator function;
+        private final NumericNode left;
+        private final NumericNode right;
+
+        private BinaryFunction(final DoubleBinaryOperator function, final NumericNode left, final NumericNode right) {
+            super(DOUBLE);
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            final double[] l = left.eval(frame);
+            final double[] r = right.eval(frame);
+            final double[] out = new double[frame.numRows];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = function.applyAsDouble(l[i], r[i]);
+            }
+            return out;
+        }
+    }
+
+    /**
+     * The value of the sample n rows before the current one, see {@link SampleArrayFunctions}.
+     */
+    private static final class PriorSample extends NumericNode {
+        private final double[] sample;
+        private final int n;
+        private final double before;
+        private final boolean first;
+
+        private PriorSample(final double[] sample, final int n, final double before, final boolean first) {
+            super(DOUBLE);
+            this.sample = sample;
+            this.n = n;
+            this.before = before;
+            this.first = first;
+        }
+
+        @Override
+        double[] eval(final Frame frame) {
+            final double[] out = new double[frame.numRows];
+            for (int i = 0; i < out.length; i++) {
+                final int index = i - n;
+                if (index < 0) {
+                    out[i] = first ? sample[0] : before;
+                } else {
+                    out[i] = index < sample.length ? sample[index] : Double.NaN;
+                }
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.measurements.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Verifies the {@link CompiledExpressionEngine} returns the same values as the {@link JEXLExpressionEngine}.
+ */
+public class CompiledExpressionEngineTest {
+
+    private static final double[] X = {0, 1, -1, 0.1, -0.0, 5, 100, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e10};
+    private static final double[] Y = {0, 0, 2, Double.NaN, 0.0, -5, 0.5, 3, Double.NaN, 1, 7};
+
+    private final AtomicInteger fallbacks = new AtomicInteger();
+
+    private final JEXLExpressionEngine jexlExpressionEngine = new JEXLExpressionEngine();
+
+    private final ExpressionEngine compiledExpressionEngine = new CompiledExpressionEngine((request, results) -> {
+        fallbacks.incrementAndGet();
+        jexlExpressionEngine.applyExpressions(request, results);
+    });
+
+    @Test
+    public void canCompileArithmetic() throws ExpressionException {
+        verifyCompiled("x * 8");
+        verifyCompiled("(x * 8)");
+        verifyCompiled("0 - x");
+        verifyCompiled("-x");
+        verifyCompiled("x + y * 2 - x / 4");
+        verifyCompiled("x * 0.1");
+        verifyCompiled("x / y");
+        verifyCompiled("x % y");
+        verifyCompiled("x / 0");
+        verifyCompiled("(1 + 2) * x");
+        verifyCompiled("x * 010");
+        verifyCompiled("x * __diff_time");
+        verifyCompiled("x * ifSpeed");
+        verifyCompiled("x + __inf + __neg_inf + __E + __PI");
+    }
+
+    @Test
+    public void canCompileComparisons() throws ExpressionException {
+        verifyCompiled("x == NaN ? 1 : 0");
+        verifyCompiled("x != NaN ? 1 : 0");
+        verifyCompiled("x == 0 ? 1 : 0");
+        verifyCompiled("x == y ? 1 : 0");
+        verifyCompiled("x == 0.1 ? 1 : 0");
+        verifyCompiled("x < y ? 1 : 0");
+        verifyCompiled("x <= y ? 1 : 0");
+        verifyCompiled("x > y ? 1 : 0");
+        verifyCompiled("x >= y ? 1 : 0");
+        verifyCompiled("x > 0 && y > 0 ? x : y");
+        verifyCompiled("x > 0 || !(y > 0) ? x : y");
+        verifyCompiled("(x > 0 ? 1 : 0) * 100");
+        verifyCompiled("(x > 0 ? 1 : 0.5) * y");
+    }
+
+    /**
+     * The expressions generated for the graphs of snmp-graph.properties.
+     */
+    @Test
+    public void canCompileGraphExpressions() throws ExpressionException {
+        // CDEF:bitsIn=rawbitsIn,UN,0,rawbitsIn,IF
+        verifyCompiled("(((x == NaN ? 1 : 0) != 0) ? 0 : x)");
+        // CDEF:percentIn=discardsIn,upktsIn,mcpktsIn,+,bcpktsIn,+,/,100,*
+        verifyCompiled("((x / ((y + x) + y)) * 100)");
+        // LIMIT
+        verifyCompiled("( ( (x == __inf) || (x == __neg_inf) || (y == __inf) || (y == __neg_inf) || (y < x) ) ? NaN : y )");
+        // MIN with unknowns
+        verifyCompiled("( ( x == NaN ) ? y : ( ( y == NaN ) ? x : math:min(x,y) ) )");
+        // ADDNAN
+        verifyCompiled("( ( ( x == NaN ) && ( y == NaN ) ) ? NaN : ( ( x == NaN ) ? y : ( ( y == NaN ) ? x : ( x + y ) ) ) )");
+    }
+
+    @Test
+    public void canCompileFunctions() throws ExpressionException {
+        verifyCompiled("math:sin(x)");
+        verifyCompiled("math:abs(x) + strictmath:sqrt(y)");
+        verifyCompiled("math:max(x, 0)");
+        verifyCompiled("math:pow(x, 2)");
+        verifyCompiled("math:min(x, 0.1)");
+        verifyCompiled("x * math:pow(2, 10)");
+        verifyCompiled("fn:arrayNaN(\"x\", 2)");
+        verifyCompiled("fn:arrayZero(\"x\", 2)");
+        verifyCompiled("fn:arrayFirst('x', 3)");
+        verifyCompiled("fn:arrayStart(\"x\", 1, 10)");
+        verifyCompiled("x - fn:arrayNaN(\"x\", 1)");
+    }
+
+    @Test
+    public void canReferenceOtherExpressions() throws ExpressionException {
+        final List<Expression> expressions = Arrays.asList(
+                new Expression("a", "x * 8", true),
+                new Expression("b", "a == NaN ? 0 : a", false),
+                new Expression("c", "b + a", false));
+        verify(expressions, 0);
+    }
+
+    @Test
+    public void canFallBackToJexl() throws ExpressionException {
+        verifyFallback("jexl:evaluate(__formula)");
+        verifyFallback("timestamp / 1000");
+        verifyFallback("__i * x");
+        verifyFallback("x eq 0 ? 1 : 0");
+        verifyFallback("x * 5L");
+        verifyFallback("(x > 0 ? 1 : 0) / 2");
+        verifyFallback("fn:arrayNaN(\"unknown\", 1)");
+
+        // References to the expression itself or later ones use the values of the previous row
+        verify(Arrays.asList(
+                new Expression("a", "b + x", false),
+                new Expression("b", "x * 2", false)), 1);
+    }
+
+    @Test(expected=ExpressionException.class)
+    public void failsWhenExpressionHasInvalidSyntax() throws ExpressionException {
+        performExpressions(compiledExpressionEngine, Arrays.asList(new Expression("z", "/", false)));
+    }
+
+    private void verifyCompiled(final String expression) throws ExpressionException {
+        verify(Arrays.asList(new Expression("z", expression, false)), 0);
+    }
+
+    private void verifyFallback(final String expression) throws ExpressionException {
+        verify(Arrays.asList(new Expression("z", expression, false)), 1);
+    }
+
+    private void verify(final List<Expression> expressions, final int expectedFallbacks) throws ExpressionException {
+        fallbacks.set(0);
+        final Map<String, double[]> expected = performExpressions(jexlExpressionEngine, expressions);
+        final Map<String, double[]> actual = performExpressions(compiledExpressionEngine, expressions);
+
+        assertEquals(expressions.toString(), expected.keySet(), actual.keySet());
+        for (final String label : expected.keySet()) {
+            assertArrayEquals(expressions.toString(), expected.get(label), actual.get(label), 0);
+        }
+        assertEquals(expressions.toString(), expectedFallbacks, fallbacks.get());
+    }
+
+    private static Map<String, double[]> performExpressions(final ExpressionEngine engine, final List<Expression> expressions) throws ExpressionException {
+        final QueryRequest request = new QueryRequest();
+        request.setExpressions(new ArrayList<>(expressions));
+
+        final long timestamps[] = new long[X.length];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = i * 1000;
+        }
+        final Map<String, double[]> values = Maps.newHashMap();
+        values.put("x", X.clone());
+        values.put("y", Y.clone());
+
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("ifSpeed", 100000000d);
+        constants.put("__formula", "x * 2");
+
+        final FetchResults results = new FetchResults(timestamps, values, 1, constants);
+        engine.applyExpressions(request, results);
+        return results.getColumns();
+    }
+}
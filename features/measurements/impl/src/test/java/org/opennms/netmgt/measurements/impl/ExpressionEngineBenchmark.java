@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.measurements.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.measurements.api.ExpressionEngine;
+import org.opennms.netmgt.measurements.api.FetchResults;
+import org.opennms.netmgt.measurements.api.exceptions.ExpressionException;
+import org.opennms.netmgt.measurements.model.Expression;
+import org.opennms.netmgt.measurements.model.QueryRequest;
+import org.opennms.netmgt.measurements.model.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compares the expression engines with the expressions of the interface graphs
+ * from snmp-graph.properties, as they are converted by the graph renderers.
+ *
+ * This is not run as part of the build, use {@link #main(String[])} to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExpressionEngineBenchmark {
+
+    private static final String[] SOURCES = { "octIn", "octOut", "errIn", "errOut", "discIn", "discOut" };
+
+    private static final String[][] EXPRESSIONS = {
+            // mib2.bits
+            { "rawbitsIn", "(octIn * 8)", "true" },
+            { "rawbitsOut", "(octOut * 8)", "true" },
+            { "bitsIn", "(((rawbitsIn == NaN ? 1 : 0) != 0) ? 0 : rawbitsIn)", "false" },
+            { "bitsOut", "(((rawbitsOut == NaN ? 1 : 0) != 0) ? 0 : rawbitsOut)", "false" },
+            { "bitsOutNeg", "(0 - bitsOut)", "false" },
+            { "bytesIn", "(bitsIn / 8 * __diff_time)", "false" },
+            { "bytesOut", "(bitsOut / 8 * __diff_time)", "false" },
+            { "outSum", "(bytesIn + bytesOut)", "false" },
+            // mib2.percentdiscards
+            { "totalDiscards", "(discIn + discOut)", "true" },
+            { "percentDiscards", "((totalDiscards / (octIn + octOut)) * 100)", "false" },
+            // mib2.percentbits
+            { "percentIn", "((((rawbitsIn / ifSpeed) * 100) > 100) ? 100 : ((rawbitsIn / ifSpeed) * 100))", "false" },
+            { "percentOut", "((((rawbitsOut / ifSpeed) * 100) > 100) ? 100 : ((rawbitsOut / ifSpeed) * 100))", "false" },
+            { "percentOutNeg", "(0 - percentOut)", "false" },
+            // mib2.errors
+            { "errInNeg", "(0 - errIn)", "false" },
+            { "errOutNeg", "(0 - errOut)", "false" },
+            { "errLimit", "(((errIn < 0) || (errIn > 1000)) ? NaN : errIn)", "false" },
+            // Trends
+            { "bitsInMax", "math:max(bitsIn, bitsOut)", "false" },
+            { "bitsInDelta", "(bitsIn - fn:arrayNaN('octIn', 1) * 8)", "false" },
+            { "bitsInLog", "((bitsIn > 0) ? math:log10(bitsIn) : 0)", "false" },
+            { "bitsInAbs", "math:abs(bitsOutNeg)", "false" },
+    };
+
+    @Param({"jexl", "compiled"})
+    public String engine;
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private ExpressionEngine m_engine;
+
+    private QueryRequest m_request;
+
+    private long[] m_timestamps;
+
+    private Map<String, double[]> m_values;
+
+    private FetchResults m_results;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (engine) {
+            case "jexl":
+                m_engine = new JEXLExpressionEngine();
+                break;
+            case "compiled":
+                m_engine = new CompiledExpressionEngine();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+
+        m_request = new QueryRequest();
+        final List<Source> sources = Lists.newArrayList();
+        for (String label : SOURCES) {
+            final Source source = new Source();
+            source.setLabel(label);
+            sources.add(source);
+        }
+        m_request.setSources(sources);
+        final List<Expression> expressions = Lists.newArrayList();
+        for (String[] expression : EXPRESSIONS) {
+            expressions.add(new Expression(expression[0], expression[1], Boolean.parseBoolean(expression[2])));
+        }
+        m_request.setExpressions(expressions);
+
+        // Counters with a few gaps, as they are returned by the fetch strategies
+        final Random random = new Random(42);
+        m_timestamps = new long[rows];
+        m_values = Maps.newHashMap();
+        for (String label : SOURCES) {
+            m_values.put(label, new double[rows]);
+        }
+        for (int i = 0; i < rows; i++) {
+            m_timestamps[i] = i * 300000L;
+            for (String label : SOURCES) {
+                m_values.get(label)[i] = random.nextInt(100) == 0 ? Double.NaN : random.nextDouble() * 1e7;
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpResults() {
+        final Map<String, double[]> columns = Maps.newHashMap();
+        for (Map.Entry<String, double[]> entry : m_values.entrySet()) {
+            columns.put(entry.getKey(), entry.getValue().clone());
+        }
+        final Map<String, Object> constants = Maps.newHashMap();
+        constants.put("ifSpeed", 1e9);
+        m_results = new FetchResults(m_timestamps, columns, 300000L, constants);
+    }
+
+    @Benchmark
+    public FetchResults applyExpressions() throws ExpressionException {
+        m_engine.applyExpressions(m_request, m_results);
+        return m_results;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ExpressionEngineBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
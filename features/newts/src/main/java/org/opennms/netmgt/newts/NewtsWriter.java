@@ -28,10 +28,14 @@
 
 package org.opennms.netmgt.newts;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
@@ -39,6 +43,8 @@ import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.joda.time.Duration;
+import org.opennms.core.journal.SegmentLog;
+import org.opennms.core.journal.SegmentQuota;
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.newts.support.NewtsUtils;
 import org.opennms.newts.api.Sample;
@@ -47,6 +53,7 @@ import org.opennms.newts.api.search.Indexer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.codahale.metrics.Gauge;
@@ -54,10 +61,12 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.math.DoubleMath;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.lmax.disruptor.EventTranslatorOneArg;
+import com.lmax.disruptor.EventTranslatorTwoArg;
 import com.lmax.disruptor.FatalExceptionHandler;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.WorkHandler;
@@ -70,9 +79,18 @@ import com.swrve.ratelimitedlogger.RateLimitedLog;
  * Calls to {@link #insert()} publish the samples to a ring buffer so
  * that they don't block while the data is being persisted.
  *
+ * When a journal directory is configured, batches which don't fit on the
+ * ring buffer are spilled to a {@link SegmentLog} instead of being dropped.
+ * Once the writer is initialized, the journaled batches are published to the
+ * ring buffer again as soon as there is room, and are persisted by the writer
+ * threads like any other batch. A batch is only committed to the journal once
+ * it was handled, so batches which were not handled before a restart are replayed
+ * after it. Once batches were spilled, subsequent batches are spilled as well until
+ * all journaled batches were published, so that the samples are persisted in order.
+ *
  * @author jwhite
  */
-public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBean {
+public class NewtsWriter implements WorkHandler<SampleBatchEvent>, InitializingBean, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(NewtsWriter.class);
 
@@ -99,15 +117,44 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
 
     private final Meter m_droppedSamples;
 
+    private final SegmentQuota m_journalQuota;
+
+    private final SegmentLog m_journal;
+
+    private final Meter m_spilledSamples;
+
+    private final Meter m_replayedSamples;
+
+    /**
+     * Number of batches in the journal which were not published to the ring buffer yet, tracked
+     * here so that inserts don't need to acquire the journal's lock to check whether it is empty.
+     */
+    private final AtomicInteger m_numPendingBatches = new AtomicInteger();
+
+    private Thread m_replayThread;
+
+    private volatile boolean m_replaying = true;
+
     /**
      * The {@link RingBuffer} doesn't appear to expose any methods that indicate the number
      * of elements that are currently "queued", so we keep track of them with this atomic counter.
      */
     private final AtomicLong m_numEntriesOnRingBuffer = new AtomicLong();
 
+    /**
+     * Time to wait before trying to publish a journaled batch again, while the ring buffer is full.
+     */
+    private static final long REPLAY_BACKOFF_MS = 10;
+
+    public NewtsWriter(Integer maxBatchSize, Integer ringBufferSize, Integer numWriterThreads, MetricRegistry registry) {
+        this(maxBatchSize, ringBufferSize, numWriterThreads, null, 0, 0, registry);
+    }
+
     @Inject
     public NewtsWriter(@Named("newts.max_batch_size") Integer maxBatchSize, @Named("newts.ring_buffer_size") Integer ringBufferSize,
-            @Named("newts.writer_threads") Integer numWriterThreads, MetricRegistry registry) {
+            @Named("newts.writer_threads") Integer numWriterThreads, @Named("newts.journal.directory") String journalDirectory,
+            @Named("newts.journal.max_size_mb") Integer journalMaxSizeMb, @Named("newts.journal.segment_size_mb") Integer journalSegmentSizeMb,
+            MetricRegistry registry) {
         Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be strictly positive");
         Preconditions.checkArgument(ringBufferSize > 0, "ringBufferSize must be positive");
         Preconditions.checkArgument(DoubleMath.isMathematicalInteger(Math.log(ringBufferSize) / Math.log(2)), "ringBufferSize must be a power of two");
@@ -136,10 +183,68 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
 
         m_droppedSamples = registry.meter(MetricRegistry.name("ring-buffer", "dropped-samples"));
 
+        if (!Strings.isNullOrEmpty(journalDirectory)) {
+            Preconditions.checkArgument(journalSegmentSizeMb > 0, "journalSegmentSizeMb must be positive");
+            Preconditions.checkArgument(journalMaxSizeMb >= journalSegmentSizeMb, "journalMaxSizeMb must be at least journalSegmentSizeMb");
+            m_journalQuota = new SegmentQuota(journalMaxSizeMb * 1024L * 1024L);
+            m_journal = openJournal(journalDirectory, journalSegmentSizeMb, m_journalQuota);
+        } else {
+            m_journalQuota = null;
+            m_journal = null;
+        }
+        if (m_journal != null) {
+            registry.register(MetricRegistry.name("journal", "size"),
+                    new Gauge<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return m_journalQuota.getSize();
+                        }
+                    });
+            registry.register(MetricRegistry.name("journal", "pending-batches"),
+                    new Gauge<Integer>() {
+                        @Override
+                        public Integer getValue() {
+                            return m_numPendingBatches.get();
+                        }
+                    });
+            m_numPendingBatches.set(m_journal.getNumRecords());
+            m_spilledSamples = registry.meter(MetricRegistry.name("journal", "spilled-samples"));
+            m_replayedSamples = registry.meter(MetricRegistry.name("journal", "replayed-samples"));
+        } else {
+            m_spilledSamples = null;
+            m_replayedSamples = null;
+        }
+
         LOG.debug("Using max_batch_size: {} and ring_buffer_size: {}", maxBatchSize, m_ringBufferSize);
         setUpWorkerPool();
     }
 
+    /**
+     * Starts replaying the journal. This is deferred until the properties are set,
+     * since the batches that were journaled before a restart are persisted
+     * using the sample repository and indexer.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (m_journal == null || m_replayThread != null) {
+            return;
+        }
+        Preconditions.checkState(m_sampleRepository != null, "sampleRepository must be set");
+        m_replayThread = new Thread(this::replayJournal, "NewtsWriter-Journal-Replay");
+        m_replayThread.setDaemon(true);
+        m_replayThread.start();
+    }
+
+    private static SegmentLog openJournal(String directory, Integer segmentSizeMb, SegmentQuota quota) {
+        try {
+            LOG.debug("Using journal in {} with max_size: {} and segment_size_mb: {}", directory, quota.getMaxSize(), segmentSizeMb);
+            return new SegmentLog(Paths.get(directory), segmentSizeMb * 1024 * 1024, quota);
+        } catch (IOException e) {
+            LOG.error("Failed to open the journal in {}. Samples will be dropped when the ring buffer is full.", directory, e);
+            return null;
+        }
+    }
+
     private void setUpWorkerPool() {
         // Executor that will be used to construct new threads for consumers
         final ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
@@ -165,9 +270,18 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
 
     @Override
     public void destroy() throws Exception {
+        if (m_replayThread != null) {
+            m_replaying = false;
+            m_replayThread.interrupt();
+            m_replayThread.join();
+        }
         if (m_workerPool != null) {
             m_workerPool.drainAndHalt();
         }
+        if (m_journal != null) {
+            // Batches that were not replayed yet are replayed after the next start
+            m_journal.close();
+        }
     }
 
     public void insert(List<Sample> samples) {
@@ -179,8 +293,17 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
     }
 
     private void pushToRingBuffer(List<Sample> samples, EventTranslatorOneArg<SampleBatchEvent, List<Sample>> translator) {
+        if (m_journal != null && m_numPendingBatches.get() > 0) {
+            // Keep the samples in order while the journal is being replayed
+            spillToJournal(samples, translator == INDEX_ONLY_TRANSLATOR);
+            return;
+        }
         // Add the samples to the ring buffer
         if (!m_ringBuffer.tryPublishEvent(translator, samples)) {
+            if (m_journal != null) {
+                spillToJournal(samples, translator == INDEX_ONLY_TRANSLATOR);
+                return;
+            }
             RATE_LIMITED_LOGGER.error("The ring buffer is full. {} samples associated with resource ids {} will be dropped.",
                     samples.size(), new Object() {
                         @Override
@@ -200,37 +323,104 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
         m_numEntriesOnRingBuffer.incrementAndGet();
     }
 
+    private void spillToJournal(List<Sample> samples, boolean indexOnly) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        try {
+            if (m_journal.append(SampleBatchCodec.encode(samples, indexOnly))) {
+                m_numPendingBatches.incrementAndGet();
+                m_spilledSamples.mark(samples.size());
+                return;
+            }
+            RATE_LIMITED_LOGGER.error("The ring buffer and the journal are full. {} samples will be dropped.", samples.size());
+        } catch (IllegalArgumentException e) {
+            RATE_LIMITED_LOGGER.error("The batch is too large for the journal. {} samples will be dropped.", samples.size(), e);
+        } catch (IOException e) {
+            RATE_LIMITED_LOGGER.error("Failed to write the samples to the journal. {} samples will be dropped.", samples.size(), e);
+        }
+        m_droppedSamples.mark(samples.size());
+    }
+
+    /**
+     * Publishes the batches from the journal to the ring buffer, in order, waiting for
+     * room if it is full. The writer threads commit a batch to the journal once they
+     * handled it.
+     */
+    private void replayJournal() {
+        while (m_replaying) {
+            try {
+                final SegmentLog.Record record = m_journal.poll(1, TimeUnit.SECONDS);
+                if (record == null) {
+                    continue;
+                }
+
+                final SampleBatchEvent batch;
+                try {
+                    batch = SampleBatchCodec.decode(record.getData());
+                } catch (IOException|RuntimeException e) {
+                    RATE_LIMITED_LOGGER.error("Failed to decode a batch of samples from the journal. The batch will be dropped.", e);
+                    m_journal.commit(record);
+                    m_numPendingBatches.decrementAndGet();
+                    continue;
+                }
+
+                while (!m_ringBuffer.tryPublishEvent(JOURNAL_TRANSLATOR, batch, record)) {
+                    // The batch was not committed, and is replayed after the next start when stopping
+                    Thread.sleep(REPLAY_BACKOFF_MS);
+                }
+                m_numEntriesOnRingBuffer.incrementAndGet();
+                m_numPendingBatches.decrementAndGet();
+            } catch (InterruptedException e) {
+                // Stopping
+            }
+        }
+    }
+
     @Override
     public void onEvent(SampleBatchEvent event) throws Exception {
         // We'd expect the logs from this thread to be in collectd.log
         Logging.putPrefix("collectd");
 
         List<Sample> samples = event.getSamples();
+        SegmentLog.Record journalRecord = event.getJournalRecord();
         // Decrement our entry counter
         m_numEntriesOnRingBuffer.decrementAndGet();
 
         // Partition the samples into collections smaller then max_batch_size
+        int numFailed = 0;
         for (List<Sample> batch : Lists.partition(samples, m_maxBatchSize)) {
             try {
-                if (event.isIndexOnly() && !NewtsUtils.DISABLE_INDEXING) {
-                    LOG.debug("Indexing {} samples", batch.size());
-                    m_indexer.update(batch);
-                } else {
-                    LOG.debug("Inserting {} samples", batch.size());
-                    m_sampleRepository.insert(batch);
-                }
-
-                if (LOG.isDebugEnabled()) {
-                    String uniqueResourceIds = batch.stream()
-                        .map(s -> s.getResource().getId())
-                        .distinct()
-                        .collect(Collectors.joining(", "));
-                    LOG.debug("Successfully inserted samples for resources with ids {}", uniqueResourceIds);
-                }
+                persist(batch, event.isIndexOnly());
             } catch (Throwable t) {
                 RATE_LIMITED_LOGGER.error("An error occurred while inserting samples. Some sample may be lost.", t);
+                numFailed += batch.size();
             }
         }
+
+        if (journalRecord != null) {
+            // Batches from the journal are handled like any other batch, and are not retried when they fail
+            m_journal.commit(journalRecord);
+            m_replayedSamples.mark(samples.size() - numFailed);
+        }
+    }
+
+    private void persist(List<Sample> batch, boolean indexOnly) {
+        if (indexOnly && !NewtsUtils.DISABLE_INDEXING) {
+            LOG.debug("Indexing {} samples", batch.size());
+            m_indexer.update(batch);
+        } else {
+            LOG.debug("Inserting {} samples", batch.size());
+            m_sampleRepository.insert(batch);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            String uniqueResourceIds = batch.stream()
+                .map(s -> s.getResource().getId())
+                .distinct()
+                .collect(Collectors.joining(", "));
+            LOG.debug("Successfully inserted samples for resources with ids {}", uniqueResourceIds);
+        }
     }
 
     private static final EventTranslatorOneArg<SampleBatchEvent, List<Sample>> TRANSLATOR =
@@ -238,6 +428,7 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
                 public void translateTo(SampleBatchEvent event, long sequence, List<Sample> samples) {
                     event.setIndexOnly(false);
                     event.setSamples(samples);
+                    event.setJournalRecord(null);
                 }
             };
 
@@ -246,6 +437,16 @@ public class NewtsWriter implements WorkHandler<SampleBatchEvent>, DisposableBea
                 public void translateTo(SampleBatchEvent event, long sequence, List<Sample> samples) {
                     event.setIndexOnly(true);
                     event.setSamples(samples);
+                    event.setJournalRecord(null);
+                }
+            };
+
+    private static final EventTranslatorTwoArg<SampleBatchEvent, SampleBatchEvent, SegmentLog.Record> JOURNAL_TRANSLATOR =
+            new EventTranslatorTwoArg<SampleBatchEvent, SampleBatchEvent, SegmentLog.Record>() {
+                public void translateTo(SampleBatchEvent event, long sequence, SampleBatchEvent batch, SegmentLog.Record record) {
+                    event.setIndexOnly(batch.isIndexOnly());
+                    event.setSamples(batch.getSamples());
+                    event.setJournalRecord(record);
                 }
             };
 
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.newts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.newts.api.Context;
+import org.opennms.newts.api.MetricType;
+import org.opennms.newts.api.Resource;
+import org.opennms.newts.api.Sample;
+import org.opennms.newts.api.Timestamp;
+import org.opennms.newts.api.ValueType;
+
+import com.google.common.base.Optional;
+import com.google.common.primitives.UnsignedLong;
+
+/**
+ * Encodes the samples of a {@link SampleBatchEvent} to bytes, so that
+ * they can be stored in the journal of the {@link NewtsWriter}.
+ */
+class SampleBatchCodec {
+
+    private static final int ABSENT = -1;
+
+    private SampleBatchCodec() {}
+
+    static byte[] encode(List<Sample> samples, boolean indexOnly) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * samples.size() + 8);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeBoolean(indexOnly);
+            out.writeInt(samples.size());
+            for (Sample sample : samples) {
+                out.writeLong(sample.getTimestamp().asMillis());
+                out.writeUTF(sample.getContext().getId());
+                out.writeUTF(sample.getResource().getId());
+                final Optional<Map<String, String>> resourceAttributes = sample.getResource().getAttributes();
+                writeMap(out, resourceAttributes.isPresent() ? resourceAttributes.get() : null);
+                out.writeUTF(sample.getName());
+                out.writeUTF(sample.getType().name());
+                if (sample.getType() == MetricType.GAUGE) {
+                    out.writeDouble(sample.getValue().doubleValue());
+                } else {
+                    final Number value = sample.getValue().getValue();
+                    out.writeLong(value instanceof UnsignedLong ? ((UnsignedLong) value).longValue() : value.longValue());
+                }
+                writeMap(out, sample.getAttributes());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static SampleBatchEvent decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            final boolean indexOnly = in.readBoolean();
+            final int count = in.readInt();
+            final List<Sample> samples = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final Timestamp timestamp = Timestamp.fromEpochMillis(in.readLong());
+                final Context context = new Context(in.readUTF());
+                final String resourceId = in.readUTF();
+                final Resource resource = new Resource(resourceId, Optional.fromNullable(readMap(in)));
+                final String name = in.readUTF();
+                final MetricType type = MetricType.valueOf(in.readUTF());
+                final ValueType<?> value = type == MetricType.GAUGE
+                        ? ValueType.compose(in.readDouble(), type)
+                        : ValueType.compose(UnsignedLong.fromLongBits(in.readLong()), type);
+                samples.add(new Sample(timestamp, context, resource, name, type, value, readMap(in)));
+            }
+            final SampleBatchEvent event = new SampleBatchEvent();
+            event.setIndexOnly(indexOnly);
+            event.setSamples(samples);
+            return event;
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        if (map == null) {
+            out.writeInt(ABSENT);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        if (size == ABSENT) {
+            return null;
+        }
+        final Map<String, String> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            map.put(in.readUTF(), in.readUTF());
+        }
+        return map;
+    }
+}
@@ -30,6 +30,7 @@ package org.opennms.netmgt.newts;
 
 import java.util.List;
 
+import org.opennms.core.journal.SegmentLog;
 import org.opennms.newts.api.Sample;
 
 /**
@@ -42,6 +43,7 @@ import org.opennms.newts.api.Sample;
 public class SampleBatchEvent {
     private List<Sample> m_samples;
     private boolean m_indexOnly;
+    private SegmentLog.Record m_journalRecord;
 
     public void setSamples(List<Sample> samples) {
         m_samples = samples;
@@ -58,4 +60,15 @@ public class SampleBatchEvent {
     public boolean isIndexOnly() {
         return m_indexOnly;
     }
+
+    /**
+     * Sets the journal record the samples were replayed from, or null if they were not journaled.
+     */
+    public void setJournalRecord(SegmentLog.Record journalRecord) {
+        m_journalRecord = journalRecord;
+    }
+
+    public SegmentLog.Record getJournalRecord() {
+        return m_journalRecord;
+    }
 }
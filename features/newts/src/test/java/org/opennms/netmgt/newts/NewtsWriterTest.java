@@ -30,13 +30,18 @@ package org.opennms.netmgt.newts;
 
 import static org.junit.Assert.assertEquals;
 
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.core.journal.SegmentLog;
+import org.opennms.core.journal.SegmentQuota;
 import org.opennms.newts.api.Context;
 import org.opennms.newts.api.Counter;
 import org.opennms.newts.api.Duration;
@@ -50,6 +55,7 @@ import org.opennms.newts.api.SampleSelectCallback;
 import org.opennms.newts.api.Timestamp;
 import org.opennms.newts.api.query.ResultDescriptor;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
@@ -57,6 +63,9 @@ import com.google.common.collect.Lists;
 
 public class NewtsWriterTest {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     /**
      * Uses a latch to verify that multiple that multiple threads
      * are used to concurrently insert samples into the SampleRepository.
@@ -119,6 +128,154 @@ public class NewtsWriterTest {
         assertEquals(ringBufferSize, sampleRepo.getNumSamplesInserted());
     }
 
+    /**
+     * Fills the ring buffer and locks all of the writer threads to verify
+     * that additional samples are spilled to the journal, and inserted
+     * once the writer threads are unlocked.
+     */
+    @Test
+    public void samplesAreJournaledWhenRingBufferIsFull() throws Exception {
+        Resource x = new Resource("x");
+        int ringBufferSize = 1024;
+        int numWriterThreads = 8;
+
+        Lock lock = new ReentrantLock();
+        LockedSampleRepository sampleRepo = new LockedSampleRepository(lock);
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(1, ringBufferSize, numWriterThreads,
+                tempFolder.newFolder("journal").getAbsolutePath(), 4, 1, registry);
+        writer.setSampleRepository(sampleRepo);
+        writer.afterPropertiesSet();
+
+        lock.lock();
+        for (int i = 0; i < ringBufferSize; i++) {
+            Sample s = new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(i));
+            writer.insert(Lists.newArrayList(s));
+        }
+
+        // The ring buffer should be full, and all of the threads should be locked
+        Thread.sleep(250);
+        assertEquals(numWriterThreads, sampleRepo.getNumThreadsLocked());
+
+        // Attempt to insert another batch of samples
+        for (int i = 0; i < 8; i++) {
+            Sample s = new Sample(Timestamp.now(), x, "y", MetricType.COUNTER, new Counter(i));
+            writer.insert(Lists.newArrayList(s));
+        }
+        assertEquals(8, registry.meter(MetricRegistry.name("journal", "spilled-samples")).getCount());
+        assertEquals(0, registry.meter(MetricRegistry.name("ring-buffer", "dropped-samples")).getCount());
+
+        // Unlock the writer threads and wait for the journal to be replayed
+        lock.unlock();
+        Gauge<?> pendingBatches = registry.getGauges().get(MetricRegistry.name("journal", "pending-batches"));
+        for (int i = 0; i < 100 && !Integer.valueOf(0).equals(pendingBatches.getValue()); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, pendingBatches.getValue());
+        writer.destroy();
+
+        // Verify the number of inserted samples
+        assertEquals(ringBufferSize + 8, sampleRepo.getNumSamplesInserted());
+        assertEquals(8, registry.meter(MetricRegistry.name("journal", "replayed-samples")).getCount());
+    }
+
+    /**
+     * Verifies that batches journaled before a restart are only replayed
+     * once the writer is initialized, and are not lost in the meantime.
+     */
+    @Test
+    public void journalIsReplayedAfterPropertiesAreSet() throws Exception {
+        Resource x = new Resource("x");
+        String journalDirectory = tempFolder.newFolder("journal").getAbsolutePath();
+
+        writeToJournal(journalDirectory, x, 8);
+
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(1, 1024, 1, journalDirectory, 4, 1, registry);
+        Gauge<?> pendingBatches = registry.getGauges().get(MetricRegistry.name("journal", "pending-batches"));
+
+        // Nothing is replayed before the repository is available
+        Thread.sleep(250);
+        assertEquals(8, pendingBatches.getValue());
+
+        LockedSampleRepository sampleRepo = new LockedSampleRepository(new ReentrantLock());
+        writer.setSampleRepository(sampleRepo);
+        writer.afterPropertiesSet();
+        for (int i = 0; i < 100 && !Integer.valueOf(0).equals(pendingBatches.getValue()); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, pendingBatches.getValue());
+        writer.destroy();
+
+        assertEquals(8, sampleRepo.getNumSamplesInserted());
+        assertEquals(8, registry.meter(MetricRegistry.name("journal", "replayed-samples")).getCount());
+    }
+
+    /**
+     * Verifies that a journaled batch which fails to be persisted is dropped
+     * like any other batch, instead of blocking the batches after it.
+     */
+    @Test
+    public void failingJournaledBatchesAreDropped() throws Exception {
+        Resource x = new Resource("x");
+        String journalDirectory = tempFolder.newFolder("journal").getAbsolutePath();
+        writeToJournal(journalDirectory, x, 8);
+
+        MetricRegistry registry = new MetricRegistry();
+        NewtsWriter writer = new NewtsWriter(1, 4, 2, journalDirectory, 4, 1, registry);
+        FailingSampleRepository sampleRepo = new FailingSampleRepository(3);
+        writer.setSampleRepository(sampleRepo);
+        writer.afterPropertiesSet();
+
+        Gauge<?> pendingBatches = registry.getGauges().get(MetricRegistry.name("journal", "pending-batches"));
+        for (int i = 0; i < 100 && !Integer.valueOf(0).equals(pendingBatches.getValue()); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, pendingBatches.getValue());
+        writer.destroy();
+
+        assertEquals(7, sampleRepo.getNumSamplesInserted());
+        assertEquals(7, registry.meter(MetricRegistry.name("journal", "replayed-samples")).getCount());
+
+        // The failed batch was committed, and is not replayed again after a restart
+        MetricRegistry otherRegistry = new MetricRegistry();
+        NewtsWriter otherWriter = new NewtsWriter(1, 4, 2, journalDirectory, 4, 1, otherRegistry);
+        assertEquals(0, otherRegistry.getGauges().get(MetricRegistry.name("journal", "pending-batches")).getValue());
+        otherWriter.destroy();
+    }
+
+    private static void writeToJournal(String journalDirectory, Resource resource, int numBatches) throws Exception {
+        try (SegmentLog journal = new SegmentLog(Paths.get(journalDirectory), 1024 * 1024, new SegmentQuota(4 * 1024 * 1024))) {
+            for (int i = 0; i < numBatches; i++) {
+                Sample s = new Sample(Timestamp.now(), resource, "y", MetricType.COUNTER, new Counter(i));
+                journal.append(SampleBatchCodec.encode(Lists.newArrayList(s), false));
+            }
+        }
+    }
+
+    private static class FailingSampleRepository extends MockSampleRepository {
+        private final long failingValue;
+        private final AtomicInteger numSamplesInserted = new AtomicInteger(0);
+
+        public FailingSampleRepository(long failingValue) {
+            this.failingValue = failingValue;
+        }
+
+        @Override
+        public void insert(Collection<Sample> samples, boolean calculateTimeToLive) {
+            for (Sample sample : samples) {
+                if (sample.getValue().longValue() == failingValue) {
+                    throw new IllegalStateException("Failed to insert sample with value " + failingValue);
+                }
+            }
+            numSamplesInserted.addAndGet(samples.size());
+        }
+
+        public int getNumSamplesInserted() {
+            return numSamplesInserted.get();
+        }
+    }
+
     private static class LatchedSampleRepository extends MockSampleRepository {
         private final CountDownLatch latch;
 
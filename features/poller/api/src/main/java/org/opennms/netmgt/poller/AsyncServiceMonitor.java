@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * <p>
+ * A {@link ServiceMonitor} that is able to poll a service without blocking
+ * the calling thread.
+ * </p>
+ *
+ * <p>
+ * Implementations should perform their I/O using non-blocking primitives and
+ * complete the returned future from the thread that handles the I/O
+ * completion. The callers of {@link #pollAsync(MonitoredService, Map)} do not
+ * dedicate a thread to the poll, so blocking in the future's completion
+ * stages will stall other polls.
+ * </p>
+ *
+ * <p>
+ * Synchronous monitors remain supported, see
+ * {@link org.opennms.netmgt.poller.support.AsyncServiceMonitorAdapter}.
+ * </p>
+ */
+public interface AsyncServiceMonitor extends ServiceMonitor {
+
+    /**
+     * Asynchronous version of {@link ServiceMonitor#poll(MonitoredService, Map)}.
+     *
+     * Unrecoverable errors should be reported by completing the future
+     * exceptionally instead of throwing.
+     *
+     * @param svc
+     *            Includes details about to the service being monitored.
+     * @param parameters
+     *            Includes the service parameters defined in <EM>poller-configuration.xml</EM> and those
+     *            returned by {@link #getRuntimeAttributes(MonitoredService, Map)}.
+     * @return a future that completes with the availability of the service
+     */
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters);
+
+    /**
+     * Blocks until {@link #pollAsync(MonitoredService, Map)} completes.
+     */
+    @Override
+    public default PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+        try {
+            return pollAsync(svc, parameters).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
@@ -29,17 +29,31 @@
 package org.opennms.netmgt.poller.client.rpc;
 
 import java.util.Objects;
+import java.util.concurrent.Executor;
 
 import org.opennms.core.rpc.api.RpcClient;
 import org.opennms.core.rpc.api.RpcClientFactory;
 import org.opennms.core.rpc.utils.RpcTargetHelper;
+import org.opennms.core.utils.LocationUtils;
 import org.opennms.netmgt.poller.LocationAwarePollerClient;
 import org.opennms.netmgt.poller.PollerRequestBuilder;
 import org.opennms.netmgt.poller.ServiceMonitorRegistry;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
-public class LocationAwarePollerClientImpl implements LocationAwarePollerClient, InitializingBean {
+public class LocationAwarePollerClientImpl implements LocationAwarePollerClient, InitializingBean, DisposableBean {
+
+    /**
+     * Polls bound for a remote location within this many milliseconds are sent
+     * in a single RPC. Batching is disabled when this is 0.
+     */
+    public static final String BATCH_WINDOW_SYS_PROP = "org.opennms.netmgt.poller.rpc.batch.window";
+
+    public static final String MAX_BATCH_SIZE_SYS_PROP = "org.opennms.netmgt.poller.rpc.batch.maxSize";
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
 
     @Autowired
     private ServiceMonitorRegistry registry;
@@ -53,8 +67,24 @@ public class LocationAwarePollerClientImpl implements LocationAwarePollerClient,
     @Autowired
     private RpcTargetHelper rpcTargetHelper;
 
+    @Autowired(required = false)
+    private PollerBatchClientRpcModule pollerBatchClientRpcModule;
+
+    /**
+     * Used to invoke the adaptors, so that they don't run on the thread which completed the poll.
+     */
+    @Autowired
+    @Qualifier("pollerExecutor")
+    private Executor executor;
+
+    private long batchWindowMs = Long.getLong(BATCH_WINDOW_SYS_PROP, 0L);
+
+    private int maxBatchSize = Integer.getInteger(MAX_BATCH_SIZE_SYS_PROP, DEFAULT_MAX_BATCH_SIZE);
+
     private RpcClient<PollerRequestDTO, PollerResponseDTO> delegate;
 
+    private PollerBatchingRpcClient batchingDelegate;
+
     public LocationAwarePollerClientImpl() { }
 
     public LocationAwarePollerClientImpl(RpcClientFactory rpcClientFactory) {
@@ -65,12 +95,32 @@ public class LocationAwarePollerClientImpl implements LocationAwarePollerClient,
     @Override
     public void afterPropertiesSet() {
         delegate = rpcClientFactory.getClient(pollerClientRpcModule);
+        if (batchWindowMs > 0 && pollerBatchClientRpcModule != null) {
+            batchingDelegate = new PollerBatchingRpcClient(rpcClientFactory.getClient(pollerBatchClientRpcModule), batchWindowMs, maxBatchSize);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (batchingDelegate != null) {
+            batchingDelegate.close();
+        }
     }
 
     protected RpcClient<PollerRequestDTO, PollerResponseDTO> getDelegate() {
         return delegate;
     }
 
+    /**
+     * Polls for the default location are executed locally and are never batched.
+     */
+    protected RpcClient<PollerRequestDTO, PollerResponseDTO> getDelegate(PollerRequestDTO request) {
+        if (batchingDelegate != null && !LocationUtils.isDefaultLocationName(request.getLocation())) {
+            return batchingDelegate;
+        }
+        return delegate;
+    }
+
     @Override
     public PollerRequestBuilder poll() {
         return new PollerRequestBuilderImpl(this);
@@ -91,4 +141,24 @@ public class LocationAwarePollerClientImpl implements LocationAwarePollerClient,
     public void setRpcTargetHelper(RpcTargetHelper rpcTargetHelper) {
         this.rpcTargetHelper = rpcTargetHelper;
     }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void setPollerBatchClientRpcModule(PollerBatchClientRpcModule pollerBatchClientRpcModule) {
+        this.pollerBatchClientRpcModule = pollerBatchClientRpcModule;
+    }
+
+    public void setBatchWindowMs(long batchWindowMs) {
+        this.batchWindowMs = batchWindowMs;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
 }
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.client.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.core.rpc.xml.AbstractBinaryRpcModule;
+import org.opennms.netmgt.poller.PollStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Executes the polls of a {@link PollerBatchRequestDTO} concurrently, using
+ * the {@link PollerClientRpcModule}.
+ *
+ * Every poll is bound by its own time to live, so that a single slow poll
+ * can only delay the response of the batch up to its own timeout.
+ */
+public class PollerBatchClientRpcModule extends AbstractBinaryRpcModule<PollerBatchRequestDTO, PollerBatchResponseDTO> {
+
+    public static final String RPC_MODULE_ID = "PollerBatch";
+
+    private static final ScheduledExecutorService TIMEOUT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "Poller-Batch-RPC-Timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private PollerClientRpcModule pollerClientRpcModule;
+
+    public PollerBatchClientRpcModule() {
+        super(PollerBatchRequestDTO.class, PollerBatchResponseDTO.class);
+    }
+
+    @Override
+    public String getId() {
+        return RPC_MODULE_ID;
+    }
+
+    @Override
+    public CompletableFuture<PollerBatchResponseDTO> execute(PollerBatchRequestDTO request) {
+        final List<CompletableFuture<PollerResponseDTO>> futures = new ArrayList<>(request.getRequests().size());
+        for (PollerRequestDTO pollerRequest : request.getRequests()) {
+            futures.add(withTimeout(pollerRequest, execute(pollerRequest)));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenApply(v -> {
+            final List<PollerResponseDTO> responses = new ArrayList<>(futures.size());
+            for (CompletableFuture<PollerResponseDTO> future : futures) {
+                responses.add(future.join());
+            }
+            return new PollerBatchResponseDTO(responses);
+        });
+    }
+
+    private CompletableFuture<PollerResponseDTO> execute(PollerRequestDTO request) {
+        // Failures are reported for the poll that caused them, and don't fail the batch
+        try {
+            return pollerClientRpcModule.execute(request)
+                    .exceptionally(pollerClientRpcModule::createResponseWithException);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(pollerClientRpcModule.createResponseWithException(e));
+        }
+    }
+
+    private static CompletableFuture<PollerResponseDTO> withTimeout(PollerRequestDTO request, CompletableFuture<PollerResponseDTO> future) {
+        final Long ttlInMs = request.getTimeToLiveMs();
+        if (ttlInMs == null || ttlInMs <= 0 || future.isDone()) {
+            return future;
+        }
+
+        final CompletableFuture<PollerResponseDTO> timedFuture = new CompletableFuture<>();
+        final ScheduledFuture<?> timeout = TIMEOUT_EXECUTOR.schedule(() -> {
+            timedFuture.complete(new PollerResponseDTO(PollStatus.unknown(String.format("No response received for %s within %dms.",
+                    request.getServiceName(), ttlInMs))));
+        }, ttlInMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, ex) -> {
+            timeout.cancel(false);
+            timedFuture.complete(response);
+        });
+        return timedFuture;
+    }
+
+    public void setPollerClientRpcModule(PollerClientRpcModule pollerClientRpcModule) {
+        this.pollerClientRpcModule = pollerClientRpcModule;
+    }
+
+    @Override
+    public PollerBatchResponseDTO createResponseWithException(Throwable ex) {
+        return new PollerBatchResponseDTO(ex);
+    }
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.client.rpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.opennms.core.rpc.xml.BinaryRpcRequest;
+
+/**
+ * Polls bound for the same location (and system), which are sent in a single RPC.
+ *
+ * @see PollerBatchClientRpcModule
+ */
+@XmlRootElement(name = "poller-batch-request")
+@XmlAccessorType(XmlAccessType.NONE)
+public class PollerBatchRequestDTO implements BinaryRpcRequest {
+
+    @XmlAttribute(name = "location")
+    private String location;
+
+    @XmlAttribute(name = "system-id")
+    private String systemId;
+
+    @XmlAttribute(name = "accept")
+    private String acceptedFormat;
+
+    @XmlElement(name = "poller-request")
+    private List<PollerRequestDTO> requests = new ArrayList<>();
+
+    private Long timeToLiveMs;
+
+    @Override
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    @Override
+    public String getSystemId() {
+        return systemId;
+    }
+
+    public void setSystemId(String systemId) {
+        this.systemId = systemId;
+    }
+
+    @Override
+    public String getAcceptedFormat() {
+        return acceptedFormat;
+    }
+
+    @Override
+    public void setAcceptedFormat(String acceptedFormat) {
+        this.acceptedFormat = acceptedFormat;
+    }
+
+    public List<PollerRequestDTO> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<PollerRequestDTO> requests) {
+        this.requests = requests;
+    }
+
+    public void addRequest(PollerRequestDTO request) {
+        requests.add(request);
+    }
+
+    @Override
+    public Long getTimeToLiveMs() {
+        return timeToLiveMs;
+    }
+
+    public void setTimeToLiveMs(Long timeToLiveMs) {
+        this.timeToLiveMs = timeToLiveMs;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof PollerBatchRequestDTO)) {
+            return false;
+        }
+        PollerBatchRequestDTO castOther = (PollerBatchRequestDTO) other;
+        return Objects.equals(location, castOther.location)
+                && Objects.equals(systemId, castOther.systemId)
+                && Objects.equals(timeToLiveMs, castOther.timeToLiveMs)
+                && Objects.equals(requests, castOther.requests);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(location, systemId, timeToLiveMs, requests);
+    }
+
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.client.rpc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.opennms.core.rpc.api.RemoteExecutionException;
+import org.opennms.core.rpc.api.RequestTimedOutException;
+import org.opennms.core.rpc.api.RpcClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the polls bound for the same location and system into batches,
+ * which are sent using a single RPC.
+ *
+ * A batch is sent once it holds {@link #getMaxBatchSize()} polls, or
+ * {@link #getBatchWindowMs()} after its first poll was added. The futures of
+ * the individual polls are completed when the response to the batch is
+ * received, or when their own time to live expires.
+ *
+ * The time to live of a poll starts once its batch is sent. The polls are
+ * sent with a shorter time to live, so that a poll which hangs on the remote
+ * side is reported as unknown in the response to the batch before it times
+ * out here, and doesn't cause the other polls of its batch to time out.
+ */
+public class PollerBatchingRpcClient implements RpcClient<PollerRequestDTO, PollerResponseDTO> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PollerBatchingRpcClient.class);
+
+    /**
+     * Time reserved for the transit of the response of a batch.
+     */
+    protected static final long RESPONSE_MARGIN_MS = 1000;
+
+    private final RpcClient<PollerBatchRequestDTO, PollerBatchResponseDTO> delegate;
+
+    private final long batchWindowMs;
+
+    private final int maxBatchSize;
+
+    private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+        final Thread thread = new Thread(r, "Poller-RPC-Batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<BatchKey, Batch> pendingBatches = new HashMap<>();
+
+    public PollerBatchingRpcClient(RpcClient<PollerBatchRequestDTO, PollerBatchResponseDTO> delegate, long batchWindowMs, int maxBatchSize) {
+        if (batchWindowMs <= 0) {
+            throw new IllegalArgumentException("The batch window must be positive.");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The maximum batch size must be positive.");
+        }
+        this.delegate = Objects.requireNonNull(delegate);
+        this.batchWindowMs = batchWindowMs;
+        this.maxBatchSize = maxBatchSize;
+        // Most polls complete before their timeout, don't keep the cancelled timeouts around
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public CompletableFuture<PollerResponseDTO> execute(PollerRequestDTO request) {
+        final CompletableFuture<PollerResponseDTO> future = new CompletableFuture<>();
+        final BatchKey key = new BatchKey(request.getLocation(), request.getSystemId());
+
+        Batch full = null;
+        synchronized (pendingBatches) {
+            Batch batch = pendingBatches.get(key);
+            if (batch == null) {
+                final Batch newBatch = new Batch(key);
+                pendingBatches.put(key, newBatch);
+                scheduler.schedule(() -> flush(newBatch), batchWindowMs, TimeUnit.MILLISECONDS);
+                batch = newBatch;
+            }
+            batch.add(request, future, request.getTimeToLiveMs());
+            if (batch.size() >= maxBatchSize) {
+                pendingBatches.remove(key);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        }
+        return future;
+    }
+
+    private void flush(Batch batch) {
+        synchronized (pendingBatches) {
+            // The batch may already have been sent, because it was full
+            if (!pendingBatches.remove(batch.key, batch)) {
+                return;
+            }
+        }
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        final PollerBatchRequestDTO batchRequest = batch.toRequest(batchWindowMs);
+        LOG.debug("Sending batch of {} polls to location: {}, system id: {}", batch.size(), batch.key.location, batch.key.systemId);
+
+        for (int i = 0; i < batch.size(); i++) {
+            scheduleTimeout(batch.futures.get(i), batch.ttls.get(i));
+        }
+
+        final CompletableFuture<PollerBatchResponseDTO> batchFuture;
+        try {
+            batchFuture = delegate.execute(batchRequest);
+        } catch (RuntimeException e) {
+            batch.fail(e);
+            return;
+        }
+
+        batchFuture.whenComplete((batchResponse, ex) -> {
+            if (ex != null) {
+                batch.fail(ex);
+            } else if (batchResponse.getResponses().size() != batch.size()) {
+                batch.fail(new IllegalStateException(String.format("Expected %d responses in the batch, but got %d.",
+                        batch.size(), batchResponse.getResponses().size())));
+            } else {
+                batch.complete(batchResponse.getResponses());
+            }
+        });
+    }
+
+    private void scheduleTimeout(CompletableFuture<PollerResponseDTO> future, Long ttlInMs) {
+        if (ttlInMs == null || ttlInMs <= 0) {
+            return;
+        }
+        // The poll keeps its own timeout, regardless of when the batch completes.
+        // The future is completed on another thread, so that its callbacks don't delay the batches.
+        final ScheduledFuture<?> timeout = scheduler.schedule(() -> CompletableFuture.runAsync(() ->
+                future.completeExceptionally(new RequestTimedOutException(
+                        new TimeoutException(String.format("No response received within %dms.", ttlInMs))))),
+                ttlInMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, ex) -> timeout.cancel(false));
+    }
+
+    /**
+     * Returns the time to live of a poll on the remote side, which leaves time
+     * for the response of the batch to arrive before the poll times out here.
+     */
+    protected static long getRemoteTimeToLiveMs(long ttlInMs) {
+        return Math.max(ttlInMs - RESPONSE_MARGIN_MS, ttlInMs / 2);
+    }
+
+    public long getBatchWindowMs() {
+        return batchWindowMs;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void close() {
+        scheduler.shutdown();
+    }
+
+    private static final class Batch {
+        private final BatchKey key;
+        private final List<PollerRequestDTO> requests = new ArrayList<>();
+        private final List<CompletableFuture<PollerResponseDTO>> futures = new ArrayList<>();
+        private final List<Long> ttls = new ArrayList<>();
+
+        private Batch(BatchKey key) {
+            this.key = key;
+        }
+
+        private void add(PollerRequestDTO request, CompletableFuture<PollerResponseDTO> future, Long ttlInMs) {
+            requests.add(request);
+            futures.add(future);
+            ttls.add(ttlInMs);
+        }
+
+        private int size() {
+            return requests.size();
+        }
+
+        private PollerBatchRequestDTO toRequest(long batchWindowMs) {
+            final PollerBatchRequestDTO batchRequest = new PollerBatchRequestDTO();
+            batchRequest.setLocation(key.location);
+            batchRequest.setSystemId(key.systemId);
+            batchRequest.setRequests(requests);
+
+            // The polls must complete on the remote side before they time out here
+            for (int i = 0; i < requests.size(); i++) {
+                final Long ttlInMs = ttls.get(i);
+                if (ttlInMs != null && ttlInMs > 0) {
+                    requests.get(i).setTimeToLiveMs(getRemoteTimeToLiveMs(ttlInMs));
+                }
+            }
+
+            // The batch outlives its longest lived poll, so that the polls time out individually
+            Long ttlInMs = null;
+            for (Long pollTtlInMs : ttls) {
+                if (pollTtlInMs == null) {
+                    ttlInMs = null;
+                    break;
+                }
+                ttlInMs = ttlInMs == null ? pollTtlInMs : Math.max(ttlInMs, pollTtlInMs);
+            }
+            batchRequest.setTimeToLiveMs(ttlInMs != null ? ttlInMs + batchWindowMs + RESPONSE_MARGIN_MS : null);
+            return batchRequest;
+        }
+
+        private void complete(List<PollerResponseDTO> responses) {
+            for (int i = 0; i < futures.size(); i++) {
+                final PollerResponseDTO response = responses.get(i);
+                if (response.getErrorMessage() != null) {
+                    futures.get(i).completeExceptionally(new RemoteExecutionException(response.getErrorMessage()));
+                } else {
+                    futures.get(i).complete(response);
+                }
+            }
+        }
+
+        private void fail(Throwable ex) {
+            for (CompletableFuture<PollerResponseDTO> future : futures) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private static final class BatchKey {
+        private final String location;
+        private final String systemId;
+
+        private BatchKey(String location, String systemId) {
+            this.location = location;
+            this.systemId = systemId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BatchKey)) {
+                return false;
+            }
+            final BatchKey other = (BatchKey) obj;
+            return Objects.equals(location, other.location) && Objects.equals(systemId, other.systemId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(location, systemId);
+        }
+    }
+}
@@ -30,17 +30,18 @@ package org.opennms.netmgt.poller.client.rpc;
 
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
-import java.util.function.Supplier;
 
-import org.opennms.core.rpc.xml.AbstractXmlRpcModule;
+import org.opennms.core.rpc.xml.AbstractBinaryRpcModule;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.poller.ServiceMonitorRegistry;
+import org.opennms.netmgt.poller.support.AsyncServiceMonitorAdapter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO, PollerResponseDTO> {
+public class PollerClientRpcModule extends AbstractBinaryRpcModule<PollerRequestDTO, PollerResponseDTO> {
 
     public static final String RPC_MODULE_ID = "Poller";
 
@@ -68,19 +69,25 @@ public class PollerClientRpcModule extends AbstractXmlRpcModule<PollerRequestDTO
             return CompletableFuture.completedFuture(new PollerResponseDTO(PollStatus.unknown("No monitor found with class name '" + className + "'.")));
         }
 
-        return CompletableFuture.supplyAsync(new Supplier<PollerResponseDTO>() {
-            @Override
-            public PollerResponseDTO get() {
-                PollStatus pollStatus;
-                try {
-                    final Map<String, Object> parameters = request.getMonitorParameters();
-                    pollStatus = monitor.poll(request, parameters);
-                } catch (RuntimeException e) {
-                    pollStatus = PollStatus.unknown(e.getMessage());
+        final Map<String, Object> parameters = request.getMonitorParameters();
+        final CompletableFuture<PollStatus> future;
+        try {
+            // Asynchronous monitors complete the future themselves, the others are run on the executor
+            future = AsyncServiceMonitorAdapter.adapt(monitor, executor).pollAsync(request, parameters);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(new PollerResponseDTO(PollStatus.unknown(e.getMessage())));
+        }
+
+        return future.handle((pollStatus, ex) -> {
+            if (ex != null) {
+                final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (!(cause instanceof RuntimeException)) {
+                    throw new CompletionException(cause);
                 }
-                return new PollerResponseDTO(pollStatus);
+                pollStatus = PollStatus.unknown(cause.getMessage());
             }
-        }, executor);
+            return new PollerResponseDTO(pollStatus);
+        });
     }
 
     public void setServiceMonitorRegistry(ServiceMonitorRegistry serviceMonitorRegistry) {
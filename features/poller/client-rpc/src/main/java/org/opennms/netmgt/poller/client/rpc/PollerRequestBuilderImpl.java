@@ -144,8 +144,9 @@ public class PollerRequestBuilderImpl implements PollerRequestBuilder {
         final Map<String, Object> parameters = request.getMonitorParameters();
         request.addAttributes(serviceMonitor.getRuntimeAttributes(request, parameters));
 
-        // Execute the request
-        return client.getDelegate().execute(request).thenApply(results -> {
+        // Execute the request, and invoke the adaptors on the poller executor since
+        // the request may be completed by an I/O or a messaging thread
+        return client.getDelegate(request).execute(request).thenApplyAsync(results -> {
             PollStatus pollStatus = results.getPollStatus();
             // Invoke the adapters in the same order as which they were added
             for (ServiceMonitorAdaptor adaptor : adaptors) {
@@ -154,7 +155,7 @@ public class PollerRequestBuilderImpl implements PollerRequestBuilder {
             }
             results.setPollStatus(pollStatus);
             return results;
-        });
+        }, client.getExecutor());
     }
 
 }
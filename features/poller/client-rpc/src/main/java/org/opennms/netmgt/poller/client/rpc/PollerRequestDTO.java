@@ -43,13 +43,13 @@ import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 
 import org.opennms.core.network.InetAddressXmlAdapter;
-import org.opennms.core.rpc.api.RpcRequest;
+import org.opennms.core.rpc.xml.BinaryRpcRequest;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.poller.PollerRequest;
 
 @XmlRootElement(name = "poller-request")
 @XmlAccessorType(XmlAccessType.NONE)
-public class PollerRequestDTO implements RpcRequest, PollerRequest{
+public class PollerRequestDTO implements BinaryRpcRequest, PollerRequest{
 
     @XmlAttribute(name = "location")
     private String location;
@@ -57,6 +57,9 @@ public class PollerRequestDTO implements RpcRequest, PollerRequest{
     @XmlAttribute(name="system-id")
     private String systemId;
 
+    @XmlAttribute(name = "accept")
+    private String acceptedFormat;
+
     @XmlAttribute(name = "class-name")
     private String className;
 
@@ -79,6 +82,11 @@ public class PollerRequestDTO implements RpcRequest, PollerRequest{
     @XmlElement(name = "attribute")
     private List<PollerAttributeDTO> attributes = new ArrayList<>();
 
+    /**
+     * Only used by the Minion to time out the polls of a batch individually,
+     * see {@link PollerBatchClientRpcModule}.
+     */
+    @XmlAttribute(name = "ttl")
     private Long timeToLiveMs;
 
     @Override
@@ -99,6 +107,16 @@ public class PollerRequestDTO implements RpcRequest, PollerRequest{
         return systemId;
     }
 
+    @Override
+    public String getAcceptedFormat() {
+        return acceptedFormat;
+    }
+
+    @Override
+    public void setAcceptedFormat(String acceptedFormat) {
+        this.acceptedFormat = acceptedFormat;
+    }
+
     public String getClassName() {
         return className;
     }
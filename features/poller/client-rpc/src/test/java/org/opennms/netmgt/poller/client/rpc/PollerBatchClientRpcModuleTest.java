@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.client.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.poller.ServiceMonitorRegistry;
+import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+
+public class PollerBatchClientRpcModuleTest {
+
+    private final PollerBatchClientRpcModule module = new PollerBatchClientRpcModule();
+
+    @Before
+    public void setUp() {
+        final ServiceMonitor monitor = new TestMonitor();
+        final PollerClientRpcModule pollerClientRpcModule = new PollerClientRpcModule();
+        pollerClientRpcModule.setExecutor(Runnable::run);
+        pollerClientRpcModule.setServiceMonitorRegistry(new ServiceMonitorRegistry() {
+            @Override
+            public ServiceMonitor getMonitorByClassName(String className) {
+                return monitor;
+            }
+
+            @Override
+            public Set<String> getMonitorClassNames() {
+                return Collections.singleton(TestMonitor.class.getCanonicalName());
+            }
+        });
+        module.setPollerClientRpcModule(pollerClientRpcModule);
+    }
+
+    @Test
+    public void canExecuteBatches() throws Exception {
+        final PollerBatchRequestDTO batch = new PollerBatchRequestDTO();
+        batch.addRequest(request("up", null));
+        batch.addRequest(request("hang", 100L));
+        batch.addRequest(request("fail", null));
+        batch.addRequest(request("down", null));
+
+        final PollerBatchResponseDTO response = module.execute(batch).get(10, TimeUnit.SECONDS);
+        assertEquals(4, response.getResponses().size());
+        assertTrue(response.getResponses().get(0).getPollStatus().isAvailable());
+        // The hanging poll timed out on its own, without failing the batch
+        assertTrue(response.getResponses().get(1).getPollStatus().isUnknown());
+        assertTrue(response.getResponses().get(2).getPollStatus().isUnknown());
+        assertEquals("Oops", response.getResponses().get(2).getPollStatus().getReason());
+        assertTrue(response.getResponses().get(3).getPollStatus().isDown());
+    }
+
+    @Test
+    public void canMarshalBatches() {
+        final PollerBatchRequestDTO batch = new PollerBatchRequestDTO();
+        batch.setLocation("MINION");
+        batch.addRequest(request("up", 100L));
+        batch.addRequest(request("down", null));
+
+        final PollerBatchRequestDTO unmarshaled = module.unmarshalRequest(module.marshalRequest(batch));
+        assertEquals(batch.getLocation(), unmarshaled.getLocation());
+        // The time to live of the individual polls is preserved
+        assertEquals(batch.getRequests(), unmarshaled.getRequests());
+
+        final PollerBatchResponseDTO response = new PollerBatchResponseDTO(Collections.singletonList(new PollerResponseDTO(PollStatus.available())));
+        assertEquals(response, module.unmarshalResponse(module.marshalResponse(response)));
+    }
+
+    private static PollerRequestDTO request(String serviceName, Long ttlInMs) {
+        final PollerRequestDTO request = new PollerRequestDTO();
+        request.setClassName(TestMonitor.class.getCanonicalName());
+        request.setServiceName(serviceName);
+        request.setAddress(InetAddress.getLoopbackAddress());
+        request.setTimeToLiveMs(ttlInMs);
+        return request;
+    }
+
+    private static class TestMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+        @Override
+        public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+            switch (svc.getSvcName()) {
+                case "up":
+                    return CompletableFuture.completedFuture(PollStatus.available());
+                case "down":
+                    return CompletableFuture.completedFuture(PollStatus.unavailable());
+                case "fail":
+                    throw new RuntimeException("Oops");
+                default:
+                    return new CompletableFuture<>();
+            }
+        }
+    }
+}
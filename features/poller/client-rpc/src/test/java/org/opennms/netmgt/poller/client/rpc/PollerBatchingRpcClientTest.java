@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.client.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.core.rpc.api.RemoteExecutionException;
+import org.opennms.core.rpc.api.RequestTimedOutException;
+import org.opennms.core.rpc.api.RpcClient;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.poller.ServiceMonitorRegistry;
+import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+
+public class PollerBatchingRpcClientTest {
+
+    private final List<PollerBatchRequestDTO> batches = new ArrayList<>();
+
+    private final List<CompletableFuture<PollerBatchResponseDTO>> batchFutures = new ArrayList<>();
+
+    private final RpcClient<PollerBatchRequestDTO, PollerBatchResponseDTO> delegate = request -> {
+        final CompletableFuture<PollerBatchResponseDTO> future = new CompletableFuture<>();
+        synchronized (batches) {
+            batches.add(request);
+            batchFutures.add(future);
+            batches.notifyAll();
+        }
+        return future;
+    };
+
+    private PollerBatchingRpcClient client;
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    public void canBatchPollsForTheSameLocation() throws Exception {
+        client = new PollerBatchingRpcClient(delegate, 100, 500);
+
+        final CompletableFuture<PollerResponseDTO> first = client.execute(request("MINION", "first"));
+        final CompletableFuture<PollerResponseDTO> second = client.execute(request("MINION", "second"));
+        final CompletableFuture<PollerResponseDTO> other = client.execute(request("OTHER", "other"));
+
+        // One batch per location, sent once the window is over
+        awaitBatches(2);
+        final PollerBatchRequestDTO batch = getBatch("MINION");
+        assertEquals(2, batch.getRequests().size());
+        assertEquals("first", batch.getRequests().get(0).getServiceName());
+        assertEquals("second", batch.getRequests().get(1).getServiceName());
+        assertEquals(1, getBatch("OTHER").getRequests().size());
+
+        // The responses are matched to the polls by their position
+        final List<PollerResponseDTO> responses = new ArrayList<>();
+        responses.add(new PollerResponseDTO(PollStatus.available()));
+        responses.add(new PollerResponseDTO(PollStatus.unavailable("second is down")));
+        batchFutures.get(batches.indexOf(batch)).complete(new PollerBatchResponseDTO(responses));
+
+        assertTrue(first.get().getPollStatus().isAvailable());
+        assertEquals("second is down", second.get().getPollStatus().getReason());
+        assertFalse(other.isDone());
+    }
+
+    @Test
+    public void canSendFullBatchesImmediately() throws Exception {
+        client = new PollerBatchingRpcClient(delegate, TimeUnit.MINUTES.toMillis(1), 2);
+
+        client.execute(request("MINION", "first"));
+        assertEquals(0, batches.size());
+        client.execute(request("MINION", "second"));
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).getRequests().size());
+    }
+
+    @Test
+    public void canTimeOutPollsIndividually() throws Exception {
+        client = new PollerBatchingRpcClient(delegate, 10, 500);
+
+        final PollerRequestDTO slowRequest = request("MINION", "slow");
+        slowRequest.setTimeToLiveMs(TimeUnit.MINUTES.toMillis(1));
+        final CompletableFuture<PollerResponseDTO> slow = client.execute(slowRequest);
+        final PollerRequestDTO fastRequest = request("MINION", "fast");
+        fastRequest.setTimeToLiveMs(100L);
+        final CompletableFuture<PollerResponseDTO> fast = client.execute(fastRequest);
+
+        awaitBatches(1);
+        // The batch outlives its longest lived poll, and the polls are sent with a shorter time to live
+        assertEquals(Long.valueOf(TimeUnit.MINUTES.toMillis(1) + 10 + PollerBatchingRpcClient.RESPONSE_MARGIN_MS), batches.get(0).getTimeToLiveMs());
+        assertEquals(Long.valueOf(TimeUnit.MINUTES.toMillis(1) - PollerBatchingRpcClient.RESPONSE_MARGIN_MS),
+                batches.get(0).getRequests().get(0).getTimeToLiveMs());
+        assertEquals(Long.valueOf(50L), batches.get(0).getRequests().get(1).getTimeToLiveMs());
+
+        try {
+            fast.get(10, TimeUnit.SECONDS);
+            fail("The poll should have timed out.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RequestTimedOutException);
+        }
+        assertFalse(slow.isDone());
+    }
+
+    @Test
+    public void canFailPollsIndividually() throws Exception {
+        client = new PollerBatchingRpcClient(delegate, 10, 500);
+
+        final CompletableFuture<PollerResponseDTO> first = client.execute(request("MINION", "first"));
+        final CompletableFuture<PollerResponseDTO> second = client.execute(request("MINION", "second"));
+
+        awaitBatches(1);
+        final List<PollerResponseDTO> responses = new ArrayList<>();
+        responses.add(new PollerResponseDTO(new IllegalStateException("Oops")));
+        responses.add(new PollerResponseDTO(PollStatus.available()));
+        batchFutures.get(0).complete(new PollerBatchResponseDTO(responses));
+
+        try {
+            first.get();
+            fail("The poll should have failed.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RemoteExecutionException);
+        }
+        assertTrue(second.get().getPollStatus().isAvailable());
+    }
+
+    @Test
+    public void hangingPollsDontTimeOutTheirBatch() throws Exception {
+        // Execute the batches like a Minion would
+        final ServiceMonitor monitor = new HangingMonitor();
+        final PollerClientRpcModule pollerClientRpcModule = new PollerClientRpcModule();
+        pollerClientRpcModule.setExecutor(Runnable::run);
+        pollerClientRpcModule.setServiceMonitorRegistry(new ServiceMonitorRegistry() {
+            @Override
+            public ServiceMonitor getMonitorByClassName(String className) {
+                return monitor;
+            }
+
+            @Override
+            public Set<String> getMonitorClassNames() {
+                return Collections.singleton(HangingMonitor.class.getCanonicalName());
+            }
+        });
+        final PollerBatchClientRpcModule pollerBatchClientRpcModule = new PollerBatchClientRpcModule();
+        pollerBatchClientRpcModule.setPollerClientRpcModule(pollerClientRpcModule);
+        // The batch window is longer than the margin of the polls, to verify that their time to live starts once the batch is sent
+        client = new PollerBatchingRpcClient(pollerBatchClientRpcModule::execute, 2 * PollerBatchingRpcClient.RESPONSE_MARGIN_MS, 500);
+
+        final PollerRequestDTO hangingRequest = request("MINION", "hang");
+        hangingRequest.setClassName(HangingMonitor.class.getCanonicalName());
+        hangingRequest.setAddress(InetAddress.getLoopbackAddress());
+        hangingRequest.setTimeToLiveMs(2 * PollerBatchingRpcClient.RESPONSE_MARGIN_MS);
+        final CompletableFuture<PollerResponseDTO> hanging = client.execute(hangingRequest);
+        final PollerRequestDTO fastRequest = request("MINION", "up");
+        fastRequest.setClassName(HangingMonitor.class.getCanonicalName());
+        fastRequest.setAddress(InetAddress.getLoopbackAddress());
+        fastRequest.setTimeToLiveMs(2 * PollerBatchingRpcClient.RESPONSE_MARGIN_MS);
+        final CompletableFuture<PollerResponseDTO> fast = client.execute(fastRequest);
+
+        // The hanging poll timed out on the remote side, and was reported in the response to the batch
+        assertTrue(fast.get(10, TimeUnit.SECONDS).getPollStatus().isAvailable());
+        assertTrue(hanging.get(10, TimeUnit.SECONDS).getPollStatus().isUnknown());
+    }
+
+    private PollerBatchRequestDTO getBatch(String location) {
+        final List<PollerBatchRequestDTO> matching = batches.stream()
+                .filter(b -> location.equals(b.getLocation()))
+                .collect(Collectors.toList());
+        assertEquals(1, matching.size());
+        return matching.get(0);
+    }
+
+    private void awaitBatches(int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        synchronized (batches) {
+            while (batches.size() < count && System.currentTimeMillis() < deadline) {
+                batches.wait(100);
+            }
+        }
+        assertEquals(count, batches.size());
+    }
+
+    private static PollerRequestDTO request(String location, String serviceName) {
+        final PollerRequestDTO request = new PollerRequestDTO();
+        request.setLocation(location);
+        request.setServiceName(serviceName);
+        return request;
+    }
+
+    private static class HangingMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+        @Override
+        public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+            if ("up".equals(svc.getSvcName())) {
+                return CompletableFuture.completedFuture(PollStatus.available());
+            }
+            return new CompletableFuture<>();
+        }
+    }
+}
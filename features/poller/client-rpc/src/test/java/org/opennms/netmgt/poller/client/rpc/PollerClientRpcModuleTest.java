@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.poller.client.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.ServiceMonitor;
+import org.opennms.netmgt.poller.ServiceMonitorRegistry;
+import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+
+public class PollerClientRpcModuleTest {
+
+    private final PollerClientRpcModule module = new PollerClientRpcModule();
+
+    private final PollerRequestDTO request = new PollerRequestDTO();
+
+    private ServiceMonitor monitor;
+
+    @Before
+    public void setUp() {
+        module.setServiceMonitorRegistry(new ServiceMonitorRegistry() {
+            @Override
+            public ServiceMonitor getMonitorByClassName(String className) {
+                return monitor;
+            }
+
+            @Override
+            public Set<String> getMonitorClassNames() {
+                return Collections.singleton(monitor.getClass().getCanonicalName());
+            }
+        });
+
+        request.setAddress(InetAddress.getLoopbackAddress());
+        request.setServiceName("TEST");
+        request.setClassName("TestMonitor");
+    }
+
+    @Test
+    public void canPollSynchronousMonitorsOnExecutor() throws Exception {
+        final AtomicInteger executions = new AtomicInteger();
+        module.setExecutor(runnable -> {
+            executions.incrementAndGet();
+            runnable.run();
+        });
+        monitor = new AbstractServiceMonitor() {
+            @Override
+            public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+                return PollStatus.available(1.0);
+            }
+        };
+
+        final PollerResponseDTO response = module.execute(request).get();
+        assertTrue(response.getPollStatus().isAvailable());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void canPollAsynchronousMonitorsWithoutExecutor() throws Exception {
+        module.setExecutor(runnable -> fail("Asynchronous monitors should not use the executor."));
+        final CompletableFuture<PollStatus> pollStatus = new CompletableFuture<>();
+        monitor = new TestAsyncMonitor(pollStatus);
+
+        final CompletableFuture<PollerResponseDTO> response = module.execute(request);
+        assertFalse(response.isDone());
+
+        pollStatus.complete(PollStatus.available(1.0));
+        assertTrue(response.get().getPollStatus().isAvailable());
+    }
+
+    @Test
+    public void failedAsynchronousPollsAreUnknown() throws Exception {
+        module.setExecutor(runnable -> fail("Asynchronous monitors should not use the executor."));
+        final CompletableFuture<PollStatus> pollStatus = new CompletableFuture<>();
+        pollStatus.completeExceptionally(new RuntimeException("Oops"));
+        monitor = new TestAsyncMonitor(pollStatus);
+
+        final PollStatus status = module.execute(request).get().getPollStatus();
+        assertTrue(status.isUnknown());
+        assertEquals("Oops", status.getReason());
+    }
+
+    private static class TestAsyncMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
+        private final CompletableFuture<PollStatus> m_pollStatus;
+
+        private TestAsyncMonitor(CompletableFuture<PollStatus> pollStatus) {
+            m_pollStatus = pollStatus;
+        }
+
+        @Override
+        public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+            return m_pollStatus;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.poller.client.rpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.core.rpc.api.RpcClient;
+import org.opennms.core.rpc.utils.RpcTargetHelper;
+import org.opennms.netmgt.poller.MonitoredService;
+import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.poller.PollerResponse;
+import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+import org.opennms.netmgt.poller.support.SimpleMonitoredService;
+
+public class PollerRequestBuilderImplTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "poller-executor"));
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void adaptorsAreNotInvokedOnTheCompletingThread() throws Exception {
+        final CompletableFuture<PollerResponseDTO> response = new CompletableFuture<>();
+        final LocationAwarePollerClientImpl client = new LocationAwarePollerClientImpl() {
+            @Override
+            protected RpcClient<PollerRequestDTO, PollerResponseDTO> getDelegate(PollerRequestDTO request) {
+                return r -> response;
+            }
+        };
+        client.setRpcTargetHelper(new RpcTargetHelper());
+        client.setExecutor(executor);
+
+        final AtomicReference<Thread> adaptorThread = new AtomicReference<>();
+        final CompletableFuture<PollerResponse> future = client.poll()
+                .withService(new SimpleMonitoredService(InetAddress.getLoopbackAddress(), "TEST"))
+                .withMonitor(new AbstractServiceMonitor() {
+                    @Override
+                    public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+                        return PollStatus.unknown();
+                    }
+                })
+                .withAdaptor((svc, parameters, status) -> {
+                    adaptorThread.set(Thread.currentThread());
+                    return PollStatus.unavailable("Adapted");
+                })
+                .execute();
+        assertFalse(future.isDone());
+
+        // Complete the poll from another thread, as a monitor's I/O thread would
+        final Thread completingThread = new Thread(() -> response.complete(new PollerResponseDTO(PollStatus.available(1.0))), "io-thread");
+        completingThread.start();
+        completingThread.join();
+
+        final PollStatus pollStatus = future.get(5, TimeUnit.SECONDS).getPollStatus();
+        assertTrue(pollStatus.isUnavailable());
+        assertEquals("Adapted", pollStatus.getReason());
+        assertNotEquals(completingThread, adaptorThread.get());
+        assertEquals("poller-executor", adaptorThread.get().getName());
+    }
+}
@@ -30,11 +30,16 @@ package org.opennms.netmgt.poller.monitors;
 
 import java.net.InetAddress;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.utils.ParameterMap;
+import org.opennms.netmgt.icmp.EchoPacket;
 import org.opennms.netmgt.icmp.PingConstants;
+import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.PingerFactory;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
@@ -57,7 +62,7 @@ import com.google.common.base.Suppliers;
  * @author <A HREF="http://www.opennms.org/">OpenNMS</A>
  */
 @Distributable
-public class IcmpMonitor extends AbstractServiceMonitor {
+public class IcmpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
     private static final Logger LOG = LoggerFactory.getLogger(IcmpMonitor.class);
 
     private Supplier<PingerFactory> pingerFactory = Suppliers.memoize(() -> BeanUtils.getBean("daoContext", "pingerFactory", PingerFactory.class));
@@ -106,6 +111,52 @@ public class IcmpMonitor extends AbstractServiceMonitor {
 
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Same as {@link #poll(MonitoredService, Map)}, but completes the future
+     * from the pinger's callback instead of waiting for the reply.
+     */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        final CompletableFuture<PollStatus> future = new CompletableFuture<>();
+        final InetAddress host = svc.getAddress();
+
+        try {
+            // get parameters
+            //
+            int retries = ParameterMap.getKeyedInteger(parameters, "retry", PingConstants.DEFAULT_RETRIES);
+            long timeout = ParameterMap.getKeyedLong(parameters, "timeout", PingConstants.DEFAULT_TIMEOUT);
+            int packetSize = ParameterMap.getKeyedInteger(parameters, "packet-size", PingConstants.DEFAULT_PACKET_SIZE);
+            final int dscp = ParameterMap.getKeyedDecodedInteger(parameters, "dscp", 0);
+            final boolean allowFragmentation = ParameterMap.getKeyedBoolean(parameters, "allow-fragmentation", true);
+
+            pingerFactory.get().getInstance(dscp, allowFragmentation).ping(host, timeout, retries, packetSize, 1, new PingResponseCallback() {
+                @Override
+                public void handleResponse(InetAddress address, EchoPacket response) {
+                    // The response time is reported in microseconds, like the synchronous ping
+                    future.complete(PollStatus.available((double)Math.round(response.elapsedTime(TimeUnit.MICROSECONDS))));
+                }
+
+                @Override
+                public void handleTimeout(InetAddress address, EchoPacket request) {
+                    future.complete(PollStatus.unavailable(null));
+                }
+
+                @Override
+                public void handleError(InetAddress address, EchoPacket request, Throwable t) {
+                    LOG.debug("failed to ping {}", host, t);
+                    future.complete(PollStatus.unavailable(t.getMessage()));
+                }
+            });
+        } catch (Throwable e) {
+            LOG.debug("failed to ping {}", host, e);
+            future.complete(PollStatus.unavailable(e.getMessage()));
+        }
+
+        return future;
+    }
+
     public void setPingerFactory(PingerFactory pingerFactory) {
         this.pingerFactory = Suppliers.ofInstance(pingerFactory);
     }
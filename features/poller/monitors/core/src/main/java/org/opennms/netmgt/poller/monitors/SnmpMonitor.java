@@ -32,11 +32,13 @@ import java.net.InetAddress;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.PropertiesUtils;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.DistributionContext;
 import org.opennms.netmgt.poller.MonitoredService;
@@ -64,7 +66,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
 @Distributable(DistributionContext.DAEMON)
-public class SnmpMonitor extends SnmpMonitorStrategy {
+public class SnmpMonitor extends SnmpMonitorStrategy implements AsyncServiceMonitor {
     
     public static final Logger LOG = LoggerFactory.getLogger(SnmpMonitor.class);
 
@@ -111,27 +113,10 @@ public class SnmpMonitor extends SnmpMonitorStrategy {
         String hexstr = ParameterMap.getKeyedString(parameters, "hex", "false");
 
         hex = "true".equalsIgnoreCase(hexstr);
-        // set timeout and retries on SNMP peer object
-        //
-        agentConfig.setTimeout(ParameterMap.getKeyedInteger(parameters, "timeout", agentConfig.getTimeout()));
-        agentConfig.setRetries(ParameterMap.getKeyedInteger(parameters, "retry", ParameterMap.getKeyedInteger(parameters, "retries", agentConfig.getRetries())));
-        agentConfig.setPort(ParameterMap.getKeyedInteger(parameters, "port", agentConfig.getPort()));
+        configureAgent(agentConfig, parameters);
 
         // Squirrel the configuration parameters away in a Properties for later expansion if service is down
-        Properties svcParams = new Properties();
-        svcParams.setProperty("oid", oid);
-        svcParams.setProperty("operator", String.valueOf(operator));
-        svcParams.setProperty("operand", String.valueOf(operand));
-        svcParams.setProperty("walk", walkstr);
-        svcParams.setProperty("matchAll", matchstr);
-        svcParams.setProperty("minimum", String.valueOf(countMin));
-        svcParams.setProperty("maximum", String.valueOf(countMax));
-        svcParams.setProperty("timeout", String.valueOf(agentConfig.getTimeout()));
-        svcParams.setProperty("retry", String.valueOf(agentConfig.getRetries()));
-        svcParams.setProperty("retries", svcParams.getProperty("retry"));
-        svcParams.setProperty("ipaddr", hostAddress);
-        svcParams.setProperty("port", String.valueOf(agentConfig.getPort()));
-        svcParams.setProperty("hex", hexstr);
+        Properties svcParams = getServiceParameters(agentConfig, hostAddress, oid, operator, operand, walkstr, matchstr, countMin, countMax, hexstr);
 
 
         // Establish SNMP session with interface
@@ -195,47 +180,144 @@ public class SnmpMonitor extends SnmpMonitorStrategy {
                 }
 
             } else {
-                if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
-                    if (operator != null) {
-                        reasonTemplate = "Observed value '${observedValue}' does not meet criteria '${operator} ${operand}'";
-                    } else {
-                        reasonTemplate = "Observed value '${observedValue}' was null";
-                    }
-                }
-
                 SnmpValue result = SnmpUtils.get(agentConfig, snmpObjectId);
+                status = getStatus(result, tracker, hostAddress, oid, operator, operand, reasonTemplate, svcParams);
+            }
 
-                if (result != null) {
-                    svcParams.setProperty("observedValue", getStringValue(result));
-                    LOG.debug("poll: SNMP poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
-                    
-                    if (meetsCriteria(result, operator, operand)) {
-                        status = PollStatus.available(tracker.elapsedTimeInMillis());
-                    } else {
-                        status = PollStatus.unavailable(PropertiesUtils.substitute(reasonTemplate, svcParams));
-                    }
-                } else {
-                    String reason = "SNMP poll failed, addr=" + hostAddress + " oid=" + oid;
-                    LOG.debug(reason);
-                    status = PollStatus.unavailable(reason);
+        } catch (Throwable t) {
+            status = getStatus(t, hostAddress);
+        }
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <P>
+     * Gets are sent asynchronously and evaluated like in {@link #poll(MonitoredService, Map)}.
+     * Walks are not available asynchronously, so these are still performed by
+     * the calling thread.
+     * </P>
+     */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        String walkstr = ParameterMap.getKeyedString(parameters, "walk", "false");
+        String matchstr = ParameterMap.getKeyedString(parameters, "match-all", "true");
+        if ("count".equals(matchstr) || "true".equals(walkstr)) {
+            return CompletableFuture.completedFuture(poll(svc, parameters));
+        }
+
+        final SnmpAgentConfig agentConfig;
+        try {
+            agentConfig = getAgentConfig(svc, parameters);
+        } catch (RuntimeException e) {
+            final CompletableFuture<PollStatus> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        final String hostAddress = InetAddressUtils.str(svc.getAddress());
+        try {
+            final String oid = ParameterMap.getKeyedString(parameters, "oid", DEFAULT_OBJECT_IDENTIFIER);
+            final String operator = ParameterMap.getKeyedString(parameters, "operator", null);
+            final String operand = ParameterMap.getKeyedString(parameters, "operand", null);
+            int countMin = ParameterMap.getKeyedInteger(parameters, "minimum", 0);
+            int countMax = ParameterMap.getKeyedInteger(parameters, "maximum", 0);
+            final String reasonTemplate = ParameterMap.getKeyedString(parameters, "reason-template", DEFAULT_REASON_TEMPLATE);
+            String hexstr = ParameterMap.getKeyedString(parameters, "hex", "false");
+
+            hex = "true".equalsIgnoreCase(hexstr);
+            configureAgent(agentConfig, parameters);
+
+            final Properties svcParams = getServiceParameters(agentConfig, hostAddress, oid, operator, operand, walkstr, matchstr, countMin, countMax, hexstr);
+
+            final TimeoutTracker tracker = new TimeoutTracker(parameters, agentConfig.getRetries(), agentConfig.getTimeout());
+            tracker.reset();
+            tracker.startAttempt();
+
+            final SnmpObjId snmpObjectId = SnmpObjId.get(oid);
+            return SnmpUtils.getAsync(agentConfig, new SnmpObjId[] { snmpObjectId }).handle((results, e) -> {
+                try {
+                    // Failed requests are reported as a missing value, like the synchronous get
+                    final SnmpValue result = e == null && results != null && results.length > 0 ? results[0] : null;
+                    return getStatus(result, tracker, hostAddress, oid, operator, operand, reasonTemplate, svcParams);
+                } catch (Throwable t) {
+                    return getStatus(t, hostAddress);
                 }
+            });
+        } catch (Throwable t) {
+            return CompletableFuture.completedFuture(getStatus(t, hostAddress));
+        }
+    }
+
+    private static void configureAgent(SnmpAgentConfig agentConfig, Map<String, Object> parameters) {
+        // set timeout and retries on SNMP peer object
+        //
+        agentConfig.setTimeout(ParameterMap.getKeyedInteger(parameters, "timeout", agentConfig.getTimeout()));
+        agentConfig.setRetries(ParameterMap.getKeyedInteger(parameters, "retry", ParameterMap.getKeyedInteger(parameters, "retries", agentConfig.getRetries())));
+        agentConfig.setPort(ParameterMap.getKeyedInteger(parameters, "port", agentConfig.getPort()));
+    }
+
+    private static Properties getServiceParameters(SnmpAgentConfig agentConfig, String hostAddress, String oid, String operator, String operand,
+            String walkstr, String matchstr, int countMin, int countMax, String hexstr) {
+        Properties svcParams = new Properties();
+        svcParams.setProperty("oid", oid);
+        svcParams.setProperty("operator", String.valueOf(operator));
+        svcParams.setProperty("operand", String.valueOf(operand));
+        svcParams.setProperty("walk", walkstr);
+        svcParams.setProperty("matchAll", matchstr);
+        svcParams.setProperty("minimum", String.valueOf(countMin));
+        svcParams.setProperty("maximum", String.valueOf(countMax));
+        svcParams.setProperty("timeout", String.valueOf(agentConfig.getTimeout()));
+        svcParams.setProperty("retry", String.valueOf(agentConfig.getRetries()));
+        svcParams.setProperty("retries", svcParams.getProperty("retry"));
+        svcParams.setProperty("ipaddr", hostAddress);
+        svcParams.setProperty("port", String.valueOf(agentConfig.getPort()));
+        svcParams.setProperty("hex", hexstr);
+        return svcParams;
+    }
+
+    private PollStatus getStatus(SnmpValue result, TimeoutTracker tracker, String hostAddress, String oid, String operator, String operand,
+            String reasonTemplate, Properties svcParams) {
+        if (DEFAULT_REASON_TEMPLATE.equals(reasonTemplate)) {
+            if (operator != null) {
+                reasonTemplate = "Observed value '${observedValue}' does not meet criteria '${operator} ${operand}'";
+            } else {
+                reasonTemplate = "Observed value '${observedValue}' was null";
             }
+        }
 
-        } catch (NumberFormatException e) {
-            String reason = "Number operator used on a non-number " + e.getMessage();
+        if (result != null) {
+            svcParams.setProperty("observedValue", getStringValue(result));
+            LOG.debug("poll: SNMP poll succeeded, addr={} oid={} value={}", hostAddress, oid, result);
+            
+            if (meetsCriteria(result, operator, operand)) {
+                return PollStatus.available(tracker.elapsedTimeInMillis());
+            } else {
+                return PollStatus.unavailable(PropertiesUtils.substitute(reasonTemplate, svcParams));
+            }
+        } else {
+            String reason = "SNMP poll failed, addr=" + hostAddress + " oid=" + oid;
             LOG.debug(reason);
-            status = PollStatus.unavailable(reason);
-        } catch (IllegalArgumentException e) {
-            String reason = "Invalid SNMP Criteria: " + e.getMessage();
+            return PollStatus.unavailable(reason);
+        }
+    }
+
+    private static PollStatus getStatus(Throwable t, String hostAddress) {
+        if (t instanceof NumberFormatException) {
+            String reason = "Number operator used on a non-number " + t.getMessage();
             LOG.debug(reason);
-            status = PollStatus.unavailable(reason);
-        } catch (Throwable t) {
+            return PollStatus.unavailable(reason);
+        } else if (t instanceof IllegalArgumentException) {
+            String reason = "Invalid SNMP Criteria: " + t.getMessage();
+            LOG.debug(reason);
+            return PollStatus.unavailable(reason);
+        } else {
             String reason = "Unexpected exception during SNMP poll of interface " + hostAddress;
             LOG.debug(reason, t);
-            status = PollStatus.unavailable(reason);
+            return PollStatus.unavailable(reason);
         }
-
-        return status;
     }
 
 }
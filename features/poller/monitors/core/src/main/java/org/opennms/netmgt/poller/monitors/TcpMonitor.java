@@ -37,11 +37,22 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NoRouteToHostException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.core.utils.TimeoutTracker;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.Distributable;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
@@ -61,7 +72,7 @@ import org.slf4j.LoggerFactory;
  * @author <A HREF="http://www.opennms.org/">OpenNMS </A>
  */
 @Distributable
-final public class TcpMonitor extends AbstractServiceMonitor {
+final public class TcpMonitor extends AbstractServiceMonitor implements AsyncServiceMonitor {
 
     public static final Logger LOG = LoggerFactory.getLogger(TcpMonitor.class);
 
@@ -82,6 +93,20 @@ final public class TcpMonitor extends AbstractServiceMonitor {
     private static final int DEFAULT_TIMEOUT = 3000; // 3 second timeout on
                                                         // read()
 
+    /**
+     * Maximum number of bytes read when looking for the banner line.
+     */
+    private static final int BANNER_BUFFER_SIZE = 8192;
+
+    /**
+     * Enforces the timeouts of the asynchronous polls.
+     */
+    private static final ScheduledExecutorService TIMEOUT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "TcpMonitor-Timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public static final String PARAMETER_BANNER = "banner";
     public static final String PARAMETER_PORT = "port";
 
@@ -162,21 +187,7 @@ final public class TcpMonitor extends AbstractServiceMonitor {
                 LOG.debug("poll: banner = {}", response);
                 LOG.debug("poll: responseTime= {}ms", responseTime);
 
-                //Could it be a regex?
-                if (strBannerMatch.charAt(0)=='~'){
-                  if (!response.matches(strBannerMatch.substring(1)))
-                    serviceStatus = PollStatus.unavailable("Banner does not match Regex '"+strBannerMatch+"'");
-                  else
-                    serviceStatus = PollStatus.available(responseTime);
-                }
-                else {
-                  if (response.indexOf(strBannerMatch) > -1) {
-                    serviceStatus = PollStatus.available(responseTime);
-                  }
-                  else {
-                    serviceStatus = PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+strBannerMatch+"'");
-                  }
-                }
+                serviceStatus = matchBanner(response, strBannerMatch, responseTime);
 
             } catch (NoRouteToHostException e) {
             	String reason = "No route to host exception for address " + hostAddress;
@@ -213,4 +224,261 @@ final public class TcpMonitor extends AbstractServiceMonitor {
         return serviceStatus;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Same as {@link #poll(MonitoredService, Map)}, but uses an asynchronous
+     * socket channel so that no thread is blocked while waiting for the
+     * connection or the banner.
+     */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+        final TimeoutTracker tracker = new TimeoutTracker(parameters, DEFAULT_RETRY, DEFAULT_TIMEOUT);
+
+        final int port = ParameterMap.getKeyedInteger(parameters, PARAMETER_PORT, DEFAULT_PORT);
+        if (port == DEFAULT_PORT) {
+            final CompletableFuture<PollStatus> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeException("TcpMonitor: required parameter 'port' is not present in supplied properties."));
+            return future;
+        }
+
+        final String strBannerMatch = ParameterMap.getKeyedString(parameters, PARAMETER_BANNER, null);
+        final boolean strictTimeouts = ParameterMap.getKeyedBoolean(parameters, "strict-timeout", false);
+
+        LOG.debug("pollAsync: address = {}, port = {}, {}", InetAddressUtils.str(svc.getAddress()), port, tracker);
+
+        final AsyncPoll poll = new AsyncPoll(svc.getAddress(), port, strBannerMatch, strictTimeouts, tracker);
+        tracker.reset();
+        poll.attempt();
+        return poll.m_future;
+    }
+
+    private static PollStatus matchBanner(String response, String strBannerMatch, double responseTime) {
+        //Could it be a regex?
+        if (strBannerMatch.charAt(0)=='~'){
+            if (!response.matches(strBannerMatch.substring(1)))
+                return PollStatus.unavailable("Banner does not match Regex '"+strBannerMatch+"'");
+            else
+                return PollStatus.available(responseTime);
+        }
+        else {
+            if (response.indexOf(strBannerMatch) > -1) {
+                return PollStatus.available(responseTime);
+            }
+            else {
+                return PollStatus.unavailable("Banner: '"+response+"' does not contain match string '"+strBannerMatch+"'");
+            }
+        }
+    }
+
+    /**
+     * A single asynchronous poll. Every attempt opens a new channel, the attempts
+     * are chained from the completion handlers.
+     */
+    private static class AsyncPoll {
+        private final InetAddress m_ipAddr;
+        private final int m_port;
+        private final String m_bannerMatch;
+        private final boolean m_strictTimeouts;
+        private final TimeoutTracker m_tracker;
+        private final CompletableFuture<PollStatus> m_future = new CompletableFuture<>();
+
+        private AsynchronousSocketChannel m_channel;
+        private ScheduledFuture<?> m_timeout;
+        private boolean m_timedOut;
+        private ByteBuffer m_buffer;
+
+        private AsyncPoll(InetAddress ipAddr, int port, String bannerMatch, boolean strictTimeouts, TimeoutTracker tracker) {
+            m_ipAddr = ipAddr;
+            m_port = port;
+            m_bannerMatch = bannerMatch;
+            m_strictTimeouts = strictTimeouts;
+            m_tracker = tracker;
+        }
+
+        private synchronized void attempt() {
+            try {
+                m_tracker.startAttempt();
+                m_timedOut = false;
+                m_channel = AsynchronousSocketChannel.open();
+                startTimeout();
+                m_channel.connect(new InetSocketAddress(m_ipAddr, m_port), null, new CompletionHandler<Void, Void>() {
+                    @Override
+                    public void completed(Void result, Void attachment) {
+                        connected();
+                    }
+
+                    @Override
+                    public void failed(Throwable e, Void attachment) {
+                        attemptFailed(e);
+                    }
+                });
+            } catch (IOException e) {
+                attemptFailed(e);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private synchronized void connected() {
+            LOG.debug("TcpMonitor: connected to host: {} on port: {}", m_ipAddr, m_port);
+            stopTimeout();
+
+            if (m_bannerMatch == null || m_bannerMatch.length() == 0 || m_bannerMatch.equals("*")) {
+                complete(PollStatus.available(m_tracker.elapsedTimeInMillis()));
+                return;
+            }
+
+            m_buffer = ByteBuffer.allocate(BANNER_BUFFER_SIZE);
+            startTimeout();
+            read();
+        }
+
+        private void read() {
+            m_channel.read(m_buffer, null, new CompletionHandler<Integer, Void>() {
+                @Override
+                public void completed(Integer bytesRead, Void attachment) {
+                    try {
+                        bannerRead(bytesRead);
+                    } catch (RuntimeException e) {
+                        fail(e);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable e, Void attachment) {
+                    attemptFailed(e);
+                }
+            });
+        }
+
+        private synchronized void bannerRead(int bytesRead) {
+            // Read until the end of the first line, the end of the stream or until the buffer is full
+            final int lineEnd = indexOfLineEnd(m_buffer);
+            if (lineEnd < 0 && bytesRead >= 0 && m_buffer.hasRemaining()) {
+                read();
+                return;
+            }
+            stopTimeout();
+
+            final double responseTime = m_tracker.elapsedTimeInMillis();
+            final int length = lineEnd < 0 ? m_buffer.position() : lineEnd;
+            if (length == 0 && bytesRead < 0) {
+                // We're connected, but didn't get a banner
+                nextAttempt(PollStatus.unresponsive());
+                return;
+            }
+
+            String response = new String(m_buffer.array(), 0, length, Charset.defaultCharset());
+            if (response.endsWith("\r")) {
+                response = response.substring(0, response.length() - 1);
+            }
+            LOG.debug("poll: banner = {}", response);
+            LOG.debug("poll: responseTime= {}ms", responseTime);
+
+            final PollStatus serviceStatus = matchBanner(response, m_bannerMatch, responseTime);
+            if (serviceStatus.isAvailable()) {
+                complete(serviceStatus);
+            } else {
+                nextAttempt(serviceStatus);
+            }
+        }
+
+        private synchronized void attemptFailed(Throwable e) {
+            stopTimeout();
+
+            final String hostAddress = InetAddressUtils.str(m_ipAddr);
+            if (m_timedOut || e instanceof InterruptedByTimeoutException) {
+                String reason = "did not connect to host with " + m_tracker;
+                LOG.debug(reason);
+                nextAttempt(PollStatus.unavailable(reason));
+            } else if (e instanceof NoRouteToHostException) {
+                String reason = "No route to host exception for address " + hostAddress;
+                LOG.debug(reason, e);
+                complete(PollStatus.unavailable(reason));
+            } else if (e instanceof ConnectException) {
+                String reason = "Connection exception for address: " + m_ipAddr;
+                LOG.debug(reason, e);
+                nextAttempt(PollStatus.unavailable(reason));
+            } else {
+                String reason = "IOException while polling address: " + m_ipAddr;
+                LOG.debug(reason, e);
+                nextAttempt(PollStatus.unavailable(reason));
+            }
+        }
+
+        private void nextAttempt(PollStatus serviceStatus) {
+            close();
+            final long remaining = m_tracker.getTimeoutInMillis() - (long)m_tracker.elapsedTimeInMillis();
+            m_tracker.nextAttempt();
+            if (!m_tracker.shouldRetry()) {
+                m_future.complete(serviceStatus);
+                return;
+            }
+
+            if (m_strictTimeouts && remaining > 0) {
+                // Wait for the remainder of the timeout before retrying, without holding on to the thread
+                TIMEOUT_EXECUTOR.schedule(this::attempt, remaining, TimeUnit.MILLISECONDS);
+            } else {
+                attempt();
+            }
+        }
+
+        private void complete(PollStatus serviceStatus) {
+            close();
+            m_future.complete(serviceStatus);
+        }
+
+        private synchronized void fail(Throwable e) {
+            close();
+            m_future.completeExceptionally(e);
+        }
+
+        private void startTimeout() {
+            final AsynchronousSocketChannel channel = m_channel;
+            m_timeout = TIMEOUT_EXECUTOR.schedule(() -> {
+                synchronized (this) {
+                    if (m_channel == channel) {
+                        m_timedOut = true;
+                    }
+                }
+                // Closing the channel fails the pending operation
+                closeQuietly(channel);
+            }, m_tracker.getTimeoutInMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private void stopTimeout() {
+            if (m_timeout != null) {
+                m_timeout.cancel(false);
+                m_timeout = null;
+            }
+        }
+
+        private void close() {
+            stopTimeout();
+            if (m_channel != null) {
+                closeQuietly(m_channel);
+                m_channel = null;
+            }
+        }
+
+        private static void closeQuietly(AsynchronousSocketChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("poll: Error closing socket.", e);
+            }
+        }
+
+        private static int indexOfLineEnd(ByteBuffer buffer) {
+            final byte[] bytes = buffer.array();
+            for (int i = 0; i < buffer.position(); i++) {
+                if (bytes[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
 }
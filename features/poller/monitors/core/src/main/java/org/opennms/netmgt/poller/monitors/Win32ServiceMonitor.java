@@ -29,6 +29,7 @@
 package org.opennms.netmgt.poller.monitors;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.poller.MonitoredService;
@@ -50,6 +51,18 @@ public class Win32ServiceMonitor extends SnmpMonitor {
 	/** {@inheritDoc} */
 	@Override
 	public PollStatus poll(MonitoredService svc, Map<String, Object> parameters) {
+		setServiceParameters(parameters);
+		return super.poll(svc, parameters);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public CompletableFuture<PollStatus> pollAsync(MonitoredService svc, Map<String, Object> parameters) {
+		setServiceParameters(parameters);
+		return super.pollAsync(svc, parameters);
+	}
+
+	private static void setServiceParameters(Map<String, Object> parameters) {
 		String serviceName = ParameterMap.getKeyedString(parameters, "service-name", DEFAULT_SERVICE_NAME);
 		int snLength = serviceName.length();
 		
@@ -64,7 +77,5 @@ public class Win32ServiceMonitor extends SnmpMonitor {
 		parameters.put("oid", serviceOidBuf.toString());
 		parameters.put("operator", "=");
 		parameters.put("operand", "1");
-		
-		return super.poll(svc, parameters);
 	}
 }
@@ -149,4 +149,44 @@ public class TcpMonitorIT {
         assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
         assertNull(status.getReason());
     }
+
+    @Test
+    @JUnitHttpServer(port=10342)
+    public void testLocalhostConnectionAsync() throws Exception {
+        Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", "10342");
+        m.put("retry", "1");
+        m.put("timeout", "500");
+
+        TcpMonitor monitor = new TcpMonitor();
+        MonitoredService svc = MonitorTestUtils.getMonitoredService(3, "localhost", DnsUtils.resolveHostname("localhost"), "TCP");
+
+        PollStatus status = monitor.pollAsync(svc, m).get();
+        MockUtil.println("Reason: "+status.getReason());
+        assertEquals(PollStatus.SERVICE_AVAILABLE, status.getStatusCode());
+        assertNull(status.getReason());
+
+        // The HTTP server doesn't send a banner, so the banner can't match
+        m.put("banner", "*HTTP");
+        status = monitor.pollAsync(svc, m).get();
+        MockUtil.println("Reason: "+status.getReason());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertNotNull(status.getReason());
+    }
+
+    @Test
+    public void testClosedPortAsync() throws Exception {
+        Map<String, Object> m = new ConcurrentSkipListMap<String, Object>();
+        m.put("port", "10343");
+        m.put("retry", "1");
+        m.put("timeout", "500");
+
+        TcpMonitor monitor = new TcpMonitor();
+        MonitoredService svc = MonitorTestUtils.getMonitoredService(3, "localhost", DnsUtils.resolveHostname("localhost"), "TCP");
+
+        PollStatus status = monitor.pollAsync(svc, m).get();
+        MockUtil.println("Reason: "+status.getReason());
+        assertEquals(PollStatus.SERVICE_UNAVAILABLE, status.getStatusCode());
+        assertEquals(monitor.poll(svc, m).getReason(), status.getReason());
+    }
 }
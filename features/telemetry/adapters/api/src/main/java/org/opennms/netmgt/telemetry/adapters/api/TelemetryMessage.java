@@ -28,10 +28,19 @@
 
 package org.opennms.netmgt.telemetry.adapters.api;
 
+import java.nio.ByteBuffer;
+
 public interface TelemetryMessage {
 
     long getTimestamp();
 
     byte[] getByteArray();
 
+    /**
+     * Read-only view on the message payload. Implementations should avoid copying the payload.
+     */
+    default ByteBuffer getBuffer() {
+        return ByteBuffer.wrap(getByteArray()).asReadOnlyBuffer();
+    }
+
 }
@@ -28,7 +28,7 @@
 
 package org.opennms.netmgt.telemetry.adapters.netflow;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -52,12 +52,14 @@ public abstract class AbstractAdapter<P> implements Adapter {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractAdapter.class);
 
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
     private final FlowRepository flowRepository;
 
     private final Converter<P> converter;
 
     /**
-     * Time taken to parse a log
+     * Time taken to parse and persist a log
      */
     private final Timer logParsingTimer;
 
@@ -66,6 +68,18 @@ public abstract class AbstractAdapter<P> implements Adapter {
      */
     private final Histogram packetsPerLogHistogram;
 
+    /**
+     * Time taken to convert and persist a chunk of flows
+     */
+    private final Timer chunkProcessingTimer;
+
+    /**
+     * Bytes allocated by the processing thread per flow
+     */
+    private final Histogram bytesAllocatedPerFlowHistogram;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
     public AbstractAdapter(final MetricRegistry metricRegistry,
                            final FlowRepository flowRepository,
                            final Converter<P> converter) {
@@ -74,6 +88,8 @@ public abstract class AbstractAdapter<P> implements Adapter {
 
         logParsingTimer = metricRegistry.timer("logParsing");
         packetsPerLogHistogram = metricRegistry.histogram("packetsPerLog");
+        chunkProcessingTimer = metricRegistry.timer("chunkProcessing");
+        bytesAllocatedPerFlowHistogram = metricRegistry.histogram("bytesAllocatedPerFlow");
     }
 
     @Override
@@ -85,34 +101,81 @@ public abstract class AbstractAdapter<P> implements Adapter {
     public void handleMessageLog(TelemetryMessageLog messageLog) {
         LOG.debug("Received {} telemetry messages", messageLog.getMessageList().size());
 
-        final List<P> flowPackets = new LinkedList<>();
-        final List<Flow> flows = new LinkedList<>();
+        final FlowSource source = new FlowSource(messageLog.getLocation(), messageLog.getSourceAddress());
+
+        // Flows are converted and handed over to the repository in chunks instead of collecting all flows of the
+        // log first. The repository may keep a chunk after persist() returns, so every chunk is a new list.
+        List<Flow> chunk = new ArrayList<>(this.chunkSize);
+
+        int packetCount = 0;
+        int flowCount = 0;
         try (Timer.Context ctx = logParsingTimer.time()) {
+            Timer.Context chunkCtx = null;
+            long allocatedBefore = -1;
+
             for (TelemetryMessage eachMessage : messageLog.getMessageList()) {
+                if (chunkCtx == null) {
+                    chunkCtx = chunkProcessingTimer.time();
+                    allocatedBefore = ThreadAllocation.currentThreadAllocatedBytes();
+                }
+
                 LOG.trace("Parsing packet: {}", eachMessage);
                 final P flowPacket = parse(eachMessage);
                 if (flowPacket != null) {
-                    flowPackets.add(flowPacket);
-                    flows.addAll(converter.convert(flowPacket));
+                    packetCount++;
+                    chunk.addAll(converter.convert(flowPacket));
+                }
+
+                if (chunk.size() >= this.chunkSize) {
+                    flowCount += chunk.size();
+                    persistChunk(chunk, source, chunkCtx, allocatedBefore);
+                    chunk = new ArrayList<>(this.chunkSize);
+                    chunkCtx = null;
                 }
             }
-            packetsPerLogHistogram.update(flowPackets.size());
+
+            if (!chunk.isEmpty()) {
+                flowCount += chunk.size();
+                persistChunk(chunk, source, chunkCtx, allocatedBefore);
+            }
+
+            packetsPerLogHistogram.update(packetCount);
         }
 
+        LOG.debug("Completed processing {} telemetry messages containing {} packets and {} flows.",
+                messageLog.getMessageList().size(), packetCount, flowCount);
+    }
+
+    private void persistChunk(final List<Flow> chunk, final FlowSource source, final Timer.Context ctx, final long allocatedBefore) {
         try {
-            LOG.debug("Persisting {} packets, {} flows.", flowPackets.size(), flows.size());
-            final FlowSource source = new FlowSource(messageLog.getLocation(), messageLog.getSourceAddress());
-            flowRepository.persist(flows, source);
+            LOG.debug("Persisting chunk of {} flows.", chunk.size());
+            flowRepository.persist(chunk, source);
         } catch (FlowException ex) {
             LOG.error("Failed to persist one or more packets: {}", ex.getMessage());
+        } finally {
+            if (allocatedBefore >= 0) {
+                final long allocatedAfter = ThreadAllocation.currentThreadAllocatedBytes();
+                if (allocatedAfter >= 0) {
+                    bytesAllocatedPerFlowHistogram.update((allocatedAfter - allocatedBefore) / chunk.size());
+                }
+            }
+            ctx.close();
         }
-
-        LOG.debug("Completed processing {} telemetry messages.",
-                messageLog.getMessageList().size());
     }
 
     protected abstract P parse(TelemetryMessage message);
 
+    public int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    public void setChunkSize(final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
     public void destroy() {
         // not needed
     }
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+
+import org.opennms.netmgt.telemetry.listeners.api.flow.BinaryFlowRecordFormat;
+import org.opennms.netmgt.telemetry.listeners.api.flow.FlowField;
+
+/**
+ * A zero-copy {@link FlowRecord} reading the binary record format created by the flow listeners.
+ *
+ * The fields have a fixed slot per protocol, so creating a record only computes the value offsets from the types
+ * of the slots and a value is located by the slot of the requested field. The values itself are read from the
+ * underlying buffer on access.
+ *
+ * See {@link BinaryFlowRecordFormat} for a description of the format.
+ */
+public class BinaryFlowRecord implements FlowRecord {
+
+    private final ByteBuffer buffer;
+
+    private final int protocolVersion;
+
+    private final int fieldCount;
+
+    private final int[] offsets;
+
+    public BinaryFlowRecord(final ByteBuffer source) {
+        if (!isBinaryRecord(source)) {
+            throw new IllegalArgumentException("Not a binary flow record");
+        }
+
+        final int version = source.get(source.position() + 3) & 0x7F;
+        if (version != BinaryFlowRecordFormat.VERSION) {
+            throw new IllegalArgumentException("Unsupported binary flow record version: " + version);
+        }
+
+        this.buffer = source.slice().order(ByteOrder.BIG_ENDIAN);
+
+        this.protocolVersion = this.buffer.getShort(4) & 0xFFFF;
+        this.fieldCount = this.buffer.getShort(6) & 0xFFFF;
+
+        this.offsets = new int[this.fieldCount];
+        int offset = BinaryFlowRecordFormat.HEADER_SIZE + this.fieldCount;
+        checkBounds(this.buffer, offset);
+        for (int i = 0; i < this.fieldCount; i++) {
+            this.offsets[i] = offset;
+            offset = skip(this.buffer, offset, this.type(i));
+            checkBounds(this.buffer, offset);
+        }
+    }
+
+    /**
+     * Checks if the buffer contains a binary record. The marker is chosen to be a negative length if read as BSON
+     * document and can therefore never be confused with a BSON encoded record.
+     */
+    public static boolean isBinaryRecord(final ByteBuffer buffer) {
+        final int position = buffer.position();
+        return buffer.remaining() >= BinaryFlowRecordFormat.HEADER_SIZE
+                && buffer.get(position) == BinaryFlowRecordFormat.MARKER[0]
+                && buffer.get(position + 1) == BinaryFlowRecordFormat.MARKER[1]
+                && buffer.get(position + 2) == BinaryFlowRecordFormat.MARKER[2]
+                && (buffer.get(position + 3) & 0x80) != 0;
+    }
+
+    public int getProtocolVersion() {
+        return this.protocolVersion;
+    }
+
+    @Override
+    public Optional<Long> getInt64(final FlowField field) {
+        final int slot = this.slot(field);
+        if (slot < 0) {
+            return Optional.empty();
+        }
+
+        expect(field, this.type(slot), BinaryFlowRecordFormat.TYPE_INT64);
+        return Optional.of(this.buffer.getLong(this.offsets[slot]));
+    }
+
+    @Override
+    public Optional<Double> getDouble(final FlowField field) {
+        final int slot = this.slot(field);
+        if (slot < 0) {
+            return Optional.empty();
+        }
+
+        expect(field, this.type(slot), BinaryFlowRecordFormat.TYPE_DOUBLE);
+        return Optional.of(this.buffer.getDouble(this.offsets[slot]));
+    }
+
+    @Override
+    public Optional<String> getString(final FlowField field) {
+        final int slot = this.slot(field);
+        if (slot < 0) {
+            return Optional.empty();
+        }
+
+        final int offset = this.offsets[slot];
+        switch (this.type(slot)) {
+            case BinaryFlowRecordFormat.TYPE_STRING:
+                return Optional.of(new String(bytes(offset + 4, this.buffer.getInt(offset)), StandardCharsets.UTF_8));
+            case BinaryFlowRecordFormat.TYPE_IPV4:
+                return Optional.of(address(offset, 4));
+            case BinaryFlowRecordFormat.TYPE_IPV6:
+                return Optional.of(address(offset, 16));
+            default:
+                throw new IllegalStateException(String.format("Field %s of type %d is not a string", field.getName(), this.type(slot)));
+        }
+    }
+
+    @Override
+    public Optional<Instant> getTime(final FlowField field) {
+        final int slot = this.slot(field);
+        if (slot < 0) {
+            return Optional.empty();
+        }
+
+        expect(field, this.type(slot), BinaryFlowRecordFormat.TYPE_DATETIME);
+        final int offset = this.offsets[slot];
+        return Optional.of(Instant.ofEpochSecond(this.buffer.getLong(offset), this.buffer.getInt(offset + 8)));
+    }
+
+    private int slot(final FlowField field) {
+        if (field.getProtocolVersion() != this.protocolVersion) {
+            throw new IllegalArgumentException(String.format("Field %s does not belong to protocol version %d", field.getName(), this.protocolVersion));
+        }
+
+        // Records written with an older layout do not contain the fields appended later
+        final int slot = field.getSlot();
+        if (slot >= this.fieldCount || this.type(slot) == BinaryFlowRecordFormat.TYPE_NULL) {
+            return -1;
+        }
+        return slot;
+    }
+
+    private byte type(final int slot) {
+        return this.buffer.get(BinaryFlowRecordFormat.HEADER_SIZE + slot);
+    }
+
+    private byte[] bytes(final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer duplicate = this.buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.get(bytes);
+        return bytes;
+    }
+
+    private String address(final int offset, final int length) {
+        try {
+            return InetAddress.getByAddress(bytes(offset, length)).getHostAddress();
+        } catch (final UnknownHostException e) {
+            // Only thrown for illegal address lengths
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void expect(final FlowField field, final byte actual, final byte expected) {
+        if (actual != expected) {
+            throw new IllegalStateException(String.format("Field %s is of type %d but type %d was requested", field.getName(), actual, expected));
+        }
+    }
+
+    private static void checkBounds(final ByteBuffer buffer, final int offset) {
+        if (offset < 0 || offset > buffer.limit()) {
+            throw new IllegalArgumentException("Truncated binary flow record");
+        }
+    }
+
+    private static int length(final ByteBuffer buffer, final int offset) {
+        checkBounds(buffer, offset + 4);
+        final int length = buffer.getInt(offset);
+        if (length < 0) {
+            throw new IllegalArgumentException("Truncated binary flow record");
+        }
+        return length;
+    }
+
+    private static int skip(final ByteBuffer buffer, final int offset, final byte type) {
+        switch (type) {
+            case BinaryFlowRecordFormat.TYPE_NULL:
+                return offset;
+            case BinaryFlowRecordFormat.TYPE_BOOLEAN:
+                return offset + 1;
+            case BinaryFlowRecordFormat.TYPE_INT64:
+            case BinaryFlowRecordFormat.TYPE_DOUBLE:
+                return offset + 8;
+            case BinaryFlowRecordFormat.TYPE_IPV4:
+                return offset + 4;
+            case BinaryFlowRecordFormat.TYPE_IPV6:
+                return offset + 16;
+            case BinaryFlowRecordFormat.TYPE_DATETIME:
+                return offset + 8 + 4;
+            case BinaryFlowRecordFormat.TYPE_STRING:
+            case BinaryFlowRecordFormat.TYPE_BINARY:
+                return offset + 4 + length(buffer, offset);
+            case BinaryFlowRecordFormat.TYPE_MAC:
+                return offset + 1 + 4 + length(buffer, offset + 1);
+            default:
+                throw new IllegalArgumentException("Unknown field type in binary flow record: " + type);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.bson.BsonDocument;
+import org.opennms.netmgt.telemetry.listeners.api.flow.FlowField;
+
+/**
+ * A {@link FlowRecord} backed by a BSON document as created by listeners predating the binary record format.
+ */
+public class BsonFlowRecord implements FlowRecord {
+
+    private final BsonDocument document;
+
+    public BsonFlowRecord(final BsonDocument document) {
+        this.document = Objects.requireNonNull(document);
+    }
+
+    @Override
+    public Optional<Long> getInt64(final FlowField field) {
+        return BsonUtils.getInt64(this.document, field.getName());
+    }
+
+    @Override
+    public Optional<Double> getDouble(final FlowField field) {
+        return BsonUtils.getDouble(this.document, field.getName());
+    }
+
+    @Override
+    public Optional<String> getString(final FlowField field) {
+        return BsonUtils.getString(this.document, field.getName());
+    }
+
+    @Override
+    public Optional<Instant> getTime(final FlowField field) {
+        return BsonUtils.getTime(this.document, field.getName());
+    }
+
+    public BsonDocument getDocument() {
+        return this.document;
+    }
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.opennms.netmgt.telemetry.listeners.api.flow.FlowField;
+
+/**
+ * Read access to the fields of a single flow record as handed over by the flow listeners.
+ *
+ * Fields are identified by their slot in the fixed layout of the protocol, records which are not laid out this way
+ * look them up by the name of their information element. Unsigned and signed integers are both exposed as
+ * 64 bit values and addresses are exposed in their textual representation.
+ */
+public interface FlowRecord {
+
+    Optional<Long> getInt64(final FlowField field);
+
+    Optional<Double> getDouble(final FlowField field);
+
+    Optional<String> getString(final FlowField field);
+
+    Optional<Instant> getTime(final FlowField field);
+}
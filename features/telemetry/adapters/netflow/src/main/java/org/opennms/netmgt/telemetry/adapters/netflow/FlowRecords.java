@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.nio.ByteBuffer;
+
+import org.bson.RawBsonDocument;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessage;
+
+public class FlowRecords {
+
+    private FlowRecords() {
+    }
+
+    /**
+     * Parses a flow record handed over by the flow listeners.
+     *
+     * Binary records are read in place, everything else is treated as BSON document to stay compatible with listeners
+     * not upgraded yet.
+     */
+    public static FlowRecord parse(final TelemetryMessage message) {
+        final ByteBuffer buffer = message.getBuffer();
+        if (BinaryFlowRecord.isBinaryRecord(buffer)) {
+            return new BinaryFlowRecord(buffer);
+        }
+
+        return new BsonFlowRecord(new RawBsonDocument(message.getByteArray()));
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to the number of bytes allocated by the current thread if supported by the JVM.
+ *
+ * The HotSpot specific {@code com.sun.management.ThreadMXBean} is accessed reflectively to avoid a hard dependency
+ * on it.
+ */
+class ThreadAllocation {
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadAllocation.class);
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final Method GET_THREAD_ALLOCATED_BYTES = lookup();
+
+    private ThreadAllocation() {
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread or {@code -1} if not supported
+     */
+    static long currentThreadAllocatedBytes() {
+        if (GET_THREAD_ALLOCATED_BYTES == null) {
+            return -1;
+        }
+
+        try {
+            return (long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_MX_BEAN, Thread.currentThread().getId());
+        } catch (final ReflectiveOperationException e) {
+            return -1;
+        }
+    }
+
+    private static Method lookup() {
+        try {
+            final Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+            if (clazz.isInstance(THREAD_MX_BEAN)) {
+                return clazz.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (final ReflectiveOperationException e) {
+            LOG.debug("Thread allocation accounting is not supported by this JVM", e);
+        }
+        return null;
+    }
+}
@@ -28,15 +28,15 @@
 
 package org.opennms.netmgt.telemetry.adapters.netflow.ipfix;
 
-import org.bson.BsonDocument;
-import org.bson.RawBsonDocument;
 import org.opennms.netmgt.flows.api.FlowRepository;
 import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessage;
 import org.opennms.netmgt.telemetry.adapters.netflow.AbstractAdapter;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowRecord;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowRecords;
 
 import com.codahale.metrics.MetricRegistry;
 
-public class IpfixAdapter extends AbstractAdapter<BsonDocument> {
+public class IpfixAdapter extends AbstractAdapter<FlowRecord> {
 
     public IpfixAdapter(final MetricRegistry metricRegistry,
                         final FlowRepository flowRepository) {
@@ -44,7 +44,7 @@ public class IpfixAdapter extends AbstractAdapter<BsonDocument> {
     }
 
     @Override
-    protected BsonDocument parse(TelemetryMessage message) {
-        return new RawBsonDocument(message.getByteArray());
+    protected FlowRecord parse(TelemetryMessage message) {
+        return FlowRecords.parse(message);
     }
 }
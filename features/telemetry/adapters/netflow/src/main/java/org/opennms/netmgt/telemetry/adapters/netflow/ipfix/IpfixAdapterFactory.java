@@ -35,6 +35,8 @@ import org.opennms.netmgt.flows.api.FlowRepository;
 import org.opennms.netmgt.telemetry.adapters.api.Adapter;
 import org.opennms.netmgt.telemetry.adapters.api.AdapterFactory;
 import org.opennms.netmgt.telemetry.config.api.Protocol;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
 
 import com.codahale.metrics.MetricRegistry;
 
@@ -52,7 +54,12 @@ public class IpfixAdapterFactory implements AdapterFactory {
         Objects.requireNonNull(metricRegistry);
         Objects.requireNonNull(flowRepository);
 
-        return new IpfixAdapter(metricRegistry, flowRepository);
+        final IpfixAdapter adapter = new IpfixAdapter(metricRegistry, flowRepository);
+
+        final BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(adapter);
+        wrapper.setPropertyValues(properties);
+
+        return adapter;
     }
 
     public void setMetricRegistry(MetricRegistry metricRegistry) {
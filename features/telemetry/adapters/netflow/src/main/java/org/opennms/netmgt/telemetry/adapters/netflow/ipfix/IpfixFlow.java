@@ -29,44 +29,45 @@
 package org.opennms.netmgt.telemetry.adapters.netflow.ipfix;
 
 import com.google.common.primitives.UnsignedLong;
-import org.bson.BsonDocument;
 import org.opennms.netmgt.flows.api.Flow;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowRecord;
+import org.opennms.netmgt.telemetry.listeners.api.flow.IpfixField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.util.Objects;
 
-import static org.opennms.netmgt.telemetry.adapters.netflow.BsonUtils.*;
+import static org.opennms.netmgt.telemetry.adapters.netflow.BsonUtils.first;
 
 class IpfixFlow implements Flow {
     private static final Logger LOG = LoggerFactory.getLogger(IpfixFlow.class);
 
-    private final BsonDocument document;
+    private final FlowRecord record;
 
-    public IpfixFlow(final BsonDocument document) {
-        this.document = Objects.requireNonNull(document);
+    public IpfixFlow(final FlowRecord record) {
+        this.record = Objects.requireNonNull(record);
     }
 
     @Override
     public long getTimestamp() {
-        return getInt64(this.document, "@exportTime").get() * 1000;
+        return this.record.getInt64(IpfixField.EXPORT_TIME).get() * 1000;
     }
 
     @Override
     public Long getBytes() {
         // TODO: What about the totals?
-        return first(getInt64(this.document, "octetDeltaCount"),
-                getInt64(this.document, "postOctetDeltaCount"),
-                getInt64(this.document, "layer2OctetDeltaCount"),
-                getInt64(this.document, "postLayer2OctetDeltaCount"),
-                getInt64(this.document, "transportOctetDeltaCount"))
+        return first(this.record.getInt64(IpfixField.OCTET_DELTA_COUNT),
+                this.record.getInt64(IpfixField.POST_OCTET_DELTA_COUNT),
+                this.record.getInt64(IpfixField.LAYER2_OCTET_DELTA_COUNT),
+                this.record.getInt64(IpfixField.POST_LAYER2_OCTET_DELTA_COUNT),
+                this.record.getInt64(IpfixField.TRANSPORT_OCTET_DELTA_COUNT))
                 .orElse(null);
     }
 
     @Override
     public Direction getDirection() {
-        return getInt64(this.document, "flowDirection")
+        return this.record.getInt64(IpfixField.FLOW_DIRECTION)
                 .map(v -> v == 0x00 ? Direction.INGRESS
                         : v == 0x01 ? Direction.EGRESS
                         : null)
@@ -75,43 +76,43 @@ class IpfixFlow implements Flow {
 
     @Override
     public String getDstAddr() {
-        return first(getString(this.document, "destinationIPv6Address"),
-                getString(this.document, "destinationIPv4Address"))
+        return first(this.record.getString(IpfixField.DESTINATION_IPV6_ADDRESS),
+                this.record.getString(IpfixField.DESTINATION_IPV4_ADDRESS))
                 .orElse(null);
     }
 
     @Override
     public Integer getDstAs() {
-        return getInt64(this.document, "bgpDestinationAsNumber")
+        return this.record.getInt64(IpfixField.BGP_DESTINATION_AS_NUMBER)
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getDstMaskLen() {
-        return first(getInt64(this.document, "destinationIPv6PrefixLength"),
-                getInt64(this.document, "destinationIPv4PrefixLength"))
+        return first(this.record.getInt64(IpfixField.DESTINATION_IPV6_PREFIX_LENGTH),
+                this.record.getInt64(IpfixField.DESTINATION_IPV4_PREFIX_LENGTH))
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getDstPort() {
-        return getInt64(this.document, "destinationTransportPort")
+        return this.record.getInt64(IpfixField.DESTINATION_TRANSPORT_PORT)
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getEngineId() {
-        return getInt64(this.document, "engineId")
+        return this.record.getInt64(IpfixField.ENGINE_ID)
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getEngineType() {
-        return getInt64(this.document, "engineType")
+        return this.record.getInt64(IpfixField.ENGINE_TYPE)
                 .map(Long::intValue)
                 .orElse(null);
     }
@@ -120,41 +121,41 @@ class IpfixFlow implements Flow {
     public Long getFirstSwitched() {
         // TODO: What about flowDuration* ?
         return first(
-                first(getTime(this.document, "flowStartSeconds"),
-                        getTime(this.document, "flowStartMilliseconds"),
-                        getTime(this.document, "flowStartMicroseconds"),
-                        getTime(this.document, "flowStartNanoseconds")
+                first(this.record.getTime(IpfixField.FLOW_START_SECONDS),
+                        this.record.getTime(IpfixField.FLOW_START_MILLISECONDS),
+                        this.record.getTime(IpfixField.FLOW_START_MICROSECONDS),
+                        this.record.getTime(IpfixField.FLOW_START_NANOSECONDS)
                 ).map(Instant::toEpochMilli),
-                getInt64(this.document, "flowStartDeltaMicroseconds").map(t -> this.getTimestamp() + t),
-                getInt64(this.document, "flowStartSysUpTime").flatMap(t ->
-                        getTime(this.document, "systemInitTimeMilliseconds").map(ts -> ts.toEpochMilli() + t)
+                this.record.getInt64(IpfixField.FLOW_START_DELTA_MICROSECONDS).map(t -> this.getTimestamp() + t),
+                this.record.getInt64(IpfixField.FLOW_START_SYS_UP_TIME).flatMap(t ->
+                        this.record.getTime(IpfixField.SYSTEM_INIT_TIME_MILLISECONDS).map(ts -> ts.toEpochMilli() + t)
                 )
         ).orElse(null);
     }
 
     @Override
     public int getFlowRecords() {
-        return getInt64(this.document, "@recordCount")
+        return this.record.getInt64(IpfixField.RECORD_COUNT)
                 .map(Long::intValue)
                 .orElse(0);
     }
 
     @Override
     public long getFlowSeqNum() {
-        return getInt64(this.document, "@sequenceNumber")
+        return this.record.getInt64(IpfixField.SEQUENCE_NUMBER)
                 .orElse(0L);
     }
 
     @Override
     public Integer getInputSnmp() {
-        return getInt64(this.document, "ingressInterface")
+        return this.record.getInt64(IpfixField.INGRESS_INTERFACE)
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getIpProtocolVersion() {
-        return getInt64(this.document, "ipVersion")
+        return this.record.getInt64(IpfixField.IP_VERSION)
                 .map(Long::intValue)
                 .orElse(null);
     }
@@ -163,30 +164,30 @@ class IpfixFlow implements Flow {
     public Long getLastSwitched() {
         // TODO: What about flowDuration* ?
         return first(
-                first(getTime(this.document, "flowEndSeconds"),
-                        getTime(this.document, "flowEndMilliseconds"),
-                        getTime(this.document, "flowEndMicroseconds"),
-                        getTime(this.document, "flowEndNanoseconds")
+                first(this.record.getTime(IpfixField.FLOW_END_SECONDS),
+                        this.record.getTime(IpfixField.FLOW_END_MILLISECONDS),
+                        this.record.getTime(IpfixField.FLOW_END_MICROSECONDS),
+                        this.record.getTime(IpfixField.FLOW_END_NANOSECONDS)
                 ).map(Instant::toEpochMilli),
-                getInt64(this.document, "flowEndDeltaMicroseconds").map(t -> this.getTimestamp() + t),
-                getInt64(this.document, "flowEndSysUpTime").flatMap(t ->
-                        getTime(this.document, "systemInitTimeMilliseconds").map(ts -> ts.toEpochMilli() + t)
+                this.record.getInt64(IpfixField.FLOW_END_DELTA_MICROSECONDS).map(t -> this.getTimestamp() + t),
+                this.record.getInt64(IpfixField.FLOW_END_SYS_UP_TIME).flatMap(t ->
+                        this.record.getTime(IpfixField.SYSTEM_INIT_TIME_MILLISECONDS).map(ts -> ts.toEpochMilli() + t)
                 )
         ).orElse(null);
     }
 
     @Override
     public String getNextHop() {
-        return first(getString(this.document, "ipNextHopIPv6Address"),
-                getString(this.document, "ipNextHopIPv4Address"),
-                getString(this.document, "bgpNextHopIPv6Address"),
-                getString(this.document, "bgpNextHopIPv4Address"))
+        return first(this.record.getString(IpfixField.IP_NEXT_HOP_IPV6_ADDRESS),
+                this.record.getString(IpfixField.IP_NEXT_HOP_IPV4_ADDRESS),
+                this.record.getString(IpfixField.BGP_NEXT_HOP_IPV6_ADDRESS),
+                this.record.getString(IpfixField.BGP_NEXT_HOP_IPV4_ADDRESS))
                 .orElse(null);
     }
 
     @Override
     public Integer getOutputSnmp() {
-        return getInt64(this.document, "egressInterface")
+        return this.record.getInt64(IpfixField.EGRESS_INTERFACE)
                 .map(Long::intValue)
                 .orElse(null);
     }
@@ -194,15 +195,15 @@ class IpfixFlow implements Flow {
     @Override
     public Long getPackets() {
         // TODO: What about the totals?
-        return first(getInt64(this.document, "packetDeltaCount"),
-                getInt64(this.document, "postPacketDeltaCount"),
-                getInt64(this.document, "transportPacketDeltaCount"))
+        return first(this.record.getInt64(IpfixField.PACKET_DELTA_COUNT),
+                this.record.getInt64(IpfixField.POST_PACKET_DELTA_COUNT),
+                this.record.getInt64(IpfixField.TRANSPORT_PACKET_DELTA_COUNT))
                 .orElse(null);
     }
 
     @Override
     public Integer getProtocol() {
-        return getInt64(this.document, "protocolIdentifier")
+        return this.record.getInt64(IpfixField.PROTOCOL_IDENTIFIER)
                 .map(Long::intValue)
                 .orElse(null);
     }
@@ -210,8 +211,8 @@ class IpfixFlow implements Flow {
     @Override
     public Flow.SamplingAlgorithm getSamplingAlgorithm() {
         final Integer deprecatedSamplingAlgorithm = first(
-                getInt64(this.document, "samplingAlgorithm"),
-                getInt64(this.document, "samplerMode"))
+                this.record.getInt64(IpfixField.SAMPLING_ALGORITHM),
+                this.record.getInt64(IpfixField.SAMPLER_MODE))
                 .map(Long::intValue).orElse(null);
 
         if (deprecatedSamplingAlgorithm != null) {
@@ -223,7 +224,7 @@ class IpfixFlow implements Flow {
             }
         }
 
-        final Integer selectorAlgorithm = getInt64(this.document, "selectorAlgorithm").map(Long::intValue).orElse(null);
+        final Integer selectorAlgorithm = this.record.getInt64(IpfixField.SELECTOR_ALGORITHM).map(Long::intValue).orElse(null);
 
         if (selectorAlgorithm != null) {
             switch (selectorAlgorithm) {
@@ -256,15 +257,15 @@ class IpfixFlow implements Flow {
     @Override
     public Double getSamplingInterval() {
         final Double deprecatedSamplingInterval = first(
-                getInt64(this.document, "samplingInterval"),
-                getInt64(this.document, "samplerRandomInterval"))
+                this.record.getInt64(IpfixField.SAMPLING_INTERVAL),
+                this.record.getInt64(IpfixField.SAMPLER_RANDOM_INTERVAL))
                 .map(Long::doubleValue).orElse(null);
 
         if (deprecatedSamplingInterval != null) {
             return deprecatedSamplingInterval;
         }
 
-        final Integer selectorAlgorithm = getInt64(this.document, "selectorAlgorithm").map(Long::intValue).orElse(null);
+        final Integer selectorAlgorithm = this.record.getInt64(IpfixField.SELECTOR_ALGORITHM).map(Long::intValue).orElse(null);
 
         if (selectorAlgorithm != null) {
             switch (selectorAlgorithm) {
@@ -273,37 +274,37 @@ class IpfixFlow implements Flow {
                 }
                 case 1: {
                     final Double samplingInterval =
-                            getInt64(this.document, "samplingFlowInterval")
+                            this.record.getInt64(IpfixField.SAMPLING_FLOW_INTERVAL)
                                     .map(Long::doubleValue).orElse(1.0);
                     final Double samplingSpacing =
-                            getInt64(this.document, "samplingFlowSpacing")
+                            this.record.getInt64(IpfixField.SAMPLING_FLOW_SPACING)
                                     .map(Long::doubleValue).orElse(0.0);
 
                     return (samplingInterval + samplingSpacing) / samplingInterval;
                 }
                 case 2: {
                     final Double flowSamplingTimeInterval =
-                            getInt64(this.document, "flowSamplingTimeInterval")
+                            this.record.getInt64(IpfixField.FLOW_SAMPLING_TIME_INTERVAL)
                                     .map(Long::doubleValue).orElse(1.0);
                     final Double flowSamplingTimeSpacing =
-                            getInt64(this.document, "flowSamplingTimeSpacing")
+                            this.record.getInt64(IpfixField.FLOW_SAMPLING_TIME_SPACING)
                                     .map(Long::doubleValue).orElse(0.0);
 
                     return (flowSamplingTimeInterval + flowSamplingTimeSpacing) / flowSamplingTimeInterval;
                 }
                 case 3: {
                     final Double samplingSize =
-                            getInt64(this.document, "samplingSize")
+                            this.record.getInt64(IpfixField.SAMPLING_SIZE)
                                     .map(Long::doubleValue).orElse(1.0); // n
                     final Double samplingPopulation =
-                            getInt64(this.document, "samplingPopulation")
+                            this.record.getInt64(IpfixField.SAMPLING_POPULATION)
                                     .map(Long::doubleValue).orElse(1.0); // N
 
                     return samplingPopulation / samplingSize;
                 }
                 case 4: {
                     final Double samplingProbability =
-                            getDouble(this.document, "samplingProbability")
+                            this.record.getDouble(IpfixField.SAMPLING_PROBABILITY)
                                     .orElse(1.0);
 
                     return 1.0 / samplingProbability;
@@ -312,16 +313,16 @@ class IpfixFlow implements Flow {
                 case 6:
                 case 7: {
                     final UnsignedLong hashSelectedRangeMin =
-                            getInt64(this.document, "hashSelectedRangeMin")
+                            this.record.getInt64(IpfixField.HASH_SELECTED_RANGE_MIN)
                                     .map(UnsignedLong::fromLongBits).orElse(UnsignedLong.ZERO);
                     final UnsignedLong hashSelectedRangeMax =
-                            getInt64(this.document, "hashSelectedRangeMax")
+                            this.record.getInt64(IpfixField.HASH_SELECTED_RANGE_MAX)
                                     .map(UnsignedLong::fromLongBits).orElse(UnsignedLong.MAX_VALUE);
                     final UnsignedLong hashOutputRangeMin =
-                            getInt64(this.document, "hashOutputRangeMin")
+                            this.record.getInt64(IpfixField.HASH_OUTPUT_RANGE_MIN)
                                     .map(UnsignedLong::fromLongBits).orElse(UnsignedLong.ZERO);
                     final UnsignedLong hashOutputRangeMax =
-                            getInt64(this.document, "hashOutputRangeMax")
+                            this.record.getInt64(IpfixField.HASH_OUTPUT_RANGE_MAX)
                                     .map(UnsignedLong::fromLongBits).orElse(UnsignedLong.MAX_VALUE);
 
                     return (hashOutputRangeMax.minus(hashOutputRangeMin)).dividedBy(hashSelectedRangeMax.minus(hashSelectedRangeMin)).doubleValue();
@@ -339,43 +340,43 @@ class IpfixFlow implements Flow {
 
     @Override
     public String getSrcAddr() {
-        return first(getString(this.document, "sourceIPv6Address"),
-                getString(this.document, "sourceIPv4Address"))
+        return first(this.record.getString(IpfixField.SOURCE_IPV6_ADDRESS),
+                this.record.getString(IpfixField.SOURCE_IPV4_ADDRESS))
                 .orElse(null);
     }
 
     @Override
     public Integer getSrcAs() {
-        return getInt64(this.document, "bgpSourceAsNumber")
+        return this.record.getInt64(IpfixField.BGP_SOURCE_AS_NUMBER)
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getSrcMaskLen() {
-        return first(getInt64(this.document, "sourceIPv6PrefixLength"),
-                getInt64(this.document, "sourceIPv4PrefixLength"))
+        return first(this.record.getInt64(IpfixField.SOURCE_IPV6_PREFIX_LENGTH),
+                this.record.getInt64(IpfixField.SOURCE_IPV4_PREFIX_LENGTH))
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getSrcPort() {
-        return getInt64(this.document, "sourceTransportPort")
+        return this.record.getInt64(IpfixField.SOURCE_TRANSPORT_PORT)
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getTcpFlags() {
-        return getInt64(this.document, "tcpControlBits")
+        return this.record.getInt64(IpfixField.TCP_CONTROL_BITS)
                 .map(Long::intValue)
                 .orElse(null);
     }
 
     @Override
     public Integer getTos() {
-        return getInt64(this.document, "ipClassOfService")
+        return this.record.getInt64(IpfixField.IP_CLASS_OF_SERVICE)
                 .map(Long::intValue)
                 .orElse(null);
     }
@@ -387,12 +388,12 @@ class IpfixFlow implements Flow {
 
     @Override
     public Integer getVlan() {
-        return first(getInt64(this.document, "vlanId"),
-                getInt64(this.document, "postVlanId"),
-                getInt64(this.document, "dot1qVlanId"),
-                getInt64(this.document, "dot1qCustomerVlanId"),
-                getInt64(this.document, "postDot1qVlanId"),
-                getInt64(this.document, "postDot1qCustomerVlanId"))
+        return first(this.record.getInt64(IpfixField.VLAN_ID),
+                this.record.getInt64(IpfixField.POST_VLAN_ID),
+                this.record.getInt64(IpfixField.DOT1Q_VLAN_ID),
+                this.record.getInt64(IpfixField.DOT1Q_CUSTOMER_VLAN_ID),
+                this.record.getInt64(IpfixField.POST_DOT1Q_VLAN_ID),
+                this.record.getInt64(IpfixField.POST_DOT1Q_CUSTOMER_VLAN_ID))
                 .map(Long::intValue)
                 .orElse(null);
     }
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import org.opennms.netmgt.flows.api.Flow;
+import org.opennms.netmgt.flows.api.FlowRepository;
+import org.opennms.netmgt.flows.api.FlowSource;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessage;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessageLog;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class AbstractAdapterTest {
+
+    @Test
+    public void canPersistFlowsInChunks() throws Exception {
+        final List<Integer> persistedChunkSizes = new ArrayList<>();
+
+        final FlowRepository flowRepository = mock(FlowRepository.class);
+        doAnswer(invocation -> {
+            persistedChunkSizes.add(((Collection<?>) invocation.getArguments()[0]).size());
+            return null;
+        }).when(flowRepository).persist(any(), any(FlowSource.class));
+
+        // Every message results in two flows
+        final AbstractAdapter<Integer> adapter = new AbstractAdapter<Integer>(new MetricRegistry(), flowRepository,
+                packet -> Collections.nCopies(2, mock(Flow.class))) {
+            @Override
+            protected Integer parse(final TelemetryMessage message) {
+                return (int) message.getTimestamp();
+            }
+        };
+        adapter.setChunkSize(5);
+
+        adapter.handleMessageLog(messageLog(7));
+        assertThat(persistedChunkSizes, contains(6, 6, 2));
+
+        persistedChunkSizes.clear();
+        adapter.handleMessageLog(messageLog(1));
+        assertThat(persistedChunkSizes, contains(2));
+    }
+
+    @Test
+    public void doesNotModifyPersistedChunks() throws Exception {
+        // The repository may keep the chunks after persist() returns, i.e. to write them asynchronously
+        final List<Collection<?>> persistedChunks = new ArrayList<>();
+
+        final FlowRepository flowRepository = mock(FlowRepository.class);
+        doAnswer(invocation -> {
+            persistedChunks.add((Collection<?>) invocation.getArguments()[0]);
+            return null;
+        }).when(flowRepository).persist(any(), any(FlowSource.class));
+
+        final AbstractAdapter<Integer> adapter = new AbstractAdapter<Integer>(new MetricRegistry(), flowRepository,
+                packet -> Collections.nCopies(2, mock(Flow.class))) {
+            @Override
+            protected Integer parse(final TelemetryMessage message) {
+                return (int) message.getTimestamp();
+            }
+        };
+        adapter.setChunkSize(5);
+
+        adapter.handleMessageLog(messageLog(7));
+        adapter.handleMessageLog(messageLog(1));
+        assertThat(persistedChunks.stream().map(Collection::size).collect(Collectors.toList()), contains(6, 6, 2, 2));
+    }
+
+    private static TelemetryMessageLog messageLog(final int count) {
+        final List<TelemetryMessage> messages = IntStream.range(0, count)
+                .mapToObj(i -> new TelemetryMessage() {
+                    @Override
+                    public long getTimestamp() {
+                        return i;
+                    }
+
+                    @Override
+                    public byte[] getByteArray() {
+                        return new byte[0];
+                    }
+                })
+                .collect(Collectors.toList());
+
+        return new TelemetryMessageLog() {
+            @Override
+            public String getLocation() {
+                return "Default";
+            }
+
+            @Override
+            public String getSystemId() {
+                return "00000000-0000-0000-0000-000000000000";
+            }
+
+            @Override
+            public int getSourcePort() {
+                return 4738;
+            }
+
+            @Override
+            public String getSourceAddress() {
+                return "127.0.0.1";
+            }
+
+            @Override
+            public List<? extends TelemetryMessage> getMessageList() {
+                return messages;
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+import org.opennms.netmgt.telemetry.listeners.api.flow.BinaryFlowRecordFormat;
+import org.opennms.netmgt.telemetry.listeners.api.flow.IpfixField;
+import org.opennms.netmgt.telemetry.listeners.flow.BinaryRecordWriter;
+import org.opennms.netmgt.telemetry.listeners.flow.Protocol;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.Value;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.BooleanValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.DateTimeValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.FloatValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.IPv4AddressValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.IPv6AddressValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.MacAddressValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.NullValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.OctetArrayValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.SignedValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.StringValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.UnsignedValue;
+
+public class BinaryFlowRecordTest {
+
+    private static final Instant START = Instant.ofEpochSecond(1524773519L, 123456789);
+
+    @Test
+    public void canReadAllFieldTypes() throws Exception {
+        // Every value is followed by a value of another type, so the offsets of all types are verified
+        final List<Value<?>> values = Arrays.asList(
+                new UnsignedValue(IpfixField.EXPORT_TIME.getName(), 1524773527L),
+                new SignedValue(IpfixField.RECORD_COUNT.getName(), Optional.empty(), -1L),
+                new BooleanValue(IpfixField.SEQUENCE_NUMBER.getName(), Optional.empty(), true),
+                new UnsignedValue(IpfixField.OCTET_DELTA_COUNT.getName(), 156L),
+                new MacAddressValue(IpfixField.POST_OCTET_DELTA_COUNT.getName(), Optional.empty(), new byte[]{0, 1, 2, 3, 4, 5}),
+                new UnsignedValue(IpfixField.LAYER2_OCTET_DELTA_COUNT.getName(), 157L),
+                new OctetArrayValue(IpfixField.POST_LAYER2_OCTET_DELTA_COUNT.getName(), Optional.empty(), new byte[]{1, 2, 3}),
+                new UnsignedValue(IpfixField.TRANSPORT_OCTET_DELTA_COUNT.getName(), 158L),
+                new NullValue(IpfixField.FLOW_DIRECTION.getName(), Optional.empty()),
+                new IPv6AddressValue(IpfixField.DESTINATION_IPV6_ADDRESS.getName(), Optional.empty(), (Inet6Address) InetAddress.getByName("2001:db8::1")),
+                new IPv4AddressValue(IpfixField.DESTINATION_IPV4_ADDRESS.getName(), Optional.empty(), (Inet4Address) InetAddress.getByName("10.1.20.127")),
+                new StringValue(IpfixField.BGP_DESTINATION_AS_NUMBER.getName(), Optional.empty(), "\u00fcber"),
+                new UnsignedValue(IpfixField.DESTINATION_IPV6_PREFIX_LENGTH.getName(), 64L),
+                new DateTimeValue(IpfixField.FLOW_START_MILLISECONDS.getName(), Optional.empty(), START),
+                new FloatValue(IpfixField.SAMPLING_PROBABILITY.getName(), Optional.empty(), 0.25),
+                new UnsignedValue(IpfixField.POST_DOT1Q_CUSTOMER_VLAN_ID.getName(), 42L),
+                // Not part of the layout
+                new StringValue("interfaceName", Optional.empty(), "eth0"));
+
+        final BinaryFlowRecord record = new BinaryFlowRecord(BinaryRecordWriter.serialize(Protocol.IPFIX, values));
+        assertThat(record.getProtocolVersion(), equalTo(IpfixField.PROTOCOL_VERSION));
+        assertThat(record.getInt64(IpfixField.EXPORT_TIME), equalTo(Optional.of(1524773527L)));
+        assertThat(record.getInt64(IpfixField.RECORD_COUNT), equalTo(Optional.of(-1L)));
+        assertThat(record.getInt64(IpfixField.OCTET_DELTA_COUNT), equalTo(Optional.of(156L)));
+        assertThat(record.getInt64(IpfixField.LAYER2_OCTET_DELTA_COUNT), equalTo(Optional.of(157L)));
+        assertThat(record.getInt64(IpfixField.TRANSPORT_OCTET_DELTA_COUNT), equalTo(Optional.of(158L)));
+        assertThat(record.getInt64(IpfixField.FLOW_DIRECTION), equalTo(Optional.empty()));
+        assertThat(record.getString(IpfixField.DESTINATION_IPV6_ADDRESS), equalTo(Optional.of("2001:db8:0:0:0:0:0:1")));
+        assertThat(record.getString(IpfixField.DESTINATION_IPV4_ADDRESS), equalTo(Optional.of("10.1.20.127")));
+        assertThat(record.getString(IpfixField.BGP_DESTINATION_AS_NUMBER), equalTo(Optional.of("\u00fcber")));
+        assertThat(record.getInt64(IpfixField.DESTINATION_IPV6_PREFIX_LENGTH), equalTo(Optional.of(64L)));
+        assertThat(record.getTime(IpfixField.FLOW_START_MILLISECONDS), equalTo(Optional.of(START)));
+        assertThat(record.getDouble(IpfixField.SAMPLING_PROBABILITY), equalTo(Optional.of(0.25)));
+        assertThat(record.getInt64(IpfixField.POST_DOT1Q_CUSTOMER_VLAN_ID), equalTo(Optional.of(42L)));
+        assertThat(record.getInt64(IpfixField.SOURCE_TRANSPORT_PORT), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void rejectsTruncatedRecords() throws Exception {
+        final List<Value<?>> values = Arrays.asList(
+                new StringValue(IpfixField.BGP_DESTINATION_AS_NUMBER.getName(), Optional.empty(), "truncated"),
+                new UnsignedValue(IpfixField.POST_DOT1Q_CUSTOMER_VLAN_ID.getName(), 42L));
+        final ByteBuffer buffer = BinaryRecordWriter.serialize(Protocol.IPFIX, values);
+
+        // Every prefix of the record lacks a value, or even the length of the string
+        for (int limit = BinaryFlowRecordFormat.HEADER_SIZE; limit < buffer.limit(); limit++) {
+            final ByteBuffer truncated = buffer.duplicate();
+            truncated.limit(limit);
+            assertTruncated(truncated);
+        }
+    }
+
+    @Test
+    public void rejectsNegativeLengths() throws Exception {
+        final List<Value<?>> values = Arrays.asList(
+                new OctetArrayValue(IpfixField.POST_LAYER2_OCTET_DELTA_COUNT.getName(), Optional.empty(), new byte[]{1, 2, 3}),
+                new UnsignedValue(IpfixField.TRANSPORT_OCTET_DELTA_COUNT.getName(), 158L));
+        final ByteBuffer buffer = BinaryRecordWriter.serialize(Protocol.IPFIX, values);
+
+        // The length is the first value of the record
+        buffer.putInt(BinaryFlowRecordFormat.HEADER_SIZE + IpfixField.values().length, -8);
+        assertTruncated(buffer);
+    }
+
+    private static void assertTruncated(final ByteBuffer buffer) {
+        try {
+            new BinaryFlowRecord(buffer);
+            fail("The record should have been rejected.");
+        } catch (final IllegalArgumentException e) {
+            assertThat(e.getMessage(), equalTo("Truncated binary flow record"));
+        }
+    }
+}
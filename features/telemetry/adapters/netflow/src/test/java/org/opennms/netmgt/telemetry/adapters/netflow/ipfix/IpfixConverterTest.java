@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.adapters.netflow.ipfix;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+import org.opennms.netmgt.flows.api.Flow;
+import org.opennms.netmgt.flows.api.FlowRepository;
+import org.opennms.netmgt.flows.api.FlowSource;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessage;
+import org.opennms.netmgt.telemetry.adapters.api.TelemetryMessageLog;
+import org.opennms.netmgt.telemetry.adapters.netflow.BinaryFlowRecord;
+import org.opennms.netmgt.telemetry.adapters.netflow.BsonFlowRecord;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowRecord;
+import org.opennms.netmgt.telemetry.listeners.flow.PacketHandler;
+import org.opennms.netmgt.telemetry.listeners.flow.Protocol;
+import org.opennms.netmgt.telemetry.listeners.flow.RecordFormat;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.Value;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.DateTimeValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.IPv4AddressValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.MacAddressValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.UnsignedValue;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class IpfixConverterTest {
+
+    private IpfixConverter ipfixConverter = new IpfixConverter();
+
+    @Test
+    public void canParseIpfixFlows() throws Exception {
+        verifyFlow(convert(RecordFormat.BSON, 42));
+    }
+
+    @Test
+    public void canParseIpfixFlowsFromBinaryRecords() throws Exception {
+        verifyFlow(convert(RecordFormat.BINARY, 42));
+    }
+
+    /**
+     * Verifies that a log written during a rolling upgrade, where only some of the listeners
+     * already write binary records, is handled as a whole.
+     */
+    @Test
+    public void canParseLogsMixingBsonAndBinaryRecords() throws Exception {
+        final List<Flow> flows = new ArrayList<>();
+        final FlowRepository flowRepository = mock(FlowRepository.class);
+        doAnswer(invocation -> {
+            for (Object flow : (Collection<?>) invocation.getArguments()[0]) {
+                flows.add((Flow) flow);
+            }
+            return null;
+        }).when(flowRepository).persist(any(), any(FlowSource.class));
+
+        final IpfixAdapter adapter = new IpfixAdapter(new MetricRegistry(), flowRepository);
+        adapter.handleMessageLog(messageLog(
+                serialize(RecordFormat.BSON, 1),
+                serialize(RecordFormat.BINARY, 2),
+                serialize(RecordFormat.BINARY, 3),
+                serialize(RecordFormat.BSON, 4)));
+
+        assertThat(flows, hasSize(4));
+        for (int i = 0; i < flows.size(); i++) {
+            assertThat(flows.get(i).getFlowSeqNum(), equalTo(i + 1L));
+            verifyFlow(flows.get(i));
+        }
+    }
+
+    private void verifyFlow(Flow flow) {
+        assertThat(flow.getTimestamp(), equalTo(1524773527000L));
+        assertThat(flow.getSrcAddr(), equalTo("10.1.20.85"));
+        assertThat(flow.getSrcPort(), equalTo(137));
+        assertThat(flow.getDstAddr(), equalTo("10.1.20.127"));
+        assertThat(flow.getDstPort(), equalTo(137));
+        assertThat(flow.getProtocol(), equalTo(17)); // UDP
+        assertThat(flow.getBytes(), equalTo(156L));
+        assertThat(flow.getInputSnmp(), equalTo(369098754));
+        assertThat(flow.getOutputSnmp(), equalTo(0));
+        assertThat(flow.getFirstSwitched(), equalTo(1524773519000L));
+        assertThat(flow.getLastSwitched(), equalTo(1524773527000L));
+        assertThat(flow.getPackets(), equalTo(2L));
+        assertThat(flow.getNextHop(), equalTo("0.0.0.0"));
+        assertThat(flow.getVlan(), nullValue());
+    }
+
+    private Flow convert(RecordFormat format, long sequenceNumber) throws UnknownHostException {
+        final ByteBuffer buffer = serialize(format, sequenceNumber);
+        final FlowRecord record = format == RecordFormat.BINARY
+                ? new BinaryFlowRecord(buffer)
+                : new BsonFlowRecord(new RawBsonDocument(buffer.array()));
+        final List<Flow> flows = ipfixConverter.convert(record);
+        assertThat(flows, hasSize(1));
+        return flows.get(0);
+    }
+
+    private static ByteBuffer serialize(RecordFormat format, long sequenceNumber) throws UnknownHostException {
+        final List<Value<?>> record = Arrays.asList(
+                new UnsignedValue("@exportTime", 1524773527L),
+                new UnsignedValue("@recordCount", 1L),
+                new UnsignedValue("@sequenceNumber", sequenceNumber),
+                new IPv4AddressValue("sourceIPv4Address", Optional.empty(), (Inet4Address) InetAddress.getByName("10.1.20.85")),
+                new IPv4AddressValue("destinationIPv4Address", Optional.empty(), (Inet4Address) InetAddress.getByName("10.1.20.127")),
+                new UnsignedValue("sourceTransportPort", 137L),
+                new UnsignedValue("destinationTransportPort", 137L),
+                new UnsignedValue("protocolIdentifier", 17L),
+                new UnsignedValue("octetDeltaCount", 156L),
+                new UnsignedValue("packetDeltaCount", 2L),
+                new UnsignedValue("ingressInterface", 369098754L),
+                new UnsignedValue("egressInterface", 0L),
+                new DateTimeValue("flowStartMilliseconds", Optional.empty(), Instant.ofEpochMilli(1524773519000L)),
+                new DateTimeValue("flowEndMilliseconds", Optional.empty(), Instant.ofEpochMilli(1524773527000L)),
+                new IPv4AddressValue("ipNextHopIPv4Address", Optional.empty(), (Inet4Address) InetAddress.getByName("0.0.0.0")),
+                // Not part of the layout of binary records
+                new MacAddressValue("sourceMacAddress", Optional.empty(), new byte[]{0, 1, 2, 3, 4, 5}));
+        return PacketHandler.serialize(Protocol.IPFIX, format, record);
+    }
+
+    private static TelemetryMessageLog messageLog(final ByteBuffer... buffers) {
+        final List<TelemetryMessage> messages = new ArrayList<>(buffers.length);
+        for (final ByteBuffer buffer : buffers) {
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            messages.add(new TelemetryMessage() {
+                @Override
+                public long getTimestamp() {
+                    return 0;
+                }
+
+                @Override
+                public byte[] getByteArray() {
+                    return bytes;
+                }
+            });
+        }
+
+        return new TelemetryMessageLog() {
+            @Override
+            public String getLocation() {
+                return "Default";
+            }
+
+            @Override
+            public String getSystemId() {
+                return "00000000-0000-0000-0000-000000000000";
+            }
+
+            @Override
+            public int getSourcePort() {
+                return 4739;
+            }
+
+            @Override
+            public String getSourceAddress() {
+                return "127.0.0.1";
+            }
+
+            @Override
+            public List<? extends TelemetryMessage> getMessageList() {
+                return messages;
+            }
+        };
+    }
+}
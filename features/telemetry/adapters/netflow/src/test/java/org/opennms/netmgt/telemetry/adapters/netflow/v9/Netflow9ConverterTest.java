@@ -43,12 +43,15 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.bson.BsonDocument;
 import org.bson.RawBsonDocument;
 import org.junit.Test;
 import org.opennms.netmgt.flows.api.Flow;
+import org.opennms.netmgt.telemetry.adapters.netflow.BinaryFlowRecord;
+import org.opennms.netmgt.telemetry.adapters.netflow.BsonFlowRecord;
+import org.opennms.netmgt.telemetry.adapters.netflow.FlowRecord;
 import org.opennms.netmgt.telemetry.listeners.flow.InvalidPacketException;
 import org.opennms.netmgt.telemetry.listeners.flow.PacketHandler;
+import org.opennms.netmgt.telemetry.listeners.flow.RecordFormat;
 import org.opennms.netmgt.telemetry.listeners.flow.netflow9.proto.Header;
 import org.opennms.netmgt.telemetry.listeners.flow.netflow9.proto.Packet;
 import org.opennms.netmgt.telemetry.listeners.flow.session.Session;
@@ -61,7 +64,18 @@ public class Netflow9ConverterTest {
     @Test
     public void canParseNetflow9Flows() {
         // Generate flows from existing packet payloads
-        List<Flow> flows = getFlowsForPayloadsInSession("/flows/netflow9_template.dat", "/flows/netflow9_records.dat");
+        List<Flow> flows = getFlowsForPayloadsInSession(RecordFormat.BSON, "/flows/netflow9_template.dat", "/flows/netflow9_records.dat");
+        verifyFlows(flows);
+    }
+
+    @Test
+    public void canParseNetflow9FlowsFromBinaryRecords() {
+        // Generate flows from existing packet payloads
+        List<Flow> flows = getFlowsForPayloadsInSession(RecordFormat.BINARY, "/flows/netflow9_template.dat", "/flows/netflow9_records.dat");
+        verifyFlows(flows);
+    }
+
+    private void verifyFlows(List<Flow> flows) {
         assertThat(flows, hasSize(5));
         // Verify a flow
         Flow flow = flows.get(4);
@@ -81,7 +95,7 @@ public class Netflow9ConverterTest {
         assertThat(flow.getVlan(), nullValue());
     }
 
-    private List<Flow> getFlowsForPayloadsInSession(String... resources) {
+    private List<Flow> getFlowsForPayloadsInSession(RecordFormat format, String... resources) {
         final List<byte[]> payloads = new ArrayList<>(resources.length);
         for (String resource : resources) {
             URL resourceURL = getClass().getResource(resource);
@@ -91,10 +105,10 @@ public class Netflow9ConverterTest {
                 throw new RuntimeException(e);
             }
         }
-        return getFlowsForPayloadsInSession(payloads);
+        return getFlowsForPayloadsInSession(format, payloads);
     }
 
-    private List<Flow> getFlowsForPayloadsInSession(List<byte[]> payloads) {
+    private List<Flow> getFlowsForPayloadsInSession(RecordFormat format, List<byte[]> payloads) {
         final List<Flow> flows = new ArrayList<>();
         final Session session = new TcpSession();
         for (byte[] payload : payloads) {
@@ -104,9 +118,11 @@ public class Netflow9ConverterTest {
                 header = new Header(slice(buffer, Header.SIZE));
                 final Packet packet = new Packet(session, header, buffer);
                 packet.getRecords().forEach(rec -> {
-                    final ByteBuffer bf = PacketHandler.serialize(org.opennms.netmgt.telemetry.listeners.flow.Protocol.NETFLOW9, rec);
-                    final BsonDocument doc = new RawBsonDocument(bf.array());
-                    flows.addAll(nf9Converter.convert(doc));
+                    final ByteBuffer bf = PacketHandler.serialize(org.opennms.netmgt.telemetry.listeners.flow.Protocol.NETFLOW9, format, rec);
+                    final FlowRecord record = format == RecordFormat.BINARY
+                            ? new BinaryFlowRecord(bf)
+                            : new BsonFlowRecord(new RawBsonDocument(bf.array()));
+                    flows.addAll(nf9Converter.convert(record));
                 });
             } catch (InvalidPacketException e) {
                 throw new RuntimeException(e);
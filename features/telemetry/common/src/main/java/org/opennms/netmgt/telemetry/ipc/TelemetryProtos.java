@@ -197,6 +197,11 @@ public final class TelemetryProtos {
       return bytes_.toByteArray();
     }
 
+    @Override
+    public java.nio.ByteBuffer getBuffer() {
+      return bytes_.asReadOnlyByteBuffer();
+    }
+
     private void initFields() {
       timestamp_ = 0L;
       bytes_ = com.google.protobuf.ByteString.EMPTY;
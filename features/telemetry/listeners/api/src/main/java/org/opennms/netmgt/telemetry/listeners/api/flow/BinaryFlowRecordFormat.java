@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.listeners.api.flow;
+
+/**
+ * Constants of the compact binary format used to hand flow records from the listeners to the adapters.
+ *
+ * <pre>
+ *  +--------+--------+--------+--------+
+ *  |  'O'   |  'N'   |  'F'   | 0x80|v |  marker - negative when read as a BSON length
+ *  +--------+--------+--------+--------+
+ *  | protocol version|   field count   |
+ *  +--------+--------+--------+--------+
+ *  |  one type per field ...
+ *  +--------+--------+--------+--------+
+ *  |  values
+ *  +--------+--------+--------+--------+
+ * </pre>
+ *
+ * The fields have a fixed layout per protocol, defined by {@link IpfixField} and {@link Netflow9Field}. A record
+ * carries one type per slot of the layout, where {@link #TYPE_NULL} marks a field which is not present, so readers
+ * locate a value by its slot without any name lookups. Information elements which are not part of the layout are
+ * not written.
+ *
+ * The values follow in slot order. Fixed size values are stored without any framing, variable length values are
+ * prefixed by their length. All numbers are big-endian.
+ */
+public final class BinaryFlowRecordFormat {
+
+    public static final int VERSION = 2;
+
+    public static final byte[] MARKER = new byte[]{'O', 'N', 'F', (byte) (0x80 | VERSION)};
+
+    /**
+     * Size of the marker, the protocol version and the field count.
+     */
+    public static final int HEADER_SIZE = 4 + 2 + 2;
+
+    public static final byte TYPE_NULL = 0;
+    public static final byte TYPE_BOOLEAN = 1;
+    public static final byte TYPE_INT64 = 2;
+    public static final byte TYPE_DOUBLE = 3;
+    public static final byte TYPE_STRING = 4;
+    public static final byte TYPE_IPV4 = 5;
+    public static final byte TYPE_IPV6 = 6;
+    public static final byte TYPE_DATETIME = 7;
+    public static final byte TYPE_BINARY = 8;
+    public static final byte TYPE_MAC = 9;
+
+    private BinaryFlowRecordFormat() {
+    }
+}
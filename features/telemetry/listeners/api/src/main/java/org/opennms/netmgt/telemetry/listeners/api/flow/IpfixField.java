@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.listeners.api.flow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The fields of IPFIX records read by the adapters.
+ *
+ * The order of the constants defines the slots of the binary flow record format, new fields must therefore only be
+ * appended.
+ */
+public enum IpfixField implements FlowField {
+    EXPORT_TIME("@exportTime"),
+    RECORD_COUNT("@recordCount"),
+    SEQUENCE_NUMBER("@sequenceNumber"),
+    OCTET_DELTA_COUNT("octetDeltaCount"),
+    POST_OCTET_DELTA_COUNT("postOctetDeltaCount"),
+    LAYER2_OCTET_DELTA_COUNT("layer2OctetDeltaCount"),
+    POST_LAYER2_OCTET_DELTA_COUNT("postLayer2OctetDeltaCount"),
+    TRANSPORT_OCTET_DELTA_COUNT("transportOctetDeltaCount"),
+    FLOW_DIRECTION("flowDirection"),
+    DESTINATION_IPV6_ADDRESS("destinationIPv6Address"),
+    DESTINATION_IPV4_ADDRESS("destinationIPv4Address"),
+    BGP_DESTINATION_AS_NUMBER("bgpDestinationAsNumber"),
+    DESTINATION_IPV6_PREFIX_LENGTH("destinationIPv6PrefixLength"),
+    DESTINATION_IPV4_PREFIX_LENGTH("destinationIPv4PrefixLength"),
+    DESTINATION_TRANSPORT_PORT("destinationTransportPort"),
+    ENGINE_ID("engineId"),
+    ENGINE_TYPE("engineType"),
+    FLOW_START_SECONDS("flowStartSeconds"),
+    FLOW_START_MILLISECONDS("flowStartMilliseconds"),
+    FLOW_START_MICROSECONDS("flowStartMicroseconds"),
+    FLOW_START_NANOSECONDS("flowStartNanoseconds"),
+    FLOW_START_DELTA_MICROSECONDS("flowStartDeltaMicroseconds"),
+    FLOW_START_SYS_UP_TIME("flowStartSysUpTime"),
+    SYSTEM_INIT_TIME_MILLISECONDS("systemInitTimeMilliseconds"),
+    INGRESS_INTERFACE("ingressInterface"),
+    IP_VERSION("ipVersion"),
+    FLOW_END_SECONDS("flowEndSeconds"),
+    FLOW_END_MILLISECONDS("flowEndMilliseconds"),
+    FLOW_END_MICROSECONDS("flowEndMicroseconds"),
+    FLOW_END_NANOSECONDS("flowEndNanoseconds"),
+    FLOW_END_DELTA_MICROSECONDS("flowEndDeltaMicroseconds"),
+    FLOW_END_SYS_UP_TIME("flowEndSysUpTime"),
+    IP_NEXT_HOP_IPV6_ADDRESS("ipNextHopIPv6Address"),
+    IP_NEXT_HOP_IPV4_ADDRESS("ipNextHopIPv4Address"),
+    BGP_NEXT_HOP_IPV6_ADDRESS("bgpNextHopIPv6Address"),
+    BGP_NEXT_HOP_IPV4_ADDRESS("bgpNextHopIPv4Address"),
+    EGRESS_INTERFACE("egressInterface"),
+    PACKET_DELTA_COUNT("packetDeltaCount"),
+    POST_PACKET_DELTA_COUNT("postPacketDeltaCount"),
+    TRANSPORT_PACKET_DELTA_COUNT("transportPacketDeltaCount"),
+    PROTOCOL_IDENTIFIER("protocolIdentifier"),
+    SAMPLING_ALGORITHM("samplingAlgorithm"),
+    SAMPLER_MODE("samplerMode"),
+    SELECTOR_ALGORITHM("selectorAlgorithm"),
+    SAMPLING_INTERVAL("samplingInterval"),
+    SAMPLER_RANDOM_INTERVAL("samplerRandomInterval"),
+    SAMPLING_FLOW_INTERVAL("samplingFlowInterval"),
+    SAMPLING_FLOW_SPACING("samplingFlowSpacing"),
+    FLOW_SAMPLING_TIME_INTERVAL("flowSamplingTimeInterval"),
+    FLOW_SAMPLING_TIME_SPACING("flowSamplingTimeSpacing"),
+    SAMPLING_SIZE("samplingSize"),
+    SAMPLING_POPULATION("samplingPopulation"),
+    SAMPLING_PROBABILITY("samplingProbability"),
+    HASH_SELECTED_RANGE_MIN("hashSelectedRangeMin"),
+    HASH_SELECTED_RANGE_MAX("hashSelectedRangeMax"),
+    HASH_OUTPUT_RANGE_MIN("hashOutputRangeMin"),
+    HASH_OUTPUT_RANGE_MAX("hashOutputRangeMax"),
+    SOURCE_IPV6_ADDRESS("sourceIPv6Address"),
+    SOURCE_IPV4_ADDRESS("sourceIPv4Address"),
+    BGP_SOURCE_AS_NUMBER("bgpSourceAsNumber"),
+    SOURCE_IPV6_PREFIX_LENGTH("sourceIPv6PrefixLength"),
+    SOURCE_IPV4_PREFIX_LENGTH("sourceIPv4PrefixLength"),
+    SOURCE_TRANSPORT_PORT("sourceTransportPort"),
+    TCP_CONTROL_BITS("tcpControlBits"),
+    IP_CLASS_OF_SERVICE("ipClassOfService"),
+    VLAN_ID("vlanId"),
+    POST_VLAN_ID("postVlanId"),
+    DOT1Q_VLAN_ID("dot1qVlanId"),
+    DOT1Q_CUSTOMER_VLAN_ID("dot1qCustomerVlanId"),
+    POST_DOT1Q_VLAN_ID("postDot1qVlanId"),
+    POST_DOT1Q_CUSTOMER_VLAN_ID("postDot1qCustomerVlanId");
+
+    /**
+     * The version field of the packet header.
+     */
+    public static final int PROTOCOL_VERSION = 0x000a;
+
+    private static final Map<String, IpfixField> BY_NAME = new HashMap<>();
+
+    static {
+        for (final IpfixField field : values()) {
+            BY_NAME.put(field.name, field);
+        }
+    }
+
+    private final String name;
+
+    IpfixField(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public int getSlot() {
+        return this.ordinal();
+    }
+
+    @Override
+    public int getProtocolVersion() {
+        return PROTOCOL_VERSION;
+    }
+
+    /**
+     * Returns the field with the given name, or {@code null} if the field is not part of the layout.
+     */
+    public static IpfixField forName(final String name) {
+        return BY_NAME.get(name);
+    }
+}
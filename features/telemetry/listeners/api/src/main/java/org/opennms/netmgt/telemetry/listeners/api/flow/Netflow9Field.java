@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.listeners.api.flow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The fields of Netflow v9 records read by the adapters.
+ *
+ * The order of the constants defines the slots of the binary flow record format, new fields must therefore only be
+ * appended.
+ */
+public enum Netflow9Field implements FlowField {
+    UNIX_SECS("@unixSecs"),
+    SYS_UP_TIME("@sysUpTime"),
+    RECORD_COUNT("@recordCount"),
+    SEQUENCE_NUMBER("@sequenceNumber"),
+    IN_BYTES("IN_BYTES"),
+    IN_PKTS("IN_PKTS"),
+    DIRECTION("DIRECTION"),
+    IPV6_DST_ADDR("IPV6_DST_ADDR"),
+    IPV4_DST_ADDR("IPV4_DST_ADDR"),
+    DST_AS("DST_AS"),
+    IPV6_DST_MASK("IPV6_DST_MASK"),
+    DST_MASK("DST_MASK"),
+    L4_DST_PORT("L4_DST_PORT"),
+    ENGINE_ID("ENGINE_ID"),
+    ENGINE_TYPE("ENGINE_TYPE"),
+    FIRST_SWITCHED("FIRST_SWITCHED"),
+    LAST_SWITCHED("LAST_SWITCHED"),
+    INPUT_SNMP("INPUT_SNMP"),
+    OUTPUT_SNMP("OUTPUT_SNMP"),
+    IP_PROTOCOL_VERSION("IP_PROTOCOL_VERSION"),
+    IPV6_NEXT_HOP("IPV6_NEXT_HOP"),
+    IPV4_NEXT_HOP("IPV4_NEXT_HOP"),
+    BPG_IPV6_NEXT_HOP("BPG_IPV6_NEXT_HOP"),
+    BPG_IPV4_NEXT_HOP("BPG_IPV4_NEXT_HOP"),
+    PROTOCOL("PROTOCOL"),
+    SAMPLING_ALGORITHM("SAMPLING_ALGORITHM"),
+    SAMPLING_INTERVAL("SAMPLING_INTERVAL"),
+    IPV6_SRC_ADDR("IPV6_SRC_ADDR"),
+    IPV4_SRC_ADDR("IPV4_SRC_ADDR"),
+    SRC_AS("SRC_AS"),
+    IPV6_SRC_MASK("IPV6_SRC_MASK"),
+    SRC_MASK("SRC_MASK"),
+    L4_SRC_PORT("L4_SRC_PORT"),
+    TCP_FLAGS("TCP_FLAGS"),
+    TOS("TOS"),
+    SRC_VLAN("SRC_VLAN"),
+    DST_VLAN("DST_VLAN");
+
+    /**
+     * The version field of the packet header.
+     */
+    public static final int PROTOCOL_VERSION = 0x0009;
+
+    private static final Map<String, Netflow9Field> BY_NAME = new HashMap<>();
+
+    static {
+        for (final Netflow9Field field : values()) {
+            BY_NAME.put(field.name, field);
+        }
+    }
+
+    private final String name;
+
+    Netflow9Field(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public int getSlot() {
+        return this.ordinal();
+    }
+
+    @Override
+    public int getProtocolVersion() {
+        return PROTOCOL_VERSION;
+    }
+
+    /**
+     * Returns the field with the given name, or {@code null} if the field is not part of the layout.
+     */
+    public static Netflow9Field forName(final String name) {
+        return BY_NAME.get(name);
+    }
+}
@@ -77,6 +77,8 @@ public abstract class AbstractUdpListener implements Listener {
     private ScheduledFuture<?> housekeepingFuture;
     private int maxPacketSize = 8096;
 
+    private RecordFormat recordFormat = RecordFormat.BINARY;
+
     protected abstract ChannelHandler buildDecoder(final UdpSessionManager sessionManager);
 
     protected AbstractUdpListener(final Protocol protocol) {
@@ -105,7 +107,7 @@ public abstract class AbstractUdpListener implements Listener {
                     protected void initChannel(final DatagramChannel ch) throws Exception {
                         ch.pipeline()
                                 .addLast(AbstractUdpListener.this.buildDecoder(AbstractUdpListener.this.sessionManager))
-                                .addLast(new PacketHandler(AbstractUdpListener.this.protocol, AbstractUdpListener.this.dispatcher))
+                                .addLast(new PacketHandler(AbstractUdpListener.this.protocol, AbstractUdpListener.this.recordFormat, AbstractUdpListener.this.dispatcher))
                                 .addLast(new ChannelInboundHandlerAdapter() {
                                     @Override
                                     public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
@@ -164,6 +166,14 @@ public abstract class AbstractUdpListener implements Listener {
         this.maxPacketSize = maxPacketSize;
     }
 
+    public RecordFormat getRecordFormat() {
+        return this.recordFormat;
+    }
+
+    public void setRecordFormat(final RecordFormat recordFormat) {
+        this.recordFormat = recordFormat;
+    }
+
     public Duration getTemplateTimeout() {
         return this.templateTimeout;
     }
@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.telemetry.listeners.flow;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.opennms.netmgt.telemetry.listeners.api.flow.BinaryFlowRecordFormat;
+import org.opennms.netmgt.telemetry.listeners.api.flow.FlowField;
+import org.opennms.netmgt.telemetry.listeners.api.flow.IpfixField;
+import org.opennms.netmgt.telemetry.listeners.api.flow.Netflow9Field;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.Value;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.BooleanValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.DateTimeValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.FloatValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.IPv4AddressValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.IPv6AddressValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.ListValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.MacAddressValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.NullValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.OctetArrayValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.SignedValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.StringValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.UndeclaredValue;
+import org.opennms.netmgt.telemetry.listeners.flow.ie.values.UnsignedValue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Serializes a flow record into the compact binary record format described by {@link BinaryFlowRecordFormat}.
+ *
+ * Only the values of the fields in the layout of the protocol are written, all other information elements are
+ * dropped.
+ */
+public class BinaryRecordWriter {
+
+    private BinaryRecordWriter() {
+    }
+
+    public static ByteBuffer serialize(final Protocol protocol, final Iterable<Value<?>> record) {
+        final Value<?>[] slots = new Value<?>[fieldCount(protocol)];
+        for (final Value<?> value : record) {
+            final FlowField field = field(protocol, value.getName());
+            // The first value wins if an element is contained multiple times
+            if (field != null && slots[field.getSlot()] == null) {
+                slots[field.getSlot()] = value;
+            }
+        }
+
+        final byte[] types = new byte[slots.length];
+        final ByteBuf values = Unpooled.buffer(256);
+        final ValueWriter writer = new ValueWriter(values);
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                slots[i].visit(writer);
+                types[i] = writer.type;
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(BinaryFlowRecordFormat.HEADER_SIZE + types.length + values.readableBytes());
+        buffer.put(BinaryFlowRecordFormat.MARKER);
+        buffer.putShort((short) protocol.magic);
+        buffer.putShort((short) types.length);
+        buffer.put(types);
+        values.readBytes(buffer);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private static FlowField field(final Protocol protocol, final String name) {
+        switch (protocol) {
+            case NETFLOW9:
+                return Netflow9Field.forName(name);
+            case IPFIX:
+                return IpfixField.forName(name);
+            default:
+                throw new IllegalArgumentException("Unsupported protocol: " + protocol);
+        }
+    }
+
+    private static int fieldCount(final Protocol protocol) {
+        switch (protocol) {
+            case NETFLOW9:
+                return Netflow9Field.values().length;
+            case IPFIX:
+                return IpfixField.values().length;
+            default:
+                throw new IllegalArgumentException("Unsupported protocol: " + protocol);
+        }
+    }
+
+    private static void writeBytes(final ByteBuf buffer, final byte[] bytes) {
+        buffer.writeInt(bytes.length);
+        buffer.writeBytes(bytes);
+    }
+
+    private static class ValueWriter implements Value.Visitor {
+        private final ByteBuf buffer;
+
+        private byte type;
+
+        private ValueWriter(final ByteBuf buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void accept(final NullValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_NULL;
+        }
+
+        @Override
+        public void accept(final BooleanValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_BOOLEAN;
+            this.buffer.writeBoolean(value.getValue());
+        }
+
+        @Override
+        public void accept(final DateTimeValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_DATETIME;
+            this.buffer.writeLong(value.getValue().getEpochSecond());
+            this.buffer.writeInt(value.getValue().getNano());
+        }
+
+        @Override
+        public void accept(final FloatValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_DOUBLE;
+            this.buffer.writeDouble(value.getValue());
+        }
+
+        @Override
+        public void accept(final IPv4AddressValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_IPV4;
+            this.buffer.writeBytes(value.getValue().getAddress());
+        }
+
+        @Override
+        public void accept(final IPv6AddressValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_IPV6;
+            this.buffer.writeBytes(value.getValue().getAddress());
+        }
+
+        @Override
+        public void accept(final MacAddressValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_MAC;
+            this.buffer.writeByte(value.getSemantics().map(s -> s.ordinal() + 1).orElse(0));
+            writeBytes(this.buffer, value.getValue());
+        }
+
+        @Override
+        public void accept(final OctetArrayValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_BINARY;
+            writeBytes(this.buffer, value.getValue());
+        }
+
+        @Override
+        public void accept(final SignedValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_INT64;
+            this.buffer.writeLong(value.getValue());
+        }
+
+        @Override
+        public void accept(final StringValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_STRING;
+            writeBytes(this.buffer, value.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void accept(final UnsignedValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_INT64;
+            this.buffer.writeLong(value.getValue().longValue());
+        }
+
+        @Override
+        public void accept(final ListValue value) {
+            // None of the fields in the layouts is a list
+            this.type = BinaryFlowRecordFormat.TYPE_NULL;
+        }
+
+        @Override
+        public void accept(final UndeclaredValue value) {
+            this.type = BinaryFlowRecordFormat.TYPE_BINARY;
+            writeBytes(this.buffer, value.getValue());
+        }
+    }
+}
@@ -66,11 +66,20 @@ public class PacketHandler extends SimpleChannelInboundHandler<DefaultAddressedE
 
     private final Protocol protocol;
 
+    private final RecordFormat format;
+
     private final AsyncDispatcher<TelemetryMessage> dispatcher;
 
     public PacketHandler(final Protocol protocol,
                          final AsyncDispatcher<TelemetryMessage> dispatcher) {
+        this(protocol, RecordFormat.BINARY, dispatcher);
+    }
+
+    public PacketHandler(final Protocol protocol,
+                         final RecordFormat format,
+                         final AsyncDispatcher<TelemetryMessage> dispatcher) {
         this.protocol = Objects.requireNonNull(protocol);
+        this.format = Objects.requireNonNull(format);
         this.dispatcher = Objects.requireNonNull(dispatcher);
     }
 
@@ -79,7 +88,7 @@ public class PacketHandler extends SimpleChannelInboundHandler<DefaultAddressedE
         LOG.trace("Got packet: {}", packet);
 
         packet.content().getRecords().forEach(record -> {
-            final ByteBuffer buffer = serialize(this.protocol, record);
+            final ByteBuffer buffer = serialize(this.protocol, this.format, record);
 
             // Build the message to dispatch
             final TelemetryMessage msg = new TelemetryMessage(packet.sender(), buffer);
@@ -98,6 +107,17 @@ public class PacketHandler extends SimpleChannelInboundHandler<DefaultAddressedE
         });
     }
 
+    public static ByteBuffer serialize(final Protocol protocol, final RecordFormat format, final Iterable<Value<?>> record) {
+        switch (format) {
+            case BINARY:
+                return BinaryRecordWriter.serialize(protocol, record);
+            case BSON:
+                return serialize(protocol, record);
+            default:
+                throw new IllegalArgumentException("Unsupported record format: " + format);
+        }
+    }
+
     public static ByteBuffer serialize(final Protocol protocol, final Iterable<Value<?>> record) {
         // Build BSON document from flow
         final BasicOutputBuffer output = new BasicOutputBuffer();
@@ -35,6 +35,7 @@ import org.opennms.netmgt.telemetry.listeners.api.Listener;
 import org.opennms.netmgt.telemetry.listeners.api.TelemetryMessage;
 import org.opennms.netmgt.telemetry.listeners.flow.PacketHandler;
 import org.opennms.netmgt.telemetry.listeners.flow.Protocol;
+import org.opennms.netmgt.telemetry.listeners.flow.RecordFormat;
 import org.opennms.netmgt.telemetry.listeners.flow.session.Session;
 import org.opennms.netmgt.telemetry.listeners.flow.session.TcpSession;
 import org.slf4j.Logger;
@@ -60,6 +61,8 @@ public class TcpListener implements Listener {
     private String host = null;
     private int port = 4739;
 
+    private RecordFormat recordFormat = RecordFormat.BINARY;
+
     private AsyncDispatcher<TelemetryMessage> dispatcher;
 
     private EventLoopGroup bossGroup;
@@ -88,7 +91,7 @@ public class TcpListener implements Listener {
 
                         ch.pipeline()
                                 .addLast(new TcpPacketDecoder(ch.remoteAddress(), ch.localAddress(), session))
-                                .addLast(new PacketHandler(Protocol.IPFIX, TcpListener.this.dispatcher))
+                                .addLast(new PacketHandler(Protocol.IPFIX, TcpListener.this.recordFormat, TcpListener.this.dispatcher))
                                 .addLast(new ChannelInboundHandlerAdapter() {
                                     @Override
                                     public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
@@ -139,6 +142,14 @@ public class TcpListener implements Listener {
         this.port = port;
     }
 
+    public RecordFormat getRecordFormat() {
+        return this.recordFormat;
+    }
+
+    public void setRecordFormat(final RecordFormat recordFormat) {
+        this.recordFormat = recordFormat;
+    }
+
     @Override
     public void setDispatcher(final AsyncDispatcher<TelemetryMessage> dispatcher) {
         this.dispatcher = dispatcher;
@@ -29,20 +29,28 @@
 package org.opennms.netmgt.alarmd;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
+import org.opennms.core.criteria.CriteriaBuilder;
 import org.opennms.netmgt.alarmd.api.AlarmPersisterExtension;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.AlarmEntityNotifier;
+import org.opennms.netmgt.dao.api.DefaultAlarmEntityListener;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.eventd.EventUtil;
 import org.opennms.netmgt.model.OnmsAlarm;
@@ -54,19 +62,31 @@ import org.opennms.netmgt.xml.event.UpdateField;
 import org.opennms.netmgt.xml.eventconf.LogDestType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.support.TransactionOperations;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Striped;
 
 /**
  * Singleton to persist OnmsAlarms.
  *
+ * When write-behind is enabled, triggers which reduce onto an existing alarm are not persisted
+ * right away. They are queued per reduction key and applied periodically in a single transaction,
+ * so that the updates of alarms with many reductions are coalesced. Clears and any other events
+ * touching a reduction key apply the queued reductions for that key first, preserving the order
+ * in which the events were received. The reduction keys of deleted or archived alarms are forgotten,
+ * so that the next trigger for these keys creates the alarm right away.
+ *
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  * @version $Id: $
  */
-public class AlarmPersisterImpl implements AlarmPersister {
+public class AlarmPersisterImpl extends DefaultAlarmEntityListener implements AlarmPersister, InitializingBean, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(AlarmPersisterImpl.class);
 
     public static final String RELATED_REDUCTION_KEY_PREFIX = "related-reductionKey";
@@ -74,6 +94,15 @@ public class AlarmPersisterImpl implements AlarmPersister {
     protected static final Integer NUM_STRIPE_LOCKS = Integer.getInteger("org.opennms.alarmd.stripe.locks", Alarmd.THREADS * 4);
     protected static boolean NEW_IF_CLEARED = Boolean.getBoolean("org.opennms.alarmd.newIfClearedAlarmExists");
     protected static boolean LEGACY_ALARM_STATE = Boolean.getBoolean("org.opennms.alarmd.legacyAlarmState");
+    protected static boolean WRITE_BEHIND = Boolean.getBoolean("org.opennms.alarmd.writeBehind");
+    protected static final Long WRITE_BEHIND_INTERVAL_MS = Long.getLong("org.opennms.alarmd.writeBehind.intervalMs", 500);
+    protected static final Integer WRITE_BEHIND_MAX_PENDING = Integer.getInteger("org.opennms.alarmd.writeBehind.maxPending", 10000);
+    protected static final Integer WRITE_BEHIND_CACHE_SIZE = Integer.getInteger("org.opennms.alarmd.writeBehind.cacheSize", 100000);
+
+    /**
+     * Maximum number of events loaded with a single query when applying queued reductions.
+     */
+    private static final int EVENT_BATCH_SIZE = 1000;
 
     @Autowired
     private AlarmDao m_alarmDao;
@@ -98,6 +127,70 @@ public class AlarmPersisterImpl implements AlarmPersister {
     
     private boolean m_legacyAlarmState = LEGACY_ALARM_STATE;
 
+    private boolean m_writeBehind = WRITE_BEHIND;
+
+    private long m_writeBehindIntervalMs = WRITE_BEHIND_INTERVAL_MS;
+
+    /**
+     * Reduction keys of the alarms known to exist. Only events for these keys are queued.
+     */
+    private final Cache<String, Boolean> m_knownReductionKeys = CacheBuilder.newBuilder()
+            .maximumSize(WRITE_BEHIND_CACHE_SIZE)
+            .build();
+
+    /**
+     * Events waiting to be reduced, by reduction key. A list is only modified while holding
+     * the lock for its reduction key.
+     */
+    private final Map<String, List<Event>> m_pendingReductions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger m_numPendingReductions = new AtomicInteger(0);
+
+    private Timer m_writeBehindTimer;
+
+    private boolean m_started = false;
+
+    @Override
+    public synchronized void afterPropertiesSet() {
+        m_started = true;
+        if (m_writeBehind) {
+            startWriteBehindTimer();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            m_started = false;
+            stopWriteBehindTimer();
+        }
+        flushPendingReductions();
+    }
+
+    private synchronized void startWriteBehindTimer() {
+        if (m_writeBehindTimer != null) {
+            return;
+        }
+        m_writeBehindTimer = new Timer("AlarmPersisterWriteBehind");
+        m_writeBehindTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    flushPendingReductions();
+                } catch (Exception e) {
+                    LOG.error("Failed to apply the pending alarm reductions.", e);
+                }
+            }
+        }, m_writeBehindIntervalMs, m_writeBehindIntervalMs);
+    }
+
+    private synchronized void stopWriteBehindTimer() {
+        if (m_writeBehindTimer != null) {
+            m_writeBehindTimer.cancel();
+            m_writeBehindTimer = null;
+        }
+    }
+
     @Override
     public OnmsAlarm persist(Event event) {
         Objects.requireNonNull(event, "Cannot create alarm from null event.");
@@ -112,22 +205,112 @@ public class AlarmPersisterImpl implements AlarmPersister {
         // Lock both the reduction and clear keys (if set) using a fair striped lock
         // We do this to ensure that clears and triggers are processed in the same order
         // as the calls are made
-        final Iterable<Lock> locks = lockStripes.bulkGet(getLockKeys(event));
-        final OnmsAlarm alarm;
+        final Collection<String> lockKeys = getLockKeys(event, m_writeBehind);
+        final Iterable<Lock> locks = lockStripes.bulkGet(lockKeys);
+        OnmsAlarm alarm = null;
         try {
             locks.forEach(Lock::lock);
-            // Process the alarm inside a transaction
-            alarm = m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(event));
+            if (!m_writeBehind || !deferReduction(event)) {
+                // Apply the reductions queued for the same keys and the related alarms first,
+                // to preserve the order of the events
+                applyPendingReductions(lockKeys);
+
+                // Process the alarm inside a transaction
+                alarm = m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(event, new ReductionContext()));
+                if (m_writeBehind && alarm != null) {
+                    m_knownReductionKeys.put(alarm.getReductionKey(), Boolean.TRUE);
+                }
+            }
         } finally {
             locks.forEach(Lock::unlock);
         }
 
+        // Apply the queued reductions right away if they pile up faster than they are flushed
+        if (m_numPendingReductions.get() >= WRITE_BEHIND_MAX_PENDING) {
+            flushPendingReductions();
+        }
+
         return alarm;
     }
 
-    private OnmsAlarm addOrReduceEventAsAlarm(Event event) throws IllegalStateException {
+    /**
+     * Queues the event, if it is a trigger for an alarm which is known to exist.
+     * Must be called while holding the lock for the reduction key of the event.
+     *
+     * @return true if the event was queued
+     */
+    private boolean deferReduction(Event event) {
+        if (isResolutionEvent(event) || !getRelatedReductionKeys(event.getParmCollection()).isEmpty()) {
+            return false;
+        }
+
+        final String reductionKey = event.getAlarmData().getReductionKey();
+        if (m_knownReductionKeys.getIfPresent(reductionKey) == null) {
+            return false;
+        }
+
+        LOG.debug("deferReduction: queueing event {} for existing reduction key: {}", event.getDbid(), reductionKey);
+        m_pendingReductions.computeIfAbsent(reductionKey, k -> new ArrayList<>()).add(event);
+        m_numPendingReductions.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Applies all queued reductions in a single transaction.
+     */
+    public void flushPendingReductions() {
+        final List<String> reductionKeys = new ArrayList<>(m_pendingReductions.keySet());
+        if (reductionKeys.isEmpty()) {
+            return;
+        }
+
+        final Iterable<Lock> locks = lockStripes.bulkGet(reductionKeys);
+        try {
+            locks.forEach(Lock::lock);
+            applyPendingReductions(reductionKeys);
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+    }
+
+    /**
+     * Applies the queued reductions for the given keys. Must be called while holding the locks for these keys.
+     */
+    private void applyPendingReductions(Collection<String> reductionKeys) {
+        final Map<String, List<Event>> reductions = new HashMap<>();
+        for (String reductionKey : reductionKeys) {
+            final List<Event> events = m_pendingReductions.remove(reductionKey);
+            if (events != null) {
+                reductions.put(reductionKey, events);
+                m_numPendingReductions.addAndGet(-events.size());
+            }
+        }
+        if (reductions.isEmpty()) {
+            return;
+        }
+
+        try {
+            m_transactionOperations.execute((action) -> {
+                final BatchReductionContext context = new BatchReductionContext(reductions.values());
+                reductions.values().forEach(events -> events.forEach(event -> addOrReduceEventAsAlarm(event, context)));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Retry the events one by one, so a single failing event does not discard the others
+            LOG.warn("Failed to apply {} reductions at once, applying them individually.", reductions.size(), e);
+            reductions.values().forEach(events -> events.forEach(event -> {
+                try {
+                    m_transactionOperations.execute((action) -> addOrReduceEventAsAlarm(event, new ReductionContext()));
+                } catch (RuntimeException ex) {
+                    LOG.error("Failed to reduce event {} to alarm with reduction key: {}.", event.getDbid(), event.getAlarmData().getReductionKey(), ex);
+                }
+            }));
+        }
+    }
+
+    private OnmsAlarm addOrReduceEventAsAlarm(Event event, ReductionContext context) throws IllegalStateException {
         
-        final OnmsEvent persistedEvent = m_eventDao.get(event.getDbid());
+        final OnmsEvent persistedEvent = context.getEvent(event.getDbid());
         if (persistedEvent == null) {
             throw new IllegalStateException("Event with id " + event.getDbid() + " was deleted before we could retrieve it and create an alarm.");
         }
@@ -142,7 +325,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
             key = clearKey;
         }
 
-        OnmsAlarm alarm = m_alarmDao.findByReductionKey(key);
+        OnmsAlarm alarm = context.findAlarm(key);
 
         if (alarm == null || (m_createNewAlarmIfClearedAlarmExists && OnmsSeverity.CLEARED.equals(alarm.getSeverity()))) {
             if (LOG.isDebugEnabled()) {
@@ -171,6 +354,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
 
             m_alarmDao.save(alarm);
             m_eventDao.saveOrUpdate(persistedEvent);
+            context.alarmCreated(alarm);
 
             m_alarmEntityNotifier.didCreateAlarm(alarm);
         } else {
@@ -188,7 +372,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
             m_alarmDao.update(alarm);
             m_eventDao.update(persistedEvent);
 
-            if (event.getAlarmData().isAutoClean()) {
+            if (event.getAlarmData().isAutoClean() && !context.isAutoCleanDeferred(event)) {
                 m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), persistedEvent);
             }
 
@@ -350,11 +534,18 @@ public class AlarmPersisterImpl implements AlarmPersister {
         if (list == null || list.isEmpty()) {
             return Collections.emptySet();
         }
-        Set<String> reductionKeys = list.stream().filter(AlarmPersisterImpl::isRelatedReductionKeyWithContent).map(p -> p.getValue().getContent()).collect(Collectors.toSet());
+        Set<String> reductionKeys = getRelatedReductionKeys(list);
         // Only existing alarms are returned. Reduction Keys for non-existing alarms are dropped.
         return reductionKeys.stream().map(reductionKey -> m_alarmDao.findByReductionKey(reductionKey)).filter(Objects::nonNull).collect(Collectors.toSet());
     }
 
+    private static Set<String> getRelatedReductionKeys(List<Parm> list) {
+        if (list == null || list.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return list.stream().filter(AlarmPersisterImpl::isRelatedReductionKeyWithContent).map(p -> p.getValue().getContent()).collect(Collectors.toSet());
+    }
+
     private static boolean isRelatedReductionKeyWithContent(Parm param) {
         return param.getParmName() != null
                 // TOOD revisit using equals() when event_parameters table supports multiple params with the same name (see NMS-10214)
@@ -385,12 +576,25 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return true;
     }
 
-    private static Collection<String> getLockKeys(Event event) {
+    private static Collection<String> getLockKeys(Event event, boolean includeRelatedReductionKeys) {
+        final Collection<String> lockKeys;
         if (event.getAlarmData().getClearKey() == null) {
-            return Collections.singletonList(event.getAlarmData().getReductionKey());
+            lockKeys = Collections.singletonList(event.getAlarmData().getReductionKey());
         } else {
-            return Arrays.asList(event.getAlarmData().getReductionKey(), event.getAlarmData().getClearKey());
+            lockKeys = Arrays.asList(event.getAlarmData().getReductionKey(), event.getAlarmData().getClearKey());
+        }
+        if (!includeRelatedReductionKeys) {
+            return lockKeys;
+        }
+
+        // The reductions queued for the related alarms must be applied before they are resolved
+        final Set<String> relatedReductionKeys = getRelatedReductionKeys(event.getParmCollection());
+        if (relatedReductionKeys.isEmpty()) {
+            return lockKeys;
         }
+        final Set<String> keys = Sets.newLinkedHashSet(lockKeys);
+        keys.addAll(relatedReductionKeys);
+        return keys;
     }
 
     public TransactionOperations getTransactionOperations() {
@@ -487,4 +691,135 @@ public class AlarmPersisterImpl implements AlarmPersister {
     public void setLegacyAlarmState(boolean legacyAlarmState) {
         m_legacyAlarmState = legacyAlarmState;
     }
+
+    public boolean isWriteBehind() {
+        return m_writeBehind;
+    }
+
+    public void setWriteBehind(boolean writeBehind) {
+        m_writeBehind = writeBehind;
+        synchronized (this) {
+            if (writeBehind && m_started) {
+                startWriteBehindTimer();
+            } else if (!writeBehind) {
+                stopWriteBehindTimer();
+            }
+        }
+        if (!writeBehind) {
+            flushPendingReductions();
+        }
+    }
+
+    public long getWriteBehindIntervalMs() {
+        return m_writeBehindIntervalMs;
+    }
+
+    /**
+     * Sets the interval in which queued reductions are applied. Takes effect
+     * the next time write-behind is enabled.
+     */
+    public void setWriteBehindIntervalMs(long writeBehindIntervalMs) {
+        m_writeBehindIntervalMs = writeBehindIntervalMs;
+    }
+
+    @Override
+    public void onAlarmArchived(OnmsAlarm alarm, String previousReductionKey) {
+        m_knownReductionKeys.invalidate(previousReductionKey);
+    }
+
+    @Override
+    public void onAlarmDeleted(OnmsAlarm alarm) {
+        m_knownReductionKeys.invalidate(alarm.getReductionKey());
+    }
+
+    /**
+     * Returns the number of reductions which are queued and not yet applied.
+     */
+    public int getNumPendingReductions() {
+        return m_numPendingReductions.get();
+    }
+
+    /**
+     * Used to look up the events and alarms while adding or reducing an event.
+     */
+    private class ReductionContext {
+
+        OnmsEvent getEvent(int dbid) {
+            return m_eventDao.get(dbid);
+        }
+
+        OnmsAlarm findAlarm(String reductionKey) {
+            return m_alarmDao.findByReductionKey(reductionKey);
+        }
+
+        void alarmCreated(OnmsAlarm alarm) {
+            // pass
+        }
+
+        /**
+         * Returns true if the previous events of the alarm are removed by a later auto-clean event anyway.
+         */
+        boolean isAutoCleanDeferred(Event event) {
+            return false;
+        }
+    }
+
+    /**
+     * Used while applying queued reductions. The persisted events are loaded at once, and each alarm is
+     * looked up only once per batch, so the changes to an alarm are written in a single update.
+     */
+    private class BatchReductionContext extends ReductionContext {
+
+        private final Map<Integer, OnmsEvent> m_events = new HashMap<>();
+
+        private final Map<String, OnmsAlarm> m_alarms = new HashMap<>();
+
+        private final Set<Event> m_autoCleanDeferred = Sets.newIdentityHashSet();
+
+        private BatchReductionContext(Collection<List<Event>> reductions) {
+            final List<Integer> dbids = new ArrayList<>();
+            for (List<Event> events : reductions) {
+                // Auto-clean only needs to run for the last auto-clean event of each reduction key
+                boolean laterAutoClean = false;
+                for (int i = events.size() - 1; i >= 0; i--) {
+                    final Event event = events.get(i);
+                    dbids.add(event.getDbid());
+                    if (event.getAlarmData().isAutoClean()) {
+                        if (laterAutoClean) {
+                            m_autoCleanDeferred.add(event);
+                        }
+                        laterAutoClean = true;
+                    }
+                }
+            }
+            for (List<Integer> partition : Lists.partition(dbids, EVENT_BATCH_SIZE)) {
+                m_eventDao.findMatching(new CriteriaBuilder(OnmsEvent.class).in("id", partition).toCriteria())
+                        .forEach(e -> m_events.put(e.getId(), e));
+            }
+        }
+
+        @Override
+        OnmsEvent getEvent(int dbid) {
+            final OnmsEvent event = m_events.get(dbid);
+            return event != null ? event : super.getEvent(dbid);
+        }
+
+        @Override
+        OnmsAlarm findAlarm(String reductionKey) {
+            if (!m_alarms.containsKey(reductionKey)) {
+                m_alarms.put(reductionKey, super.findAlarm(reductionKey));
+            }
+            return m_alarms.get(reductionKey);
+        }
+
+        @Override
+        void alarmCreated(OnmsAlarm alarm) {
+            m_alarms.put(alarm.getReductionKey(), alarm);
+        }
+
+        @Override
+        boolean isAutoCleanDeferred(Event event) {
+            return m_autoCleanDeferred.contains(event);
+        }
+    }
 }
@@ -43,11 +43,13 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.junit.After;
@@ -614,6 +616,69 @@ public class AlarmdIT implements TemporaryDatabaseAware<MockDatabase>, Initializ
 
     }
     
+    @Test
+    public void testWriteBehind() throws Exception {
+        AlarmPersisterImpl persisterImpl = (AlarmPersisterImpl)m_alarmd.getPersister();
+        persisterImpl.setWriteBehind(true);
+        try {
+            final MockNode node = m_mockNetwork.getNode(1);
+            final String reductionKey = "uei.opennms.org/nodes/nodeDown:1";
+
+            // There should be no alarms in the alarms table
+            assertEmptyAlarmTable();
+
+            // The first trigger creates the alarm right away
+            sendNodeDownEvent(node);
+            await().atMost(10, SECONDS).until(getNumAlarmsCallable(), equalTo(1));
+
+            // Further triggers are queued and reduced in the background
+            sendNodeDownEvent(node);
+            sendNodeDownEvent(node);
+            await().atMost(10, SECONDS).until(() -> m_alarmDao.findByReductionKey(reductionKey).getCounter(), equalTo(3));
+
+            // The clear is applied after the queued trigger
+            sendNodeDownEvent(node);
+            sendNodeUpEvent(node);
+            await().atMost(10, SECONDS).until(() -> m_alarmDao.findByReductionKey(reductionKey).getSeverity(), equalTo(OnmsSeverity.CLEARED));
+            assertEquals(4, m_alarmDao.findByReductionKey(reductionKey).getCounter().intValue());
+            assertEquals(1, m_alarmDao.countAll());
+        } finally {
+            persisterImpl.setWriteBehind(false);
+        }
+    }
+
+    @Test
+    public void testWriteBehindAppliesRelatedReductionsBeforeSituation() throws Exception {
+        AlarmPersisterImpl persisterImpl = (AlarmPersisterImpl)m_alarmd.getPersister();
+        // Only the situation should apply the queued reductions
+        persisterImpl.setWriteBehindIntervalMs(TimeUnit.HOURS.toMillis(1));
+        persisterImpl.setWriteBehind(true);
+        try {
+            final MockNode node = m_mockNetwork.getNode(1);
+
+            // There should be no alarms in the alarms table
+            assertEmptyAlarmTable();
+
+            // The first trigger creates the alarm right away, further triggers are queued
+            sendNodeDownEvent("Alarm1", node);
+            await().atMost(10, SECONDS).until(getNumAlarmsCallable(), equalTo(1));
+            sendNodeDownEvent("Alarm1", node);
+            sendNodeDownEvent("Alarm1", node);
+            await().atMost(10, SECONDS).until(persisterImpl::getNumPendingReductions, equalTo(2));
+            assertEquals(1, m_alarmDao.findByReductionKey("Alarm1").getCounter().intValue());
+
+            // The situation applies the reductions queued for its related alarms first
+            sendSituationEvent("Situation1", node, Collections.singletonList("Alarm1"));
+            await().atMost(10, SECONDS).until(getNumAlarmsCallable(), equalTo(2));
+            assertEquals(0, persisterImpl.getNumPendingReductions());
+            assertEquals(3, m_alarmDao.findByReductionKey("Alarm1").getCounter().intValue());
+            assertEquals(1, m_alarmDao.findByReductionKey("Situation1").getRelatedAlarms().size());
+        } finally {
+            persisterImpl.setWriteBehind(false);
+            persisterImpl.setWriteBehindIntervalMs(AlarmPersisterImpl.WRITE_BEHIND_INTERVAL_MS);
+        }
+    }
+
     private Callable<Integer> getNumAlarmsCallable() {
         return () -> m_alarmDao.countAll();
     }
@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_HOST;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_INTERFACE;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_NODEID;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SERVICE;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMPHOST;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_COMMUNITY;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_EID;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_GENERIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SOURCE;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index over an ordered list of event definitions which narrows down the
+ * definitions that can possibly match a given event.
+ *
+ * Every definition is indexed by a single discriminating field of its mask:
+ * the first one, in the order of {@link #FIELDS} followed by the varbinds,
+ * whose values are all either exact values or prefixes ending with '%'. As all
+ * mask elements and varbinds of a definition must match, a definition can only
+ * match events whose value for this field equals one of the exact values or
+ * starts with one of the prefixes. Definitions without such a field, i.e. those
+ * which only use regular expressions, are always considered.
+ *
+ * The remaining candidates are evaluated with their full matchers in the order
+ * of the definitions, so the first matching definition is the same one a linear
+ * scan over all definitions would return.
+ */
+public class EventMatcherIndex {
+
+    /**
+     * Fields considered for indexing, ordered by their expected selectivity.
+     */
+    private static final String[] FIELDS = {
+            TAG_UEI, TAG_SNMP_SPECIFIC, TAG_SNMP_EID, TAG_SNMP_GENERIC, TAG_SOURCE, TAG_SNMPHOST,
+            TAG_HOST, TAG_INTERFACE, TAG_SERVICE, TAG_SNMP_COMMUNITY, TAG_NODEID
+    };
+
+    private static final int[] NONE = new int[0];
+
+    private final Event[] m_events;
+
+    private final FieldIndex[] m_fieldIndexes;
+
+    /**
+     * Positions of the definitions which are not indexed and must always be evaluated.
+     */
+    private final int[] m_unindexed;
+
+    public EventMatcherIndex(final List<Event> events) {
+        m_events = events.toArray(new Event[events.size()]);
+
+        final Map<String, FieldIndex.Builder> builders = new LinkedHashMap<>();
+        final List<Integer> unindexed = new ArrayList<>();
+        for (int position = 0; position < m_events.length; position++) {
+            final Event event = m_events[position];
+            final Mask mask = event.getMask();
+            if (mask == null || mask.getMaskelements().isEmpty()) {
+                // Without any mask elements, the definition matches by UEI only, see Event#constructMatcher()
+                if (event.getUei() != null) {
+                    builders.computeIfAbsent(TAG_UEI, name -> new FieldIndex.Builder(EventMatchers.field(name)))
+                            .add(Arrays.asList(event.getUei()), position);
+                }
+                continue;
+            }
+
+            final Discriminator discriminator = findDiscriminator(mask);
+            if (discriminator == null) {
+                unindexed.add(position);
+            } else if (discriminator.m_values.isEmpty()) {
+                // A mask element without any values never matches
+                continue;
+            } else {
+                builders.computeIfAbsent(discriminator.m_name, name -> new FieldIndex.Builder(discriminator.m_field))
+                        .add(discriminator.m_values, position);
+            }
+        }
+
+        m_fieldIndexes = builders.values().stream()
+                .map(FieldIndex.Builder::build)
+                .toArray(FieldIndex[]::new);
+        m_unindexed = toArray(unindexed);
+    }
+
+    /**
+     * Finds the first definition matching the given event.
+     *
+     * @param matchingEvent the event to match
+     * @param before only definitions which are ordered before this one are considered, unless it is null
+     * @return the first matching definition or null if none matches
+     */
+    public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent, final Event before) {
+        // Gather the sorted lists of candidate positions
+        final List<int[]> candidates = new ArrayList<>(m_fieldIndexes.length + 1);
+        if (m_unindexed.length > 0) {
+            candidates.add(m_unindexed);
+        }
+        for (final FieldIndex fieldIndex : m_fieldIndexes) {
+            fieldIndex.collect(matchingEvent, candidates);
+        }
+
+        // Evaluate the candidates in order by merging the lists
+        final int[] offsets = new int[candidates.size()];
+        int last = -1;
+        while (true) {
+            int next = Integer.MAX_VALUE;
+            for (int i = 0; i < offsets.length; i++) {
+                final int[] positions = candidates.get(i);
+                // Skip over positions which have already been evaluated
+                while (offsets[i] < positions.length && positions[offsets[i]] <= last) {
+                    offsets[i]++;
+                }
+                if (offsets[i] < positions.length && positions[offsets[i]] < next) {
+                    next = positions[offsets[i]];
+                }
+            }
+            if (next == Integer.MAX_VALUE) {
+                return null;
+            }
+
+            final Event candidate = m_events[next];
+            if (before != null && candidate.compareTo(before) >= 0) {
+                return null;
+            }
+            if (candidate.matches(matchingEvent)) {
+                return candidate;
+            }
+            last = next;
+        }
+    }
+
+    private static Discriminator findDiscriminator(final Mask mask) {
+        final List<Discriminator> discriminators = new ArrayList<>();
+        for (final String name : FIELDS) {
+            final Maskelement element = mask.getMaskElement(name);
+            if (element != null) {
+                discriminators.add(new Discriminator(name, EventMatchers.field(name), element.getMevalues()));
+            }
+        }
+        for (final Varbind varbind : mask.getVarbinds()) {
+            if (varbind.getVbnumber() != null) {
+                discriminators.add(new Discriminator("varbind#" + varbind.getVbnumber(), EventMatchers.varbind(varbind.getVbnumber()), varbind.getVbvalues()));
+            }
+        }
+
+        // Prefer fields with exact values only, fall back to ones with prefixes
+        Discriminator withPrefixes = null;
+        for (final Discriminator discriminator : discriminators) {
+            if (!discriminator.m_indexable) {
+                continue;
+            }
+            if (!discriminator.m_hasPrefixes) {
+                return discriminator;
+            }
+            if (withPrefixes == null) {
+                withPrefixes = discriminator;
+            }
+        }
+        return withPrefixes;
+    }
+
+    private static int[] toArray(final List<Integer> positions) {
+        return positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static class Discriminator {
+        private final String m_name;
+        private final Field m_field;
+        private final List<String> m_values = new ArrayList<>();
+        private boolean m_indexable = true;
+        private boolean m_hasPrefixes = false;
+
+        private Discriminator(final String name, final Field field, final List<String> values) {
+            m_name = name;
+            m_field = field;
+            for (final String value : values) {
+                if (value == null) {
+                    continue;
+                }
+                if (value.startsWith("~")) {
+                    m_indexable = false;
+                } else if (value.endsWith("%")) {
+                    m_hasPrefixes = true;
+                }
+                m_values.add(value);
+            }
+        }
+    }
+
+    /**
+     * Maps the values of a single field to the positions of the definitions.
+     * Exact values are kept in a hash map, prefixes in a character trie.
+     */
+    private static class FieldIndex {
+        private final Field m_field;
+        private final Map<String, int[]> m_exact;
+        private final PrefixNode m_prefixes;
+
+        private FieldIndex(final Field field, final Map<String, int[]> exact, final PrefixNode prefixes) {
+            m_field = field;
+            m_exact = exact;
+            m_prefixes = prefixes;
+        }
+
+        private void collect(final org.opennms.netmgt.xml.event.Event matchingEvent, final List<int[]> candidates) {
+            final String value = m_field.get(matchingEvent);
+            if (value == null) {
+                // None of the matchers match missing values
+                return;
+            }
+
+            final int[] exact = m_exact.get(value);
+            if (exact != null) {
+                candidates.add(exact);
+            }
+
+            PrefixNode node = m_prefixes;
+            for (int i = 0; node != null; i++) {
+                if (node.m_positions.length > 0) {
+                    candidates.add(node.m_positions);
+                }
+                if (i >= value.length()) {
+                    break;
+                }
+                node = node.m_children.get(value.charAt(i));
+            }
+        }
+
+        private static class Builder {
+            private final Field m_field;
+            private final Map<String, List<Integer>> m_exact = new HashMap<>();
+            private PrefixNode.Builder m_prefixes;
+
+            private Builder(final Field field) {
+                m_field = field;
+            }
+
+            private void add(final List<String> values, final int position) {
+                for (final String value : values) {
+                    if (value.endsWith("%")) {
+                        if (m_prefixes == null) {
+                            m_prefixes = new PrefixNode.Builder();
+                        }
+                        m_prefixes.add(value.substring(0, value.length() - 1), position);
+                    } else {
+                        final List<Integer> positions = m_exact.computeIfAbsent(value, v -> new ArrayList<>(1));
+                        // Avoid duplicates if a value is listed more than once
+                        if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+                            positions.add(position);
+                        }
+                    }
+                }
+            }
+
+            private FieldIndex build() {
+                final Map<String, int[]> exact = new HashMap<>();
+                m_exact.forEach((value, positions) -> exact.put(value, toArray(positions)));
+                return new FieldIndex(m_field, exact, m_prefixes == null ? null : m_prefixes.build());
+            }
+        }
+    }
+
+    private static class PrefixNode {
+        private final Map<Character, PrefixNode> m_children;
+        private final int[] m_positions;
+
+        private PrefixNode(final Map<Character, PrefixNode> children, final int[] positions) {
+            m_children = children;
+            m_positions = positions;
+        }
+
+        private static class Builder {
+            private final Map<Character, Builder> m_children = new HashMap<>();
+            private final List<Integer> m_positions = new ArrayList<>();
+
+            private void add(final String prefix, final int position) {
+                Builder node = this;
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.m_children.computeIfAbsent(prefix.charAt(i), c -> new Builder());
+                }
+                if (node.m_positions.isEmpty() || node.m_positions.get(node.m_positions.size() - 1) != position) {
+                    node.m_positions.add(position);
+                }
+            }
+
+            private PrefixNode build() {
+                final Map<Character, PrefixNode> children = new HashMap<>();
+                m_children.forEach((c, child) -> children.put(c, child.build()));
+                return new PrefixNode(children, m_positions.isEmpty() ? NONE : toArray(m_positions));
+            }
+        }
+    }
+}
@@ -38,7 +38,6 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -48,7 +47,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.function.Consumer;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -103,10 +101,10 @@ public class Events implements Serializable {
     private Partition m_partition;
 
     @XmlTransient
-    private Map<String, List<Event>> m_partitionedEvents;
+    private Map<String, EventMatcherIndex> m_partitionedEvents;
 
     @XmlTransient
-    private List<Event> m_nullPartitionedEvents;
+    private EventMatcherIndex m_nullPartitionedEvents;
 
     @XmlTransient
     private Map<String, Event> m_eventsByUei = new HashMap<>();
@@ -250,24 +248,29 @@ public class Events implements Serializable {
     private void partitionEvents(final Partition partition) {
         m_partition = partition;
 
-        m_partitionedEvents = new LinkedHashMap<String, List<Event>>();
-        m_nullPartitionedEvents = new ArrayList<Event>();
+        final Map<String, List<Event>> partitionedEvents = new LinkedHashMap<String, List<Event>>();
+        final List<Event> nullPartitionedEvents = new ArrayList<Event>();
 
         for(final Event event : m_events) {
             final List<String> keys = partition.group(event);
             if (keys == null) {
-                m_nullPartitionedEvents.add(event);
+                nullPartitionedEvents.add(event);
             } else {
                 for(final String key : keys) {
-                    List<Event> events = m_partitionedEvents.get(key);
+                    List<Event> events = partitionedEvents.get(key);
                     if (events == null) {
                         events = new ArrayList<Event>(1);
-                        m_partitionedEvents.put(key, events);
+                        partitionedEvents.put(key, events);
                     }
                     events.add(event);
                 }
             }
         }
+
+        // Index the events of every partition, so only the events which can possibly match are evaluated
+        m_partitionedEvents = new HashMap<>();
+        partitionedEvents.forEach((key, events) -> m_partitionedEvents.put(key, new EventMatcherIndex(events)));
+        m_nullPartitionedEvents = new EventMatcherIndex(nullPartitionedEvents);
     }
 
 
@@ -284,19 +287,21 @@ public class Events implements Serializable {
 
         // If the UEI match failed, fallback to searching with the matchers through the partitions
         final String key = m_partition.group(matchingEvent);
-        Collection<Event> potentialMatches = m_nullPartitionedEvents;
+        Event matchedEvent = null;
         if (key != null) {
-            final List<Event> events = m_partitionedEvents.get(key);
+            final EventMatcherIndex events = m_partitionedEvents.get(key);
             if (events != null) {
-                potentialMatches = new TreeSet<Event>(m_nullPartitionedEvents);
-                potentialMatches.addAll(events);
+                matchedEvent = events.findFirstMatchingEvent(matchingEvent, null);
             }
         }
 
-        for(final Event event : potentialMatches) {
-            if (event.matches(matchingEvent)) {
-                return event;
-            }
+        // The events which are not partitioned take precedence if they come first
+        final Event nullPartitionedEvent = m_nullPartitionedEvents.findFirstMatchingEvent(matchingEvent, matchedEvent);
+        if (nullPartitionedEvent != null) {
+            return nullPartitionedEvent;
+        }
+        if (matchedEvent != null) {
+            return matchedEvent;
         }
 
         for(Entry<String, Events> loadedEvents : m_loadedEventFiles.entrySet()) {
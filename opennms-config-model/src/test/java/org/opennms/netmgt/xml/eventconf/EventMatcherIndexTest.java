@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.xml.event.Parm;
+import org.opennms.netmgt.xml.event.Snmp;
+
+public class EventMatcherIndexTest {
+
+    private final List<Event> m_events = new ArrayList<>();
+
+    private EventMatcherIndex m_index;
+
+    @Before
+    public void setUp() {
+        // Ordered such that the more specific definitions come first
+        addEvent("uei.opennms.org/test/exactSpecific", mask(element("id", ".1.3.6.1.4.1.9"), element("generic", "6"), element("specific", "1", "2")));
+        addEvent("uei.opennms.org/test/varbind", mask(element("id", ".1.3.6.1.4.1.9"), element("generic", "6"), varbind(1, "up")));
+        addEvent("uei.opennms.org/test/regex", mask(element("id", "~\\.1\\.3\\.6\\.1\\.4\\.1\\.9\\..*")));
+        addEvent("uei.opennms.org/test/prefix", mask(element("id", ".1.3.6.1.4.1.9%")));
+        addEvent("uei.opennms.org/test/generic", mask(element("generic", "6")));
+        addEvent("uei.opennms.org/test/noValues", mask(element("specific")));
+        addEvent("uei.opennms.org/test/uei", null);
+        addEvent("uei.opennms.org/test/emptyMask", mask(varbind(1, "up")));
+
+        final EventOrdering ordering = new EventOrdering();
+        m_events.forEach(e -> e.initialize(ordering.next()));
+        m_index = new EventMatcherIndex(m_events);
+    }
+
+    @Test
+    public void canMatchExactValues() {
+        assertEquals("uei.opennms.org/test/exactSpecific", findUei(trap(".1.3.6.1.4.1.9", 6, 2)));
+        assertEquals("uei.opennms.org/test/uei", findUei(event("uei.opennms.org/test/uei")));
+    }
+
+    @Test
+    public void canMatchMasksWithoutElementsByUei() {
+        // The varbinds of a mask without mask elements are ignored, as in Event#constructMatcher()
+        assertEquals("uei.opennms.org/test/emptyMask", findUei(event("uei.opennms.org/test/emptyMask")));
+        assertNull(findUei(trap(".1.3.6.1.4.1.8", 0, 0)));
+
+        final org.opennms.netmgt.xml.event.Event event = event("uei.opennms.org/test/emptyMask");
+        event.addParm(new Parm(".1.3.6.1.2.1.2.2.1.1", "down"));
+        assertEquals(m_events.get(7).matches(event), "uei.opennms.org/test/emptyMask".equals(findUei(event)));
+        assertEquals("uei.opennms.org/test/emptyMask", findUei(event));
+    }
+
+    @Test
+    public void canMatchVarbinds() {
+        final org.opennms.netmgt.xml.event.Event trap = trap(".1.3.6.1.4.1.9", 6, 3);
+        trap.addParm(new Parm(".1.3.6.1.2.1.2.2.1.1", "up"));
+        assertEquals("uei.opennms.org/test/varbind", findUei(trap));
+
+        trap.getParmCollection().get(0).getValue().setContent("down");
+        assertEquals("uei.opennms.org/test/prefix", findUei(trap));
+    }
+
+    @Test
+    public void canMatchRegexesAndPrefixesInOrder() {
+        // Both the regex and the prefix match, but the regex comes first
+        assertEquals("uei.opennms.org/test/regex", findUei(trap(".1.3.6.1.4.1.9.1", 0, 0)));
+        // Only the prefix matches
+        assertEquals("uei.opennms.org/test/prefix", findUei(trap(".1.3.6.1.4.1.99", 0, 0)));
+        assertEquals("uei.opennms.org/test/generic", findUei(trap(".1.3.6.1.4.1.8", 6, 0)));
+        assertNull(m_index.findFirstMatchingEvent(trap(".1.3.6.1.4.1.8", 0, 0), null));
+    }
+
+    @Test
+    public void canLimitMatchesToPrecedingEvents() {
+        final org.opennms.netmgt.xml.event.Event trap = trap(".1.3.6.1.4.1.99", 6, 0);
+        assertEquals("uei.opennms.org/test/prefix", findUei(trap));
+        assertNull(m_index.findFirstMatchingEvent(trap, m_events.get(3)));
+        assertEquals(m_events.get(3), m_index.findFirstMatchingEvent(trap, m_events.get(4)));
+    }
+
+    private String findUei(final org.opennms.netmgt.xml.event.Event event) {
+        final Event match = m_index.findFirstMatchingEvent(event, null);
+        return match == null ? null : match.getUei();
+    }
+
+    private void addEvent(final String uei, final Mask mask) {
+        final Event event = new Event();
+        event.setUei(uei);
+        event.setMask(mask);
+        m_events.add(event);
+    }
+
+    private static Mask mask(final Object... elements) {
+        final Mask mask = new Mask();
+        for (final Object element : elements) {
+            if (element instanceof Maskelement) {
+                mask.addMaskelement((Maskelement)element);
+            } else {
+                mask.addVarbind((Varbind)element);
+            }
+        }
+        return mask;
+    }
+
+    private static Maskelement element(final String name, final String... values) {
+        final Maskelement element = new Maskelement();
+        element.setMename(name);
+        element.setMevalues(Arrays.asList(values));
+        return element;
+    }
+
+    private static Varbind varbind(final int number, final String... values) {
+        final Varbind varbind = new Varbind();
+        varbind.setVbnumber(number);
+        varbind.setVbvalues(Arrays.asList(values));
+        return varbind;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event event(final String uei) {
+        final org.opennms.netmgt.xml.event.Event event = new org.opennms.netmgt.xml.event.Event();
+        event.setUei(uei);
+        return event;
+    }
+
+    private static org.opennms.netmgt.xml.event.Event trap(final String id, final int generic, final int specific) {
+        final Snmp snmp = new Snmp();
+        snmp.setId(id);
+        snmp.setGeneric(generic);
+        snmp.setSpecific(specific);
+        final org.opennms.netmgt.xml.event.Event event = event(null);
+        event.setSnmp(snmp);
+        return event;
+    }
+}
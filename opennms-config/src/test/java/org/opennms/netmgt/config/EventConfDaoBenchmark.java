@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Mask;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Measures the lookup of event definitions using the shipped eventconf.xml.
+ *
+ * The indexed lookup of {@link DefaultEventConfDao#findByEvent(org.opennms.netmgt.xml.event.Event)}
+ * is compared to a linear scan over all definitions, which is what the lookup
+ * degrades to for traps which are not matched by any enterprise ID.
+ *
+ * This is not run as part of the build, use {@link #main(String[])} to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EventConfDaoBenchmark {
+
+    @Param({"index", "linear"})
+    public String lookup;
+
+    /**
+     * Share of traps with an enterprise ID which is not known to the configuration.
+     */
+    @Param({"0.0", "0.5"})
+    public double unknown;
+
+    private DefaultEventConfDao m_eventConfDao;
+
+    private org.opennms.netmgt.xml.event.Event[] m_events;
+
+    private int m_next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        m_eventConfDao = new DefaultEventConfDao();
+        m_eventConfDao.setConfigResource(new FileSystemResource(ConfigurationTestUtils.getFileForConfigFile("eventconf.xml")));
+        m_eventConfDao.afterPropertiesSet();
+
+        // Build traps for the definitions with exact enterprise IDs, generic and specific types
+        final List<org.opennms.netmgt.xml.event.Event> traps = new ArrayList<>();
+        for (final Event event : m_eventConfDao.getAllEvents()) {
+            final Mask mask = event.getMask();
+            if (mask == null || mask.getMaskElementValues("id") == null || mask.getMaskElementValues("generic") == null) {
+                continue;
+            }
+            final String id = mask.getMaskElementValues("id").get(0);
+            final String generic = mask.getMaskElementValues("generic").get(0);
+            final List<String> specifics = mask.getMaskElementValues("specific");
+            final String specific = specifics == null ? "0" : specifics.get(0);
+            if (id.startsWith("~") || id.endsWith("%") || !generic.matches("\\d+") || !specific.matches("\\d+")) {
+                continue;
+            }
+            traps.add(trap(id, Integer.parseInt(generic), Integer.parseInt(specific)));
+        }
+
+        final Random random = new Random(42);
+        m_events = new org.opennms.netmgt.xml.event.Event[10000];
+        for (int i = 0; i < m_events.length; i++) {
+            if (random.nextDouble() < unknown) {
+                m_events[i] = trap(".1.3.6.1.4.1.99999." + random.nextInt(100), 6, random.nextInt(10));
+            } else {
+                m_events[i] = traps.get(random.nextInt(traps.size()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void findByEvent(final Blackhole blackhole) {
+        final org.opennms.netmgt.xml.event.Event event = m_events[m_next++ % m_events.length];
+        if ("index".equals(lookup)) {
+            blackhole.consume(m_eventConfDao.findByEvent(event));
+        } else {
+            blackhole.consume(m_eventConfDao.getRootEvents().findFirstMatchingEvent(e -> e.matches(event)));
+        }
+    }
+
+    private static org.opennms.netmgt.xml.event.Event trap(final String id, final int generic, final int specific) {
+        final EventBuilder builder = new EventBuilder(null, "benchmark");
+        builder.setEnterpriseId(id);
+        builder.setGeneric(generic);
+        builder.setSpecific(specific);
+        return builder.getEvent();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(EventConfDaoBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
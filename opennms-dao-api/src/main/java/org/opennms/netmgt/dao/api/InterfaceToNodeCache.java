@@ -41,6 +41,11 @@ public interface InterfaceToNodeCache {
 
 	boolean removeNodeId(String location, InetAddress ipAddr, int nodeId);
 
+	/**
+	 * Removes all addresses of the given node.
+	 */
+	boolean removeNodeId(int nodeId);
+
 	int size();
 
 	/**
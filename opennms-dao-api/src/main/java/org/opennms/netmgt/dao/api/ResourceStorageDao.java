@@ -150,4 +150,30 @@ public interface ResourceStorageDao {
      * Retrieves the meta-data stored at the given path.
      */
     public Map<String,String> getMetaData(ResourcePath path);
+
+    /**
+     * Called by the persisters after they created the resource with the given
+     * name at the given path, i.e. an .rrd or .jrb file named after the group.
+     * The resource names are relative to the given path, as in
+     * {@link #updateMetricToResourceMappings(ResourcePath, Map)}.
+     *
+     * Implementations that do not keep an index may ignore calls to this method.
+     *
+     * @param path parent resource path
+     * @param resourceName name of the resource
+     */
+    public default void resourceCreated(ResourcePath path, String resourceName) {
+        // pass
+    }
+
+    /**
+     * Discards and rebuilds any index of the stored resources kept
+     * by the implementation, i.e. after the resources were modified
+     * outside of OpenNMS.
+     *
+     * Implementations that do not keep an index may ignore calls to this method.
+     */
+    public default void rebuildIndex() {
+        // pass
+    }
 }
@@ -52,6 +52,11 @@ public class MockInterfaceToNodeCache extends AbstractInterfaceToNodeCache {
         return keyToNodeId.remove(new Key(location, ipAddr)) != null;
     }
 
+    @Override
+    public boolean removeNodeId(int nodeId) {
+        return keyToNodeId.values().removeIf(id -> id == nodeId);
+    }
+
     @Override
     public Iterable<Integer> getNodeId(String location, InetAddress ipAddr) {
         final Integer nodeId = keyToNodeId.get(new Key(location, ipAddr));
@@ -31,13 +31,14 @@ package org.opennms.netmgt.dao.hibernate;
 import static org.opennms.core.utils.InetAddressUtils.str;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Objects;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.TreeSet;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
 import javax.annotation.PostConstruct;
 
@@ -58,16 +59,18 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import com.google.common.collect.ComparisonChain;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.SortedSetMultimap;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer.Context;
 
 /**
  * This class represents a singular instance that is used to map IP
  * addresses to known nodes.
  *
+ * The cache is kept up to date incrementally by the {@link org.opennms.netmgt.dao.support.InterfaceToNodeCacheEventProcessor}.
+ * The periodic reload only reconciles changes which were missed.
+ *
  * @author Seth
  * @author <a href="mailto:joed@opennms.org">Johan Edstrom</a>
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
@@ -77,105 +80,6 @@ import com.google.common.collect.SortedSetMultimap;
 public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache implements InterfaceToNodeCache {
     private static final Logger LOG = LoggerFactory.getLogger(InterfaceToNodeCacheDaoImpl.class);
 
-    private static class Key {
-        private final String location;
-        private final InetAddress ipAddress;
-
-        public Key(String location, InetAddress ipAddress) {
-            // Use the default location when location is null
-            this.location = LocationUtils.getEffectiveLocationName(location);
-            this.ipAddress = Objects.requireNonNull(ipAddress);
-        }
-
-        public InetAddress getIpAddress() {
-            return ipAddress;
-        }
-
-        public String getLocation() {
-            return location;
-        }
-
-        @Override
-        public boolean equals(final Object obj) {
-            if (obj == null) {
-                return false;
-            }
-            if (obj == this) {
-                return true;
-            }
-            if (obj.getClass() != getClass()) {
-                return false;
-            }
-            final Key that = (Key) obj;
-            return Objects.equals(this.ipAddress, that.ipAddress)
-                    && Objects.equals(this.location, that.location);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(this.ipAddress, this.location);
-        }
-
-        @Override
-        public String toString() {
-            return String.format("Key[location='%s', ipAddress='%s']", this.location, this.ipAddress);
-        }
-    }
-
-    private static class Value implements Comparable<Value> {
-        private final int nodeId;
-        private final PrimaryType type;
-
-
-        private Value(final int nodeId,
-                      final PrimaryType type) {
-            this.nodeId = nodeId;
-            this.type = type;
-        }
-
-        public int getNodeId() {
-            return this.nodeId;
-        }
-
-        public PrimaryType getType() {
-            return this.type;
-        }
-
-        @Override
-        public boolean equals(final Object obj) {
-            if (obj == null) {
-                return false;
-            }
-            if (obj == this) {
-                return true;
-            }
-            if (obj.getClass() != getClass()) {
-                return false;
-            }
-            final Value that = (Value) obj;
-            return Objects.equals(this.nodeId, that.nodeId)
-                    && Objects.equals(this.type, that.type);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(this.nodeId, this.type.getCharCode());
-        }
-
-        @Override
-        public String toString() {
-            return String.format("Value[nodeId='%s', type='%s']", this.nodeId, this.type);
-        }
-
-        @Override
-        public int compareTo(final Value that) {
-            return ComparisonChain.start()
-                    .compare(this.type, that.type)
-                    .compare(this.nodeId, that.nodeId)
-                    .result();
-        }
-    }
-
     @Autowired
     private NodeDao m_nodeDao;
 
@@ -186,19 +90,39 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
     private TransactionOperations transactionOperations;
 
     private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
-    private final SortedSetMultimap<Key, Value> m_managedAddresses = Multimaps.newSortedSetMultimap(Maps.newHashMap(), TreeSet::new);
+    private InterfaceToNodeTable m_managedAddresses = new InterfaceToNodeTable();
+
+    /**
+     * Changes made while the cache is reloaded, which are applied to the reloaded table again
+     */
+    private List<Function<InterfaceToNodeTable, ?>> m_pendingChanges;
 
     private final Timer refreshTimer = new Timer(getClass().getSimpleName());
 
     // in ms
     private final long refreshRate;
 
+    private final MetricRegistry m_metrics;
+    private final Meter m_hits;
+    private final Meter m_misses;
+    private final com.codahale.metrics.Timer m_refreshTimer;
+
     public InterfaceToNodeCacheDaoImpl() {
         this(-1); // By default refreshing the cache is disabled
     }
 
     public InterfaceToNodeCacheDaoImpl(long refreshRate) {
+        this(refreshRate, new MetricRegistry());
+    }
+
+    public InterfaceToNodeCacheDaoImpl(long refreshRate, MetricRegistry metrics) {
         this.refreshRate = refreshRate;
+
+        m_metrics = metrics;
+        m_hits = metrics.meter(MetricRegistry.name("interfaceToNodeCache", "hits"));
+        m_misses = metrics.meter(MetricRegistry.name("interfaceToNodeCache", "misses"));
+        m_refreshTimer = metrics.timer(MetricRegistry.name("interfaceToNodeCache", "refresh"));
+        metrics.register(MetricRegistry.name("interfaceToNodeCache", "size"), (Gauge<Integer>) this::size);
     }
 
     @PostConstruct
@@ -228,6 +152,10 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
         m_nodeDao = nodeDao;
     }
 
+    public MetricRegistry getMetrics() {
+        return m_metrics;
+    }
+
     public IpInterfaceDao getIpInterfaceDao() {
         return m_ipInterfaceDao;
     }
@@ -260,34 +188,53 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
         }
     }
 
-    private void dataSourceSyncWithinTransaction() {
-        m_lock.writeLock().lock();
-        try {
+    private synchronized void dataSourceSyncWithinTransaction() {
+        try (final Context context = m_refreshTimer.time()) {
             /*
-             * Make a new list with which we'll replace the existing one, that way
+             * Make a new table with which we'll replace the existing one, that way
              * if something goes wrong with the DB we won't lose whatever was already
-             * in there
+             * in there and lookups are not blocked while loading
              */
-            final SortedSetMultimap<Key, Value> newAlreadyDiscovered = Multimaps.newSortedSetMultimap(Maps.newHashMap(), TreeSet::new);
-
-            // Fetch all non-deleted nodes
-            final CriteriaBuilder builder = new CriteriaBuilder(OnmsNode.class);
-            builder.ne("type", String.valueOf(NodeType.DELETED.value()));
-
-            for (OnmsNode node : m_nodeDao.findMatching(builder.toCriteria())) {
-                for (final OnmsIpInterface iface : node.getIpInterfaces()) {
-                    // Skip deleted interfaces
-                    // TODO: Refactor the 'D' value with an enumeration
-                    if ("D".equals(iface.getIsManaged())) {
-                        continue;
+            final InterfaceToNodeTable newAlreadyDiscovered = new InterfaceToNodeTable(size());
+            setPendingChanges(new ArrayList<>());
+            try {
+                // Fetch all non-deleted nodes
+                final CriteriaBuilder builder = new CriteriaBuilder(OnmsNode.class);
+                builder.ne("type", String.valueOf(NodeType.DELETED.value()));
+
+                for (OnmsNode node : m_nodeDao.findMatching(builder.toCriteria())) {
+                    for (final OnmsIpInterface iface : node.getIpInterfaces()) {
+                        // Skip deleted interfaces
+                        // TODO: Refactor the 'D' value with an enumeration
+                        if ("D".equals(iface.getIsManaged())) {
+                            continue;
+                        }
+                        LOG.debug("Adding entry: {}:{} -> {}", node.getLocation().getLocationName(), iface.getIpAddress(), node.getId());
+                        newAlreadyDiscovered.put(LocationUtils.getEffectiveLocationName(node.getLocation().getLocationName()), iface.getIpAddress(), node.getId(), iface.getIsSnmpPrimary());
+                    }
+                }
+
+                m_lock.writeLock().lock();
+                try {
+                    // Apply the changes which were made while loading, as they may not be visible to this transaction
+                    for (final Function<InterfaceToNodeTable, ?> change : m_pendingChanges) {
+                        change.apply(newAlreadyDiscovered);
                     }
-                    LOG.debug("Adding entry: {}:{} -> {}", node.getLocation().getLocationName(), iface.getIpAddress(), node.getId());
-                    newAlreadyDiscovered.put(new Key(node.getLocation().getLocationName(), iface.getIpAddress()), new Value(node.getId(), iface.getIsSnmpPrimary()));
+                    m_managedAddresses = newAlreadyDiscovered;
+                } finally {
+                    m_lock.writeLock().unlock();
                 }
+            } finally {
+                setPendingChanges(null);
             }
-            m_managedAddresses.clear();
-            m_managedAddresses.putAll(newAlreadyDiscovered);
-            LOG.info("dataSourceSync: initialized list of managed IP addresses with {} members", m_managedAddresses.size());
+            LOG.info("dataSourceSync: initialized list of managed IP addresses with {} members", newAlreadyDiscovered.size());
+        }
+    }
+
+    private void setPendingChanges(final List<Function<InterfaceToNodeTable, ?>> pendingChanges) {
+        m_lock.writeLock().lock();
+        try {
+            m_pendingChanges = pendingChanges;
         } finally {
             m_lock.writeLock().unlock();
         }
@@ -303,18 +250,25 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
      * @return The node ID of the IP Address if known.
      */
     @Override
-    public synchronized Iterable<Integer> getNodeId(final String location, final InetAddress address) {
+    public Iterable<Integer> getNodeId(final String location, final InetAddress address) {
         if (address == null) {
             return Collections.emptySet();
         }
 
+        final List<Integer> nodeIds;
         m_lock.readLock().lock();
         try {
-            return Iterables.transform(m_managedAddresses.get(new Key(location, address)),
-                    Value::getNodeId);
+            nodeIds = m_managedAddresses.get(LocationUtils.getEffectiveLocationName(location), address);
         } finally {
             m_lock.readLock().unlock();
         }
+
+        if (nodeIds.isEmpty()) {
+            m_misses.mark();
+        } else {
+            m_hits.mark();
+        }
+        return nodeIds;
     }
 
     /**
@@ -338,12 +292,9 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
 
         LOG.debug("setNodeId: adding IP address to cache: {}:{} -> {}", location, str(addr), nodeid);
 
-        m_lock.writeLock().lock();
-        try {
-            return m_managedAddresses.put(new Key(location, addr), new Value(nodeid, iface.getIsSnmpPrimary()));
-        } finally {
-            m_lock.writeLock().unlock();
-        }
+        final String effectiveLocation = LocationUtils.getEffectiveLocationName(location);
+        final PrimaryType type = iface.getIsSnmpPrimary();
+        return update(table -> table.put(effectiveLocation, addr, nodeid, type));
     }
 
     /**
@@ -361,15 +312,21 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
 
         LOG.debug("removeNodeId: removing IP address from cache: {}:{}", location, str(address));
 
-        m_lock.writeLock().lock();
-        try {
-            final Key key = new Key(location, address);
-            return m_managedAddresses.remove(key, new Value(nodeId, PrimaryType.PRIMARY)) ||
-                    m_managedAddresses.remove(key, new Value(nodeId, PrimaryType.SECONDARY)) ||
-                    m_managedAddresses.remove(key, new Value(nodeId, PrimaryType.NOT_ELIGIBLE));
-        } finally {
-            m_lock.writeLock().unlock();
-        }
+        final String effectiveLocation = LocationUtils.getEffectiveLocationName(location);
+        return update(table -> table.remove(effectiveLocation, address, nodeId));
+    }
+
+    /**
+     * Removes all addresses of the node from the node ID map.
+     *
+     * @param nodeId The node to remove from the node ID map.
+     * @return true if any address of the node was in the map.
+     */
+    @Override
+    public boolean removeNodeId(final int nodeId) {
+        LOG.debug("removeNodeId: removing node from cache: {}", nodeId);
+
+        return update(table -> table.removeNode(nodeId) > 0);
     }
 
     @Override
@@ -384,9 +341,19 @@ public class InterfaceToNodeCacheDaoImpl extends AbstractInterfaceToNodeCache im
 
     @Override
     public void clear() {
+        update(table -> {
+            table.clear();
+            return null;
+        });
+    }
+
+    private <T> T update(final Function<InterfaceToNodeTable, T> change) {
         m_lock.writeLock().lock();
         try {
-            m_managedAddresses.clear();
+            if (m_pendingChanges != null) {
+                m_pendingChanges.add(change);
+            }
+            return change.apply(m_managedAddresses);
         } finally {
             m_lock.writeLock().unlock();
         }
@@ -0,0 +1,382 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.hibernate;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.model.PrimaryType;
+
+/**
+ * Maps (location, IP address) pairs to node IDs using parallel primitive arrays
+ * instead of boxed keys and values.
+ *
+ * The location is replaced by an index into a table of known locations and the
+ * address is stored as its raw bytes in two longs, so an entry uses about
+ * 25 bytes in the table and 20 bytes in the index of its node, and lookups
+ * do not allocate besides the result.
+ * A key may map to multiple nodes, in which case each node has its own slot.
+ * All slots of a key share the same home slot, so they are found by a single
+ * linear probe.
+ * The keys of each node are indexed as well, so removing a node only probes
+ * its own keys instead of scanning the whole table.
+ *
+ * This class is not thread-safe.
+ */
+final class InterfaceToNodeTable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    /**
+     * Ordinal of the primary type, in the same order as {@link PrimaryType#compareTo(PrimaryType)}.
+     * Zero marks an empty slot.
+     */
+    private static final byte NOT_ELIGIBLE = 1;
+    private static final byte SECONDARY = 2;
+    private static final byte PRIMARY = 3;
+
+    private final Map<String, Integer> m_locationIndexes = new HashMap<>();
+
+    private long[] m_high;
+    private long[] m_low;
+    /** Location index shifted by one, with the lowest bit set for IPv6 addresses */
+    private int[] m_locations;
+    private int[] m_nodeIds;
+    private byte[] m_types;
+
+    private int m_size;
+
+    private final Map<Integer, NodeKeys> m_nodeKeys = new HashMap<>();
+
+    InterfaceToNodeTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    InterfaceToNodeTable(final int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD_FACTOR)) - 1) << 1);
+    }
+
+    /**
+     * Returns the IDs of all nodes known for the given key, ordered by their
+     * primary type and node ID.
+     */
+    List<Integer> get(final String location, final InetAddress address) {
+        final Integer locationIndex = m_locationIndexes.get(location);
+        if (locationIndex == null) {
+            return new ArrayList<>(0);
+        }
+
+        final byte[] bytes = address.getAddress();
+        final long high = high(bytes);
+        final long low = low(bytes);
+        final int loc = loc(locationIndex, bytes);
+
+        final int mask = m_types.length - 1;
+        long[] found = null;
+        int count = 0;
+        for (int slot = hash(high, low, loc) & mask; m_types[slot] != 0; slot = (slot + 1) & mask) {
+            if (m_low[slot] == low && m_high[slot] == high && m_locations[slot] == loc) {
+                if (found == null) {
+                    found = new long[4];
+                } else if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                // Sort by type first, then by node ID
+                found[count++] = ((long) m_types[slot] << 32) | (m_nodeIds[slot] & 0xFFFFFFFFL);
+            }
+        }
+
+        final List<Integer> nodeIds = new ArrayList<>(count);
+        if (count > 1) {
+            Arrays.sort(found, 0, count);
+        }
+        for (int i = 0; i < count; i++) {
+            nodeIds.add((int) found[i]);
+        }
+        return nodeIds;
+    }
+
+    /**
+     * Adds the node to the given key or updates its primary type.
+     *
+     * @return true if the node was not known for the key or its type has changed
+     */
+    boolean put(final String location, final InetAddress address, final int nodeId, final PrimaryType type) {
+        Integer locationIndex = m_locationIndexes.get(location);
+        if (locationIndex == null) {
+            locationIndex = m_locationIndexes.size();
+            m_locationIndexes.put(location, locationIndex);
+        }
+
+        final byte[] bytes = address.getAddress();
+        final long high = high(bytes);
+        final long low = low(bytes);
+        final int loc = loc(locationIndex, bytes);
+        final byte ordinal = ordinal(type);
+
+        final int mask = m_types.length - 1;
+        int slot = hash(high, low, loc) & mask;
+        for (; m_types[slot] != 0; slot = (slot + 1) & mask) {
+            if (m_nodeIds[slot] == nodeId && m_low[slot] == low && m_high[slot] == high && m_locations[slot] == loc) {
+                if (m_types[slot] == ordinal) {
+                    return false;
+                }
+                m_types[slot] = ordinal;
+                return true;
+            }
+        }
+
+        m_high[slot] = high;
+        m_low[slot] = low;
+        m_locations[slot] = loc;
+        m_nodeIds[slot] = nodeId;
+        m_types[slot] = ordinal;
+        m_nodeKeys.computeIfAbsent(nodeId, k -> new NodeKeys()).add(high, low, loc);
+
+        if (++m_size > m_types.length * MAX_LOAD_FACTOR) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Removes the node from the given key.
+     *
+     * @return true if the node was known for the key
+     */
+    boolean remove(final String location, final InetAddress address, final int nodeId) {
+        final Integer locationIndex = m_locationIndexes.get(location);
+        if (locationIndex == null) {
+            return false;
+        }
+
+        final byte[] bytes = address.getAddress();
+        final long high = high(bytes);
+        final long low = low(bytes);
+        final int loc = loc(locationIndex, bytes);
+
+        if (!delete(high, low, loc, nodeId)) {
+            return false;
+        }
+
+        final NodeKeys keys = m_nodeKeys.get(nodeId);
+        keys.remove(high, low, loc);
+        if (keys.size == 0) {
+            m_nodeKeys.remove(nodeId);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the node from all keys.
+     *
+     * @return the number of removed entries
+     */
+    int removeNode(final int nodeId) {
+        final NodeKeys keys = m_nodeKeys.remove(nodeId);
+        if (keys == null) {
+            return 0;
+        }
+
+        for (int i = 0; i < keys.size; i++) {
+            delete(keys.high[i], keys.low[i], keys.locations[i], nodeId);
+        }
+        return keys.size;
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    void clear() {
+        Arrays.fill(m_types, (byte) 0);
+        m_locationIndexes.clear();
+        m_nodeKeys.clear();
+        m_size = 0;
+    }
+
+    /**
+     * Deletes the slot of the node for the given key.
+     *
+     * @return true if the node was known for the key
+     */
+    private boolean delete(final long high, final long low, final int loc, final int nodeId) {
+        final int mask = m_types.length - 1;
+        for (int slot = hash(high, low, loc) & mask; m_types[slot] != 0; slot = (slot + 1) & mask) {
+            if (m_nodeIds[slot] == nodeId && m_low[slot] == low && m_high[slot] == high && m_locations[slot] == loc) {
+                delete(slot);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Empties the slot and shifts following entries of the same probe sequence
+     * backwards, so no tombstones are required.
+     */
+    private void delete(int slot) {
+        final int mask = m_types.length - 1;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (m_types[next] == 0) {
+                break;
+            }
+            final int home = hash(m_high[next], m_low[next], m_locations[next]) & mask;
+            // Only move the entry if its home slot is not between the emptied slot and its current slot
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                m_high[slot] = m_high[next];
+                m_low[slot] = m_low[next];
+                m_locations[slot] = m_locations[next];
+                m_nodeIds[slot] = m_nodeIds[next];
+                m_types[slot] = m_types[next];
+                slot = next;
+            }
+        }
+        m_types[slot] = 0;
+        m_size--;
+    }
+
+    private void resize() {
+        final long[] high = m_high;
+        final long[] low = m_low;
+        final int[] locations = m_locations;
+        final int[] nodeIds = m_nodeIds;
+        final byte[] types = m_types;
+
+        allocate(types.length << 1);
+
+        final int mask = m_types.length - 1;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == 0) {
+                continue;
+            }
+            int slot = hash(high[i], low[i], locations[i]) & mask;
+            while (m_types[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            m_high[slot] = high[i];
+            m_low[slot] = low[i];
+            m_locations[slot] = locations[i];
+            m_nodeIds[slot] = nodeIds[i];
+            m_types[slot] = types[i];
+        }
+    }
+
+    private void allocate(final int capacity) {
+        m_high = new long[capacity];
+        m_low = new long[capacity];
+        m_locations = new int[capacity];
+        m_nodeIds = new int[capacity];
+        m_types = new byte[capacity];
+    }
+
+    private static long high(final byte[] bytes) {
+        return bytes.length > 8 ? toLong(bytes, 0, 8) : 0L;
+    }
+
+    private static long low(final byte[] bytes) {
+        return bytes.length > 8 ? toLong(bytes, 8, 16) : toLong(bytes, 0, bytes.length);
+    }
+
+    private static long toLong(final byte[] bytes, final int from, final int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int loc(final int locationIndex, final byte[] bytes) {
+        return (locationIndex << 1) | (bytes.length > 4 ? 1 : 0);
+    }
+
+    private static int hash(final long high, final long low, final int loc) {
+        // Finalizer of MurmurHash3, so sequential addresses are spread over the table
+        long h = high * 31 + low;
+        h = h * 31 + loc;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static byte ordinal(final PrimaryType type) {
+        if (PrimaryType.PRIMARY.equals(type)) {
+            return PRIMARY;
+        } else if (PrimaryType.SECONDARY.equals(type)) {
+            return SECONDARY;
+        }
+        return NOT_ELIGIBLE;
+    }
+
+    /**
+     * The keys of a single node, stored the same way as in the table. Entries
+     * are unordered, so removing one moves the last entry into its place.
+     */
+    private static final class NodeKeys {
+        private long[] high = new long[2];
+        private long[] low = new long[2];
+        private int[] locations = new int[2];
+        private int size;
+
+        private void add(final long high, final long low, final int loc) {
+            if (size == locations.length) {
+                this.high = Arrays.copyOf(this.high, size * 2);
+                this.low = Arrays.copyOf(this.low, size * 2);
+                this.locations = Arrays.copyOf(this.locations, size * 2);
+            }
+            this.high[size] = high;
+            this.low[size] = low;
+            this.locations[size] = loc;
+            size++;
+        }
+
+        private void remove(final long high, final long low, final int loc) {
+            for (int i = 0; i < size; i++) {
+                if (this.low[i] == low && this.high[i] == high && this.locations[i] == loc) {
+                    size--;
+                    this.high[i] = this.high[size];
+                    this.low[i] = this.low[size];
+                    this.locations[i] = this.locations[size];
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,668 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.support;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index of the directories and the metric files stored below the RRD directory.
+ *
+ * The index is built by a single scan of the tree in a background thread, and is then kept
+ * up to date by the callbacks made when resources are created or updated through the
+ * {@link FilesystemResourceStorageDao}, i.e. by the persisters, as well as by a {@link WatchService}.
+ * The watches pick up the changes made outside of OpenNMS. They are best effort: when the
+ * directories cannot be watched, i.e. once the limit of inotify watches is reached, the index
+ * is only kept up to date by the callbacks. This is also the case on file systems which don't
+ * deliver change events, such as NFS.
+ *
+ * The queries return an empty {@link Optional} while the index is not available, i.e. while
+ * it is being built, or after it was discarded because the tree holds more than the maximum
+ * number of entries. The callers are expected to fall back to the file system in this case.
+ *
+ * @see FilesystemResourceStorageDao
+ */
+public class FilesystemResourceIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilesystemResourceIndex.class);
+
+    private final Path m_root;
+
+    private final String m_rrdExtension;
+
+    private final int m_maxEntries;
+
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    /**
+     * Root of the index, or null if the index is not available.
+     */
+    private Node m_tree;
+
+    /**
+     * Number of directories and metric files in the index.
+     */
+    private int m_entries;
+
+    private final Map<WatchKey, Path> m_watchedDirectories = new ConcurrentHashMap<>();
+
+    private WatchService m_watchService;
+
+    private Thread m_thread;
+
+    private boolean m_rebuild = true;
+
+    private boolean m_closed = false;
+
+    private static class Node {
+        private final Map<String, Node> m_directories = new HashMap<>(4);
+        private final Set<String> m_metrics = new HashSet<>(4);
+
+        private int size() {
+            int size = 1 + m_metrics.size();
+            for (Node directory : m_directories.values()) {
+                size += directory.size();
+            }
+            return size;
+        }
+    }
+
+    private static class TooManyEntriesException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private TooManyEntriesException(int maxEntries) {
+            super("The resource index is limited to " + maxEntries + " entries");
+        }
+    }
+
+    public FilesystemResourceIndex(Path root, String rrdExtension, int maxEntries) {
+        m_root = root.toAbsolutePath();
+        m_rrdExtension = rrdExtension;
+        m_maxEntries = maxEntries;
+    }
+
+    /**
+     * Starts building the index in the background.
+     */
+    public synchronized void start() {
+        if (m_thread != null) {
+            return;
+        }
+        m_thread = new Thread(this::run, "FilesystemResourceIndex");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * Discards the index and builds it again, i.e. after the tree was modified while
+     * the index could not keep up with the changes.
+     */
+    public synchronized void rebuild() {
+        m_rebuild = true;
+        closeWatchService();
+        notifyAll();
+    }
+
+    public void close() {
+        final Thread thread;
+        synchronized (this) {
+            m_closed = true;
+            closeWatchService();
+            notifyAll();
+            thread = m_thread;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        discard();
+    }
+
+    public boolean isAvailable() {
+        m_lock.readLock().lock();
+        try {
+            return m_tree != null;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of directories and metric files in the index.
+     */
+    public int size() {
+        m_lock.readLock().lock();
+        try {
+            return m_entries;
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @see org.opennms.netmgt.dao.api.ResourceStorageDao#exists(org.opennms.netmgt.model.ResourcePath, int)
+     */
+    public Optional<Boolean> exists(Path path, int depth) {
+        m_lock.readLock().lock();
+        try {
+            if (m_tree == null) {
+                return Optional.empty();
+            }
+            final Node node = find(path);
+            return Optional.of(node != null && exists(node, depth));
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @see org.opennms.netmgt.dao.api.ResourceStorageDao#existsWithin(org.opennms.netmgt.model.ResourcePath, int)
+     */
+    public Optional<Boolean> existsWithin(Path path, int depth) {
+        m_lock.readLock().lock();
+        try {
+            if (m_tree == null) {
+                return Optional.empty();
+            }
+            final Node node = find(path);
+            return Optional.of(node != null && existsWithin(node, depth));
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the names of the child directories which contain metrics at the given depth.
+     *
+     * @see org.opennms.netmgt.dao.api.ResourceStorageDao#children(org.opennms.netmgt.model.ResourcePath, int)
+     */
+    public Optional<Set<String>> children(Path path, int depth) {
+        m_lock.readLock().lock();
+        try {
+            if (m_tree == null) {
+                return Optional.empty();
+            }
+            final Node node = find(path);
+            if (node == null) {
+                return Optional.of(Collections.emptySet());
+            }
+            return Optional.of(node.m_directories.entrySet().stream()
+                    .filter(e -> exists(e.getValue(), depth - 1))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toSet()));
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the names of the metric files in the given directory.
+     */
+    public Optional<Set<String>> metrics(Path path) {
+        m_lock.readLock().lock();
+        try {
+            if (m_tree == null) {
+                return Optional.empty();
+            }
+            final Node node = find(path);
+            if (node == null) {
+                return Optional.of(Collections.emptySet());
+            }
+            return Optional.of(new HashSet<>(node.m_metrics));
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Called when resources were written to the given directory.
+     */
+    public void updated(Path path) {
+        m_lock.readLock().lock();
+        try {
+            if (m_tree == null || find(path) != null) {
+                return;
+            }
+        } finally {
+            m_lock.readLock().unlock();
+        }
+        final Path directory = m_root.resolve(path);
+        // The directory may have been created before the events were delivered
+        created(directory.getParent(), directory.getFileName());
+    }
+
+    /**
+     * Called when the metric file with the given name was created in the given directory.
+     *
+     * The file is indexed without checking the file system, since the strategy may
+     * create the file asynchronously.
+     */
+    public void metricCreated(Path path, String fileName) {
+        m_lock.readLock().lock();
+        try {
+            if (m_tree == null) {
+                return;
+            }
+            final Node node = find(path);
+            if (node != null && node.m_metrics.contains(fileName)) {
+                return;
+            }
+        } finally {
+            m_lock.readLock().unlock();
+        }
+
+        m_lock.writeLock().lock();
+        try {
+            if (m_tree == null) {
+                return;
+            }
+            if (findOrCreate(path).m_metrics.add(fileName)) {
+                m_entries++;
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+
+        if (size() > m_maxEntries) {
+            LOG.warn("The resource index is limited to {} entries. Falling back to walking the file system.", m_maxEntries);
+            discard();
+        }
+    }
+
+    /**
+     * Called when the given directory was deleted.
+     */
+    public void deleted(Path path) {
+        if (path.getFileName() == null || path.toString().isEmpty()) {
+            return;
+        }
+        final Path directory = m_root.resolve(path);
+        deleted(directory.getParent(), directory.getFileName());
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (this) {
+                while (!m_rebuild && !m_closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (m_closed) {
+                    return;
+                }
+                m_rebuild = false;
+            }
+            discard();
+            try {
+                build();
+                watch();
+            } catch (TooManyEntriesException e) {
+                LOG.warn("{}. Falling back to walking the file system.", e.getMessage());
+                discard();
+            } catch (IOException e) {
+                LOG.error("Failed to index {}. Falling back to walking the file system.", m_root, e);
+                discard();
+            }
+        }
+    }
+
+    private void build() throws IOException {
+        final WatchService watchService = m_root.getFileSystem().newWatchService();
+        synchronized (this) {
+            if (m_rebuild || m_closed) {
+                watchService.close();
+                return;
+            }
+            m_watchService = watchService;
+        }
+
+        LOG.info("Indexing the resources in {}.", m_root);
+        final long start = System.currentTimeMillis();
+        final Node tree = Files.isDirectory(m_root) ? scan(m_root, m_maxEntries) : new Node();
+        m_lock.writeLock().lock();
+        try {
+            m_tree = tree;
+            m_entries = tree.size();
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+        LOG.info("Indexed {} directories and metrics in {} ms.", size(), System.currentTimeMillis() - start);
+    }
+
+    private void watch() throws IOException {
+        final WatchService watchService;
+        synchronized (this) {
+            watchService = m_watchService;
+        }
+        if (watchService == null) {
+            return;
+        }
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                final Path directory = m_watchedDirectories.get(key);
+                if (directory == null) {
+                    key.cancel();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        LOG.warn("Missed changes to {}, rebuilding the resource index.", m_root);
+                        rebuild();
+                        return;
+                    }
+                    final Path name = (Path) event.context();
+                    if (event.kind() == ENTRY_CREATE) {
+                        created(directory, name);
+                    } else if (event.kind() == ENTRY_DELETE) {
+                        deleted(directory, name);
+                    }
+                }
+                if (!key.reset()) {
+                    // The directory is gone
+                    m_watchedDirectories.remove(key);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Rebuilding or closing
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void created(Path parent, Path name) {
+        final Path path = parent.resolve(name);
+        final boolean directory = Files.isDirectory(path);
+        if (!directory && !isRrdFile(path)) {
+            return;
+        }
+
+        // Scan new directories before locking, they are usually small
+        Node scanned = null;
+        if (directory) {
+            try {
+                scanned = scan(path, m_maxEntries);
+            } catch (TooManyEntriesException e) {
+                LOG.warn("{}. Falling back to walking the file system.", e.getMessage());
+                discard();
+                return;
+            } catch (IOException e) {
+                LOG.warn("Failed to index {}, rebuilding the resource index.", path, e);
+                rebuild();
+                return;
+            }
+        }
+
+        m_lock.writeLock().lock();
+        try {
+            if (m_tree == null) {
+                return;
+            }
+            final Node node = findOrCreate(m_root.relativize(parent));
+            final String fileName = name.toString();
+            if (directory) {
+                final Node previous = node.m_directories.put(fileName, scanned);
+                m_entries += scanned.size() - (previous != null ? previous.size() : 0);
+            } else if (node.m_metrics.add(fileName)) {
+                m_entries++;
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+
+        if (size() > m_maxEntries) {
+            LOG.warn("The resource index is limited to {} entries. Falling back to walking the file system.", m_maxEntries);
+            discard();
+        }
+    }
+
+    private void deleted(Path parent, Path name) {
+        m_lock.writeLock().lock();
+        try {
+            if (m_tree == null) {
+                return;
+            }
+            final Node node = find(m_root.relativize(parent));
+            if (node == null) {
+                return;
+            }
+            final String fileName = name.toString();
+            final Node directory = node.m_directories.remove(fileName);
+            if (directory != null) {
+                m_entries -= directory.size();
+            } else if (node.m_metrics.remove(fileName)) {
+                m_entries--;
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds the index of the given directory, and starts watching it as well as its sub-directories.
+     */
+    private Node scan(Path directory, int maxEntries) throws IOException {
+        final Map<Path, Node> nodes = new HashMap<>();
+        final int[] entries = {0};
+        Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (++entries[0] > maxEntries) {
+                    throw new TooManyEntriesException(maxEntries);
+                }
+                // Watch before listing, so that no files are missed
+                watch(dir);
+                final Node node = new Node();
+                final Node parent = nodes.get(dir.getParent());
+                if (parent != null && !dir.equals(directory)) {
+                    parent.m_directories.put(dir.getFileName().toString(), node);
+                }
+                nodes.put(dir, node);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(m_rrdExtension)) {
+                    if (++entries[0] > maxEntries) {
+                        throw new TooManyEntriesException(maxEntries);
+                    }
+                    nodes.get(file.getParent()).m_metrics.add(file.getFileName().toString());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOG.warn("Failed to index {}. Skipping.", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                if (!dir.equals(directory)) {
+                    nodes.remove(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        final Node node = nodes.get(directory);
+        return node != null ? node : new Node();
+    }
+
+    private void watch(Path directory) {
+        final WatchService watchService;
+        synchronized (this) {
+            watchService = m_watchService;
+        }
+        if (watchService == null) {
+            return;
+        }
+        try {
+            m_watchedDirectories.put(register(directory, watchService), directory);
+        } catch (ClosedWatchServiceException e) {
+            // Rebuilding or closing
+        } catch (IOException e) {
+            // Keep the index, but stop watching altogether, since the changes to the directories
+            // which are not watched would be missed anyways
+            LOG.warn("Failed to watch {}. The resource index will only be updated when resources are persisted, "
+                    + "changes made outside of OpenNMS require rebuilding the index.", directory, e);
+            synchronized (this) {
+                if (m_watchService == watchService) {
+                    closeWatchService();
+                }
+            }
+        }
+    }
+
+    WatchKey register(Path directory, WatchService watchService) throws IOException {
+        return directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+    }
+
+    private void discard() {
+        synchronized (this) {
+            closeWatchService();
+        }
+        m_lock.writeLock().lock();
+        try {
+            m_tree = null;
+            m_entries = 0;
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    private void closeWatchService() {
+        if (m_watchService != null) {
+            try {
+                m_watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the watch service.", e);
+            }
+            m_watchService = null;
+        }
+        m_watchedDirectories.clear();
+    }
+
+    private Node find(Path path) {
+        Node node = m_tree;
+        for (Path name : path) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+            node = node.m_directories.get(name.toString());
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private Node findOrCreate(Path path) {
+        Node node = m_tree;
+        for (Path name : path) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+            Node child = node.m_directories.get(name.toString());
+            if (child == null) {
+                child = new Node();
+                node.m_directories.put(name.toString(), child);
+                m_entries++;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private boolean isRrdFile(Path path) {
+        return path.getFileName().toString().endsWith(m_rrdExtension) && Files.isRegularFile(path);
+    }
+
+    private static boolean exists(Node node, int depth) {
+        if (depth == 0) {
+            return !node.m_metrics.isEmpty();
+        }
+        for (Node directory : node.m_directories.values()) {
+            if (exists(directory, depth - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean existsWithin(Node node, int depth) {
+        if (depth < 0) {
+            return false;
+        }
+        if (!node.m_metrics.isEmpty()) {
+            return true;
+        }
+        for (Node directory : node.m_directories.values()) {
+            if (existsWithin(directory, depth - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
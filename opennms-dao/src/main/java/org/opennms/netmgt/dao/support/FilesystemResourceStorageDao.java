@@ -34,6 +34,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.function.Predicate;
@@ -49,6 +50,7 @@ import org.opennms.netmgt.rrd.RrdStrategy;
 import org.opennms.netmgt.rrd.RrdMetaDataUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -60,9 +62,12 @@ import com.google.common.collect.Maps;
  * Used in conjunction with RRD/JRB strategies that persist
  * metrics to the local disk.
  *
+ * When the index is enabled, the queries are answered from a
+ * {@link FilesystemResourceIndex} instead of walking the tree.
+ *
  * @author jwhite
  */
-public class FilesystemResourceStorageDao implements ResourceStorageDao, InitializingBean {
+public class FilesystemResourceStorageDao implements ResourceStorageDao, InitializingBean, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(FilesystemResourceStorageDao.class);
 
@@ -73,27 +78,84 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     private File m_rrdDirectory;
 
+    private boolean m_indexEnabled = false;
+
+    private int m_indexMaxEntries = 1000000;
+
+    private FilesystemResourceIndex m_index;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanUtils.assertAutowiring(this);
         setRrdExtension(m_rrdStrategy.getDefaultFileExtension());
+        if (m_indexEnabled) {
+            startIndex();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (m_index != null) {
+            m_index.close();
+            m_index = null;
+        }
+    }
+
+    /**
+     * Starts building the index of the resources, the queries walk
+     * the tree until it is available.
+     */
+    public void startIndex() {
+        if (m_index != null) {
+            return;
+        }
+        m_index = new FilesystemResourceIndex(m_rrdDirectory.toPath(), RRD_EXTENSION, m_indexMaxEntries);
+        m_index.start();
+    }
+
+    @Override
+    public void rebuildIndex() {
+        if (m_index != null) {
+            m_index.rebuild();
+        }
     }
 
     @Override
     public boolean exists(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        if (m_index != null) {
+            final Optional<Boolean> exists = m_index.exists(ResourcePath.resourceToFilesystemPath(path), depth);
+            if (exists.isPresent()) {
+                return exists.get();
+            }
+        }
         return exists(toPath(path), depth);
     }
 
     @Override
     public boolean existsWithin(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth >= 0, "depth must be non-negative");
+        if (m_index != null) {
+            final Optional<Boolean> exists = m_index.existsWithin(ResourcePath.resourceToFilesystemPath(path), depth);
+            if (exists.isPresent()) {
+                return exists.get();
+            }
+        }
         return existsWithin(toPath(path), depth);
     }
 
     @Override
     public Set<ResourcePath> children(ResourcePath path, int depth) {
         Preconditions.checkArgument(depth > 0, "depth must be positive");
+        if (m_index != null) {
+            final Optional<Set<String>> children = m_index.children(ResourcePath.resourceToFilesystemPath(path), depth);
+            if (children.isPresent()) {
+                return children.get().stream()
+                        .map(name -> ResourcePath.get(path, name))
+                        .collect(Collectors.toSet());
+            }
+        }
+
         final Path root = toPath(path);
         if (!Files.isDirectory(root)) {
             return Collections.emptySet();
@@ -112,6 +174,12 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     @Override
     public Set<OnmsAttribute> getAttributes(ResourcePath path) {
+        if (m_index != null) {
+            final Optional<Set<String>> metrics = m_index.metrics(ResourcePath.resourceToFilesystemPath(path));
+            if (metrics.isPresent()) {
+                return RrdResourceAttributeUtils.getAttributesAtRelativePath(m_rrdDirectory, ResourcePath.resourceToFilesystemPath(path).toString(), RRD_EXTENSION, metrics.get());
+            }
+        }
         return RrdResourceAttributeUtils.getAttributesAtRelativePath(m_rrdDirectory, ResourcePath.resourceToFilesystemPath(path).toString(), RRD_EXTENSION);
     }
 
@@ -122,6 +190,9 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
         } catch (IOException e) {
             throw Throwables.propagate(e);
         }
+        if (m_index != null) {
+            m_index.updated(ResourcePath.resourceToFilesystemPath(path));
+        }
     }
 
     @Override
@@ -138,6 +209,16 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
     @Override
     public void updateMetricToResourceMappings(ResourcePath path, Map<String, String> metricsNameToResourceNames) {
         RrdResourceAttributeUtils.updateDsProperties(toPath(path).toFile(), metricsNameToResourceNames);
+        if (m_index != null) {
+            m_index.updated(ResourcePath.resourceToFilesystemPath(path));
+        }
+    }
+
+    @Override
+    public void resourceCreated(ResourcePath path, String resourceName) {
+        if (m_index != null) {
+            m_index.metricCreated(ResourcePath.resourceToFilesystemPath(path), resourceName + RRD_EXTENSION);
+        }
     }
 
     @Override
@@ -147,7 +228,11 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
 
     @Override
     public boolean delete(ResourcePath path) {
-        return FileUtils.deleteQuietly(toPath(path).toFile());
+        final boolean deleted = FileUtils.deleteQuietly(toPath(path).toFile());
+        if (deleted && m_index != null) {
+            m_index.deleted(ResourcePath.resourceToFilesystemPath(path));
+        }
+        return deleted;
     }
 
     private boolean exists(Path root, int depth) {
@@ -201,6 +286,18 @@ public class FilesystemResourceStorageDao implements ResourceStorageDao, Initial
         RRD_EXTENSION = rrdExtension;
     }
 
+    public void setIndexEnabled(boolean indexEnabled) {
+        m_indexEnabled = indexEnabled;
+    }
+
+    public void setIndexMaxEntries(int indexMaxEntries) {
+        m_indexMaxEntries = indexMaxEntries;
+    }
+
+    public FilesystemResourceIndex getIndex() {
+        return m_index;
+    }
+
     private static Predicate<Path> isRrdFile = new Predicate<Path>() {
         @Override
         public boolean test(Path path) {
@@ -99,6 +99,18 @@ public class InterfaceToNodeCacheEventProcessor implements InitializingBean {
         m_cache.removeNodeId(node.getLocation().getLocationName(), event.getInterfaceAddress(), nodeId.intValue());
     }
 
+    @EventHandler(uei=EventConstants.NODE_DELETED_EVENT_UEI)
+    public void handleNodeDeleted(Event event) {
+        LOG.debug("Received event: {}", event.getUei());
+        Long nodeId = event.getNodeid();
+        if (nodeId == null) {
+            LOG.error(EventConstants.NODE_DELETED_EVENT_UEI + ": Event with no node ID: " + event.toString());
+            return;
+        }
+        // remove all interfaces of the node, as they are not deleted one by one
+        m_cache.removeNodeId(nodeId.intValue());
+    }
+
     @EventHandler(uei=EventConstants.INTERFACE_REPARENTED_EVENT_UEI)
     @Transactional
     public void handleInterfaceReparented(Event event) {
@@ -32,6 +32,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -72,10 +75,30 @@ public abstract class RrdResourceAttributeUtils {
      * @return a {@link java.util.Set} object.
      */
     protected static Set<OnmsAttribute> getAttributesAtRelativePath(File rrdDirectory, String relativePath, String rrdFileSuffix) {
+        File resourceDir = new File(rrdDirectory, relativePath);
+
+        FilenameFilter filter = new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(rrdFileSuffix);
+            }
+        };
+        String[] fileNames = resourceDir.list(filter);
+
+        return getAttributesAtRelativePath(rrdDirectory, relativePath, rrdFileSuffix, fileNames == null ? Collections.<String>emptyList() : Arrays.asList(fileNames));
+    }
+
+    /**
+     * Retrieves the attributes at the given path using the names of the RRD files
+     * in the directory instead of listing it.
+     *
+     * @param rrdFileNames the names of the RRD files in the directory
+     */
+    protected static Set<OnmsAttribute> getAttributesAtRelativePath(File rrdDirectory, String relativePath, String rrdFileSuffix, Collection<String> rrdFileNames) {
         
         Set<OnmsAttribute> attributes =  new HashSet<>();
 
-        loadRrdAttributes(rrdDirectory, relativePath, attributes, rrdFileSuffix);
+        loadRrdAttributes(rrdDirectory, relativePath, attributes, rrdFileSuffix, rrdFileNames);
         loadStringAttributes(rrdDirectory, relativePath, attributes);
         
         return attributes;
@@ -91,24 +114,11 @@ public abstract class RrdResourceAttributeUtils {
         }
     }
 
-    private static void loadRrdAttributes(File rrdDirectory, String relativePath, Set<OnmsAttribute> attributes, final String rrdFileSuffix) {
+    private static void loadRrdAttributes(File rrdDirectory, String relativePath, Set<OnmsAttribute> attributes, final String rrdFileSuffix, Collection<String> fileNames) {
         int suffixLength = rrdFileSuffix.length();
         File resourceDir = new File(rrdDirectory, relativePath);
 
-        FilenameFilter filter = new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String name) {
-                return name.endsWith(rrdFileSuffix);
-            }
-        };
-        File[] files = resourceDir.listFiles(filter);
-
-        if (files == null) {
-            return;
-        }
-        
-        for (final File file : files) {
-            String fileName = file.getName();
+        for (final String fileName : fileNames) {
             if (ResourceTypeUtils.isStoreByGroup() && !ResourceTypeUtils.isResponseTime(relativePath)) {
                 String groupName = fileName.substring(0, fileName.length() - suffixLength);
                 Properties props = getDsProperties(resourceDir);
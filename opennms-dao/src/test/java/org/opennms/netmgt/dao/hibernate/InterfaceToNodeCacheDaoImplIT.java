@@ -188,6 +188,24 @@ public class InterfaceToNodeCacheDaoImplIT implements InitializingBean {
         Assert.assertEquals(m_databasePopulator.getNode1().getId(), m_cache.getFirstNodeId(MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID, iface.getIpAddress()).get());
     }
 
+    @Test
+    @Transactional
+    public void testRemoveNode() throws Exception {
+        m_cache.dataSourceSync();
+
+        final OnmsNode node1 = m_databasePopulator.getNode1();
+        final InetAddress ipAddr = node1.getPrimaryInterface().getIpAddress();
+        Assert.assertEquals(node1.getId(), m_cache.getFirstNodeId(MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID, ipAddr).get());
+
+        Assert.assertEquals(true, m_cache.removeNodeId(node1.getId()));
+        Assert.assertEquals(false, m_cache.removeNodeId(node1.getId()));
+        Assert.assertEquals(false, m_cache.getFirstNodeId(MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID, ipAddr).isPresent());
+
+        // Other nodes are not affected
+        final OnmsNode node2 = m_databasePopulator.getNode2();
+        Assert.assertEquals(node2.getId(), m_cache.getFirstNodeId(MonitoringLocationDao.DEFAULT_MONITORING_LOCATION_ID, node2.getPrimaryInterface().getIpAddress()).get());
+    }
+
     @Test
     @Transactional
     public void testNullLocation() throws Exception {
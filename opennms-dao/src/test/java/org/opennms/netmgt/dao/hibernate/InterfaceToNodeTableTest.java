@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opennms.netmgt.model.PrimaryType;
+
+public class InterfaceToNodeTableTest {
+
+    @Test
+    public void canDistinguishLocationsAndAddressFamilies() {
+        final InterfaceToNodeTable table = new InterfaceToNodeTable();
+        assertTrue(table.put("Default", addr("10.0.0.1"), 1, PrimaryType.PRIMARY));
+        assertTrue(table.put("Remote", addr("10.0.0.1"), 2, PrimaryType.PRIMARY));
+        assertTrue(table.put("Default", addr("::10.0.0.1"), 3, PrimaryType.PRIMARY));
+        assertTrue(table.put("Default", addr("fe80::1"), 4, PrimaryType.PRIMARY));
+
+        assertEquals(Arrays.asList(1), table.get("Default", addr("10.0.0.1")));
+        assertEquals(Arrays.asList(2), table.get("Remote", addr("10.0.0.1")));
+        assertEquals(Arrays.asList(3), table.get("Default", addr("::10.0.0.1")));
+        assertEquals(Arrays.asList(4), table.get("Default", addr("fe80::1")));
+        assertEquals(Collections.emptyList(), table.get("Default", addr("10.0.0.2")));
+        assertEquals(Collections.emptyList(), table.get("Unknown", addr("10.0.0.1")));
+        assertEquals(4, table.size());
+    }
+
+    @Test
+    public void canOrderNodesOfTheSameAddress() {
+        final InterfaceToNodeTable table = new InterfaceToNodeTable();
+        table.put("Default", addr("10.0.0.1"), 5, PrimaryType.PRIMARY);
+        table.put("Default", addr("10.0.0.1"), 7, PrimaryType.NOT_ELIGIBLE);
+        table.put("Default", addr("10.0.0.1"), 3, PrimaryType.SECONDARY);
+        table.put("Default", addr("10.0.0.1"), 2, PrimaryType.PRIMARY);
+
+        // Same order as the primary types and node IDs compare
+        assertEquals(Arrays.asList(7, 3, 2, 5), table.get("Default", addr("10.0.0.1")));
+
+        // Adding the same node again only updates the type
+        assertFalse(table.put("Default", addr("10.0.0.1"), 7, PrimaryType.NOT_ELIGIBLE));
+        assertTrue(table.put("Default", addr("10.0.0.1"), 7, PrimaryType.PRIMARY));
+        assertEquals(Arrays.asList(3, 2, 5, 7), table.get("Default", addr("10.0.0.1")));
+        assertEquals(4, table.size());
+
+        assertTrue(table.remove("Default", addr("10.0.0.1"), 2));
+        assertFalse(table.remove("Default", addr("10.0.0.1"), 2));
+        assertEquals(Arrays.asList(3, 5, 7), table.get("Default", addr("10.0.0.1")));
+    }
+
+    @Test
+    public void canRemoveAllAddressesOfNode() {
+        final InterfaceToNodeTable table = new InterfaceToNodeTable(16);
+        for (int i = 0; i < 1000; i++) {
+            table.put("Default", addr("10.0." + (i / 256) + "." + (i % 256)), i % 10 + 1, PrimaryType.PRIMARY);
+        }
+        assertEquals(1000, table.size());
+
+        assertEquals(100, table.removeNode(4));
+        assertEquals(0, table.removeNode(4));
+        assertEquals(900, table.size());
+        for (int i = 0; i < 1000; i++) {
+            final List<Integer> expected = i % 10 + 1 == 4 ? Collections.emptyList() : Arrays.asList(i % 10 + 1);
+            assertEquals(expected, table.get("Default", addr("10.0." + (i / 256) + "." + (i % 256))));
+        }
+    }
+
+    @Test
+    public void canRemoveNodeAfterSingleChanges() {
+        final InterfaceToNodeTable table = new InterfaceToNodeTable();
+        table.put("Default", addr("10.0.0.1"), 1, PrimaryType.PRIMARY);
+        table.put("Default", addr("10.0.0.2"), 1, PrimaryType.SECONDARY);
+        table.put("Remote", addr("10.0.0.1"), 1, PrimaryType.PRIMARY);
+        table.put("Default", addr("10.0.0.1"), 2, PrimaryType.PRIMARY);
+
+        // Updating the type does not add another key to the node
+        table.put("Default", addr("10.0.0.2"), 1, PrimaryType.PRIMARY);
+        assertTrue(table.remove("Default", addr("10.0.0.1"), 1));
+
+        assertEquals(2, table.removeNode(1));
+        assertEquals(0, table.removeNode(1));
+        assertEquals(Arrays.asList(2), table.get("Default", addr("10.0.0.1")));
+        assertEquals(1, table.size());
+
+        table.clear();
+        assertEquals(0, table.removeNode(2));
+        assertEquals(0, table.size());
+    }
+
+    /**
+     * Applies random changes to the table and a map and verifies both contain the same.
+     */
+    @Test
+    public void canMatchMapWithRandomChanges() {
+        final Random random = new Random(42);
+        final InterfaceToNodeTable table = new InterfaceToNodeTable(16);
+        final Map<String, List<Integer>> expected = new HashMap<>();
+
+        final String[] locations = {"Default", "Remote"};
+        for (int i = 0; i < 20000; i++) {
+            final String location = locations[random.nextInt(locations.length)];
+            final InetAddress address = addr("192.168." + random.nextInt(4) + "." + random.nextInt(64));
+            final int nodeId = random.nextInt(8) + 1;
+            final List<Integer> nodeIds = expected.computeIfAbsent(location + address, k -> new ArrayList<>());
+            switch (random.nextInt(5)) {
+                case 0:
+                    assertEquals(nodeIds.remove(Integer.valueOf(nodeId)), table.remove(location, address, nodeId));
+                    break;
+                case 1:
+                    final boolean removed = expected.values().stream()
+                            .map(ids -> ids.remove(Integer.valueOf(nodeId)))
+                            .reduce(false, Boolean::logicalOr);
+                    assertEquals(removed, table.removeNode(nodeId) > 0);
+                    break;
+                default:
+                    assertEquals(!nodeIds.contains(nodeId), table.put(location, address, nodeId, PrimaryType.NOT_ELIGIBLE));
+                    if (!nodeIds.contains(nodeId)) {
+                        nodeIds.add(nodeId);
+                        Collections.sort(nodeIds);
+                    }
+            }
+            assertEquals(nodeIds, table.get(location, address));
+        }
+
+        assertEquals(expected.values().stream().mapToInt(List::size).sum(), table.size());
+        for (String location : locations) {
+            for (int i = 0; i < 256; i++) {
+                final InetAddress address = addr("192.168." + (i / 64) + "." + (i % 64));
+                assertEquals(expected.getOrDefault(location + address, Collections.emptyList()), table.get(location, address));
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.dao.support;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FilesystemResourceIndexTest {
+
+    private static final String RRD_EXTENSION = ".jrb";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private FilesystemResourceIndex m_index;
+
+    @After
+    public void tearDown() {
+        if (m_index != null) {
+            m_index.close();
+        }
+    }
+
+    @Test
+    public void canIndexExistingResources() throws IOException {
+        tempFolder.newFolder("a", "b", "c");
+        tempFolder.newFolder("a", "d");
+        new File(tempFolder.getRoot(), "a/b/c/ds" + RRD_EXTENSION).createNewFile();
+        new File(tempFolder.getRoot(), "a/d/strings.properties").createNewFile();
+
+        startIndex(100);
+        // 5 directories, including the root, and one metric
+        assertEquals(6, m_index.size());
+
+        assertEquals(Optional.of(true), m_index.exists(Paths.get("a", "b", "c"), 0));
+        assertEquals(Optional.of(true), m_index.exists(Paths.get("a", "b"), 1));
+        assertEquals(Optional.of(false), m_index.exists(Paths.get("a", "b"), 2));
+        assertEquals(Optional.of(false), m_index.exists(Paths.get("a", "d"), 0));
+        assertEquals(Optional.of(false), m_index.exists(Paths.get("should", "not", "exist"), 0));
+
+        assertEquals(Optional.of(true), m_index.existsWithin(Paths.get("a"), 2));
+        assertEquals(Optional.of(false), m_index.existsWithin(Paths.get("a"), 1));
+
+        assertEquals(Optional.of(Collections.singleton("b")), m_index.children(Paths.get("a"), 2));
+        assertEquals(Optional.of(Collections.emptySet()), m_index.children(Paths.get("a"), 1));
+        assertEquals(Optional.of(Collections.singleton("ds" + RRD_EXTENSION)), m_index.metrics(Paths.get("a", "b", "c")));
+    }
+
+    @Test
+    public void canFollowChanges() throws IOException {
+        startIndex(100);
+        assertEquals(Optional.of(false), m_index.exists(Paths.get("a"), 1));
+
+        // New directories and metrics are picked up by watching the tree
+        File folder = tempFolder.newFolder("a", "b");
+        File rrd = new File(folder, "ds" + RRD_EXTENSION);
+        rrd.createNewFile();
+        awaitExists(Paths.get("a"), 1, true);
+
+        assertTrue(rrd.delete());
+        awaitExists(Paths.get("a"), 1, false);
+
+        // Deleted directories are removed from the index
+        rrd.createNewFile();
+        awaitExists(Paths.get("a"), 1, true);
+        assertTrue(rrd.delete());
+        assertTrue(folder.delete());
+        await().atMost(10, TimeUnit.SECONDS).until(() -> m_index.children(Paths.get("a"), 1).get().isEmpty()
+                && m_index.size() == 2);
+    }
+
+    @Test
+    public void canUpdateFromCallbacks() throws IOException {
+        startIndex(100);
+
+        // The directory is indexed as soon as resources are written to it
+        File folder = tempFolder.newFolder("a", "b");
+        new File(folder, "ds" + RRD_EXTENSION).createNewFile();
+        m_index.updated(Paths.get("a", "b"));
+        assertEquals(Optional.of(true), m_index.exists(Paths.get("a"), 1));
+
+        // And removed when it is deleted
+        new File(folder, "ds" + RRD_EXTENSION).delete();
+        folder.delete();
+        m_index.deleted(Paths.get("a", "b"));
+        assertEquals(Optional.of(false), m_index.exists(Paths.get("a"), 1));
+    }
+
+    @Test
+    public void keepsIndexWhenDirectoriesCannotBeWatched() throws IOException {
+        tempFolder.newFolder("a", "b");
+
+        m_index = new FilesystemResourceIndex(tempFolder.getRoot().toPath(), RRD_EXTENSION, 100) {
+            @Override
+            WatchKey register(Path directory, WatchService watchService) throws IOException {
+                throw new IOException("User limit of inotify watches reached");
+            }
+        };
+        m_index.start();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> m_index.isAvailable());
+        assertEquals(Optional.of(false), m_index.exists(Paths.get("a", "b"), 0));
+
+        // Metrics created by the persisters are indexed through the callbacks
+        m_index.metricCreated(Paths.get("a", "b"), "ds" + RRD_EXTENSION);
+        assertEquals(Optional.of(true), m_index.exists(Paths.get("a", "b"), 0));
+        m_index.metricCreated(Paths.get("a", "c"), "ds" + RRD_EXTENSION);
+        assertEquals(Optional.of(new HashSet<>(Arrays.asList("b", "c"))), m_index.children(Paths.get("a"), 1));
+        assertTrue(m_index.isAvailable());
+    }
+
+    @Test
+    public void fallsBackWhenThereAreTooManyEntries() throws IOException {
+        tempFolder.newFolder("a", "b", "c");
+
+        m_index = new FilesystemResourceIndex(tempFolder.getRoot().toPath(), RRD_EXTENSION, 4);
+        m_index.start();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> m_index.isAvailable());
+        assertEquals(4, m_index.size());
+
+        // The index is discarded once the limit is exceeded
+        tempFolder.newFolder("a", "d");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> !m_index.isAvailable());
+        assertEquals(Optional.empty(), m_index.exists(Paths.get("a"), 0));
+
+        // And stays unavailable when rebuilt
+        m_index.rebuild();
+        assertFalse(m_index.isAvailable());
+    }
+
+    @Test
+    public void canRebuild() throws IOException {
+        startIndex(100);
+
+        File folder = tempFolder.newFolder("a");
+        new File(folder, "ds" + RRD_EXTENSION).createNewFile();
+        m_index.rebuild();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> m_index.exists(Paths.get("a"), 0), equalTo(Optional.of(true)));
+    }
+
+    private void startIndex(int maxEntries) {
+        m_index = new FilesystemResourceIndex(tempFolder.getRoot().toPath(), RRD_EXTENSION, maxEntries);
+        m_index.start();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> m_index.isAvailable());
+    }
+
+    private void awaitExists(Path path, int depth, boolean exists) {
+        await().atMost(10, TimeUnit.SECONDS).until(() -> m_index.exists(path, depth), equalTo(Optional.of(exists)));
+    }
+}
@@ -0,0 +1,814 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opennms.core.logging.Logging;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queuing implementation of RrdStrategy with a hard bound on the memory used by the queue.
+ *
+ * Like the {@link QueuingRrdStrategy}, updates are enqueued per file and written by a set
+ * of threads, so that multiple updates are written for every time a file is opened. Instead
+ * of keeping an operation per update, the updates of a file are coalesced into packed arrays
+ * of primitives: a timestamp per update and a value per data source.
+ *
+ * Files are written in the order in which their oldest pending update was enqueued. Files
+ * passed to {@link #promoteEnqueuedFiles(Collection)} are written before all others.
+ *
+ * The memory held by pending updates is limited to {@link #getMaxMemory()} bytes. When the limit
+ * is reached, the oldest updates of the file that has been waiting the longest are dropped to make
+ * room for new updates.
+ *
+ * Creates are always performed synchronously. Write threads are started as soon as updates are
+ * enqueued and wait for more work rather than polling the queue.
+ */
+public class CoalescingRrdStrategy implements RrdStrategy<CoalescingRrdStrategy.Definition, String> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingRrdStrategy.class);
+
+    /**
+     * Estimated memory used by a file with pending updates, excluding the arrays.
+     */
+    private static final long FILE_OVERHEAD = 128;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte LONG = 1;
+    private static final byte UNSIGNED_LONG = 2;
+    private static final byte DOUBLE = 3;
+
+    private final RrdStrategy<Object, Object> m_delegate;
+
+    private Properties m_configurationProperties;
+
+    private int m_writeThreads = 2;
+
+    private long m_maxMemory = 256L * 1024L * 1024L;
+
+    private long m_modulus = 10000;
+
+    private String m_category = "queued";
+
+    private final ReentrantLock m_lock = new ReentrantLock();
+
+    private final Condition m_workAvailable = m_lock.newCondition();
+
+    /**
+     * Files with pending updates, in the order in which they were enqueued.
+     */
+    private final LinkedHashMap<String, PendingUpdates> m_pendingFiles = new LinkedHashMap<>();
+
+    private final Deque<String> m_promotedFiles = new ArrayDeque<>();
+
+    private final Set<String> m_filesBeingWritten = new HashSet<>();
+
+    private final List<Thread> m_threads = new ArrayList<>();
+
+    private long m_pendingMemory = 0;
+
+    private long m_pendingUpdates = 0;
+
+    private long m_enqueuedUpdates = 0;
+
+    private long m_coalescedUpdates = 0;
+
+    private long m_droppedUpdates = 0;
+
+    private long m_rejectedUpdates = 0;
+
+    private final AtomicLong m_updatesCompleted = new AtomicLong();
+
+    private final AtomicLong m_filesWritten = new AtomicLong();
+
+    private final AtomicLong m_errors = new AtomicLong();
+
+    /**
+     * <p>Constructor for CoalescingRrdStrategy.</p>
+     *
+     * @param delegate the strategy used to create and update the files
+     */
+    public CoalescingRrdStrategy(RrdStrategy<Object, Object> delegate) {
+        m_delegate = delegate;
+    }
+
+    public RrdStrategy<Object, Object> getDelegate() {
+        return m_delegate;
+    }
+
+    public Properties getConfigurationProperties() {
+        return m_configurationProperties;
+    }
+
+    @Override
+    public void setConfigurationProperties(Properties configurationParameters) {
+        m_configurationProperties = configurationParameters;
+    }
+
+    public int getWriteThreads() {
+        return m_writeThreads;
+    }
+
+    public void setWriteThreads(int writeThreads) {
+        m_writeThreads = writeThreads;
+    }
+
+    /**
+     * @return the maximum number of bytes held by pending updates
+     */
+    public long getMaxMemory() {
+        return m_maxMemory;
+    }
+
+    public void setMaxMemory(long maxMemory) {
+        m_maxMemory = maxMemory;
+    }
+
+    /**
+     * Sets the maximum memory held by pending updates in megabytes.
+     */
+    public void setMaxMemoryMb(long maxMemoryMb) {
+        setMaxMemory(maxMemoryMb * 1024L * 1024L);
+    }
+
+    public long getModulus() {
+        return m_modulus;
+    }
+
+    public void setModulus(long modulus) {
+        m_modulus = modulus;
+    }
+
+    public String getCategory() {
+        return m_category;
+    }
+
+    public void setCategory(String category) {
+        m_category = category;
+    }
+
+    /**
+     * Wraps the definition of the delegate together with the file it creates.
+     */
+    public static class Definition {
+        private final String m_fileName;
+        private final Object m_data;
+
+        Definition(String fileName, Object data) {
+            m_fileName = fileName;
+            m_data = data;
+        }
+
+        public String getFileName() {
+            return m_fileName;
+        }
+
+        public Object getData() {
+            return m_data;
+        }
+    }
+
+    /**
+     * The pending updates of a single file.
+     *
+     * Updates are stored in a circular fashion starting at {@link #m_start}, the values of
+     * update i for data source j are at index {@code i * m_numDs + j} of the value arrays.
+     */
+    static class PendingUpdates {
+        private final String m_fileName;
+        private final int m_numDs;
+        private long[] m_timestamps;
+        private long[] m_values;
+        private byte[] m_kinds;
+        private int m_start;
+        private int m_size;
+
+        PendingUpdates(String fileName, int numDs) {
+            m_fileName = fileName;
+            m_numDs = numDs;
+            allocate(1);
+        }
+
+        private void allocate(int capacity) {
+            final long[] timestamps = new long[capacity];
+            final long[] values = new long[capacity * m_numDs];
+            final byte[] kinds = new byte[capacity * m_numDs];
+            if (m_size > 0) {
+                System.arraycopy(m_timestamps, m_start, timestamps, 0, m_size);
+                System.arraycopy(m_values, m_start * m_numDs, values, 0, m_size * m_numDs);
+                System.arraycopy(m_kinds, m_start * m_numDs, kinds, 0, m_size * m_numDs);
+            }
+            m_timestamps = timestamps;
+            m_values = values;
+            m_kinds = kinds;
+            m_start = 0;
+        }
+
+        String getFileName() {
+            return m_fileName;
+        }
+
+        int getNumDs() {
+            return m_numDs;
+        }
+
+        int size() {
+            return m_size;
+        }
+
+        int capacity() {
+            return m_timestamps.length;
+        }
+
+        long getMemory() {
+            return memoryFor(capacity()) + FILE_OVERHEAD + 2L * m_fileName.length();
+        }
+
+        long memoryFor(int capacity) {
+            return capacity * (8L + 9L * m_numDs);
+        }
+
+        /**
+         * @return true if an update can be added without growing the arrays
+         */
+        boolean hasRoom() {
+            if (m_start + m_size < capacity()) {
+                return true;
+            } else if (m_start > 0) {
+                allocateInPlace();
+                return true;
+            }
+            return false;
+        }
+
+        private void allocateInPlace() {
+            System.arraycopy(m_timestamps, m_start, m_timestamps, 0, m_size);
+            System.arraycopy(m_values, m_start * m_numDs, m_values, 0, m_size * m_numDs);
+            System.arraycopy(m_kinds, m_start * m_numDs, m_kinds, 0, m_size * m_numDs);
+            m_start = 0;
+        }
+
+        /**
+         * @return the additional memory used
+         */
+        long grow() {
+            final int capacity = capacity();
+            allocate(capacity * 2);
+            return memoryFor(capacity);
+        }
+
+        /**
+         * @return the memory that was freed
+         */
+        long dropOldest() {
+            m_start++;
+            m_size--;
+            final int capacity = capacity();
+            if (m_size > 0 && m_size <= capacity / 4) {
+                allocate(capacity / 2);
+                return memoryFor(capacity - capacity / 2);
+            }
+            return 0;
+        }
+
+        long getLastTimestamp() {
+            return m_timestamps[m_start + m_size - 1];
+        }
+
+        /**
+         * Overwrites the values of the last update.
+         */
+        void replaceLast(long[] values, byte[] kinds) {
+            final int offset = (m_start + m_size - 1) * m_numDs;
+            System.arraycopy(values, 0, m_values, offset, m_numDs);
+            System.arraycopy(kinds, 0, m_kinds, offset, m_numDs);
+        }
+
+        void add(long timestamp, long[] values, byte[] kinds) {
+            final int index = m_start + m_size;
+            m_timestamps[index] = timestamp;
+            System.arraycopy(values, 0, m_values, index * m_numDs, m_numDs);
+            System.arraycopy(kinds, 0, m_kinds, index * m_numDs, m_numDs);
+            m_size++;
+        }
+
+        /**
+         * Formats the update at the given position as expected by {@link RrdStrategy#updateFile(Object, String, String)}.
+         */
+        String getUpdate(int i) {
+            final int index = m_start + i;
+            final StringBuilder sb = new StringBuilder(16 + 12 * m_numDs);
+            sb.append(m_timestamps[index]);
+            for (int j = index * m_numDs; j < (index + 1) * m_numDs; j++) {
+                sb.append(':');
+                appendValue(sb, m_kinds[j], m_values[j]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Definition createDefinition(String creator, String directory, String rrdName, int step, List<RrdDataSource> dataSources, List<String> rraList) throws Exception {
+        final Object def = m_delegate.createDefinition(creator, directory, rrdName, step, dataSources, rraList);
+        // The delegate returns null when the file already exists
+        return def == null ? null : new Definition(directory + File.separator + rrdName + m_delegate.getDefaultFileExtension(), def);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void createFile(Definition rrdDef) throws Exception {
+        if (rrdDef != null) {
+            m_delegate.createFile(rrdDef.getData());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String openFile(String fileName) throws Exception {
+        return fileName;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void closeFile(String rrd) throws Exception {
+        // no need to do anything here
+    }
+
+    /**
+     * Enqueues the update.
+     *
+     * @throws IllegalArgumentException if the update can't be parsed, or doesn't have
+     *   the same number of values as the other updates that are pending for the file
+     */
+    @Override
+    public void updateFile(String fileName, String owner, String data) throws Exception {
+        int numDs = 0;
+        for (int i = 0; i < data.length(); i++) {
+            if (data.charAt(i) == ':') {
+                numDs++;
+            }
+        }
+        if (numDs == 0) {
+            throw new IllegalArgumentException("Invalid update for file " + fileName + ": " + data);
+        }
+
+        // Parse the update outside of the lock
+        final long[] values = new long[numDs];
+        final byte[] kinds = new byte[numDs];
+        final long timestamp = parseUpdate(data, values, kinds);
+
+        m_lock.lock();
+        try {
+            PendingUpdates pending = m_pendingFiles.get(fileName);
+            if (pending == null) {
+                pending = new PendingUpdates(fileName, numDs);
+                if (!makeRoom(pending.getMemory(), null)) {
+                    dropped(fileName, 1);
+                    return;
+                }
+                m_pendingFiles.put(fileName, pending);
+                m_pendingMemory += pending.getMemory();
+            } else if (pending.getNumDs() != numDs) {
+                m_rejectedUpdates++;
+                throw new IllegalArgumentException("Update for file " + fileName + " has " + numDs
+                        + " values, but the pending updates have " + pending.getNumDs() + ": " + data);
+            } else if (pending.getLastTimestamp() == timestamp) {
+                // The file can only hold a single update per timestamp, keep the last one
+                pending.replaceLast(values, kinds);
+                m_enqueuedUpdates++;
+                m_coalescedUpdates++;
+                return;
+            }
+
+            if (!pending.hasRoom()) {
+                if (makeRoom(pending.memoryFor(pending.capacity()), pending)) {
+                    m_pendingMemory += pending.grow();
+                } else {
+                    // This is the only file left, drop its oldest update instead
+                    m_pendingMemory -= pending.dropOldest();
+                    m_pendingUpdates--;
+                    dropped(fileName, 1);
+                    pending.hasRoom();
+                }
+            }
+            pending.add(timestamp, values, kinds);
+            m_pendingUpdates++;
+            m_enqueuedUpdates++;
+            m_workAvailable.signal();
+            ensureThreadsStarted();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the oldest updates of the files that have been waiting the longest until
+     * the given number of bytes are available.
+     *
+     * @param exclude a file whose updates should not be dropped
+     * @return false if there is not enough room after dropping all the other updates
+     */
+    private boolean makeRoom(long bytes, PendingUpdates exclude) {
+        while (m_pendingMemory + bytes > m_maxMemory) {
+            PendingUpdates oldest = null;
+            for (Iterator<PendingUpdates> it = m_pendingFiles.values().iterator(); it.hasNext() && oldest == null;) {
+                final PendingUpdates candidate = it.next();
+                if (candidate != exclude) {
+                    oldest = candidate;
+                }
+            }
+            if (oldest == null) {
+                return false;
+            }
+
+            m_pendingMemory -= oldest.dropOldest();
+            m_pendingUpdates--;
+            dropped(oldest.getFileName(), 1);
+            if (oldest.size() == 0) {
+                m_pendingFiles.remove(oldest.getFileName());
+                m_pendingMemory -= oldest.getMemory();
+            }
+        }
+        return true;
+    }
+
+    private void dropped(String fileName, int count) {
+        if (m_droppedUpdates == 0 || m_droppedUpdates % m_modulus == 0) {
+            LOG.warn("The queue has reached its maximum size of {} bytes. Dropping the oldest updates, starting with file {}.", m_maxMemory, fileName);
+        }
+        m_droppedUpdates += count;
+    }
+
+    private void ensureThreadsStarted() {
+        while (m_threads.size() < m_writeThreads) {
+            final Thread thread = new Thread(this::processPendingUpdates, getClass().getSimpleName() + "-" + (m_threads.size() + 1));
+            thread.setDaemon(true);
+            thread.start();
+            m_threads.add(thread);
+        }
+    }
+
+    /**
+     * Run by the write threads.
+     */
+    private void processPendingUpdates() {
+        Logging.withPrefix(m_category, new Runnable() {
+            @Override
+            public void run() {
+                PendingUpdates pending = null;
+                while (true) {
+                    try {
+                        pending = takeNext(pending);
+                    } catch (InterruptedException e) {
+                        LOG.debug("Interrupted while waiting for updates, exiting.");
+                        return;
+                    }
+                    write(pending);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for a file that is not being written by another thread and takes its pending updates.
+     *
+     * @param previous the updates that were written last by the current thread
+     */
+    private PendingUpdates takeNext(PendingUpdates previous) throws InterruptedException {
+        m_lock.lock();
+        try {
+            if (previous != null) {
+                m_filesBeingWritten.remove(previous.getFileName());
+                if (m_pendingFiles.containsKey(previous.getFileName())) {
+                    // More updates were enqueued while writing, they may be waiting for us
+                    m_workAvailable.signal();
+                }
+            }
+
+            PendingUpdates next;
+            while ((next = selectNext()) == null) {
+                m_workAvailable.await();
+            }
+            m_pendingFiles.remove(next.getFileName());
+            m_filesBeingWritten.add(next.getFileName());
+            m_pendingMemory -= next.getMemory();
+            m_pendingUpdates -= next.size();
+            return next;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    private PendingUpdates selectNext() {
+        for (Iterator<String> it = m_promotedFiles.iterator(); it.hasNext();) {
+            final String fileName = it.next();
+            final PendingUpdates pending = m_pendingFiles.get(fileName);
+            if (pending == null) {
+                it.remove();
+            } else if (!m_filesBeingWritten.contains(fileName)) {
+                it.remove();
+                return pending;
+            }
+        }
+        for (PendingUpdates pending : m_pendingFiles.values()) {
+            if (!m_filesBeingWritten.contains(pending.getFileName())) {
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    private void write(PendingUpdates pending) {
+        Object rrd = null;
+        try {
+            rrd = m_delegate.openFile(pending.getFileName());
+            for (int i = 0; i < pending.size(); i++) {
+                final String update = pending.getUpdate(i);
+                try {
+                    m_delegate.updateFile(rrd, "", update);
+                } catch (Throwable e) {
+                    // Continue with the remaining updates, this one may just be out of order
+                    m_errors.incrementAndGet();
+                    LOG.debug("Error processing update for file {}: {}", pending.getFileName(), update, e);
+                }
+                if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
+                    LOG.debug("{}", getStats());
+                }
+            }
+            m_filesWritten.incrementAndGet();
+        } catch (Throwable e) {
+            m_errors.incrementAndGet();
+            LOG.debug("Error updating file {}: {}", pending.getFileName(), e.getMessage(), e);
+        } finally {
+            if (rrd != null) {
+                try {
+                    m_delegate.closeFile(rrd);
+                } catch (Throwable e) {
+                    m_errors.incrementAndGet();
+                    LOG.debug("Error closing rrd {}: {}", rrd, e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses an update of the form {@code timestamp:value[:value]*} into the given arrays.
+     *
+     * @return the timestamp of the update in seconds
+     */
+    static long parseUpdate(String data, long[] values, byte[] kinds) {
+        int colon = data.indexOf(':');
+        final String timestamp = data.substring(0, colon);
+        final long seconds;
+        try {
+            seconds = "N".equals(timestamp) ? TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) : Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid timestamp in update: " + data, e);
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            if (colon < 0) {
+                throw new IllegalArgumentException("Expected " + values.length + " values in update: " + data);
+            }
+            final int start = colon + 1;
+            colon = data.indexOf(':', start);
+            final String value = data.substring(start, colon < 0 ? data.length() : colon);
+            try {
+                parseValue(value, values, kinds, i);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value '" + value + "' in update: " + data, e);
+            }
+        }
+        return seconds;
+    }
+
+    private static void parseValue(String value, long[] values, byte[] kinds, int i) {
+        if ("U".equals(value)) {
+            kinds[i] = UNKNOWN;
+            return;
+        }
+        if (isInteger(value)) {
+            try {
+                values[i] = Long.parseLong(value);
+                kinds[i] = LONG;
+                return;
+            } catch (NumberFormatException e) {
+                if (value.charAt(0) != '-') {
+                    // Counters may exceed Long.MAX_VALUE
+                    values[i] = Long.parseUnsignedLong(value.charAt(0) == '+' ? value.substring(1) : value);
+                    kinds[i] = UNSIGNED_LONG;
+                    return;
+                }
+            }
+        }
+        values[i] = Double.doubleToRawLongBits(Double.parseDouble(value));
+        kinds[i] = DOUBLE;
+    }
+
+    private static boolean isInteger(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if ((c < '0' || c > '9') && !(i == 0 && (c == '-' || c == '+') && value.length() > 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendValue(StringBuilder sb, byte kind, long value) {
+        switch (kind) {
+            case LONG:
+                sb.append(value);
+                break;
+            case UNSIGNED_LONG:
+                sb.append(Long.toUnsignedString(value));
+                break;
+            case DOUBLE:
+                final double d = Double.longBitsToDouble(value);
+                // Avoid the scientific notation of Double.toString()
+                sb.append(Double.isFinite(d) ? BigDecimal.valueOf(d).stripTrailingZeros().toPlainString() : Double.toString(d));
+                break;
+            default:
+                sb.append('U');
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        m_lock.lock();
+        try {
+            final List<String> files = new ArrayList<>(rrdFiles);
+            for (int i = files.size() - 1; i >= 0; i--) {
+                m_promotedFiles.addFirst(files.get(i));
+            }
+            m_workAvailable.signal();
+        } finally {
+            m_lock.unlock();
+        }
+        m_delegate.promoteEnqueuedFiles(rrdFiles);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValue(String rrdFile, String ds, int interval) throws NumberFormatException, RrdException {
+        return m_delegate.fetchLastValue(rrdFile, ds, interval);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValue(String rrdFile, String ds, String consolidationFunction, int interval) throws NumberFormatException, RrdException {
+        return m_delegate.fetchLastValue(rrdFile, ds, consolidationFunction, interval);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Double fetchLastValueInRange(String rrdFile, String ds, int interval, int range) throws NumberFormatException, RrdException {
+        return m_delegate.fetchLastValueInRange(rrdFile, ds, interval, range);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public InputStream createGraph(String command, File workDir) throws IOException, RrdException {
+        return m_delegate.createGraph(command, workDir);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RrdGraphDetails createGraphReturnDetails(String command, File workDir) throws IOException, RrdException {
+        return m_delegate.createGraphReturnDetails(command, workDir);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphLeftOffset() {
+        return m_delegate.getGraphLeftOffset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphRightOffset() {
+        return m_delegate.getGraphRightOffset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getGraphTopOffsetWithText() {
+        return m_delegate.getGraphTopOffsetWithText();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDefaultFileExtension() {
+        return m_delegate.getDefaultFileExtension();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        m_lock.lock();
+        try {
+            stats.put("filesPending", m_pendingFiles.size());
+            stats.put("updatesPending", m_pendingUpdates);
+            stats.put("memoryPending", m_pendingMemory);
+            stats.put("maxMemory", m_maxMemory);
+            stats.put("updatesEnqueued", m_enqueuedUpdates);
+            stats.put("updatesCoalesced", m_coalescedUpdates);
+            stats.put("updatesDropped", m_droppedUpdates);
+            stats.put("updatesRejected", m_rejectedUpdates);
+        } finally {
+            m_lock.unlock();
+        }
+        stats.put("updatesCompleted", m_updatesCompleted.get());
+        stats.put("filesWritten", m_filesWritten.get());
+        stats.put("errors", m_errors.get());
+        return "\nQS:\t" + stats.toString();
+    }
+
+    public long getPendingUpdates() {
+        m_lock.lock();
+        try {
+            return m_pendingUpdates;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    public long getPendingMemory() {
+        m_lock.lock();
+        try {
+            return m_pendingMemory;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    public long getDroppedUpdates() {
+        m_lock.lock();
+        try {
+            return m_droppedUpdates;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    public long getUpdatesCompleted() {
+        return m_updatesCompleted.get();
+    }
+
+    public long getErrors() {
+        return m_errors.get();
+    }
+}
@@ -101,7 +101,8 @@ import org.slf4j.LoggerFactory;
  * TODO: Promote files when ZeroUpdate operations can't be merged. This may be a
  * collection miss which we want to push thru. It should also help with memory.
  *
- * TODO: Set an upper bound on enqueued operations
+ * TODO: Set an upper bound on enqueued operations. The {@link CoalescingRrdStrategy}
+ * can be used instead when the memory used by the queue must be bounded.
  *
  * TODO: Provide an event that will write data for a particular file... Say
  * right before we try to graph it.
@@ -46,8 +46,10 @@ public class RrdStrategyFactory implements ApplicationContextAware {
     private static enum StrategyName {
         basicRrdStrategy,
         queuingRrdStrategy,
+        coalescingRrdStrategy,
         tcpAndBasicRrdStrategy,
-        tcpAndQueuingRrdStrategy
+        tcpAndQueuingRrdStrategy,
+        tcpAndCoalescingRrdStrategy
     }
 
     @Override
@@ -65,8 +67,15 @@ public class RrdStrategyFactory implements ApplicationContextAware {
         RrdStrategy<D, F> rrdStrategy = null;
         Boolean useQueue = (Boolean) m_context.getBean("useQueue");
         Boolean useTcp = (Boolean) m_context.getBean("useTcp");
+        Boolean useCoalescingQueue = (Boolean) m_context.getBean("useCoalescingQueue");
 
-        if (useQueue) {
+        if (useQueue && useCoalescingQueue) {
+            if (useTcp) {
+                rrdStrategy = (RrdStrategy<D, F>) m_context.getBean(StrategyName.tcpAndCoalescingRrdStrategy.toString());
+            } else {
+                rrdStrategy = (RrdStrategy<D, F>) m_context.getBean(StrategyName.coalescingRrdStrategy.toString());
+            }
+        } else if (useQueue) {
             if (useTcp) {
                 rrdStrategy = (RrdStrategy<D, F>) m_context.getBean(StrategyName.tcpAndQueuingRrdStrategy.toString());
             } else {
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CoalescingRrdStrategyTest {
+
+    private final BlockingRrdStrategy m_delegate = new BlockingRrdStrategy();
+
+    private final CoalescingRrdStrategy m_strategy = new CoalescingRrdStrategy(m_delegate);
+
+    @After
+    public void tearDown() {
+        m_delegate.release();
+    }
+
+    @Test
+    public void canParseAndFormatUpdates() {
+        final String update = "1500000000:U:42:-7:18446744073709551615:0.125:12345.678:0.00001:100.0";
+        final long[] values = new long[8];
+        final byte[] kinds = new byte[8];
+        assertEquals(1500000000L, CoalescingRrdStrategy.parseUpdate(update, values, kinds));
+
+        final CoalescingRrdStrategy.PendingUpdates pending = new CoalescingRrdStrategy.PendingUpdates("file.jrb", 8);
+        pending.add(1500000000L, values, kinds);
+        assertEquals("1500000000:U:42:-7:18446744073709551615:0.125:12345.678:0.00001:100", pending.getUpdate(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidValues() throws Exception {
+        m_strategy.updateFile("file.jrb", "test", "1500000000:abc");
+    }
+
+    @Test
+    public void updatesAreCoalescedPerFile() throws Exception {
+        m_strategy.setWriteThreads(1);
+
+        // Block the only write thread on the first file
+        m_strategy.updateFile("blocker.jrb", "test", "1500000000:1");
+        m_delegate.awaitBlocked();
+
+        for (int i = 0; i < 10; i++) {
+            m_strategy.updateFile("a.jrb", "test", (1500000000 + i * 300) + ":" + i + ":" + (i * 2));
+            m_strategy.updateFile("b.jrb", "test", (1500000000 + i * 300) + ":" + i);
+        }
+        // Same timestamp as the last update, replaces its values
+        m_strategy.updateFile("b.jrb", "test", (1500000000 + 9 * 300) + ":99");
+        assertEquals(20, m_strategy.getPendingUpdates());
+
+        m_delegate.release();
+        m_delegate.awaitUpdates(21);
+
+        // Files are written in the order in which they were enqueued, with a single open per file
+        assertEquals(Arrays.asList("blocker.jrb", "a.jrb", "b.jrb"), m_delegate.getOpenedFiles());
+        final List<String> updates = m_delegate.getUpdates();
+        assertEquals("a.jrb 1500000000:0:0", updates.get(1));
+        assertEquals("a.jrb 1500002700:9:18", updates.get(10));
+        assertEquals("b.jrb 1500000000:0", updates.get(11));
+        assertEquals("b.jrb 1500002700:99", updates.get(20));
+        assertEquals(0, m_strategy.getPendingUpdates());
+    }
+
+    @Test
+    public void oldestUpdatesAreDroppedWhenMemoryIsFull() throws Exception {
+        m_strategy.setWriteThreads(1);
+        m_strategy.setMaxMemory(4096);
+
+        m_strategy.updateFile("blocker.jrb", "test", "1500000000:1");
+        m_delegate.awaitBlocked();
+
+        for (int i = 0; i < 1000; i++) {
+            m_strategy.updateFile("file" + (i % 10) + ".jrb", "test", (1500000000 + (i / 10) * 300) + ":" + i);
+            assertTrue(m_strategy.getPendingMemory() <= 4096);
+        }
+        assertTrue(m_strategy.getDroppedUpdates() > 0);
+        assertEquals(1000, m_strategy.getPendingUpdates() + m_strategy.getDroppedUpdates());
+
+        m_delegate.release();
+        m_delegate.awaitUpdates(1 + m_strategy.getPendingUpdates());
+
+        // The most recent updates were kept
+        assertTrue(m_delegate.getUpdates().contains("file9.jrb 1500029700:999"));
+    }
+
+    @Test
+    public void promotedFilesAreWrittenFirst() throws Exception {
+        m_strategy.setWriteThreads(1);
+
+        m_strategy.updateFile("blocker.jrb", "test", "1500000000:1");
+        m_delegate.awaitBlocked();
+
+        m_strategy.updateFile("a.jrb", "test", "1500000000:1");
+        m_strategy.updateFile("b.jrb", "test", "1500000000:1");
+        m_strategy.promoteEnqueuedFiles(Collections.singletonList("b.jrb"));
+
+        m_delegate.release();
+        m_delegate.awaitUpdates(3);
+        assertEquals(Arrays.asList("blocker.jrb", "b.jrb", "a.jrb"), m_delegate.getOpenedFiles());
+    }
+
+    /**
+     * Records the updates, and blocks on the first file that is opened until released.
+     */
+    private static class BlockingRrdStrategy extends NullRrdStrategy {
+        private final CountDownLatch m_blocked = new CountDownLatch(1);
+        private final CountDownLatch m_released = new CountDownLatch(1);
+        private final List<String> m_openedFiles = new ArrayList<>();
+        private final List<String> m_updates = new ArrayList<>();
+
+        @Override
+        public Object openFile(String fileName) {
+            m_blocked.countDown();
+            try {
+                m_released.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            synchronized (this) {
+                m_openedFiles.add(fileName);
+            }
+            return fileName;
+        }
+
+        @Override
+        public synchronized void updateFile(Object rrd, String owner, String data) {
+            m_updates.add(rrd + " " + data);
+            notifyAll();
+        }
+
+        private void awaitBlocked() throws InterruptedException {
+            assertTrue(m_blocked.await(10, TimeUnit.SECONDS));
+        }
+
+        private void release() {
+            m_released.countDown();
+        }
+
+        private synchronized void awaitUpdates(long count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (m_updates.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertEquals(count, m_updates.size());
+        }
+
+        private synchronized List<String> getOpenedFiles() {
+            return new ArrayList<>(m_openedFiles);
+        }
+
+        private synchronized List<String> getUpdates() {
+            return new ArrayList<>(m_updates);
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.jrobin.core.FetchData;
 import org.jrobin.core.RrdDb;
 import org.jrobin.core.RrdDef;
 import org.jrobin.core.RrdException;
+import org.jrobin.core.RrdNioBackendFactory;
 import org.jrobin.core.Sample;
 import org.jrobin.data.DataProcessor;
 import org.jrobin.data.Plottable;
@@ -57,6 +58,7 @@ import org.opennms.netmgt.rrd.RrdGraphDetails;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 
 
 /**
@@ -64,13 +66,21 @@ import org.slf4j.LoggerFactory;
  * FILE mode (NIO is too memory consuming for the large number of files that we
  * open)
  *
+ * When org.opennms.rrd.jrobin.maxOpenFiles is set, the files are kept open
+ * between updates in a bounded cache of memory-mapped (NIO) handles instead of
+ * being opened and closed for every update. The mapped files are synchronized
+ * to disk every org.opennms.rrd.jrobin.syncPeriod seconds, when they are evicted
+ * from the cache, and when the strategy is destroyed.
+ *
  * @author ranger
  * @version $Id: $
  */
-public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
+public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb>, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
+    private static final String MAX_OPEN_FILES_PROPERTY = "org.opennms.rrd.jrobin.maxOpenFiles";
+    private static final String SYNC_PERIOD_PROPERTY = "org.opennms.rrd.jrobin.syncPeriod";
 
     /*
      * Ensure that we only initialize certain things *once* per
@@ -80,6 +90,13 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
 
     private Properties m_configurationProperties;
 
+    /**
+     * Open files, or null if files are opened and closed for every update.
+     */
+    private RrdDbCache m_openFiles;
+
+    private Thread m_shutdownHook;
+
     /**
      * An extremely simple Plottable for holding static datasources that
      * can't be represented with an SDEF -- currently used only for PERCENT
@@ -136,6 +153,50 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
         }
+        setUpOpenFiles();
+    }
+
+    private synchronized void setUpOpenFiles() {
+        if (m_openFiles != null || m_configurationProperties == null) {
+            return;
+        }
+        final int maxOpenFiles = Integer.parseInt(m_configurationProperties.getProperty(MAX_OPEN_FILES_PROPERTY, "0"));
+        if (maxOpenFiles <= 0) {
+            return;
+        }
+        final int syncPeriod = Integer.parseInt(m_configurationProperties.getProperty(SYNC_PERIOD_PROPERTY, "300"));
+        if (syncPeriod <= 0) {
+            throw new IllegalArgumentException(SYNC_PERIOD_PROPERTY + " must be positive");
+        }
+        RrdNioBackendFactory.setSyncPeriod(syncPeriod);
+        LOG.info("Keeping up to {} RRD files open, synchronized every {} seconds.", maxOpenFiles, syncPeriod);
+
+        m_openFiles = new RrdDbCache(maxOpenFiles, new RrdNioBackendFactory());
+        // Make sure that the mapped files are synchronized if we aren't destroyed
+        m_shutdownHook = new Thread(m_openFiles::close, getClass().getSimpleName() + "-Shutdown");
+        Runtime.getRuntime().addShutdownHook(m_shutdownHook);
+    }
+
+    /**
+     * Closes the files that are kept open.
+     */
+    @Override
+    public synchronized void destroy() {
+        if (m_openFiles == null) {
+            return;
+        }
+        m_openFiles.close();
+        m_openFiles = null;
+        try {
+            Runtime.getRuntime().removeShutdownHook(m_shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down
+        }
+        m_shutdownHook = null;
+    }
+
+    private synchronized RrdDbCache getOpenFiles() {
+        return m_openFiles;
     }
 
     /**
@@ -146,7 +207,13 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        final RrdDbCache openFiles = getOpenFiles();
+        if (openFiles != null) {
+            // Keep the file open for the next updates
+            openFiles.release(rrdFile);
+        } else {
+            rrdFile.close();
+        }
     }
 
     /** {@inheritDoc} */
@@ -201,6 +268,11 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
+        final RrdDbCache openFiles = getOpenFiles();
+        if (openFiles != null) {
+            // The file was deleted while it was open
+            openFiles.invalidate(rrdDef.getPath());
+        }
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
     }
@@ -212,6 +284,10 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
+        final RrdDbCache openFiles = getOpenFiles();
+        if (openFiles != null) {
+            return openFiles.acquire(fileName);
+        }
         return new RrdDb(fileName);
     }
 
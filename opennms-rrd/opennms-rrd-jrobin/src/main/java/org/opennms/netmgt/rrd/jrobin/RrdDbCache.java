@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jrobin.core.RrdBackendFactory;
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of open {@link RrdDb} handles, evicted in least recently used order.
+ *
+ * Handles are reference counted, a handle is only closed once it was evicted and
+ * every caller that acquired it has released it. Handles that are in use are never
+ * evicted, so that there is never more than one open handle per file.
+ */
+class RrdDbCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RrdDbCache.class);
+
+    private final int m_maxOpenFiles;
+
+    private final RrdBackendFactory m_factory;
+
+    /**
+     * Handles by path, in access order.
+     */
+    private final LinkedHashMap<String, Handle> m_handles = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<RrdDb, Handle> m_handlesByDb = new IdentityHashMap<>();
+
+    private boolean m_closed = false;
+
+    private long m_hits = 0;
+
+    private long m_misses = 0;
+
+    private static class Handle {
+        private final String m_path;
+        private final RrdDb m_db;
+        private int m_references = 0;
+        private boolean m_evicted = false;
+
+        private Handle(String path, RrdDb db) {
+            m_path = path;
+            m_db = db;
+        }
+    }
+
+    RrdDbCache(int maxOpenFiles, RrdBackendFactory factory) {
+        m_maxOpenFiles = maxOpenFiles;
+        m_factory = factory;
+    }
+
+    /**
+     * Returns the open handle for the given file, opening it if necessary.
+     *
+     * Every call must be followed by a call to {@link #release(RrdDb)}.
+     */
+    RrdDb acquire(String path) throws IOException, RrdException {
+        synchronized (this) {
+            final Handle handle = m_handles.get(path);
+            if (handle != null) {
+                m_hits++;
+                handle.m_references++;
+                return handle.m_db;
+            }
+            m_misses++;
+        }
+
+        // Open the file outside of the lock, the callers serialize the access to a file
+        final RrdDb db = new RrdDb(path, m_factory);
+        synchronized (this) {
+            Handle handle = m_handles.get(path);
+            if (handle != null) {
+                // Opened concurrently, use the existing handle
+                closeQuietly(path, db);
+            } else {
+                handle = new Handle(path, db);
+                if (m_closed) {
+                    // Not cached anymore, the handle is closed once released
+                    handle.m_evicted = true;
+                } else {
+                    m_handles.put(path, handle);
+                }
+                m_handlesByDb.put(db, handle);
+            }
+            // Reference the handle before evicting, so that it isn't evicted itself
+            handle.m_references++;
+            evict();
+            return handle.m_db;
+        }
+    }
+
+    /**
+     * Releases a handle that was returned by {@link #acquire(String)}.
+     */
+    synchronized void release(RrdDb db) throws IOException {
+        final Handle handle = m_handlesByDb.get(db);
+        if (handle == null) {
+            // Not opened by the cache
+            db.close();
+            return;
+        }
+        handle.m_references--;
+        if (handle.m_evicted && handle.m_references <= 0) {
+            m_handlesByDb.remove(db);
+            db.close();
+        }
+    }
+
+    /**
+     * Closes the cached handle of the given file, i.e. when the file is being replaced.
+     */
+    synchronized void invalidate(String path) {
+        final Handle handle = m_handles.remove(path);
+        if (handle != null) {
+            evicted(handle);
+        }
+    }
+
+    /**
+     * Closes all of the handles which are not in use, and the others as soon as they are released.
+     */
+    synchronized void close() {
+        m_closed = true;
+        final List<Handle> handles = new ArrayList<>(m_handles.values());
+        m_handles.clear();
+        for (Handle handle : handles) {
+            evicted(handle);
+        }
+        LOG.info("Closed {} cached RRD files.", handles.size());
+    }
+
+    synchronized int size() {
+        return m_handles.size();
+    }
+
+    synchronized long getHits() {
+        return m_hits;
+    }
+
+    synchronized long getMisses() {
+        return m_misses;
+    }
+
+    private void evict() {
+        for (Iterator<Handle> it = m_handles.values().iterator(); it.hasNext() && m_handles.size() > m_maxOpenFiles;) {
+            final Handle handle = it.next();
+            if (handle.m_references == 0) {
+                it.remove();
+                evicted(handle);
+            }
+        }
+    }
+
+    private void evicted(Handle handle) {
+        handle.m_evicted = true;
+        if (handle.m_references <= 0) {
+            m_handlesByDb.remove(handle.m_db);
+            closeQuietly(handle.m_path, handle.m_db);
+        }
+    }
+
+    private static void closeQuietly(String path, RrdDb db) {
+        try {
+            db.close();
+        } catch (IOException e) {
+            LOG.error("Failed to close rrd file: {}", path, e);
+        }
+    }
+}
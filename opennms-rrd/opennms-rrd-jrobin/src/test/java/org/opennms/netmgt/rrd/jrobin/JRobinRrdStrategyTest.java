@@ -31,6 +31,8 @@ package org.opennms.netmgt.rrd.jrobin;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -38,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Properties;
 
 import org.jrobin.core.RrdDb;
 import org.jrobin.core.RrdDef;
@@ -175,6 +178,49 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testUpdateWithOpenFiles() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty("org.jrobin.core.RrdBackendFactory", "FILE");
+        properties.setProperty("org.opennms.rrd.jrobin.maxOpenFiles", "1");
+        properties.setProperty("org.opennms.rrd.jrobin.syncPeriod", "1");
+        final JRobinRrdStrategy strategy = (JRobinRrdStrategy) m_strategy;
+        strategy.setConfigurationProperties(properties);
+        try {
+            File rrdFile = createRrdFile();
+            final long start = System.currentTimeMillis() / 1000 / 300 * 300;
+
+            RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+            m_strategy.updateFile(openedFile, "test", start + ":1");
+            m_strategy.closeFile(openedFile);
+
+            // The file is kept open between the updates
+            RrdDb reopenedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+            assertSame(openedFile, reopenedFile);
+            m_strategy.updateFile(reopenedFile, "test", (start + 300) + ":2");
+            m_strategy.updateFile(reopenedFile, "test", (start + 600) + ":3");
+            m_strategy.closeFile(reopenedFile);
+
+            // Replacing the file closes the open handle
+            assertTrue(rrdFile.delete());
+            m_strategy.createFile(createDefinition());
+            RrdDb recreatedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+            assertNotSame(openedFile, recreatedFile);
+            m_strategy.updateFile(recreatedFile, "test", start + ":4");
+            m_strategy.closeFile(recreatedFile);
+        } finally {
+            strategy.destroy();
+        }
+
+        // The updates were written to disk when the files were closed
+        RrdDb rrdDb = new RrdDb(new File(m_fileAnticipator.getTempDir(), "foo" + m_strategy.getDefaultFileExtension()).getAbsolutePath(), true);
+        try {
+            assertEquals(4.0, rrdDb.getDatasource("bar").getLastValue(), 0.0);
+        } finally {
+            rrdDb.close();
+        }
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
@@ -524,13 +570,16 @@ public class JRobinRrdStrategyTest {
         m_fileAnticipator.initialize();
         String rrdExtension = m_strategy.getDefaultFileExtension();
         
+        m_strategy.createFile(createDefinition());
+        
+        return m_fileAnticipator.expecting(rrdFileBase + rrdExtension);
+    }
+
+    private RrdDef createDefinition() throws Exception {
         List<RrdDataSource> dataSources = new ArrayList<>();
         dataSources.add(new RrdDataSource("bar", RrdAttributeType.GAUGE, 3000, "U", "U"));
         List<String> rraList = new ArrayList<>();
         rraList.add("RRA:AVERAGE:0.5:1:2016");
-        RrdDef def = m_strategy.createDefinition("hello!", m_fileAnticipator.getTempDir().getAbsolutePath(), rrdFileBase, 300, dataSources, rraList);
-        m_strategy.createFile(def);
-        
-        return m_fileAnticipator.expecting(rrdFileBase + rrdExtension);
+        return m_strategy.createDefinition("hello!", m_fileAnticipator.getTempDir().getAbsolutePath(), "foo", 300, dataSources, rraList);
     }
 }
@@ -29,7 +29,8 @@
 package org.opennms.netmgt.collectd.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.threshd.ThresholdStateStore;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
@@ -144,11 +145,27 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
         return getDaemon().getCollectableServiceCount();
     }
     
+    @Override
+    public long getThresholdStateCount() {
+        return ThresholdStateStore.getInstance().size();
+    }
+
+    @Override
+    public long getThresholdStateMemoryUsage() {
+        return ThresholdStateStore.getInstance().getMemoryUsage();
+    }
+
+    @Override
+    public long getThresholdStateEvictions() {
+        return ThresholdStateStore.getInstance().getEvictionCount();
+    }
+
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        return (ThreadPoolExecutor) getDaemon().getScheduler().getRunner();
     }
 
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        final Scheduler scheduler = getDaemon().getScheduler();
+        return scheduler != null && scheduler.getRunner() instanceof ThreadPoolExecutor;
     }
 }
@@ -86,4 +86,19 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The number of pending tasks
      */
     public long getTaskQueueRemainingCapacity();
+
+    /**
+     * @return The number of threshold evaluator states kept in memory
+     */
+    public long getThresholdStateCount();
+
+    /**
+     * @return The number of bytes used by the threshold evaluator states
+     */
+    public long getThresholdStateMemoryUsage();
+
+    /**
+     * @return The cumulative number of threshold evaluator states evicted since they were not updated within their TTL
+     */
+    public long getThresholdStateEvictions();
 }
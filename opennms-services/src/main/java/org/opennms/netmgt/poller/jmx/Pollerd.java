@@ -31,7 +31,7 @@ package org.opennms.netmgt.poller.jmx;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.Scheduler;
 
 /**
  * <p>Pollerd class.</p>
@@ -140,10 +140,11 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
     }
     
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        return (ThreadPoolExecutor) getDaemon().getScheduler().getRunner();
     }
     
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        final Scheduler scheduler = getDaemon().getScheduler();
+        return scheduler != null && scheduler.getRunner() instanceof ThreadPoolExecutor;
     }
 }
@@ -28,6 +28,9 @@
 
 package org.opennms.netmgt.poller.pollables;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.scheduler.Timer;
 
@@ -47,6 +50,33 @@ public interface PollConfig extends Timer {
      */
     public PollStatus poll();
 
+    /**
+     * <p>pollAsync</p>
+     *
+     * @return a future that completes with the {@link org.opennms.netmgt.poller.PollStatus}
+     */
+    public default CompletableFuture<PollStatus> pollAsync() {
+        return CompletableFuture.completedFuture(poll());
+    }
+
+    /**
+     * <p>getExecutor</p>
+     *
+     * @return the executor used to process the results of {@link #pollAsync()}
+     */
+    public default Executor getExecutor() {
+        return Runnable::run;
+    }
+
+    /**
+     * <p>isAsync</p>
+     *
+     * @return true if {@link #pollAsync()} does not block the calling thread
+     */
+    public default boolean isAsync() {
+        return false;
+    }
+
     /**
      * <p>getCurrentTime</p>
      *
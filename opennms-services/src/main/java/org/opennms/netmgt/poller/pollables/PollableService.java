@@ -31,13 +31,14 @@ package org.opennms.netmgt.poller.pollables;
 import java.net.InetAddress;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
+import org.opennms.netmgt.scheduler.AsyncReadyRunnable;
 import org.opennms.netmgt.scheduler.PostponeNecessary;
-import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.xml.event.Event;
 import org.slf4j.Logger;
@@ -48,7 +49,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author <a href="mailto:brozow@opennms.org">Mathew Brozowski</a>
  */
-public class PollableService extends PollableElement implements ReadyRunnable, MonitoredService {
+public class PollableService extends PollableElement implements AsyncReadyRunnable, MonitoredService {
     
     private static final Logger LOG = LoggerFactory.getLogger(PollableService.class);
 
@@ -379,6 +380,52 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
         doRun(500);
     }
     
+    /**
+     * <p>runAsync</p>
+     *
+     * Polls without holding on to the scheduler's thread when the poll can complete
+     * asynchronously. Polls that require node processing need the tree lock for their
+     * whole duration and are always run synchronously.
+     */
+    @Override
+    public CompletableFuture<Void> runAsync() {
+        if (getContext().isNodeProcessingEnabled() || !m_pollConfig.isAsync()) {
+            run();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final Map<String, String> mdc = Logging.getCopyOfContextMap();
+        try {
+            putThreadContext();
+            final long startDate = System.currentTimeMillis();
+            LOG.debug("Start Scheduled Poll of service {}", this);
+            resetStatusChanged();
+            // Process the result on the poller's threads, not on the thread that completed the poll
+            return m_pollConfig.pollAsync().thenAcceptAsync(newStatus -> {
+                final Map<String, String> callbackMdc = Logging.getCopyOfContextMap();
+                try {
+                    putThreadContext();
+                    if (!newStatus.isUnknown()) {
+                        updateStatus(newStatus);
+                    }
+                    processStatusChange(new Date());
+                    LOG.debug("Finish Scheduled Poll of service {}, started at {}", this, new Date(startDate));
+                } finally {
+                    Logging.setContextMap(callbackMdc);
+                }
+            }, m_pollConfig.getExecutor());
+        } finally {
+            Logging.setContextMap(mdc);
+        }
+    }
+
+    private void putThreadContext() {
+        Logging.putThreadContext("service", m_svcName);
+        Logging.putThreadContext("ipAddress", getIpAddr());
+        Logging.putThreadContext("nodeId", Integer.toString(getNodeId()));
+        Logging.putThreadContext("nodeLabel", getNodeLabel());
+    }
+
     /**
      * <p>doRun</p>
      *
@@ -391,10 +438,7 @@ public class PollableService extends PollableElement implements ReadyRunnable, M
     private PollStatus doRun(int timeout) {
         final Map<String, String> mdc = Logging.getCopyOfContextMap();
         try {
-            Logging.putThreadContext("service", m_svcName);
-            Logging.putThreadContext("ipAddress", getIpAddr());
-            Logging.putThreadContext("nodeId", Integer.toString(getNodeId()));
-            Logging.putThreadContext("nodeLabel", getNodeLabel());
+            putThreadContext();
             long startDate = System.currentTimeMillis();
             LOG.debug("Start Scheduled Poll of service {}", this);
             PollStatus status;
@@ -30,11 +30,14 @@ package org.opennms.netmgt.poller.pollables;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.opennms.core.rpc.api.RpcExceptionHandler;
 import org.opennms.core.rpc.api.RpcExceptionUtils;
+import org.opennms.core.utils.LocationUtils;
 import org.opennms.netmgt.collection.api.PersisterFactory;
 import org.opennms.netmgt.config.PollOutagesConfig;
 import org.opennms.netmgt.config.PollerConfig;
@@ -43,10 +46,12 @@ import org.opennms.netmgt.config.poller.Package;
 import org.opennms.netmgt.config.poller.Parameter;
 import org.opennms.netmgt.config.poller.Service;
 import org.opennms.netmgt.dao.api.ResourceStorageDao;
+import org.opennms.netmgt.poller.AsyncServiceMonitor;
 import org.opennms.netmgt.poller.LocationAwarePollerClient;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.scheduler.ScheduleInterval;
+import org.opennms.netmgt.scheduler.Scheduler;
 import org.opennms.netmgt.scheduler.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -116,53 +121,103 @@ public class PollableServiceConfig implements PollConfig, ScheduleInterval {
     @Override
     public PollStatus poll() {
         try {
-            final String packageName = getPackageName();
-            // Use the service's configured interval as the TTL for this request
-            final Long ttlInMs = m_configService.getInterval();
-            LOG.debug("Polling {} with TTL {} using pkg {}",
-                    m_service, ttlInMs, packageName);
-
-            PollStatus result = m_locationAwarePollerClient.poll()
-                .withService(m_service)
-                .withMonitor(m_serviceMonitor)
-                .withTimeToLive(ttlInMs)
-                .withAttributes(getParameters())
-                .withAdaptor(m_latencyStoringServiceMonitorAdaptor)
-                .withAdaptor(m_invertedStatusServiceMonitorAdaptor)
-                .execute()
-                .get().getPollStatus();
-            LOG.debug("Finish polling {} using pkg {} result = {}", m_service, packageName, result);
-            return result;
+            return execute().get();
         } catch (Throwable e) {
-            return RpcExceptionUtils.handleException(e, new RpcExceptionHandler<PollStatus>() {
-                @Override
-                public PollStatus onInterrupted(Throwable cause) {
-                    LOG.warn("Interrupted while invoking the poll for {}."
-                            + " Marking the service as UNKNOWN.", m_service);
-                    return PollStatus.unknown("Interrupted while invoking the poll for"+m_service+". "+e);
-                }
+            return handleException(e);
+        }
+    }
 
-                @Override
-                public PollStatus onTimedOut(Throwable cause) {
-                    LOG.warn("No response was received when remotely invoking the poll for {}."
-                            + " Marking the service as UNKNOWN.", m_service);
-                    return PollStatus.unknown(String.format("No response received for %s. %s", m_service, cause));
-                }
+    /**
+     * Polls the service without blocking the calling thread.
+     *
+     * @return a future that completes with the {@link org.opennms.netmgt.poller.PollStatus}
+     */
+    @Override
+    public CompletableFuture<PollStatus> pollAsync() {
+        try {
+            return execute().handle((result, e) -> e == null ? result : handleException(e));
+        } catch (Throwable e) {
+            return CompletableFuture.completedFuture(handleException(e));
+        }
+    }
 
-                @Override
-                public PollStatus onRejected(Throwable cause) {
-                    LOG.warn("The request to remotely invoke the poll for {} was rejected."
-                            + " Marking the service as UNKNOWN.", m_service);
-                    return PollStatus.unknown(String.format("Remote poll request rejected for %s. %s", m_service, cause));
-                }
+    /**
+     * Polls that are dispatched to a remote location always complete asynchronously.
+     * Local polls only do when the monitor supports it, otherwise they would tie up
+     * one of the executor's threads instead.
+     */
+    @Override
+    public boolean isAsync() {
+        if (m_serviceMonitor == null) {
+            return false;
+        }
+        return m_serviceMonitor instanceof AsyncServiceMonitor
+                || !LocationUtils.isDefaultLocationName(m_serviceMonitor.getEffectiveLocation(m_service.getNodeLocation()));
+    }
 
-                @Override
-                public PollStatus onUnknown(Throwable cause) {
-                    LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
-                    return PollStatus.down("Unexpected exception while polling "+m_service+". "+e);
-                }
-            });
+    /**
+     * Processes the results on the scheduler's threads, rather than on the
+     * thread that completed the poll.
+     */
+    @Override
+    public Executor getExecutor() {
+        if (m_timer instanceof Scheduler) {
+            return ((Scheduler)m_timer).getRunner();
         }
+        return PollConfig.super.getExecutor();
+    }
+
+    private CompletableFuture<PollStatus> execute() {
+        final String packageName = getPackageName();
+        // Use the service's configured interval as the TTL for this request
+        final Long ttlInMs = m_configService.getInterval();
+        LOG.debug("Polling {} with TTL {} using pkg {}",
+                m_service, ttlInMs, packageName);
+
+        return m_locationAwarePollerClient.poll()
+            .withService(m_service)
+            .withMonitor(m_serviceMonitor)
+            .withTimeToLive(ttlInMs)
+            .withAttributes(getParameters())
+            .withAdaptor(m_latencyStoringServiceMonitorAdaptor)
+            .withAdaptor(m_invertedStatusServiceMonitorAdaptor)
+            .execute()
+            .thenApply(response -> {
+                final PollStatus result = response.getPollStatus();
+                LOG.debug("Finish polling {} using pkg {} result = {}", m_service, packageName, result);
+                return result;
+            });
+    }
+
+    private PollStatus handleException(Throwable e) {
+        return RpcExceptionUtils.handleException(e, new RpcExceptionHandler<PollStatus>() {
+            @Override
+            public PollStatus onInterrupted(Throwable cause) {
+                LOG.warn("Interrupted while invoking the poll for {}."
+                        + " Marking the service as UNKNOWN.", m_service);
+                return PollStatus.unknown("Interrupted while invoking the poll for"+m_service+". "+e);
+            }
+
+            @Override
+            public PollStatus onTimedOut(Throwable cause) {
+                LOG.warn("No response was received when remotely invoking the poll for {}."
+                        + " Marking the service as UNKNOWN.", m_service);
+                return PollStatus.unknown(String.format("No response received for %s. %s", m_service, cause));
+            }
+
+            @Override
+            public PollStatus onRejected(Throwable cause) {
+                LOG.warn("The request to remotely invoke the poll for {} was rejected."
+                        + " Marking the service as UNKNOWN.", m_service);
+                return PollStatus.unknown(String.format("Remote poll request rejected for %s. %s", m_service, cause));
+            }
+
+            @Override
+            public PollStatus onUnknown(Throwable cause) {
+                LOG.error("Unexpected exception while polling {}. Marking service as DOWN", m_service, e);
+                return PollStatus.down("Unexpected exception while polling "+m_service+". "+e);
+            }
+        });
     }
 
     /**
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link ReadyRunnable} that can perform its work without holding on to
+ * the scheduler's thread.
+ *
+ * {@link Schedule} calls {@link #runAsync()} instead of {@link #run()} and
+ * reschedules the runnable once the returned future completes.
+ */
+public interface AsyncReadyRunnable extends ReadyRunnable {
+
+    /**
+     * Starts the work and returns a future that completes when it is done.
+     *
+     * Implementations may throw, or complete the future with, a
+     * {@link PostponeNecessary} to have the run retried later.
+     *
+     * @return a future that completes when the work is done
+     */
+    public CompletableFuture<Void> runAsync();
+
+}
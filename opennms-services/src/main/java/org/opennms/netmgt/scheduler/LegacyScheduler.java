@@ -301,6 +301,7 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
      *
      * @return the sum of all the elements in the various queues
      */
+    @Override
     public int getScheduled() {
         return m_scheduled;
     }
@@ -311,6 +312,7 @@ public class LegacyScheduler implements Runnable, PausableFiber, Scheduler {
      *
      * @return thread pool
      */
+    @Override
     public ExecutorService getRunner() {
         return m_runner;
     }
@@ -29,6 +29,8 @@
 package org.opennms.netmgt.scheduler;
 
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,16 +84,46 @@ public class Schedule {
             }
             
             if (!m_interval.scheduledSuspension()) {
+                if (m_schedulable instanceof AsyncReadyRunnable) {
+                    final CompletableFuture<Void> future;
+                    try {
+                        future = ((AsyncReadyRunnable)m_schedulable).runAsync();
+                    } catch (PostponeNecessary e) {
+                        postpone();
+                        return;
+                    }
+                    // Reschedule once the work is done, without blocking the scheduler's thread
+                    future.whenComplete((result, ex) -> {
+                        final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        if (cause instanceof PostponeNecessary) {
+                            postpone();
+                        } else {
+                            if (cause != null) {
+                                LOG.warn("Asynchronous run of {} failed.", m_schedulable, cause);
+                            }
+                            reschedule();
+                        }
+                    });
+                    return;
+                }
+
                 try {
                     Schedule.this.run();
                 } catch (PostponeNecessary e) {
-                    // Chose a random number of seconds between 5 and 14 to wait before trying again
-                    m_timer.schedule(random.nextInt(10) * 1000L + 5000L, this);
+                    postpone();
                     return;
                 }
             }
-                
 
+            reschedule();
+        }
+
+        private void postpone() {
+            // Chose a random number of seconds between 5 and 14 to wait before trying again
+            m_timer.schedule(random.nextInt(10) * 1000L + 5000L, this);
+        }
+
+        private void reschedule() {
             // if it is expired by the current run then don't reschedule
             if (isExpired()) {
                 LOG.debug("Schedule {} expired.  No need to reschedule.", this);
@@ -101,7 +133,6 @@ public class Schedule {
             long interval = m_interval.getInterval();
             if (interval >= 0 && m_scheduled)
                 m_timer.schedule(interval, this);
-
         }
         
         @Override
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.scheduler;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * <p>Scheduler interface.</p>
  *
@@ -105,4 +107,19 @@ public interface Scheduler extends ScheduleTimer {
          * @return the number of task executed
          */
         public abstract long getNumTasksExecuted();
+
+        /**
+         * Returns the number of runnables currently waiting to be executed.
+         *
+         * @return the number of scheduled runnables
+         */
+        public abstract int getScheduled();
+
+        /**
+         * Returns the pool of threads that are used to execute the scheduled
+         * runnables.
+         *
+         * @return thread pool
+         */
+        public abstract ExecutorService getRunner();
 }
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link Scheduler} used by the daemons.
+ *
+ * The implementation is selected by the {@value #IMPLEMENTATION_PROPERTY} system property.
+ * Valid values are {@value #TIMER_WHEEL} (the default) for the {@link TimerWheelScheduler}
+ * and {@value #LEGACY} for the {@link LegacyScheduler}. Unknown values fall back to the
+ * default.
+ */
+public final class Schedulers {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Schedulers.class);
+
+    public static final String IMPLEMENTATION_PROPERTY = "org.opennms.netmgt.scheduler.implementation";
+
+    public static final String TIMER_WHEEL = "timerwheel";
+
+    public static final String LEGACY = "legacy";
+
+    private Schedulers() {
+    }
+
+    /**
+     * Creates a scheduler of the configured implementation.
+     *
+     * @param parent the name of the daemon owning the scheduler
+     * @param maxSize the number of threads used to run the scheduled runnables
+     * @return a new, not yet started scheduler
+     */
+    public static Scheduler create(final String parent, final int maxSize) {
+        return create(System.getProperty(IMPLEMENTATION_PROPERTY, TIMER_WHEEL), parent, maxSize);
+    }
+
+    static Scheduler create(final String implementation, final String parent, final int maxSize) {
+        if (LEGACY.equalsIgnoreCase(implementation.trim())) {
+            LOG.debug("create: using legacy scheduler for {}", parent);
+            return new LegacyScheduler(parent, maxSize);
+        }
+        if (!TIMER_WHEEL.equalsIgnoreCase(implementation.trim())) {
+            LOG.warn("create: unknown scheduler implementation '{}', using {} for {}", implementation, TIMER_WHEEL, parent);
+        }
+        return new TimerWheelScheduler(parent, maxSize);
+    }
+}
@@ -0,0 +1,503 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A scheduler based on a hierarchical timing wheel.
+ *
+ * Time is divided into ticks of a fixed length. The wheel consists of several levels
+ * of {@value #WHEEL_SIZE} slots each, where a slot of level <i>n</i> spans
+ * {@value #WHEEL_SIZE}<sup>n</sup> ticks. A runnable is put into the slot of the lowest
+ * level covering its deadline, and is moved down one level whenever the lower level
+ * completes a full turn. Scheduling and expiring a runnable are therefore constant time
+ * operations, independent of the number of scheduled runnables.
+ *
+ * Runnables may be scheduled from any thread without locking. They are handed over to
+ * the scheduler thread, which is the only thread touching the wheel. Expired runnables
+ * are passed to the thread pool in the order of their deadline. Runnables which are
+ * not {@link ReadyRunnable#isReady() ready} when they expire are checked again after
+ * {@value #NOT_READY_DELAY_MS} ms, instead of being re-queued on every pass.
+ *
+ * This is a drop-in replacement for the {@link LegacyScheduler}.
+ */
+public class TimerWheelScheduler implements Runnable, PausableFiber, Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimerWheelScheduler.class);
+
+    /**
+     * The default length of a tick in milliseconds.
+     */
+    public static final long DEFAULT_TICK_MS = 10;
+
+    /**
+     * The delay in milliseconds after which expired runnables, which were not ready, are checked again.
+     */
+    public static final long NOT_READY_DELAY_MS = 100;
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * The maximum number of ticks covered by the wheel. Runnables with a deadline beyond
+     * this are kept in the last slot of the highest level until they come into range.
+     */
+    private static final long MAX_TICKS = (1L << (LEVELS * WHEEL_BITS)) - 1;
+
+    private static final class Task {
+        private final ReadyRunnable runnable;
+        private long deadline;
+        private Task next;
+
+        private Task(ReadyRunnable runnable, long deadline) {
+            this.runnable = runnable;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * The first and last runnable of each slot, indexed by level and slot.
+     */
+    private final Task[][] m_heads = new Task[LEVELS][WHEEL_SIZE];
+    private final Task[][] m_tails = new Task[LEVELS][WHEEL_SIZE];
+
+    /**
+     * Runnables which are scheduled, but not yet put into the wheel.
+     */
+    private final Queue<Task> m_pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The total number of runnables currently scheduled.
+     */
+    private final AtomicInteger m_scheduled = new AtomicInteger(0);
+
+    /**
+     * The pool of threads that are used to executed the runnable instances
+     * scheduled by the class' instance.
+     */
+    private final ExecutorService m_runner;
+
+    private final long m_tickNanos;
+
+    private final long m_startNanos;
+
+    /**
+     * The next tick to be processed. Only accessed by the worker thread.
+     */
+    private long m_tick;
+
+    /**
+     * The status for this fiber.
+     */
+    private volatile int m_status;
+
+    /**
+     * The worker thread that executes this instance.
+     */
+    private volatile Thread m_worker;
+
+    /**
+     * Used to keep track of the number of tasks that have been executed.
+     */
+    private volatile long m_numTasksExecuted = 0;
+
+    /**
+     * Constructs a new instance of the scheduler using the default tick length.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimerWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, DEFAULT_TICK_MS);
+    }
+
+    /**
+     * Constructs a new instance of the scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickMs
+     *            The length of a tick in milliseconds. Runnables are executed
+     *            with a precision of one tick.
+     */
+    public TimerWheelScheduler(final String parent, final int maxSize, final long tickMs) {
+        Assert.isTrue(tickMs > 0, "The tick length must be positive");
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize));
+        m_tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        m_startNanos = System.nanoTime();
+        m_worker = null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+
+        // Round up, so the runnable is never executed before the interval has passed
+        final long deadline = (elapsedNanos() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, interval)) + m_tickNanos - 1) / m_tickNanos;
+        m_pending.add(new Task(runnable, deadline));
+
+        if (m_scheduled.getAndIncrement() == 0) {
+            // The worker may be waiting for something to be scheduled
+            LockSupport.unpark(m_worker);
+        }
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        LockSupport.unpark(m_worker);
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_runner.toString();
+    }
+
+    /**
+     * Returns total number of elements currently scheduled.
+     *
+     * @return the number of runnables waiting to be executed
+     */
+    @Override
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    @Override
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted;
+    }
+
+    /**
+     * The main method of the scheduler. This method advances the wheel tick by tick
+     * and passes the expired runnables to the thread pool for execution.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            // Keep a pause requested right after starting
+            if (m_status == STARTING) {
+                m_status = RUNNING;
+            }
+        }
+
+        LOG.debug("run: scheduler running");
+
+        // Runnables scheduled before the scheduler was started are put into the wheel relative to now
+        m_tick = elapsedNanos() / m_tickNanos;
+
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        LOG.debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        // exit
+                        break;
+                    }
+                }
+
+                // if resume pending then change to running
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+
+                    m_status = RUNNING;
+                }
+
+                if (m_status != RUNNING) {
+                    continue;
+                }
+            }
+
+            try {
+                // Process all ticks which have passed, including the ones missed while being paused
+                transferPending();
+                final long now = elapsedNanos() / m_tickNanos;
+                while (m_tick <= now) {
+                    advance();
+                }
+            } catch (RejectedExecutionException e) {
+                LOG.debug("run: thread pool has been shut down, exiting");
+                break;
+            }
+
+            if (m_scheduled.get() == 0) {
+                LOG.debug("run: no ready runnables scheduled, waiting...");
+                LockSupport.park(this);
+            } else {
+                final long delay = m_tick * m_tickNanos - elapsedNanos();
+                if (delay > 0) {
+                    LockSupport.parkNanos(this, delay);
+                }
+            }
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    private long elapsedNanos() {
+        return System.nanoTime() - m_startNanos;
+    }
+
+    /**
+     * Puts all runnables which have been scheduled since the last tick into the wheel.
+     */
+    private void transferPending() {
+        Task task;
+        while ((task = m_pending.poll()) != null) {
+            place(task);
+        }
+    }
+
+    /**
+     * Processes the current tick. If the first level completed a full turn, the next slot
+     * of the higher levels is distributed to the lower levels first.
+     */
+    private void advance() {
+        final int index = (int) (m_tick & WHEEL_MASK);
+        if (index == 0) {
+            for (int level = 1; level < LEVELS; level++) {
+                final int slot = (int) ((m_tick >>> (level * WHEEL_BITS)) & WHEEL_MASK);
+                cascade(level, slot);
+                if (slot != 0) {
+                    break;
+                }
+            }
+        }
+
+        Task task = detach(0, index);
+        while (task != null) {
+            final Task next = task.next;
+            task.next = null;
+            expire(task);
+            task = next;
+        }
+
+        m_tick++;
+    }
+
+    private void cascade(final int level, final int slot) {
+        Task task = detach(level, slot);
+        while (task != null) {
+            final Task next = task.next;
+            task.next = null;
+            place(task);
+            task = next;
+        }
+    }
+
+    private Task detach(final int level, final int slot) {
+        final Task head = m_heads[level][slot];
+        m_heads[level][slot] = null;
+        m_tails[level][slot] = null;
+        return head;
+    }
+
+    /**
+     * Puts the runnable into the slot of the lowest level which covers its deadline.
+     */
+    private void place(final Task task) {
+        final long ticks = task.deadline - m_tick;
+        if (ticks < 0) {
+            expire(task);
+            return;
+        }
+
+        final long expires = ticks > MAX_TICKS ? m_tick + MAX_TICKS : task.deadline;
+        final long delta = expires - m_tick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * WHEEL_BITS)) {
+            level++;
+        }
+        final int slot = (int) ((expires >>> (level * WHEEL_BITS)) & WHEEL_MASK);
+
+        final Task tail = m_tails[level][slot];
+        if (tail == null) {
+            m_heads[level][slot] = task;
+        } else {
+            tail.next = task;
+        }
+        m_tails[level][slot] = task;
+    }
+
+    /**
+     * Executes the runnable if it is ready, otherwise it is checked again later.
+     */
+    private void expire(final Task task) {
+        final boolean ready;
+        try {
+            ready = task.runnable.isReady();
+        } catch (final RuntimeException e) {
+            LOG.error("run: failed to determine whether {} is ready, dropping it", task.runnable, e);
+            m_scheduled.decrementAndGet();
+            return;
+        }
+
+        if (!ready) {
+            task.deadline = m_tick + Math.max(1, TimeUnit.MILLISECONDS.toNanos(NOT_READY_DELAY_MS) / m_tickNanos);
+            place(task);
+            return;
+        }
+
+        LOG.debug("run: found ready runnable {}", task.runnable);
+        m_scheduled.decrementAndGet();
+        m_numTasksExecuted++;
+        m_runner.execute(task.runnable);
+    }
+}
@@ -57,6 +57,55 @@ public abstract class AbstractThresholdEvaluatorState implements ThresholdEvalua
 
     public static final String FORMATED_NAN = "NaN (the threshold definition has been changed)";
 
+    private ThresholdStateStore m_stateStore;
+
+    private long m_stateKey;
+
+    /**
+     * Restores the state stored for the given key, if any, and stores the
+     * state under this key from now on.
+     */
+    void attach(ThresholdStateStore stateStore, long stateKey) {
+        m_stateStore = stateStore;
+        m_stateKey = stateKey;
+        final ThresholdStateStore.State state = stateStore.get(stateKey);
+        if (state != null) {
+            restoreState(state);
+        }
+    }
+
+    boolean isAttached() {
+        return m_stateStore != null;
+    }
+
+    /**
+     * @return true if the state has been evicted from the store it is attached to
+     */
+    boolean isEvicted() {
+        return m_stateStore != null && !m_stateStore.contains(m_stateKey);
+    }
+
+    /**
+     * Stores the current state, if attached to a store.
+     */
+    void persistState() {
+        if (m_stateStore != null) {
+            saveState(m_stateStore, m_stateKey);
+        }
+    }
+
+    /**
+     * Overridden by evaluators with state to restore it from the store.
+     */
+    protected void restoreState(ThresholdStateStore.State state) {
+    }
+
+    /**
+     * Overridden by evaluators with state to save it to the store.
+     */
+    protected void saveState(ThresholdStateStore stateStore, long stateKey) {
+    }
+
     /**
      * <p>createBasicEvent</p>
      *
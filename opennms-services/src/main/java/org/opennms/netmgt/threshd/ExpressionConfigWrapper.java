@@ -35,8 +35,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.jexl2.ExpressionImpl;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.MapContext;
 import org.opennms.netmgt.config.threshd.Expression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,16 +50,30 @@ import org.slf4j.LoggerFactory;
 public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapper.class);
 
+    /**
+     * The engine is thread-safe once configured, and sharing it also shares
+     * its cache of introspected methods (i.e. for the <code>math</code> functions).
+     */
+    private static final JexlEngine JEXL_ENGINE = new JexlEngine();
+
+    private static final MathBinding MATH_BINDING = new MathBinding();
+
     private final Expression m_expression;
     private final Collection<String> m_datasources;
+
+    /**
+     * The parsed expression, which can be evaluated concurrently.
+     */
+    private final org.apache.commons.jexl2.Expression m_compiledExpression;
+
     public ExpressionConfigWrapper(Expression expression) throws ThresholdExpressionException {
         super(expression);
         m_expression = expression;
 
-        JexlEngine expressionParser = new JexlEngine();
         m_datasources = new ArrayList<>();
         try {
-            ExpressionImpl e = (ExpressionImpl) expressionParser.createExpression(m_expression.getExpression());
+            ExpressionImpl e = (ExpressionImpl) JEXL_ENGINE.createExpression(m_expression.getExpression());
+            m_compiledExpression = e;
             LOG.trace("List of Variables on the Expression: {}", e.getVariables());
             for (List<String> list : e.getVariables()) { // Requires JEXL 2.1.x
                 if (list.get(0).equalsIgnoreCase("math")) {
@@ -142,19 +156,62 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
 
     @Override
     public double evaluate(Map<String, Double> values) throws ThresholdExpressionException {
-        // Add all of the variable values to the script context
-        Map<String,Object> context = new HashMap<String,Object>();
-        context.putAll(values);
-        context.put("datasources", new HashMap<String, Double>(values)); // To workaround NMS-5019
-        context.put("math", new MathBinding());
-        double result = Double.NaN;
         try {
-            // Fetch an instance of the JEXL script engine to evaluate the script expression
-            Object resultObject = new JexlEngine().createExpression(m_expression.getExpression()).evaluate(new MapContext(context));
-            result = Double.parseDouble(resultObject.toString());
+            final Object resultObject = m_compiledExpression.evaluate(new ValuesContext(values));
+            if (resultObject instanceof Number) {
+                return ((Number)resultObject).doubleValue();
+            }
+            return Double.parseDouble(resultObject.toString());
         } catch (Throwable e) {
             throw new ThresholdExpressionException("Error while evaluating expression " + m_expression.getExpression() + ": " + e.getMessage(), e);
         }
-        return result;
+    }
+
+    /**
+     * Binds the variables of the expression directly to the given values,
+     * instead of copying them into a new context for every evaluation.
+     */
+    private static class ValuesContext implements JexlContext {
+        private final Map<String, Double> m_values;
+
+        /**
+         * Holds the variables assigned by the expression itself, if any.
+         */
+        private Map<String, Object> m_assigned;
+
+        private ValuesContext(Map<String, Double> values) {
+            m_values = values;
+        }
+
+        @Override
+        public Object get(String name) {
+            if (m_assigned != null && m_assigned.containsKey(name)) {
+                return m_assigned.get(name);
+            }
+            if ("math".equals(name)) {
+                return MATH_BINDING;
+            }
+            if ("datasources".equals(name)) {
+                // To workaround NMS-5019
+                return m_values;
+            }
+            return m_values.get(name);
+        }
+
+        @Override
+        public void set(String name, Object value) {
+            if (m_assigned == null) {
+                m_assigned = new HashMap<>();
+            }
+            m_assigned.put(name, value);
+        }
+
+        @Override
+        public boolean has(String name) {
+            return (m_assigned != null && m_assigned.containsKey(name))
+                    || "math".equals(name)
+                    || "datasources".equals(name)
+                    || m_values.containsKey(name);
+        }
     }
 }
@@ -32,6 +32,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +62,9 @@ public final class ThresholdEntity implements Cloneable {
     // in the Constructor.  Note that this means we must use a null-key capable map like HashMap
     private Map<String,List<ThresholdEvaluatorState>> m_thresholdEvaluatorStates = new HashMap<String,List<ThresholdEvaluatorState>>();
 
+    // The eviction count of the state store when the evicted instances were last removed
+    private long m_stateStoreEvictions = 0;
+
     // the commands for these need to be listed in ThresholdController as well
     static {
         s_thresholdEvaluators = new LinkedList<ThresholdEvaluator>();
@@ -228,6 +232,20 @@ public final class ThresholdEntity implements Cloneable {
      * @param resource a {@link org.opennms.netmgt.threshd.CollectionResourceWrapper} object.
      */
     public List<Event> evaluateAndCreateEvents(CollectionResourceWrapper resource, Map<String, Double> values, Date date) {
+        return evaluateAndCreateEvents(resource, values, date, null, 0L);
+    }
+
+    /**
+     * Evaluates the threshold like {@link #evaluateAndCreateEvents(CollectionResourceWrapper, Map, Date)},
+     * but keeps the state of the evaluators in the given store.
+     *
+     * The state of each instance is restored from the store when the instance is
+     * evaluated for the first time, and saved after each evaluation.
+     *
+     * @param stateStore the store to keep the state in, or null to keep it in this entity only
+     * @param stateKey identifies the thresholding set, group and resource type of this entity in the store
+     */
+    public List<Event> evaluateAndCreateEvents(CollectionResourceWrapper resource, Map<String, Double> values, Date date, ThresholdStateStore stateStore, long stateKey) {
         List<Event> events = new LinkedList<Event>();
         double dsValue=0.0;
 
@@ -239,6 +257,9 @@ public final class ThresholdEntity implements Cloneable {
             // such as the SiblingColumnStorageStrategy
             instance = resource.getInstanceLabel();
         }
+        if (stateStore != null) {
+            removeEvictedInstances(stateStore);
+        }
         try {
             if (getThresholdEvaluatorStates(instance).size() > 0) {
                 dsValue=getThresholdConfig().evaluate(values);
@@ -253,7 +274,11 @@ public final class ThresholdEntity implements Cloneable {
         LOG.debug("evaluate: value= {} against threshold: {}", dsValue, this);
 
         for (ThresholdEvaluatorState item : getThresholdEvaluatorStates(instance)) {
+            if (stateStore != null) {
+                attach(item, stateStore, stateKey, instance);
+            }
             Status status = item.evaluate(dsValue);
+            persistState(item);
             Event event = item.getEventForState(status, date, dsValue, resource);
             if (event != null) {
                 events.add(event);
@@ -263,6 +288,62 @@ public final class ThresholdEntity implements Cloneable {
         return events;
     }
 
+    private static void attach(ThresholdEvaluatorState state, ThresholdStateStore stateStore, long stateKey, String instance) {
+        if (state instanceof AbstractThresholdEvaluatorState) {
+            final AbstractThresholdEvaluatorState abstractState = (AbstractThresholdEvaluatorState)state;
+            if (!abstractState.isAttached()) {
+                abstractState.attach(stateStore, key(stateKey, instance, state.getThresholdConfig()));
+            }
+        }
+    }
+
+    /**
+     * Identifies the state of the given threshold. Several thresholds of the same type may be
+     * defined on the same datasource, i.e. a warning and a critical threshold, so the key
+     * includes the values and events of the threshold.
+     */
+    private static long key(long stateKey, String instance, BaseThresholdDefConfigWrapper threshold) {
+        long key = ThresholdStateStore.key(stateKey, instance);
+        key = ThresholdStateStore.key(key, threshold.getType().toString());
+        key = ThresholdStateStore.key(key, threshold.getDatasourceExpression());
+        key = ThresholdStateStore.key(key, Double.doubleToLongBits(threshold.getValue()));
+        key = ThresholdStateStore.key(key, Double.doubleToLongBits(threshold.getRearm()));
+        key = ThresholdStateStore.key(key, threshold.getTrigger());
+        key = ThresholdStateStore.key(key, threshold.getTriggeredUEI().orElse(null));
+        key = ThresholdStateStore.key(key, threshold.getRearmedUEI().orElse(null));
+        return key;
+    }
+
+    private static void persistState(ThresholdEvaluatorState state) {
+        if (state instanceof AbstractThresholdEvaluatorState) {
+            ((AbstractThresholdEvaluatorState)state).persistState();
+        }
+    }
+
+    /**
+     * Forgets the instances whose state has been evicted from the store since they were not
+     * evaluated for a while, so they do not accumulate here either.
+     */
+    private void removeEvictedInstances(ThresholdStateStore stateStore) {
+        final long evictions = stateStore.getEvictionCount();
+        if (evictions == m_stateStoreEvictions) {
+            return;
+        }
+        m_stateStoreEvictions = evictions;
+        for (final Iterator<Map.Entry<String,List<ThresholdEvaluatorState>>> it = m_thresholdEvaluatorStates.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<String,List<ThresholdEvaluatorState>> entry = it.next();
+            // Keep the default instance, it holds the configuration
+            if (entry.getKey() == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            final ThresholdEvaluatorState state = entry.getValue().get(0);
+            if (state instanceof AbstractThresholdEvaluatorState && ((AbstractThresholdEvaluatorState)state).isEvicted()) {
+                LOG.debug("removeEvictedInstances: removing the state of instance {}", entry.getKey());
+                it.remove();
+            }
+        }
+    }
+
     /**
      * <p>addThreshold</p>
      *
@@ -352,6 +433,7 @@ public final class ThresholdEntity implements Cloneable {
                     LOG.info("sendRearmForTriggeredStates: sending rearm for {}", e);
                     ThresholdingEventProxyFactory.getFactory().getProxy().add(e);
                     state.clearState();
+                    persistState(state);
                 }
             }
         }
@@ -168,6 +168,17 @@ public class ThresholdEvaluatorAbsoluteChange implements ThresholdEvaluator {
             m_change = change;
         }
 
+        @Override
+        protected void restoreState(ThresholdStateStore.State state) {
+            setLastSample(state.getLastSample());
+            setPreviousTriggeringSample(state.getPreviousSample());
+        }
+
+        @Override
+        protected void saveState(ThresholdStateStore stateStore, long stateKey) {
+            stateStore.put(stateKey, 0, true, getLastSample(), getPreviousTriggeringSample());
+        }
+
         @Override
         public ThresholdEvaluatorState getCleanClone() {
             return new ThresholdEvaluatorStateAbsoluteChange(m_thresholdConfig);
@@ -254,6 +254,17 @@ public class ThresholdEvaluatorHighLow implements ThresholdEvaluator {
             return createBasicEvent(uei, date, dsValue, resource, params);
         }
         
+        @Override
+        protected void restoreState(ThresholdStateStore.State state) {
+            setExceededCount(state.getCount());
+            setArmed(state.isArmed());
+        }
+
+        @Override
+        protected void saveState(ThresholdStateStore stateStore, long stateKey) {
+            stateStore.put(stateKey, getExceededCount(), isArmed(), Double.NaN, Double.NaN);
+        }
+
         @Override
         public ThresholdEvaluatorState getCleanClone() {
             return new ThresholdEvaluatorStateHighLow(m_thresholdConfig);
@@ -181,6 +181,18 @@ public class ThresholdEvaluatorRearmingAbsoluteChange implements ThresholdEvalua
             m_previousTriggeringSample = previousTriggeringSample;
         }
         
+        @Override
+        protected void restoreState(ThresholdStateStore.State state) {
+            m_triggerCount = state.getCount();
+            setLastSample(state.getLastSample());
+            setPreviousTriggeringSample(state.getPreviousSample());
+        }
+
+        @Override
+        protected void saveState(ThresholdStateStore stateStore, long stateKey) {
+            stateStore.put(stateKey, m_triggerCount, true, getLastSample(), getPreviousTriggeringSample());
+        }
+
         @Override
         public ThresholdEvaluatorState getCleanClone() {
             return new ThresholdEvaluatorStateRearmingAbsoluteChange(m_thresholdConfig);
@@ -178,6 +178,17 @@ public class ThresholdEvaluatorRelativeChange implements ThresholdEvaluator {
             m_multiplier = multiplier;
         }
 
+        @Override
+        protected void restoreState(ThresholdStateStore.State state) {
+            setLastSample(state.getLastSample());
+            setPreviousTriggeringSample(state.getPreviousSample());
+        }
+
+        @Override
+        protected void saveState(ThresholdStateStore stateStore, long stateKey) {
+            stateStore.put(stateKey, 0, true, getLastSample(), getPreviousTriggeringSample());
+        }
+
         @Override
         public ThresholdEvaluatorState getCleanClone() {
             return new ThresholdEvaluatorStateRelativeChange(m_thresholdConfig);
@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the state of the threshold evaluators of all thresholding sets, so it
+ * survives the thresholding sets being recreated on configuration changes and,
+ * if a snapshot file is configured, restarts.
+ *
+ * States are identified by 64-bit keys, built with {@link #key(long, String)}
+ * from the node, interface, service, threshold group, resource and threshold.
+ * As the keys are hashes, two states may collide, but this is unlikely even
+ * with millions of states.
+ *
+ * The states are spread over shards with their own lock, so evaluations of
+ * different collectors rarely contend and eviction or snapshots only block a
+ * single shard at a time. States that have not been updated within the TTL are
+ * evicted, so the store does not grow with transient resources.
+ */
+public class ThresholdStateStore {
+    private static final Logger LOG = LoggerFactory.getLogger(ThresholdStateStore.class);
+
+    public static final String SHARDS_SYS_PROP = "org.opennms.netmgt.threshd.state.shards";
+
+    public static final int DEFAULT_SHARDS = 16;
+
+    public static final String TTL_SYS_PROP = "org.opennms.netmgt.threshd.state.ttl";
+
+    public static final long DEFAULT_TTL_MS = TimeUnit.DAYS.toMillis(1);
+
+    public static final String SNAPSHOT_FILE_SYS_PROP = "org.opennms.netmgt.threshd.state.snapshot";
+
+    public static final String MAINTENANCE_INTERVAL_SYS_PROP = "org.opennms.netmgt.threshd.state.interval";
+
+    public static final long DEFAULT_MAINTENANCE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int SNAPSHOT_MAGIC = 0x54485354;
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static ThresholdStateStore s_instance;
+
+    private final ThresholdStateTable[] m_shards;
+
+    private final long m_ttlMs;
+
+    private final Path m_snapshotFile;
+
+    private final AtomicLong m_evictions = new AtomicLong();
+
+    private ScheduledExecutorService m_maintenance;
+
+    /**
+     * The state of a single threshold evaluator.
+     */
+    public static final class State {
+        private final int m_count;
+        private final boolean m_armed;
+        private final double m_lastSample;
+        private final double m_previousSample;
+        private final long m_timestamp;
+
+        State(int count, boolean armed, double lastSample, double previousSample, long timestamp) {
+            m_count = count;
+            m_armed = armed;
+            m_lastSample = lastSample;
+            m_previousSample = previousSample;
+            m_timestamp = timestamp;
+        }
+
+        public int getCount() {
+            return m_count;
+        }
+
+        public boolean isArmed() {
+            return m_armed;
+        }
+
+        public double getLastSample() {
+            return m_lastSample;
+        }
+
+        public double getPreviousSample() {
+            return m_previousSample;
+        }
+
+        /**
+         * @return the time of the last update, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return m_timestamp;
+        }
+    }
+
+    /**
+     * @param shards the number of shards, rounded up to the next power of two
+     * @param ttlMs states that have not been updated for this long are evicted, 0 disables the eviction
+     * @param snapshotFile the file the states are saved to and restored from, or null to keep them in memory only
+     */
+    public ThresholdStateStore(int shards, long ttlMs, Path snapshotFile) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive.");
+        }
+        final int highestOneBit = Integer.highestOneBit(shards);
+        m_shards = new ThresholdStateTable[highestOneBit == shards ? shards : highestOneBit << 1];
+        for (int i = 0; i < m_shards.length; i++) {
+            m_shards[i] = new ThresholdStateTable();
+        }
+        m_ttlMs = ttlMs;
+        m_snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Returns the store shared by all thresholding sets, creating and starting it
+     * from the system properties on first use.
+     */
+    public static synchronized ThresholdStateStore getInstance() {
+        if (s_instance == null) {
+            final String snapshotFile = System.getProperty(SNAPSHOT_FILE_SYS_PROP);
+            final ThresholdStateStore store = new ThresholdStateStore(
+                    Integer.getInteger(SHARDS_SYS_PROP, DEFAULT_SHARDS),
+                    Long.getLong(TTL_SYS_PROP, DEFAULT_TTL_MS),
+                    snapshotFile == null || snapshotFile.trim().isEmpty() ? null : Paths.get(snapshotFile.trim()));
+            store.start(Long.getLong(MAINTENANCE_INTERVAL_SYS_PROP, DEFAULT_MAINTENANCE_INTERVAL_MS));
+            if (store.m_snapshotFile != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(store::stop, "ThresholdStateStore-Shutdown"));
+            }
+            s_instance = store;
+        }
+        return s_instance;
+    }
+
+    public static synchronized void setInstance(ThresholdStateStore store) {
+        s_instance = store;
+    }
+
+    /**
+     * Restores the snapshot, if any, and schedules the eviction of stale states
+     * and the snapshots at the given interval.
+     */
+    public synchronized void start(long intervalMs) {
+        if (m_maintenance != null) {
+            return;
+        }
+        if (m_snapshotFile != null) {
+            restore();
+        }
+        if (intervalMs > 0 && (m_ttlMs > 0 || m_snapshotFile != null)) {
+            m_maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "ThresholdStateStore-Maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            m_maintenance.scheduleWithFixedDelay(this::maintain, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the maintenance and saves a last snapshot, if enabled.
+     */
+    public synchronized void stop() {
+        if (m_maintenance != null) {
+            m_maintenance.shutdownNow();
+            m_maintenance = null;
+        }
+        if (m_snapshotFile != null) {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                LOG.warn("Failed to save the threshold states to {}.", m_snapshotFile, e);
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            evictExpired();
+            if (m_snapshotFile != null) {
+                snapshot();
+            }
+        } catch (Throwable t) {
+            LOG.warn("Failed to maintain the threshold states.", t);
+        }
+    }
+
+    /**
+     * Combines the given key with a value.
+     */
+    public static long key(long key, long value) {
+        // Finalizer of MurmurHash3, so similar keys are spread over the shards
+        long h = key * 31 + value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Combines the given key with a string, which may be null.
+     */
+    public static long key(long key, String value) {
+        if (value == null) {
+            return key(key, 0L);
+        }
+        // FNV-1a over the characters
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return key(key, h ^ value.length());
+    }
+
+    /**
+     * Returns the state stored for the given key, or null if there is none.
+     */
+    public State get(long key) {
+        final ThresholdStateTable shard = shardOf(key);
+        synchronized (shard) {
+            return shard.get(key);
+        }
+    }
+
+    public boolean contains(long key) {
+        final ThresholdStateTable shard = shardOf(key);
+        synchronized (shard) {
+            return shard.contains(key);
+        }
+    }
+
+    /**
+     * Stores the state for the given key and marks it as updated now.
+     */
+    public void put(long key, int count, boolean armed, double lastSample, double previousSample) {
+        put(key, count, armed, lastSample, previousSample, System.currentTimeMillis());
+    }
+
+    void put(long key, int count, boolean armed, double lastSample, double previousSample, long timestamp) {
+        final ThresholdStateTable shard = shardOf(key);
+        synchronized (shard) {
+            shard.put(key, count, armed, lastSample, previousSample, timestamp);
+        }
+    }
+
+    public boolean remove(long key) {
+        final ThresholdStateTable shard = shardOf(key);
+        synchronized (shard) {
+            return shard.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (ThresholdStateTable shard : m_shards) {
+            synchronized (shard) {
+                shard.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes the states that have not been updated within the TTL.
+     *
+     * @return the number of removed states
+     */
+    public int evictExpired() {
+        if (m_ttlMs <= 0) {
+            return 0;
+        }
+        final long notBefore = System.currentTimeMillis() - m_ttlMs;
+        int evicted = 0;
+        for (ThresholdStateTable shard : m_shards) {
+            synchronized (shard) {
+                evicted += shard.removeOlderThan(notBefore);
+            }
+        }
+        if (evicted > 0) {
+            m_evictions.addAndGet(evicted);
+            LOG.debug("Evicted {} threshold states that have not been updated for {}ms.", evicted, m_ttlMs);
+        }
+        return evicted;
+    }
+
+    /**
+     * Writes all states to the snapshot file. The file is replaced atomically,
+     * so a failure leaves the previous snapshot intact.
+     */
+    public void snapshot() throws IOException {
+        if (m_snapshotFile == null) {
+            return;
+        }
+        final Path parent = m_snapshotFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final Path tmp = m_snapshotFile.resolveSibling(m_snapshotFile.getFileName() + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            for (ThresholdStateTable shard : m_shards) {
+                final ThresholdStateTable copy;
+                synchronized (shard) {
+                    copy = shard.copy();
+                }
+                copy.writeTo(out);
+                count += copy.size();
+            }
+            // Marks the end of the snapshot
+            out.writeInt(-1);
+        }
+        Files.move(tmp, m_snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.debug("Saved {} threshold states to {}.", count, m_snapshotFile);
+    }
+
+    /**
+     * Reads the states from the snapshot file, skipping the ones that have expired in the meantime.
+     */
+    private void restore() {
+        if (!Files.isRegularFile(m_snapshotFile)) {
+            return;
+        }
+        final long notBefore = m_ttlMs > 0 ? System.currentTimeMillis() - m_ttlMs : Long.MIN_VALUE;
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(m_snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                LOG.warn("Ignoring {}, it is not a threshold state snapshot of a supported version.", m_snapshotFile);
+                return;
+            }
+            int entries;
+            while ((entries = in.readInt()) >= 0) {
+                for (int i = 0; i < entries; i++) {
+                    if (ThresholdStateTable.readEntry(in, this, notBefore)) {
+                        count++;
+                    }
+                }
+            }
+            LOG.info("Restored {} threshold states from {}.", count, m_snapshotFile);
+        } catch (EOFException e) {
+            LOG.warn("The threshold state snapshot {} is truncated, restored the first {} states.", m_snapshotFile, count);
+        } catch (IOException e) {
+            LOG.warn("Failed to restore the threshold states from {}.", m_snapshotFile, e);
+        }
+    }
+
+    /**
+     * @return the number of stored states
+     */
+    public long size() {
+        long size = 0;
+        for (ThresholdStateTable shard : m_shards) {
+            synchronized (shard) {
+                size += shard.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes used to store the states
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (ThresholdStateTable shard : m_shards) {
+            synchronized (shard) {
+                bytes += shard.getMemoryUsage();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the number of states evicted since the store was created
+     */
+    public long getEvictionCount() {
+        return m_evictions.get();
+    }
+
+    public long getTtl() {
+        return m_ttlMs;
+    }
+
+    private ThresholdStateTable shardOf(long key) {
+        // The tables use the low bits
+        return m_shards[(int) (key >>> 32) & (m_shards.length - 1)];
+    }
+}
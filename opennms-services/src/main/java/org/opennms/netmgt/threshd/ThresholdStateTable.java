@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Maps 64-bit state keys to the state of threshold evaluators using parallel
+ * primitive arrays instead of boxed keys and values.
+ *
+ * Every evaluator state is reduced to a counter, an armed flag and two samples,
+ * so an entry uses about 37 bytes and lookups do not allocate besides the result.
+ *
+ * This class is not thread-safe.
+ */
+final class ThresholdStateTable {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    /**
+     * Slot size of the arrays: key, count, flags, last sample, previous sample and timestamp.
+     */
+    static final int BYTES_PER_SLOT = 8 + 4 + 1 + 8 + 8 + 8;
+
+    /** Zero marks an empty slot */
+    private static final byte USED = 1;
+    private static final byte ARMED = 2;
+
+    private long[] m_keys;
+    private int[] m_counts;
+    private byte[] m_flags;
+    private double[] m_lastSamples;
+    private double[] m_previousSamples;
+    private long[] m_timestamps;
+
+    private int m_size;
+
+    ThresholdStateTable() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    private ThresholdStateTable(final ThresholdStateTable other) {
+        m_keys = Arrays.copyOf(other.m_keys, other.m_keys.length);
+        m_counts = Arrays.copyOf(other.m_counts, other.m_counts.length);
+        m_flags = Arrays.copyOf(other.m_flags, other.m_flags.length);
+        m_lastSamples = Arrays.copyOf(other.m_lastSamples, other.m_lastSamples.length);
+        m_previousSamples = Arrays.copyOf(other.m_previousSamples, other.m_previousSamples.length);
+        m_timestamps = Arrays.copyOf(other.m_timestamps, other.m_timestamps.length);
+        m_size = other.m_size;
+    }
+
+    /**
+     * Returns the state stored for the given key, or null if there is none.
+     */
+    ThresholdStateStore.State get(final long key) {
+        final int slot = slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        return new ThresholdStateStore.State(m_counts[slot], (m_flags[slot] & ARMED) != 0,
+                m_lastSamples[slot], m_previousSamples[slot], m_timestamps[slot]);
+    }
+
+    boolean contains(final long key) {
+        return slotOf(key) >= 0;
+    }
+
+    void put(final long key, final int count, final boolean armed, final double lastSample, final double previousSample, final long timestamp) {
+        final int mask = m_flags.length - 1;
+        int slot = hash(key) & mask;
+        for (; m_flags[slot] != 0; slot = (slot + 1) & mask) {
+            if (m_keys[slot] == key) {
+                break;
+            }
+        }
+
+        final boolean added = m_flags[slot] == 0;
+        m_keys[slot] = key;
+        m_counts[slot] = count;
+        m_flags[slot] = (byte) (armed ? USED | ARMED : USED);
+        m_lastSamples[slot] = lastSample;
+        m_previousSamples[slot] = previousSample;
+        m_timestamps[slot] = timestamp;
+
+        if (added && ++m_size > m_flags.length * MAX_LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    boolean remove(final long key) {
+        final int slot = slotOf(key);
+        if (slot < 0) {
+            return false;
+        }
+        delete(slot);
+        return true;
+    }
+
+    /**
+     * Removes all entries that have not been updated since the given time.
+     *
+     * @return the number of removed entries
+     */
+    int removeOlderThan(final long timestamp) {
+        int removed = 0;
+        int slot = 0;
+        while (slot < m_flags.length) {
+            if (m_flags[slot] != 0 && m_timestamps[slot] < timestamp) {
+                // Deleting may shift an entry from behind into this slot, so it has to be checked again
+                delete(slot);
+                removed++;
+            } else {
+                slot++;
+            }
+        }
+        return removed;
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    /**
+     * Returns the number of bytes used by the arrays of this table.
+     */
+    long getMemoryUsage() {
+        return (long) m_flags.length * BYTES_PER_SLOT;
+    }
+
+    void clear() {
+        Arrays.fill(m_flags, (byte) 0);
+        m_size = 0;
+    }
+
+    /**
+     * Returns a copy of this table, so it can be written without holding a lock on it.
+     */
+    ThresholdStateTable copy() {
+        return new ThresholdStateTable(this);
+    }
+
+    /**
+     * Writes the number of entries followed by the entries themselves.
+     */
+    void writeTo(final DataOutput out) throws IOException {
+        out.writeInt(m_size);
+        for (int slot = 0; slot < m_flags.length; slot++) {
+            if (m_flags[slot] != 0) {
+                out.writeLong(m_keys[slot]);
+                out.writeInt(m_counts[slot]);
+                out.writeByte(m_flags[slot]);
+                out.writeDouble(m_lastSamples[slot]);
+                out.writeDouble(m_previousSamples[slot]);
+                out.writeLong(m_timestamps[slot]);
+            }
+        }
+    }
+
+    /**
+     * Reads an entry as written by {@link #writeTo(DataOutput)} into the given store,
+     * unless it has not been updated since the given time.
+     *
+     * @return true if the entry was added
+     */
+    static boolean readEntry(final DataInput in, final ThresholdStateStore store, final long notBefore) throws IOException {
+        final long key = in.readLong();
+        final int count = in.readInt();
+        final byte flags = in.readByte();
+        final double lastSample = in.readDouble();
+        final double previousSample = in.readDouble();
+        final long timestamp = in.readLong();
+        if (timestamp < notBefore) {
+            return false;
+        }
+        store.put(key, count, (flags & ARMED) != 0, lastSample, previousSample, timestamp);
+        return true;
+    }
+
+    private int slotOf(final long key) {
+        final int mask = m_flags.length - 1;
+        for (int slot = hash(key) & mask; m_flags[slot] != 0; slot = (slot + 1) & mask) {
+            if (m_keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Empties the slot and shifts following entries of the same probe sequence
+     * backwards, so no tombstones are required.
+     */
+    private void delete(int slot) {
+        final int mask = m_flags.length - 1;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (m_flags[next] == 0) {
+                break;
+            }
+            final int home = hash(m_keys[next]) & mask;
+            // Only move the entry if its home slot is not between the emptied slot and its current slot
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                m_keys[slot] = m_keys[next];
+                m_counts[slot] = m_counts[next];
+                m_flags[slot] = m_flags[next];
+                m_lastSamples[slot] = m_lastSamples[next];
+                m_previousSamples[slot] = m_previousSamples[next];
+                m_timestamps[slot] = m_timestamps[next];
+                slot = next;
+            }
+        }
+        m_flags[slot] = 0;
+        m_size--;
+    }
+
+    private void resize() {
+        final long[] keys = m_keys;
+        final int[] counts = m_counts;
+        final byte[] flags = m_flags;
+        final double[] lastSamples = m_lastSamples;
+        final double[] previousSamples = m_previousSamples;
+        final long[] timestamps = m_timestamps;
+
+        allocate(flags.length << 1);
+
+        final int mask = m_flags.length - 1;
+        for (int i = 0; i < flags.length; i++) {
+            if (flags[i] == 0) {
+                continue;
+            }
+            int slot = hash(keys[i]) & mask;
+            while (m_flags[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            m_keys[slot] = keys[i];
+            m_counts[slot] = counts[i];
+            m_flags[slot] = flags[i];
+            m_lastSamples[slot] = lastSamples[i];
+            m_previousSamples[slot] = previousSamples[i];
+            m_timestamps[slot] = timestamps[i];
+        }
+    }
+
+    private void allocate(final int capacity) {
+        m_keys = new long[capacity];
+        m_counts = new int[capacity];
+        m_flags = new byte[capacity];
+        m_lastSamples = new double[capacity];
+        m_previousSamples = new double[capacity];
+        m_timestamps = new long[capacity];
+    }
+
+    private static int hash(final long key) {
+        // The keys are hashes already, the high bits are used to select the shard
+        return (int) key;
+    }
+}
@@ -73,6 +73,11 @@ public class ThresholdingSet {
     protected final String m_serviceName;
     protected final RrdRepository m_repository;
 
+    /**
+     * Identifies the node, interface and service of this set in the {@link ThresholdStateStore}.
+     */
+    private final long m_stateKey;
+
     protected ThresholdsDao m_thresholdsDao;
 
     private boolean m_initialized = false;
@@ -96,6 +101,7 @@ public class ThresholdingSet {
         m_hostAddress = (hostAddress == null ? null : hostAddress.intern());
         m_serviceName = (serviceName == null ? null : serviceName.intern());
         m_repository = repository;
+        m_stateKey = ThresholdStateStore.key(ThresholdStateStore.key(ThresholdStateStore.key(0L, nodeId), m_hostAddress), m_serviceName);
         initThresholdsDao();
         initialize();
         if (!m_initialized) {
@@ -308,10 +314,12 @@ public class ThresholdingSet {
         }
         LOG.debug("applyThresholds: Applying thresholds on {} using {} attributes.", resourceWrapper, attributesMap.size());
         Date date = new Date();
+        final ThresholdStateStore stateStore = ThresholdStateStore.getInstance();
         synchronized(m_thresholdGroups) {
             for (ThresholdGroup group : m_thresholdGroups) {
                 Map<String,Set<ThresholdEntity>> entityMap = getEntityMap(group, resourceWrapper.getResourceTypeName());
                 if (entityMap != null) {
+                    final long stateKey = ThresholdStateStore.key(ThresholdStateStore.key(m_stateKey, group.getName()), resourceWrapper.getResourceTypeName());
                     for (final Entry<String, Set<ThresholdEntity>> entry : entityMap.entrySet()) {
                         final String key = entry.getKey();
                         final Set<ThresholdEntity> value = entry.getValue();
@@ -334,7 +342,7 @@ public class ThresholdingSet {
                                     LOG.info("applyThresholds: All attributes found for {}, evaluating", resourceWrapper);
                                     resourceWrapper.setDsLabel(thresholdEntity.getDatasourceLabel());
                                     try {
-                                        List<Event> thresholdEvents = thresholdEntity.evaluateAndCreateEvents(resourceWrapper, values, date);
+                                        List<Event> thresholdEvents = thresholdEntity.evaluateAndCreateEvents(resourceWrapper, values, date, stateStore, stateKey);
                                         eventsList.addAll(thresholdEvents);
                                     } catch (Exception e) {
                                         LOG.warn("applyThresholds: Can't evaluate {} on {} because {}", key, resourceWrapper, e.getMessage());
@@ -51,9 +51,9 @@ import org.opennms.netmgt.events.api.EventConstants;
 import org.opennms.netmgt.events.api.EventIpcManager;
 import org.opennms.netmgt.events.api.EventListener;
 import org.opennms.netmgt.model.events.EventBuilder;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.Schedulers;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
@@ -79,7 +79,7 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
 
     private volatile boolean m_stopped = false;
 
-    private volatile LegacyScheduler m_scheduler;
+    private volatile Scheduler m_scheduler;
 
     private volatile EventIpcManager m_eventMgr;
 
@@ -298,7 +298,7 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
     private void createScheduler() {
         try {
             LOG.debug("init: Creating Vacuumd scheduler");
-            m_scheduler = new LegacyScheduler("Vacuumd", 2);
+            m_scheduler = Schedulers.create("Vacuumd", 2);
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create Vacuumd scheduler", e);
             throw e;
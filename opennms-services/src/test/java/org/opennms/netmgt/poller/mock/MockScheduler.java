@@ -33,10 +33,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
 
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
 
 public class MockScheduler implements Scheduler {
     
@@ -155,4 +158,18 @@ public class MockScheduler implements Scheduler {
     public long getNumTasksExecuted() {
         return m_numTasksExecuted;
     }
+
+    @Override
+    public int getScheduled() {
+        int scheduled = 0;
+        for (List<ReadyRunnable> entries : m_scheduleEntries.values()) {
+            scheduled += entries.size();
+        }
+        return scheduled;
+    }
+
+    @Override
+    public ExecutorService getRunner() {
+        return MoreExecutors.newDirectExecutorService();
+    }
 }
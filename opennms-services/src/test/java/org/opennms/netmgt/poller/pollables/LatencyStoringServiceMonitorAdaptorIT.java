@@ -69,6 +69,7 @@ import org.opennms.netmgt.poller.MonitoredService;
 import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.poller.support.AbstractServiceMonitor;
+import org.opennms.netmgt.threshd.ThresholdStateStore;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.opennms.test.mock.EasyMockUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -134,6 +135,7 @@ public class LatencyStoringServiceMonitorAdaptorIT implements TemporaryDatabaseA
         m_pollerConfig = m_mocks.createMock(PollerConfig.class);
 
         MockLogAppender.setupLogging();
+        ThresholdStateStore.getInstance().clear();
 
         String previousOpennmsHome = System.setProperty("opennms.home", "src/test/resources");
         PollOutagesConfigFactory.init();
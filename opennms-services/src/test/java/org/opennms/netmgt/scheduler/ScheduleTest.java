@@ -29,6 +29,8 @@
 package org.opennms.netmgt.scheduler;
 
 
+import java.util.concurrent.CompletableFuture;
+
 import junit.framework.TestCase;
 
 import org.opennms.core.test.MockLogAppender;
@@ -81,6 +83,40 @@ public class ScheduleTest extends TestCase {
         
     }
     
+    class MockAsyncSchedulable implements AsyncReadyRunnable {
+        private volatile int runCount = 0;
+        private volatile CompletableFuture<Void> m_future;
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            fail("run() should not be called on an asynchronous runnable");
+        }
+
+        @Override
+        public CompletableFuture<Void> runAsync() {
+            runCount++;
+            m_future = new CompletableFuture<>();
+            return m_future;
+        }
+
+        public int getRunCount() {
+            return runCount;
+        }
+
+        public void complete() {
+            m_future.complete(null);
+        }
+
+        public void postpone() {
+            m_future.completeExceptionally(new PostponeNecessary("postponed"));
+        }
+    }
+
     /*
      * @see TestCase#setUp()
      */
@@ -226,6 +262,34 @@ public class ScheduleTest extends TestCase {
         assertRunAndScheduled(1000, 1000, 2, 1);
     }
     
+    public void testAsyncRun() {
+        final MockAsyncSchedulable schedulable = new MockAsyncSchedulable();
+        m_sched = new Schedule(schedulable, m_interval, m_scheduler);
+        m_sched.schedule();
+
+        m_scheduler.next();
+
+        // nothing is rescheduled until the run completes
+        assertEquals(1, schedulable.getRunCount());
+        assertEquals(0, m_scheduler.getEntryCount());
+
+        schedulable.complete();
+
+        assertEquals(1, m_scheduler.getEntryCount());
+        assertNotNull(m_scheduler.getEntries().get(Long.valueOf(1000)));
+
+        m_scheduler.next();
+
+        assertEquals(2, schedulable.getRunCount());
+        assertEquals(0, m_scheduler.getEntryCount());
+
+        // a postponed run is retried
+        schedulable.postpone();
+
+        assertEquals(1, m_scheduler.getEntryCount());
+        assertNull(m_scheduler.getEntries().get(Long.valueOf(2000)));
+    }
+
     private void assertRunAndScheduled(long currentTime, long interval, int count, int entryCount) {
         assertEquals(count, m_schedulable.getRunCount());
         assertEquals(currentTime, m_scheduler.getCurrentTime());
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the schedulers with one million scheduled runnables.
+ *
+ * This is not run as part of the build, use {@link #main(String[])} to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({"legacy", "timerwheel"})
+    public String scheduler;
+
+    @Param({"1000000"})
+    public int tasks;
+
+    /**
+     * The runnables are spread over this many milliseconds.
+     */
+    @Param({"5000"})
+    public int spread;
+
+    private Scheduler m_scheduler;
+
+    private long[] m_intervals;
+
+    private CountDownLatch m_latch;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        switch (scheduler) {
+            case "legacy":
+                m_scheduler = new LegacyScheduler("benchmark", 8);
+                break;
+            case "timerwheel":
+                m_scheduler = new TimerWheelScheduler("benchmark", 8);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown scheduler: " + scheduler);
+        }
+        m_scheduler.start();
+
+        // Pollers use few distinct intervals, but the runnables are spread over them
+        final Random random = new Random(42);
+        m_intervals = new long[tasks];
+        for (int i = 0; i < tasks; i++) {
+            m_intervals[i] = random.nextInt(spread);
+        }
+        m_latch = new CountDownLatch(tasks);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        m_scheduler.stop();
+    }
+
+    /**
+     * Measures the time to schedule all runnables, without executing any of them.
+     */
+    @Benchmark
+    public void schedule() {
+        final ReadyRunnable runnable = new Task(m_latch);
+        for (int i = 0; i < tasks; i++) {
+            m_scheduler.schedule(TimeUnit.HOURS.toMillis(1) + m_intervals[i], runnable);
+        }
+    }
+
+    /**
+     * Measures the time until all runnables have been executed. The lower bound is the spread.
+     */
+    @Benchmark
+    public void scheduleAndExecute() throws InterruptedException {
+        final ReadyRunnable runnable = new Task(m_latch);
+        for (int i = 0; i < tasks; i++) {
+            m_scheduler.schedule(m_intervals[i], runnable);
+        }
+        m_latch.await();
+    }
+
+    private static class Task implements ReadyRunnable {
+        private final CountDownLatch m_latch;
+
+        private Task(CountDownLatch latch) {
+            m_latch = latch;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_latch.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(SchedulerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.core.fiber.Fiber;
+import org.opennms.core.fiber.PausableFiber;
+
+public class TimerWheelSchedulerTest {
+
+    private TimerWheelScheduler m_scheduler;
+
+    @After
+    public void tearDown() {
+        if (m_scheduler != null && m_scheduler.getStatus() != Fiber.STOPPED) {
+            m_scheduler.stop();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void canExecuteRunnablesAfterTheirInterval() throws InterruptedException {
+        m_scheduler = new TimerWheelScheduler("test", 4, 1);
+        m_scheduler.start();
+
+        // Spans all levels of the wheel below the highest one
+        final long[] intervals = {0, 1, 5, 100, 255, 256, 257, 700, 2000};
+        final CountDownLatch latch = new CountDownLatch(intervals.length);
+        final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        for (long interval : intervals) {
+            final long scheduledAt = System.nanoTime();
+            m_scheduler.schedule(interval, new Task(() -> {
+                final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduledAt);
+                if (elapsed < interval) {
+                    failures.add("Interval " + interval + " was executed after " + elapsed + "ms");
+                }
+                latch.countDown();
+            }));
+        }
+
+        latch.await();
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(intervals.length, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test(timeout = 30000)
+    public void canExecuteRunnablesInOrderOfTheirDeadline() throws InterruptedException {
+        m_scheduler = new TimerWheelScheduler("test", 1, 1);
+
+        // Scheduled before start, so all are placed at once
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch latch = new CountDownLatch(3);
+        m_scheduler.schedule(600, new Task(() -> { executed.add(3); latch.countDown(); }));
+        m_scheduler.schedule(300, new Task(() -> { executed.add(2); latch.countDown(); }));
+        m_scheduler.schedule(50, new Task(() -> { executed.add(1); latch.countDown(); }));
+        assertEquals(3, m_scheduler.getScheduled());
+
+        m_scheduler.start();
+        latch.await();
+        assertEquals(Arrays.asList(1, 2, 3), executed);
+    }
+
+    @Test(timeout = 30000)
+    public void canRetryRunnablesWhichAreNotReady() throws InterruptedException {
+        m_scheduler = new TimerWheelScheduler("test", 1);
+        m_scheduler.start();
+
+        final AtomicBoolean ready = new AtomicBoolean(false);
+        final AtomicInteger readyChecks = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                readyChecks.incrementAndGet();
+                return ready.get();
+            }
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        Thread.sleep(3 * TimerWheelScheduler.NOT_READY_DELAY_MS);
+        assertEquals(1, latch.getCount());
+        assertTrue(readyChecks.get() >= 2);
+
+        ready.set(true);
+        latch.await();
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test(timeout = 30000)
+    public void canPauseAndResume() throws InterruptedException {
+        m_scheduler = new TimerWheelScheduler("test", 1);
+        m_scheduler.start();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        m_scheduler.pause();
+        m_scheduler.schedule(10, new Task(latch::countDown));
+
+        Thread.sleep(200);
+        assertEquals(PausableFiber.PAUSED, m_scheduler.getStatus());
+        assertEquals(1, latch.getCount());
+
+        // Runnables which expired while being paused are executed after resuming
+        m_scheduler.resume();
+        latch.await();
+    }
+
+    @Test(timeout = 60000)
+    public void canExecuteManyRunnables() throws InterruptedException {
+        m_scheduler = new TimerWheelScheduler("test", 4, 1);
+        m_scheduler.start();
+
+        final int count = 100000;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            m_scheduler.schedule(random.nextInt(1000), new Task(latch::countDown));
+        }
+
+        latch.await();
+        assertEquals(count, m_scheduler.getNumTasksExecuted());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    private static class Task implements ReadyRunnable {
+        private final Runnable m_runnable;
+
+        private Task(Runnable runnable) {
+            m_runnable = runnable;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void run() {
+            m_runnable.run();
+        }
+    }
+}
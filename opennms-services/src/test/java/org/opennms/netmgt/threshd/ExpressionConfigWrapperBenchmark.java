@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.opennms.netmgt.config.threshd.Expression;
+
+/**
+ * Evaluates the expressions shipped in the default thresholds.xml against a
+ * single set of collected values, as done for every collected resource.
+ *
+ * This is not run as part of the build, use {@link #main(String[])} to run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExpressionConfigWrapperBenchmark {
+
+    private static final String[] EXPRESSIONS = new String[] {
+            "(memAvailReal + memCached) / memTotalReal * 100.0",
+            "hrStorageUsed / hrStorageSize * 100.0",
+            "ifInDiscards + ifOutDiscards",
+            "ifInErrors + ifOutErrors",
+            "ifInOctets * 8 / 1000000 / ifHighSpeed * 100",
+            "ifOutOctets * 8 / 1000000 / ifHighSpeed * 100",
+            "loadavg5 / 100.0",
+            "memAvailReal / memTotalReal * 100.0",
+            "memAvailSwap / memTotalSwap * 100.0",
+            "ifSpeed > 0 and ifSpeed < 100000000 ? ((ifInOctets * 8 / ifSpeed) * 100) : (ifHighSpeed > 0 ? (((ifHCInOctets * 8) / (ifHighSpeed * 1000000)) * 100) : 0)",
+            "math.max((ifInOctets*8/ifSpeed), (ifOutOctets*8/ifSpeed))",
+            "datasources['ns-dskTotal'] - datasources['ns-dskUsed']"
+    };
+
+    private final List<ExpressionConfigWrapper> m_wrappers = new ArrayList<>();
+
+    private final Map<String, Double> m_values = new HashMap<>();
+
+    @Setup
+    public void setUp() throws ThresholdExpressionException {
+        for (String expression : EXPRESSIONS) {
+            final Expression exp = new Expression();
+            exp.setExpression(expression);
+            final ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+            m_wrappers.add(wrapper);
+            for (String datasource : wrapper.getRequiredDatasources()) {
+                m_values.put(datasource, (double)(datasource.length() * 1000));
+            }
+        }
+    }
+
+    /**
+     * Evaluates the expressions compiled by the wrappers.
+     */
+    @Benchmark
+    public void evaluate(Blackhole blackhole) throws ThresholdExpressionException {
+        for (ExpressionConfigWrapper wrapper : m_wrappers) {
+            blackhole.consume(wrapper.evaluate(m_values));
+        }
+    }
+
+    /**
+     * Parses the expressions on every evaluation with a new engine, which is how
+     * they used to be evaluated, for comparison.
+     */
+    @Benchmark
+    public void parseAndEvaluate(Blackhole blackhole) {
+        for (String expression : EXPRESSIONS) {
+            final Map<String,Object> context = new HashMap<String,Object>();
+            context.putAll(m_values);
+            context.put("datasources", new HashMap<String, Double>(m_values));
+            context.put("math", new ExpressionConfigWrapper.MathBinding());
+            final Object result = new JexlEngine().createExpression(expression).evaluate(new MapContext(context));
+            blackhole.consume(Double.parseDouble(result.toString()));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ExpressionConfigWrapperBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -28,8 +28,13 @@
 
 package org.opennms.netmgt.threshd;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 
@@ -171,4 +176,42 @@ public class ExpressionConfigWrapperTest {
         values.put("ifSpeed", 10.0);
         Assert.assertEquals(160.0, wrapper.evaluate(values), 0.0);
     }
+
+    @Test
+    public void testEvaluatesRepeatedlyWithDifferentValues() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("datasources['ns-dskUsed'] / ns * 100.0");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        for (int i = 1; i <= 10; i++) {
+            values.put("ns-dskUsed", (double)i);
+            values.put("ns", 10.0);
+            Assert.assertEquals(i * 10.0, wrapper.evaluate(values), 0.0001);
+        }
+        // The given values must not be modified
+        Assert.assertEquals(2, values.size());
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Double>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final double speed = (i % 2 == 0) ? 10000000.0 : 0.0;
+                futures.add(executor.submit(() -> {
+                    Map<String, Double> values = new HashMap<String,Double>();
+                    values.put("ifInOctets", 200000.0);
+                    values.put("ifSpeed", speed);
+                    values.put("ifHighSpeed", 0.0);
+                    return wrapper.evaluate(values);
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(i % 2 == 0 ? 16.0 : 0.0, futures.get(i).get(), 0.0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
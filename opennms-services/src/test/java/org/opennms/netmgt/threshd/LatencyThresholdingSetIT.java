@@ -206,6 +206,7 @@ public class LatencyThresholdingSetIT implements TemporaryDatabaseAware<MockData
 
         // Resets Counters Cache Data
         CollectionResourceWrapper.s_cache.clear();
+        ThresholdStateStore.getInstance().clear();
 
         MockLogAppender.setupLogging();
 
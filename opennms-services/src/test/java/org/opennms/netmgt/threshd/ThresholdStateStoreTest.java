@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.netmgt.threshd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.netmgt.config.threshd.Threshold;
+import org.opennms.netmgt.config.threshd.ThresholdType;
+import org.opennms.netmgt.threshd.ThresholdEvaluatorHighLow.ThresholdEvaluatorStateHighLow;
+import org.opennms.netmgt.threshd.ThresholdEvaluatorState.Status;
+import org.opennms.netmgt.xml.event.Event;
+
+public class ThresholdStateStoreTest {
+
+    @Rule
+    public TemporaryFolder m_tempFolder = new TemporaryFolder();
+
+    @Test
+    public void canStoreAndRemoveStates() {
+        final ThresholdStateStore store = new ThresholdStateStore(4, 0, null);
+        final long emptyMemoryUsage = store.getMemoryUsage();
+
+        // Enough states to resize the tables
+        for (int i = 0; i < 10000; i++) {
+            store.put(ThresholdStateStore.key(0L, i), i, i % 2 == 0, i, -i);
+        }
+        assertEquals(10000, store.size());
+        assertTrue(store.getMemoryUsage() > emptyMemoryUsage);
+
+        for (int i = 0; i < 10000; i += 2) {
+            assertTrue(store.remove(ThresholdStateStore.key(0L, i)));
+        }
+        assertEquals(5000, store.size());
+
+        for (int i = 0; i < 10000; i++) {
+            final ThresholdStateStore.State state = store.get(ThresholdStateStore.key(0L, i));
+            if (i % 2 == 0) {
+                assertNull(state);
+            } else {
+                assertNotNull(state);
+                assertEquals(i, state.getCount());
+                assertFalse(state.isArmed());
+                assertEquals(i, state.getLastSample(), 0.0);
+                assertEquals(-i, state.getPreviousSample(), 0.0);
+            }
+        }
+
+        // Updates replace the state
+        final long key = ThresholdStateStore.key(0L, 1);
+        store.put(key, 0, true, Double.NaN, Double.NaN);
+        assertEquals(5000, store.size());
+        assertTrue(store.get(key).isArmed());
+        assertTrue(Double.isNaN(store.get(key).getLastSample()));
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertFalse(store.contains(key));
+    }
+
+    @Test
+    public void canBuildDistinctKeys() {
+        final long key = ThresholdStateStore.key(ThresholdStateStore.key(0L, 1), "127.0.0.1");
+        assertEquals(key, ThresholdStateStore.key(ThresholdStateStore.key(0L, 1), "127.0.0.1"));
+        assertNotEquals(key, ThresholdStateStore.key(ThresholdStateStore.key(0L, 2), "127.0.0.1"));
+        assertNotEquals(key, ThresholdStateStore.key(ThresholdStateStore.key(0L, 1), "127.0.0.2"));
+        assertNotEquals(ThresholdStateStore.key(key, (String)null), ThresholdStateStore.key(key, ""));
+        assertNotEquals(ThresholdStateStore.key(ThresholdStateStore.key(key, "a"), "bc"), ThresholdStateStore.key(ThresholdStateStore.key(key, "ab"), "c"));
+    }
+
+    @Test
+    public void canEvictExpiredStates() {
+        final ThresholdStateStore store = new ThresholdStateStore(2, TimeUnit.HOURS.toMillis(1), null);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            // Every other state was last updated two hours ago
+            store.put(ThresholdStateStore.key(0L, i), 1, true, 0.0, 0.0, i % 2 == 0 ? now - TimeUnit.HOURS.toMillis(2) : now);
+        }
+
+        assertEquals(50, store.evictExpired());
+        assertEquals(50, store.size());
+        assertEquals(50, store.getEvictionCount());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 != 0, store.contains(ThresholdStateStore.key(0L, i)));
+        }
+
+        assertEquals(0, store.evictExpired());
+        assertEquals(50, store.getEvictionCount());
+    }
+
+    @Test
+    public void canRestoreSnapshots() throws Exception {
+        final Path snapshotFile = m_tempFolder.getRoot().toPath().resolve("threshd").resolve("states.bin");
+        final long now = System.currentTimeMillis();
+
+        final ThresholdStateStore store = new ThresholdStateStore(4, TimeUnit.HOURS.toMillis(1), snapshotFile);
+        store.start(0);
+        for (int i = 0; i < 1000; i++) {
+            store.put(ThresholdStateStore.key(0L, i), i, i % 3 == 0, i * 2.0, i * 3.0, now);
+        }
+        // Expires before the snapshot is restored
+        store.put(ThresholdStateStore.key(0L, -1), 0, true, 0.0, 0.0, now - TimeUnit.HOURS.toMillis(2));
+        store.stop();
+
+        // Restore with a different number of shards
+        final ThresholdStateStore restored = new ThresholdStateStore(8, TimeUnit.HOURS.toMillis(1), snapshotFile);
+        restored.start(0);
+        assertEquals(1000, restored.size());
+        assertFalse(restored.contains(ThresholdStateStore.key(0L, -1)));
+        for (int i = 0; i < 1000; i++) {
+            final ThresholdStateStore.State state = restored.get(ThresholdStateStore.key(0L, i));
+            assertEquals(i, state.getCount());
+            assertEquals(i % 3 == 0, state.isArmed());
+            assertEquals(i * 2.0, state.getLastSample(), 0.0);
+            assertEquals(i * 3.0, state.getPreviousSample(), 0.0);
+            assertEquals(now, state.getTimestamp());
+        }
+        restored.stop();
+    }
+
+    @Test
+    public void canRestoreEvaluatorStates() {
+        final ThresholdStateStore store = new ThresholdStateStore(1, 0, null);
+        final Threshold threshold = new Threshold();
+        threshold.setType(ThresholdType.HIGH);
+        threshold.setDsName("ds-name");
+        threshold.setDsType("node");
+        threshold.setValue(99.0);
+        threshold.setRearm(95.0);
+        threshold.setTrigger(1);
+        final ThresholdConfigWrapper wrapper = new ThresholdConfigWrapper(threshold);
+
+        final ThresholdEvaluatorStateHighLow state = new ThresholdEvaluatorStateHighLow(wrapper);
+        state.attach(store, 42L);
+        assertEquals(Status.TRIGGERED, state.evaluate(100.0));
+        state.persistState();
+
+        // A new state, i.e. after the thresholding set has been recreated, continues where the previous one stopped
+        final ThresholdEvaluatorStateHighLow restored = new ThresholdEvaluatorStateHighLow(wrapper);
+        restored.attach(store, 42L);
+        assertFalse(restored.isArmed());
+        assertEquals(Status.NO_CHANGE, restored.evaluate(100.0));
+        assertEquals(Status.RE_ARMED, restored.evaluate(90.0));
+        restored.persistState();
+        assertTrue(store.get(42L).isArmed());
+
+        store.remove(42L);
+        assertTrue(restored.isEvicted());
+    }
+
+    @Test
+    public void thresholdsOfTheSameTypeKeepTheirOwnState() {
+        final ThresholdStateStore store = new ThresholdStateStore(1, 0, null);
+        final Map<String, Double> values = Collections.singletonMap("ds-name", 0.0);
+
+        // A warning and a critical threshold on the same datasource
+        ThresholdEntity warning = createHighThreshold(80.0, 70.0, "uei.opennms.org/test/warning");
+        ThresholdEntity critical = createHighThreshold(95.0, 90.0, "uei.opennms.org/test/critical");
+        assertTriggered(warning.evaluateAndCreateEvents(null, Collections.singletonMap("ds-name", 85.0), new Date(), store, 42L), "uei.opennms.org/test/warning");
+        assertEquals(0, critical.evaluateAndCreateEvents(null, Collections.singletonMap("ds-name", 85.0), new Date(), store, 42L).size());
+
+        // Recreate the thresholds, as when the configuration is reloaded
+        warning = createHighThreshold(80.0, 70.0, "uei.opennms.org/test/warning");
+        critical = createHighThreshold(95.0, 90.0, "uei.opennms.org/test/critical");
+
+        // The warning threshold is still triggered, and the critical one is still armed
+        assertEquals(0, warning.evaluateAndCreateEvents(null, Collections.singletonMap("ds-name", 85.0), new Date(), store, 42L).size());
+        assertTriggered(critical.evaluateAndCreateEvents(null, Collections.singletonMap("ds-name", 99.0), new Date(), store, 42L), "uei.opennms.org/test/critical");
+        assertEquals(1, warning.evaluateAndCreateEvents(null, values, new Date(), store, 42L).size());
+        assertEquals(1, critical.evaluateAndCreateEvents(null, values, new Date(), store, 42L).size());
+    }
+
+    private static ThresholdEntity createHighThreshold(double value, double rearm, String triggeredUei) {
+        final Threshold threshold = new Threshold();
+        threshold.setType(ThresholdType.HIGH);
+        threshold.setDsName("ds-name");
+        threshold.setDsType("node");
+        threshold.setValue(value);
+        threshold.setRearm(rearm);
+        threshold.setTrigger(1);
+        threshold.setTriggeredUEI(triggeredUei);
+        final ThresholdEntity entity = new ThresholdEntity();
+        entity.addThreshold(new ThresholdConfigWrapper(threshold));
+        return entity;
+    }
+
+    private static void assertTriggered(List<Event> events, String uei) {
+        assertEquals(1, events.size());
+        assertEquals(uei, events.get(0).getUei());
+    }
+}
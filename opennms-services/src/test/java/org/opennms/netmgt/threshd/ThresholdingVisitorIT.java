@@ -216,6 +216,7 @@ public class ThresholdingVisitorIT {
     public void setUp() throws Exception {
         // Resets Counters Cache Data
         CollectionResourceWrapper.s_cache.clear();
+        ThresholdStateStore.getInstance().clear();
 
         MockLogAppender.setupLogging();
 